@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.util.prefs.Preferences;
 
 import com.filevault.api.ApiServer;
+import com.filevault.storage.BlobLayoutMigrator;
 import com.filevault.storage.DatabaseManager;
+import com.filevault.storage.MaintenanceScheduler;
 import com.filevault.util.LoggingUtil;
 
 import javafx.animation.FadeTransition;
@@ -315,6 +317,8 @@ public class FileVaultApp extends Application {
         
         // Initialize database
         DatabaseManager.initDatabase();
+        MaintenanceScheduler.getInstance().start();
+        BlobLayoutMigrator.getInstance().start();
         
         // Start API server
         startApiServer(apiPort);
@@ -385,6 +389,8 @@ public class FileVaultApp extends Application {
             LoggingUtil.logInfo("FileVaultApp", "Stopping API server");
             apiServer.stop();
         }
+        MaintenanceScheduler.getInstance().stop();
+        BlobLayoutMigrator.getInstance().stop();
         
         // Cleanup für alle Controller
         try {
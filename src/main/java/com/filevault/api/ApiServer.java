@@ -3,23 +3,53 @@ package com.filevault.api;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import com.filevault.model.EncryptedFile;
+import com.filevault.model.FileSummary;
+import com.filevault.model.FileVersion;
+import com.filevault.model.FolderQuota;
+import com.filevault.model.FolderStats;
+import com.filevault.model.TrashItem;
 import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
 import com.filevault.storage.DatabaseManager;
+import com.filevault.storage.FileSortKey;
 import com.filevault.storage.FileStorage;
+import com.filevault.storage.FolderArchiver;
+import com.filevault.storage.MetadataStore;
+import com.filevault.storage.QueryStatistics;
+import com.filevault.storage.QuotaExceededException;
+import com.filevault.storage.QuotaManager;
+import com.filevault.storage.ResultPage;
+import com.filevault.storage.SearchHit;
+import com.filevault.storage.SlowQuery;
+import com.filevault.storage.StatementStats;
+import com.filevault.storage.TrashManager;
+import com.filevault.storage.VersionManager;
+import com.filevault.util.FolderManager;
 import com.filevault.util.LoggingUtil;
+import com.filevault.util.RequestRateMonitor;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -32,8 +62,18 @@ import com.sun.net.httpserver.HttpServer;
  */
 public class ApiServer {
 
+    /** Anzahl der Threads, die ZIP-Archive gleichzeitig schreiben */
+    private static final int ARCHIVE_THREADS = 2;
+
     /** Der HTTP-Server, der die API-Anfragen verarbeitet */
     private HttpServer server;
+
+    /**
+     * Begrenzter Pool, in dem ZIP-Archive geschrieben werden. Alle übrigen Anfragen bearbeitet
+     * weiterhin der Dispatcher-Thread, der als einziger die gemeinsame Datenbankverbindung nutzt;
+     * ein langes Archiv blockiert ihn so nicht.
+     */
+    private ExecutorService archiveExecutor;
     
     /** Liste von Listenern, die bei API-Änderungen informiert werden */
     private static final List<Consumer<String>> changeListeners = new CopyOnWriteArrayList<>();
@@ -52,6 +92,51 @@ public class ApiServer {
             }
             return json.substring(startIndex, endIndex).replaceAll("\"", "").trim();
         }
+
+        public static String escape(String value) {
+            if (value == null) {
+                return "";
+            }
+            StringBuilder escaped = new StringBuilder(value.length() + 8);
+            for (char c : value.toCharArray()) {
+                switch (c) {
+                    case '"' -> escaped.append("\\\"");
+                    case '\\' -> escaped.append("\\\\");
+                    case '\n' -> escaped.append("\\n");
+                    case '\r' -> escaped.append("\\r");
+                    case '\t' -> escaped.append("\\t");
+                    default -> {
+                        if (c < 0x20) {
+                            escaped.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            escaped.append(c);
+                        }
+                    }
+                }
+            }
+            return escaped.toString();
+        }
+    }
+
+    /**
+     * Zerlegt den Query-String einer Anfrage in seine URL-dekodierten Parameter.
+     *
+     * @param query Der rohe Query-String oder null
+     * @return Die Parameter als Map (leer, wenn kein Query-String vorhanden ist)
+     */
+    static Map<String, String> parseQueryParameters(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String key = separator >= 0 ? pair.substring(0, separator) : pair;
+            String value = separator >= 0 ? pair.substring(separator + 1) : "";
+            parameters.put(URLDecoder.decode(key, StandardCharsets.UTF_8),
+                    URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
     }
 
     /**
@@ -106,15 +191,38 @@ public class ApiServer {
         LoggingUtil.logInfo("ApiServer", "Starting API server on port " + port);
         try {
             server = HttpServer.create(new InetSocketAddress(port), 0);
+            archiveExecutor = Executors.newFixedThreadPool(ARCHIVE_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "api-archive");
+                thread.setDaemon(true);
+                return thread;
+            });
             server.createContext("/api/auth", new AuthHandler());
             LoggingUtil.logInfo("ApiServer", "Kontext /api/auth registriert.");
 
-            server.createContext("/api/folders", new AuthMiddleware(new FoldersHandler()));
+            server.createContext("/api/folders", new AuthMiddleware(new FoldersHandler(archiveExecutor)));
             LoggingUtil.logInfo("ApiServer", "Kontext /api/folders mit Authentifizierung registriert.");
 
             server.createContext("/api/files", new AuthMiddleware(new FileHandler()));
             LoggingUtil.logInfo("ApiServer", "Kontext /api/files mit Authentifizierung registriert.");
 
+            server.createContext("/api/search", new AuthMiddleware(new SearchHandler()));
+            LoggingUtil.logInfo("ApiServer", "Kontext /api/search mit Authentifizierung registriert.");
+
+            server.createContext("/api/stats", new AuthMiddleware(new StatsHandler()));
+            LoggingUtil.logInfo("ApiServer", "Kontext /api/stats mit Authentifizierung registriert.");
+
+            server.createContext("/api/quotas", new AuthMiddleware(new QuotaHandler()));
+            LoggingUtil.logInfo("ApiServer", "Kontext /api/quotas mit Authentifizierung registriert.");
+
+            server.createContext("/api/versions", new AuthMiddleware(new VersionHandler()));
+            LoggingUtil.logInfo("ApiServer", "Kontext /api/versions mit Authentifizierung registriert.");
+
+            server.createContext("/api/trash", new AuthMiddleware(new TrashHandler()));
+            LoggingUtil.logInfo("ApiServer", "Kontext /api/trash mit Authentifizierung registriert.");
+
+            server.createContext("/api/copy", new AuthMiddleware(new CopyHandler()));
+            LoggingUtil.logInfo("ApiServer", "Kontext /api/copy mit Authentifizierung registriert.");
+
             server.createContext("/", new WebInterfaceHandler());
             LoggingUtil.logInfo("ApiServer", "Kontext / für Web-Interface registriert.");
 
@@ -135,6 +243,10 @@ public class ApiServer {
         if (server != null) {
             server.stop(0);
         }
+        if (archiveExecutor != null) {
+            archiveExecutor.shutdownNow();
+            archiveExecutor = null;
+        }
     }
 
     /**
@@ -210,6 +322,7 @@ public class ApiServer {
 
         @Override
         public void handle(HttpExchange exchange) throws IOException {
+            RequestRateMonitor.getInstance().recordRequest();
             LoggingUtil.logInfo("ApiServer", "Überprüfe Authentifizierungs-Token...");
 
             String authHeader = exchange.getRequestHeaders().getFirst("Authorization");
@@ -232,9 +345,26 @@ public class ApiServer {
      * Handler für die Verarbeitung von Anfragen an /api/folders.
      */
     static class FoldersHandler implements HttpHandler {
+
+        /** Handler für das Herunterladen eines Ordners als ZIP-Archiv */
+        private final FolderArchiveHandler archiveHandler;
+
+        /**
+         * Erstellt den Handler.
+         *
+         * @param archiveExecutor Der Pool, in dem ZIP-Archive geschrieben werden
+         */
+        FoldersHandler(Executor archiveExecutor) {
+            this.archiveHandler = new FolderArchiveHandler(archiveExecutor);
+        }
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             String method = exchange.getRequestMethod();
+            if (FolderArchiveHandler.PATH.matcher(exchange.getRequestURI().getPath()).matches()) {
+                archiveHandler.handle(exchange);
+                return;
+            }
             LoggingUtil.logInfo("ApiServer", "Verarbeite Anfrage an /api/folders mit Methode: " + method);
 
             String response;
@@ -290,15 +420,25 @@ public class ApiServer {
             LoggingUtil.logInfo("ApiServer", "Liste alle Ordner auf...");
             StringBuilder response = new StringBuilder("[");
             try (Connection conn = DatabaseManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement("SELECT id, name, COALESCE(parent_id, 0) AS parent_id FROM folders");
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "SELECT f.id, f.name, COALESCE(f.parent_id, 0) AS parent_id, " +
+                         "COALESCE(s.direct_file_count, 0) AS direct_file_count, " +
+                         "COALESCE(s.direct_bytes, 0) AS direct_bytes, " +
+                         "COALESCE(s.total_file_count, 0) AS total_file_count, " +
+                         "COALESCE(s.total_bytes, 0) AS total_bytes " +
+                         "FROM folders f LEFT JOIN folder_stats s ON s.folder_id = f.id " +
+                         "WHERE " + TrashManager.notTrashed("f.id"));
                  ResultSet rs = stmt.executeQuery()) {
 
                 while (rs.next()) {
                     if (response.length() > 1) {
                         response.append(",");
                     }
-                    response.append(String.format("{\"id\":%d,\"name\":\"%s\",\"parentFolderId\":%d}",
-                            rs.getInt("id"), rs.getString("name"), rs.getInt("parent_id")));
+                    response.append(String.format("{\"id\":%d,\"name\":\"%s\",\"parentFolderId\":%d," +
+                            "\"fileCount\":%d,\"size\":%d,\"totalFileCount\":%d,\"totalSize\":%d}",
+                            rs.getInt("id"), rs.getString("name"), rs.getInt("parent_id"),
+                            rs.getLong("direct_file_count"), rs.getLong("direct_bytes"),
+                            rs.getLong("total_file_count"), rs.getLong("total_bytes")));
                 }
             } catch (SQLException e) {
                 LoggingUtil.logError("ApiServer", "Datenbankfehler: " + e.getMessage());
@@ -320,38 +460,17 @@ public class ApiServer {
                         ? Integer.parseInt(JsonUtils.parseJson(requestBody, "parentFolderId"))
                         : 0; // Default to root folder
 
-                // Validate parentFolderId
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement validateStmt = conn.prepareStatement("SELECT COUNT(*) FROM folders WHERE id = ?")) {
+                MetadataStore store = DatabaseManager.getMetadataStore();
 
-                    validateStmt.setInt(1, parentFolderId);
-                    try (ResultSet rs = validateStmt.executeQuery()) {
-                        if (parentFolderId != 0 && (!rs.next() || rs.getInt(1) == 0)) {
-                            return "Ungültige parentFolderId: Der übergeordnete Ordner existiert nicht.";
-                        }
-                    }
+                // Validate parentFolderId
+                if (parentFolderId != 0 && store.getFolder(parentFolderId) == null) {
+                    return "Ungültige parentFolderId: Der übergeordnete Ordner existiert nicht.";
                 }
 
                 // Proceed with folder creation
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement stmt = conn.prepareStatement(
-                             "INSERT INTO folders (name, parent_id) VALUES (?, ?)",
-                             PreparedStatement.RETURN_GENERATED_KEYS)) {
-
-                    stmt.setString(1, folderName);
-                    stmt.setInt(2, parentFolderId);
-                    stmt.executeUpdate();
-
-                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                        if (generatedKeys.next()) {
-                            int folderId = generatedKeys.getInt(1);
-                            LoggingUtil.logInfo("ApiServer", "Ordner erstellt mit ID: " + folderId);
-                            return String.format("{\"id\":%d,\"name\":\"%s\",\"parentFolderId\":%d}", folderId, folderName, parentFolderId);
-                        } else {
-                            throw new SQLException("Erstellen des Ordners fehlgeschlagen, keine ID erhalten.");
-                        }
-                    }
-                }
+                VirtualFolder folder = store.insertFolder(folderName, null, parentFolderId);
+                LoggingUtil.logInfo("ApiServer", "Ordner erstellt mit ID: " + folder.getId());
+                return String.format("{\"id\":%d,\"name\":\"%s\",\"parentFolderId\":%d}", folder.getId(), folderName, parentFolderId);
             } catch (IOException | SQLException e) {
                 LoggingUtil.logError("ApiServer", "Fehler beim Erstellen des Ordners: " + e.getMessage());
                 return "Fehler beim Erstellen des Ordners: " + e.getMessage();
@@ -370,19 +489,13 @@ public class ApiServer {
                 int folderId = Integer.parseInt(JsonUtils.parseJson(requestBody, "id"));
                 String folderName = JsonUtils.parseJson(requestBody, "name");
 
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement stmt = conn.prepareStatement("UPDATE folders SET name = ? WHERE id = ?")) {
-
-                    stmt.setString(1, folderName);
-                    stmt.setInt(2, folderId);
-
-                    int rowsUpdated = stmt.executeUpdate();
-                    if (rowsUpdated > 0) {
-                        LoggingUtil.logInfo("ApiServer", "Ordner erfolgreich aktualisiert: ID=" + folderId);
-                        return String.format("{\"id\":%d,\"name\":\"%s\"}", folderId, folderName);
-                    } else {
-                        return "Ordner nicht gefunden.";
-                    }
+                MetadataStore store = DatabaseManager.getMetadataStore();
+                VirtualFolder folder = store.getFolder(folderId);
+                if (folder != null && store.updateFolder(folderId, folderName, folder.getDescription())) {
+                    LoggingUtil.logInfo("ApiServer", "Ordner erfolgreich aktualisiert: ID=" + folderId);
+                    return String.format("{\"id\":%d,\"name\":\"%s\"}", folderId, folderName);
+                } else {
+                    return "Ordner nicht gefunden.";
                 }
             } catch (SQLException e) {
                 LoggingUtil.logError("ApiServer", "Fehler beim Aktualisieren des Ordners: " + e.getMessage());
@@ -402,68 +515,28 @@ public class ApiServer {
                 int folderId = Integer.parseInt(query.split("=")[1]);
                 LoggingUtil.logInfo("ApiServer", "Empfangene Anfrage zum Löschen des Ordners mit ID: " + folderId);
                 
-                // Prüfe zuerst, ob der Ordner existiert
-                boolean folderExists = false;
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement checkStmt = conn.prepareStatement("SELECT COUNT(*) FROM folders WHERE id = ?")) {
-                    
-                    checkStmt.setInt(1, folderId);
-                    try (ResultSet rs = checkStmt.executeQuery()) {
-                        if (rs.next()) {
-                            folderExists = rs.getInt(1) > 0;
-                        }
-                    }
-                }
+                MetadataStore store = DatabaseManager.getMetadataStore();
                 
-                if (!folderExists) {
+                // Prüfe zuerst, ob der Ordner existiert
+                if (store.getFolder(folderId) == null) {
                     return "Ordner nicht gefunden.";
                 }
                 
-                // Prüfe, ob der Ordner Unterordner hat
-                boolean hasSubfolders = false;
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement subfolderStmt = conn.prepareStatement("SELECT COUNT(*) FROM folders WHERE parent_id = ?")) {
-                    
-                    subfolderStmt.setInt(1, folderId);
-                    try (ResultSet rs = subfolderStmt.executeQuery()) {
-                        if (rs.next()) {
-                            hasSubfolders = rs.getInt(1) > 0;
-                        }
-                    }
-                }
-                
-                // Prüfe, ob der Ordner Dateien enthält
-                boolean hasFiles = false;
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement filesStmt = conn.prepareStatement("SELECT COUNT(*) FROM files WHERE folder_id = ?")) {
-                    
-                    filesStmt.setInt(1, folderId);
-                    try (ResultSet rs = filesStmt.executeQuery()) {
-                        if (rs.next()) {
-                            hasFiles = rs.getInt(1) > 0;
-                        }
-                    }
-                }
-                
                 // Wenn der Ordner Unterordner oder Dateien hat, verhindere das Löschen über die API
-                if (hasSubfolders || hasFiles) {
+                if (store.countSubfolders(folderId) > 0 || store.countFilesInFolder(folderId) > 0) {
                     LoggingUtil.logWarning("ApiServer", "Versuch, einen Ordner mit Inhalt über die API zu löschen: ID=" + folderId);
                     return "Ordner mit Inhalt koennen nicht über die API geloescht werden. Bitte verwende die grafische Benutzeroberflaeche (GUI), um Ordner mit Unterordnern oder Dateien zu loeschen.";
                 }
 
-                // Ansonsten führe das Löschen durch
-                try (Connection conn = DatabaseManager.getConnection();
-                     PreparedStatement stmt = conn.prepareStatement("DELETE FROM folders WHERE id = ?")) {
-
-                    stmt.setInt(1, folderId);
-
-                    int rowsDeleted = stmt.executeUpdate();
-                    if (rowsDeleted > 0) {
-                        LoggingUtil.logInfo("ApiServer", "Ordner erfolgreich gelöscht: ID=" + folderId);
-                        return "Ordner erfolgreich geloescht.";
-                    } else {
-                        return "Ordner konnte nicht geloescht werden.";
-                    }
+                // Wie in der Oberfläche landet der Ordner im Papierkorb, sofern verfügbar
+                TrashManager trash = TrashManager.getInstance();
+                boolean deleted = trash.isAvailable() ? trash.trashFolder(folderId) : store.deleteFolder(folderId);
+                if (deleted) {
+                    FileStorage.getInstance().invalidateFolder(folderId);
+                    LoggingUtil.logInfo("ApiServer", "Ordner erfolgreich gelöscht: ID=" + folderId);
+                    return "Ordner erfolgreich geloescht.";
+                } else {
+                    return "Ordner konnte nicht geloescht werden.";
                 }
             } catch (SQLException e) {
                 LoggingUtil.logError("ApiServer", "Datenbankfehler beim Löschen des Ordners: " + e.getMessage());
@@ -484,6 +557,13 @@ public class ApiServer {
      * Handler für Dateioperationen.
      */
     static class FileHandler implements HttpHandler {
+
+        /** Standardanzahl der Dateien pro Seite */
+        private static final int DEFAULT_PAGE_SIZE = 100;
+
+        /** Maximale Anzahl der Dateien pro Seite */
+        private static final int MAX_PAGE_SIZE = 1000;
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             String method = exchange.getRequestMethod();
@@ -493,8 +573,21 @@ public class ApiServer {
             
             switch (method) {
                 case "GET" -> {
-                    response = listFiles();
-                    exchange.sendResponseHeaders(200, response.getBytes().length);
+                    Map<String, String> parameters = parseQueryParameters(exchange.getRequestURI().getRawQuery());
+                    if (parameters.containsKey("folderId") || parameters.containsKey("limit")
+                            || parameters.containsKey("cursor")) {
+                        try {
+                            response = listFilesPage(parameters);
+                            exchange.sendResponseHeaders(200, response.getBytes().length);
+                        } catch (IllegalArgumentException e) {
+                            LoggingUtil.logWarning("FileHandler", "Ungültige Anfrage: " + e.getMessage());
+                            response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                            exchange.sendResponseHeaders(400, response.getBytes().length);
+                        }
+                    } else {
+                        response = listFiles();
+                        exchange.sendResponseHeaders(200, response.getBytes().length);
+                    }
                 }
                 case "POST" -> {
                     try {
@@ -533,25 +626,23 @@ public class ApiServer {
                 FileStorage fileStorage = FileStorage.getInstance();
                 LoggingUtil.logInfo("FileHandler", "Rufe alle Dateien aus allen Ordnern ab...");
 
-                List<EncryptedFile> files = fileStorage.getAllFiles();
-
-                if (files.isEmpty()) {
-                    LoggingUtil.logInfo("FileHandler", "Keine Dateien gefunden.");
-                    return "[]";
-                }
-
-                LoggingUtil.logInfo("FileHandler", "Anzahl der gefundenen Dateien: " + files.size());
                 StringBuilder response = new StringBuilder("[");
-
-                for (EncryptedFile file : files) {
-                    LoggingUtil.logInfo("FileHandler", "Datei gefunden: ID=" + file.getId() + ", Name=" + file.getOriginalName());
-                    if (response.length() > 1) {
-                        response.append(",");
+                int count = 0;
+                String cursor = null;
+                do {
+                    ResultPage<FileSummary> page = fileStorage.getAllFileSummaries(cursor, MAX_PAGE_SIZE);
+                    for (FileSummary file : page.getItems()) {
+                        if (response.length() > 1) {
+                            response.append(",");
+                        }
+                        response.append(String.format("{\"id\":%d,\"name\":\"%s\",\"folderId\":%d}",
+                                file.id(), file.name(), file.folderId()));
+                        count++;
                     }
-                    response.append(String.format("{\"id\":%d,\"name\":\"%s\",\"folderId\":%d}",
-                            file.getId(), file.getOriginalName(), file.getFolderId()));
-                }
+                    cursor = page.getNextCursor();
+                } while (cursor != null);
 
+                LoggingUtil.logInfo("FileHandler", "Anzahl der gefundenen Dateien: " + count);
                 response.append("]");
                 return response.toString();
             } catch (Exception e) {
@@ -560,6 +651,47 @@ public class ApiServer {
             }
         }
 
+        /**
+         * Gibt eine Seite von Dateien zurück. Mit folderId werden die Dateien dieses Ordners
+         * in der per sort gewählten Reihenfolge (name, size, created_at) geliefert, ohne
+         * folderId alle Dateien nach ID sortiert.
+         */
+        private String listFilesPage(Map<String, String> parameters) {
+            int limit = parameters.containsKey("limit")
+                    ? Math.min(Integer.parseInt(parameters.get("limit")), MAX_PAGE_SIZE)
+                    : DEFAULT_PAGE_SIZE;
+            String cursor = parameters.get("cursor");
+            FileStorage fileStorage = FileStorage.getInstance();
+
+            ResultPage<FileSummary> page;
+            if (parameters.containsKey("folderId")) {
+                int folderId = Integer.parseInt(parameters.get("folderId"));
+                FileSortKey sortKey = parameters.containsKey("sort")
+                        ? FileSortKey.valueOf(parameters.get("sort").toUpperCase(Locale.ROOT))
+                        : FileSortKey.NAME;
+                page = fileStorage.getFileSummariesByFolderId(folderId, sortKey, cursor, limit);
+            } else {
+                page = fileStorage.getAllFileSummaries(cursor, limit);
+            }
+
+            StringBuilder response = new StringBuilder("{\"items\":[");
+            for (FileSummary file : page.getItems()) {
+                if (response.charAt(response.length() - 1) != '[') {
+                    response.append(",");
+                }
+                response.append("{\"id\":").append(file.id())
+                        .append(",\"name\":\"").append(JsonUtils.escape(file.name()))
+                        .append("\",\"folderId\":").append(file.folderId())
+                        .append(",\"size\":").append(file.sizeBytes())
+                        .append(",\"createdAt\":").append(file.createdAtMillis())
+                        .append('}');
+            }
+            response.append("],\"nextCursor\":");
+            response.append(page.getNextCursor() != null ? "\"" + page.getNextCursor() + "\"" : "null");
+            response.append("}");
+            return response.toString();
+        }
+
         private String uploadFile(HttpExchange exchange) throws IOException {
             // Implementierung für das Hochladen von Dateien
             LoggingUtil.logInfo("ApiServer", "Implementierung für uploadFile fehlt");
@@ -573,6 +705,644 @@ public class ApiServer {
         }
     }
 
+    /**
+     * Handler für die Volltextsuche über Datei- und Ordnernamen unter /api/search.
+     * Parameter: q (Suchbegriffe), limit (optional, Standard 50) und cursor (optional).
+     */
+    static class SearchHandler implements HttpHandler {
+
+        /** Standardanzahl der Treffer pro Seite */
+        private static final int DEFAULT_LIMIT = 50;
+
+        /** Maximale Anzahl der Treffer pro Seite */
+        private static final int MAX_LIMIT = 500;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            LoggingUtil.logInfo("SearchHandler", "Verarbeite Anfrage an /api/search mit Methode: " + method);
+
+            String response;
+            int status;
+
+            if ("GET".equals(method)) {
+                Map<String, String> parameters = parseQueryParameters(exchange.getRequestURI().getRawQuery());
+                try {
+                    int limit = parameters.containsKey("limit")
+                            ? Math.min(Integer.parseInt(parameters.get("limit")), MAX_LIMIT)
+                            : DEFAULT_LIMIT;
+                    ResultPage<SearchHit> page = FileStorage.getInstance()
+                            .search(parameters.get("q"), limit, parameters.get("cursor"));
+                    response = toJson(page);
+                    status = 200;
+                } catch (IllegalArgumentException e) {
+                    LoggingUtil.logWarning("SearchHandler", "Ungültige Suchanfrage: " + e.getMessage());
+                    response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                    status = 400;
+                }
+            } else {
+                response = "Methode nicht erlaubt.";
+                LoggingUtil.logWarning("SearchHandler", "Methode nicht erlaubt: " + method);
+                status = 405;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        private String toJson(ResultPage<SearchHit> page) {
+            StringBuilder json = new StringBuilder("{\"results\":[");
+            for (SearchHit hit : page.getItems()) {
+                if (json.charAt(json.length() - 1) != '[') {
+                    json.append(",");
+                }
+                json.append(String.format(Locale.ROOT,
+                        "{\"type\":\"%s\",\"id\":%d,\"name\":\"%s\",\"mimeType\":%s,\"folderId\":%s,\"score\":%.4f}",
+                        hit.getType().name().toLowerCase(Locale.ROOT),
+                        hit.getId(),
+                        JsonUtils.escape(hit.getName()),
+                        hit.getMimeType() != null ? "\"" + JsonUtils.escape(hit.getMimeType()) + "\"" : "null",
+                        hit.getFolderId() != null ? hit.getFolderId().toString() : "null",
+                        hit.getScore()));
+            }
+            json.append("],\"nextCursor\":");
+            json.append(page.getNextCursor() != null ? "\"" + page.getNextCursor() + "\"" : "null");
+            json.append("}");
+            return json.toString();
+        }
+    }
+
+    /**
+     * Handler für die Laufzeitstatistiken der SQL-Anweisungen unter /api/stats/queries.
+     */
+    static class StatsHandler implements HttpHandler {
+
+        /** Standardanzahl der ausgegebenen Anweisungsvorlagen */
+        private static final int DEFAULT_LIMIT = 50;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            LoggingUtil.logInfo("StatsHandler", "Verarbeite Anfrage an " + path + " mit Methode: " + method);
+
+            String response;
+            int status;
+
+            if (!"/api/stats/queries".equals(path)) {
+                response = "{\"error\":\"Unbekannte Statistik.\"}";
+                status = 404;
+            } else if ("GET".equals(method)) {
+                Map<String, String> parameters = parseQueryParameters(exchange.getRequestURI().getRawQuery());
+                try {
+                    int limit = parameters.containsKey("limit")
+                            ? Integer.parseInt(parameters.get("limit"))
+                            : DEFAULT_LIMIT;
+                    response = toJson(QueryStatistics.getInstance(), limit);
+                    status = 200;
+                } catch (NumberFormatException e) {
+                    response = "{\"error\":\"Ungültiger Parameter limit.\"}";
+                    status = 400;
+                }
+            } else if ("DELETE".equals(method)) {
+                QueryStatistics.getInstance().reset();
+                response = "{\"message\":\"Statistiken zurückgesetzt.\"}";
+                status = 200;
+            } else {
+                response = "Methode nicht erlaubt.";
+                LoggingUtil.logWarning("StatsHandler", "Methode nicht erlaubt: " + method);
+                status = 405;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        private String toJson(QueryStatistics statistics, int limit) {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"slowQueryThresholdMillis\":").append(statistics.getSlowQueryThresholdMillis());
+            json.append(",\"histogramBoundsMicros\":").append(Arrays.toString(StatementStats.getBucketBoundsMicros()).replace(" ", ""));
+            json.append(",\"statements\":[");
+            List<StatementStats> statements = statistics.getStatementStats();
+            for (int i = 0; i < statements.size() && i < limit; i++) {
+                StatementStats stats = statements.get(i);
+                if (i > 0) {
+                    json.append(",");
+                }
+                json.append(String.format(Locale.ROOT,
+                        "{\"template\":\"%s\",\"count\":%d,\"totalMillis\":%.3f,\"meanMillis\":%.3f,"
+                                + "\"p50Millis\":%.3f,\"p95Millis\":%.3f,\"p99Millis\":%.3f,\"maxMillis\":%.3f,"
+                                + "\"rows\":%d,\"busyRetries\":%d,\"errors\":%d,\"histogram\":%s}",
+                        JsonUtils.escape(stats.getTemplate()),
+                        stats.getCount(),
+                        stats.getTotalMillis(),
+                        stats.getMeanMillis(),
+                        stats.getPercentileMillis(50),
+                        stats.getPercentileMillis(95),
+                        stats.getPercentileMillis(99),
+                        stats.getMaxMillis(),
+                        stats.getRows(),
+                        stats.getBusyRetries(),
+                        stats.getErrors(),
+                        Arrays.toString(stats.getHistogram()).replace(" ", "")));
+            }
+            json.append("],\"slowQueries\":[");
+            List<SlowQuery> slowQueries = statistics.getSlowQueries();
+            for (int i = 0; i < slowQueries.size(); i++) {
+                SlowQuery slow = slowQueries.get(i);
+                if (i > 0) {
+                    json.append(",");
+                }
+                json.append(String.format(Locale.ROOT,
+                        "{\"template\":\"%s\",\"durationMillis\":%.3f,\"executedAt\":\"%s\"}",
+                        JsonUtils.escape(slow.getTemplate()),
+                        slow.getDurationMillis(),
+                        slow.getExecutedAt()));
+            }
+            json.append("]}");
+            return json.toString();
+        }
+    }
+
+    /**
+     * Handler für Speicherkontingente unter /api/quotas.
+     * GET liefert Kontingente mit ihrer Belegung (optional für einen Ordner über folderId),
+     * PUT setzt ein Kontingent, DELETE entfernt es.
+     */
+    static class QuotaHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            LoggingUtil.logInfo("QuotaHandler", "Verarbeite Anfrage an /api/quotas mit Methode: " + method);
+
+            String response;
+            int status;
+
+            try {
+                Map<String, String> parameters = parseQueryParameters(exchange.getRequestURI().getRawQuery());
+                QuotaManager quotas = QuotaManager.getInstance();
+                switch (method) {
+                    case "GET" -> {
+                        if (parameters.containsKey("folderId")) {
+                            int folderId = Integer.parseInt(parameters.get("folderId"));
+                            if (DatabaseManager.getMetadataStore().getFolder(folderId) == null) {
+                                response = "{\"error\":\"Ordner nicht gefunden.\"}";
+                                status = 404;
+                            } else {
+                                FolderQuota quota = quotas.getQuota(folderId);
+                                response = toJson(quota != null ? quota : new FolderQuota(folderId, null, null, true));
+                                status = 200;
+                            }
+                        } else {
+                            StringBuilder json = new StringBuilder("[");
+                            for (FolderQuota quota : quotas.getQuotas()) {
+                                if (json.length() > 1) {
+                                    json.append(",");
+                                }
+                                json.append(toJson(quota));
+                            }
+                            response = json.append("]").toString();
+                            status = 200;
+                        }
+                    }
+                    case "PUT" -> {
+                        String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                        int folderId = Integer.parseInt(JsonUtils.parseJson(requestBody, "folderId"));
+                        FolderQuota quota = quotas.setQuota(folderId, parseLimit(requestBody, "maxBytes"),
+                                parseLimit(requestBody, "maxFiles"),
+                                !requestBody.contains("\"recursive\"")
+                                        || Boolean.parseBoolean(JsonUtils.parseJson(requestBody, "recursive")));
+                        notifyChangeListeners("update_quota");
+                        response = toJson(quota);
+                        status = 200;
+                    }
+                    case "DELETE" -> {
+                        int folderId = Integer.parseInt(parameters.get("folderId"));
+                        if (quotas.removeQuota(folderId)) {
+                            notifyChangeListeners("update_quota");
+                            response = "{\"message\":\"Kontingent entfernt.\"}";
+                            status = 200;
+                        } else {
+                            response = "{\"error\":\"Kein Kontingent gesetzt.\"}";
+                            status = 404;
+                        }
+                    }
+                    default -> {
+                        response = "Methode nicht erlaubt.";
+                        LoggingUtil.logWarning("QuotaHandler", "Methode nicht erlaubt: " + method);
+                        status = 405;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                LoggingUtil.logWarning("QuotaHandler", "Ungültige Anfrage: " + e.getMessage());
+                response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 400;
+            } catch (SQLException e) {
+                LoggingUtil.logError("QuotaHandler", "Datenbankfehler: " + e.getMessage());
+                response = "{\"error\":\"Datenbankfehler: " + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 500;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        /**
+         * Liest eine Grenze aus dem Anfragetext; fehlende Werte und null bedeuten unbegrenzt.
+         */
+        private static Long parseLimit(String requestBody, String key) {
+            if (!requestBody.contains("\"" + key + "\"")) {
+                return null;
+            }
+            String value = JsonUtils.parseJson(requestBody, key);
+            return "null".equals(value) ? null : Long.valueOf(value);
+        }
+
+        /**
+         * Gibt ein Kontingent mit der aktuellen Belegung aus den Ordnerstatistiken aus.
+         */
+        private static String toJson(FolderQuota quota) {
+            FolderStats stats = FolderManager.getInstance().getFolderStats(quota.getFolderId());
+            long usedBytes = quota.isRecursive() ? stats.getTotalBytes() : stats.getDirectBytes();
+            long usedFiles = quota.isRecursive() ? stats.getTotalFileCount() : stats.getDirectFileCount();
+            return String.format("{\"folderId\":%d,\"recursive\":%b,\"maxBytes\":%s,\"maxFiles\":%s," +
+                    "\"usedBytes\":%d,\"usedFiles\":%d}",
+                    quota.getFolderId(), quota.isRecursive(), quota.getMaxBytes(), quota.getMaxFiles(),
+                    usedBytes, usedFiles);
+        }
+    }
+
+    /**
+     * Handler für Dateiversionen unter /api/versions.
+     * GET listet die Versionen einer Datei (fileId), POST stellt eine frühere Version wieder her.
+     */
+    static class VersionHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            LoggingUtil.logInfo("VersionHandler", "Verarbeite Anfrage an /api/versions mit Methode: " + method);
+
+            String response;
+            int status;
+
+            try {
+                VersionManager versions = VersionManager.getInstance();
+                switch (method) {
+                    case "GET" -> {
+                        Map<String, String> parameters = parseQueryParameters(exchange.getRequestURI().getRawQuery());
+                        int fileId = Integer.parseInt(parameters.get("fileId"));
+                        List<FileVersion> list = versions.getVersions(fileId);
+                        if (list.isEmpty()) {
+                            response = "{\"error\":\"Datei nicht gefunden.\"}";
+                            status = 404;
+                        } else {
+                            StringBuilder json = new StringBuilder("[");
+                            for (FileVersion version : list) {
+                                if (json.length() > 1) {
+                                    json.append(",");
+                                }
+                                json.append(String.format("{\"fileId\":%d,\"version\":%d,\"size\":%d," +
+                                        "\"createdAt\":\"%s\",\"current\":%b}",
+                                        version.getFileId(), version.getVersion(), version.getSizeBytes(),
+                                        version.getCreatedAt(), version.isCurrent()));
+                            }
+                            response = json.append("]").toString();
+                            status = 200;
+                        }
+                    }
+                    case "POST" -> {
+                        String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                        int fileId = Integer.parseInt(JsonUtils.parseJson(requestBody, "fileId"));
+                        int version = Integer.parseInt(JsonUtils.parseJson(requestBody, "version"));
+                        if (versions.restore(fileId, version)) {
+                            notifyChangeListeners("restore_version");
+                            response = "{\"message\":\"Version wiederhergestellt.\"}";
+                            status = 200;
+                        } else {
+                            response = "{\"error\":\"Version nicht gefunden.\"}";
+                            status = 404;
+                        }
+                    }
+                    default -> {
+                        response = "Methode nicht erlaubt.";
+                        LoggingUtil.logWarning("VersionHandler", "Methode nicht erlaubt: " + method);
+                        status = 405;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                LoggingUtil.logWarning("VersionHandler", "Ungültige Anfrage: " + e.getMessage());
+                response = "{\"error\":\"Ungültige Anfrage.\"}";
+                status = 400;
+            } catch (QuotaExceededException e) {
+                LoggingUtil.logWarning("VersionHandler", "Kontingent überschritten: " + e.getMessage());
+                response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 409;
+            } catch (SQLException e) {
+                LoggingUtil.logError("VersionHandler", "Datenbankfehler: " + e.getMessage());
+                response = "{\"error\":\"Datenbankfehler: " + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 500;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * Handler für den Papierkorb unter /api/trash.
+     * GET listet gelöschte Dateien und Ordner, POST stellt einen Eintrag wieder her,
+     * DELETE leert den Papierkorb endgültig.
+     */
+    static class TrashHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            LoggingUtil.logInfo("TrashHandler", "Verarbeite Anfrage an /api/trash mit Methode: " + method);
+
+            String response;
+            int status;
+
+            try {
+                TrashManager trash = TrashManager.getInstance();
+                switch (method) {
+                    case "GET" -> {
+                        StringBuilder json = new StringBuilder("[");
+                        for (TrashItem item : trash.getItems()) {
+                            if (json.length() > 1) {
+                                json.append(",");
+                            }
+                            json.append(String.format("{\"type\":\"%s\",\"id\":%d,\"name\":\"%s\"," +
+                                    "\"originalParentId\":%s,\"size\":%d,\"deletedAt\":\"%s\"}",
+                                    item.getType(), item.getId(), JsonUtils.escape(item.getName()),
+                                    item.getOriginalParentId(), item.getSizeBytes(), item.getDeletedAt()));
+                        }
+                        response = json.append("]").toString();
+                        status = 200;
+                    }
+                    case "POST" -> {
+                        String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                        TrashItem.Type type = TrashItem.Type.valueOf(
+                                JsonUtils.parseJson(requestBody, "type").toUpperCase(Locale.ROOT));
+                        int id = Integer.parseInt(JsonUtils.parseJson(requestBody, "id"));
+                        boolean restored = type == TrashItem.Type.FILE ? trash.restoreFile(id) : trash.restoreFolder(id);
+                        if (restored) {
+                            FolderManager.getInstance().reloadFromDatabase();
+                            notifyChangeListeners("restore_trash");
+                            response = "{\"message\":\"Eintrag wiederhergestellt.\"}";
+                            status = 200;
+                        } else {
+                            response = "{\"error\":\"Eintrag nicht im Papierkorb oder Zielordner nicht vorhanden.\"}";
+                            status = 404;
+                        }
+                    }
+                    case "DELETE" -> {
+                        int purged = trash.emptyTrash();
+                        notifyChangeListeners("empty_trash");
+                        response = "{\"message\":\"Papierkorb geleert.\",\"purgedFiles\":" + purged + "}";
+                        status = 200;
+                    }
+                    default -> {
+                        response = "Methode nicht erlaubt.";
+                        LoggingUtil.logWarning("TrashHandler", "Methode nicht erlaubt: " + method);
+                        status = 405;
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                LoggingUtil.logWarning("TrashHandler", "Ungültige Anfrage: " + e.getMessage());
+                response = "{\"error\":\"Ungültige Anfrage.\"}";
+                status = 400;
+            } catch (IllegalStateException e) {
+                LoggingUtil.logWarning("TrashHandler", "Wiederherstellen nicht möglich: " + e.getMessage());
+                response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 409;
+            } catch (QuotaExceededException e) {
+                LoggingUtil.logWarning("TrashHandler", "Kontingent überschritten: " + e.getMessage());
+                response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 409;
+            } catch (SQLException e) {
+                LoggingUtil.logError("TrashHandler", "Datenbankfehler: " + e.getMessage());
+                response = "{\"error\":\"Datenbankfehler: " + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 500;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * Handler für serverseitige Kopien unter /api/copy.
+     * POST kopiert eine Datei oder einen Ordner samt Inhalt in einen Zielordner, ohne die
+     * Inhalte neu zu verschlüsseln; Kopien teilen sich die verschlüsselten Dateien.
+     */
+    static class CopyHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            LoggingUtil.logInfo("CopyHandler", "Verarbeite Anfrage an /api/copy mit Methode: " + method);
+
+            String response;
+            int status;
+
+            try {
+                if (!"POST".equals(method)) {
+                    response = "Methode nicht erlaubt.";
+                    LoggingUtil.logWarning("CopyHandler", "Methode nicht erlaubt: " + method);
+                    status = 405;
+                } else {
+                    String requestBody = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                    TrashItem.Type type = TrashItem.Type.valueOf(
+                            JsonUtils.parseJson(requestBody, "type").toUpperCase(Locale.ROOT));
+                    int id = Integer.parseInt(JsonUtils.parseJson(requestBody, "id"));
+                    int targetFolderId = requestBody.contains("\"targetFolderId\"")
+                            ? Integer.parseInt(JsonUtils.parseJson(requestBody, "targetFolderId"))
+                            : 0;
+                    MetadataStore store = DatabaseManager.getMetadataStore();
+                    VirtualFolder target = targetFolderId > 0 ? store.getFolder(targetFolderId) : null;
+                    boolean targetMissing = targetFolderId > 0
+                            && (target == null || TrashManager.getInstance().isFolderTrashed(targetFolderId));
+                    if (targetMissing) {
+                        response = "{\"error\":\"Zielordner nicht gefunden.\"}";
+                        status = 404;
+                    } else if (type == TrashItem.Type.FILE) {
+                        if (target == null) {
+                            throw new IllegalArgumentException("Dateien benötigen einen Zielordner");
+                        }
+                        FileStorage storage = FileStorage.getInstance();
+                        EncryptedFile file = storage.getFileById(id);
+                        EncryptedFile copy = file != null ? storage.copyFile(file, target) : null;
+                        if (copy != null) {
+                            notifyChangeListeners("copy_file");
+                            response = String.format("{\"type\":\"FILE\",\"id\":%d,\"name\":\"%s\",\"folderId\":%d}",
+                                    copy.getId(), JsonUtils.escape(copy.getOriginalName()), copy.getFolderId());
+                            status = 201;
+                        } else {
+                            response = "{\"error\":\"Datei nicht gefunden.\"}";
+                            status = 404;
+                        }
+                    } else {
+                        VirtualFolder folder = store.getFolder(id);
+                        VirtualFolder copy = folder != null ? FileStorage.getInstance().copyFolder(folder, target) : null;
+                        if (copy != null) {
+                            FolderManager.getInstance().reloadFromDatabase();
+                            notifyChangeListeners("copy_folder");
+                            response = String.format(
+                                    "{\"type\":\"FOLDER\",\"id\":%d,\"name\":\"%s\",\"parentFolderId\":%d}",
+                                    copy.getId(), JsonUtils.escape(copy.getName()), targetFolderId);
+                            status = 201;
+                        } else {
+                            response = "{\"error\":\"Ordner nicht gefunden.\"}";
+                            status = 404;
+                        }
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                LoggingUtil.logWarning("CopyHandler", "Ungültige Anfrage: " + e.getMessage());
+                response = "{\"error\":\"Ungültige Anfrage.\"}";
+                status = 400;
+            } catch (QuotaExceededException e) {
+                LoggingUtil.logWarning("CopyHandler", "Kontingent überschritten: " + e.getMessage());
+                response = "{\"error\":\"" + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 409;
+            } catch (SQLException | IOException e) {
+                LoggingUtil.logError("CopyHandler", "Kopieren fehlgeschlagen: " + e.getMessage());
+                response = "{\"error\":\"Kopieren fehlgeschlagen: " + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 500;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    /**
+     * Handler für GET /api/folders/{id}/archive.
+     * Streamt den entschlüsselten Teilbaum eines Ordners als ZIP-Archiv mit Chunked-Transfer-Encoding,
+     * ohne das Archiv im Speicher oder auf der Platte abzulegen.
+     */
+    static class FolderArchiveHandler implements HttpHandler {
+
+        /** Pfad eines Archivs mit der Ordner-ID als erster Gruppe */
+        static final Pattern PATH = Pattern.compile("^/api/folders/(\\d+)/archive/?$");
+
+        /** Der Pool, in dem die Archive geschrieben werden */
+        private final Executor executor;
+
+        /**
+         * Erstellt den Handler.
+         *
+         * @param executor Der Pool, in dem die Archive geschrieben werden
+         */
+        FolderArchiveHandler(Executor executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String method = exchange.getRequestMethod();
+            LoggingUtil.logInfo("FolderArchiveHandler", "Verarbeite Anfrage an " + exchange.getRequestURI().getPath() + " mit Methode: " + method);
+
+            String response;
+            int status;
+            try {
+                if (!"GET".equals(method)) {
+                    response = "Methode nicht erlaubt.";
+                    LoggingUtil.logWarning("FolderArchiveHandler", "Methode nicht erlaubt: " + method);
+                    status = 405;
+                } else {
+                    Matcher matcher = PATH.matcher(exchange.getRequestURI().getPath());
+                    matcher.matches();
+                    int folderId = Integer.parseInt(matcher.group(1));
+                    VirtualFolder folder = DatabaseManager.getMetadataStore().getFolder(folderId);
+                    if (folder == null || TrashManager.getInstance().isFolderTrashed(folderId)) {
+                        response = "{\"error\":\"Ordner nicht gefunden.\"}";
+                        status = 404;
+                    } else {
+                        streamArchive(exchange, folder);
+                        return;
+                    }
+                }
+            } catch (NumberFormatException e) {
+                LoggingUtil.logWarning("FolderArchiveHandler", "Ungültige Anfrage: " + e.getMessage());
+                response = "{\"error\":\"Ungültige Anfrage.\"}";
+                status = 400;
+            } catch (SQLException e) {
+                LoggingUtil.logError("FolderArchiveHandler", "Datenbankfehler: " + e.getMessage());
+                response = "{\"error\":\"Datenbankfehler: " + JsonUtils.escape(e.getMessage()) + "\"}";
+                status = 500;
+            }
+
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        /**
+         * Sendet die Kopfzeilen sofort und übergibt das Schreiben des Archivs an den Pool,
+         * damit der Dispatcher-Thread weitere Anfragen bearbeiten kann. Der Pool liest die
+         * Metadaten über eine eigene Leseverbindung. Bricht das Schreiben ab, fehlt dem Archiv
+         * das abschließende Inhaltsverzeichnis, sodass der Client es als unvollständig erkennt.
+         */
+        private void streamArchive(HttpExchange exchange, VirtualFolder folder) throws IOException {
+            String fileName = folder.getName().replaceAll("[\\\\/\"\\r\\n]", "_") + ".zip";
+            exchange.getResponseHeaders().set("Content-Type", "application/zip");
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
+            // Länge 0 bedeutet Chunked-Transfer-Encoding
+            exchange.sendResponseHeaders(200, 0);
+            try {
+                executor.execute(() -> writeArchive(exchange, folder));
+            } catch (RejectedExecutionException e) {
+                LoggingUtil.logError("FolderArchiveHandler", "Archiv von Ordner " + folder.getId() + " abgelehnt: " + e.getMessage());
+                exchange.close();
+            }
+        }
+
+        /**
+         * Schreibt das Archiv in die Antwort und beendet den Austausch.
+         */
+        private void writeArchive(HttpExchange exchange, VirtualFolder folder) {
+            OutputStream os = exchange.getResponseBody();
+            try {
+                FolderArchiver.getInstance().writeArchive(folder, os);
+                os.close();
+            } catch (IOException | SQLException e) {
+                LoggingUtil.logError("FolderArchiveHandler", "Archiv von Ordner " + folder.getId() + " abgebrochen: " + e.getMessage());
+                exchange.close();
+            }
+        }
+    }
+
     /**
      * Handler für das Web-Interface.
      */
@@ -2,7 +2,9 @@ package com.filevault.api;
 
 import java.io.IOException;
 
+import com.filevault.storage.BlobLayoutMigrator;
 import com.filevault.storage.DatabaseManager;
+import com.filevault.storage.MaintenanceScheduler;
 
 /**
  * Hauptklasse zum Starten des FileVault API-Servers.
@@ -28,13 +30,19 @@ public class FileVaultApiApp {
 
         // Initialisiere die Datenbank
         DatabaseManager.initDatabase();
+        MaintenanceScheduler.getInstance().start();
+        BlobLayoutMigrator.getInstance().start();
 
         ApiServer server = new ApiServer();
         try {
             server.start(port);
 
             // Shutdown-Hook registrieren, um den Server beim Beenden zu stoppen
-            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.stop();
+                MaintenanceScheduler.getInstance().stop();
+                BlobLayoutMigrator.getInstance().stop();
+            }));
         } catch (IOException e) {
             System.err.println("Fehler beim Starten des API-Servers: " + e.getMessage());
         } catch (RuntimeException e) {
@@ -12,6 +12,7 @@ import com.filevault.model.EncryptedFile;
 import com.filevault.model.UserManager;
 import com.filevault.model.VirtualFolder;
 import com.filevault.storage.FileStorage;
+import com.filevault.storage.FolderImporter;
 import com.filevault.util.FolderManager;
 import com.filevault.util.LoggingUtil;
 
@@ -1474,7 +1475,9 @@ public class MainController {
     }
     
     /**
-     * Importiert einen ausgewählten Ordner in den aktuellen Ordner.
+     * Importiert einen ausgewählten Ordner samt aller Unterordner in den aktuellen Ordner.
+     * Der Import läuft im Hintergrund; ein Dialog zeigt Fortschritt und Durchsatz und
+     * erlaubt den Abbruch.
      * 
      * @param directory Der zu importierende Ordner
      */
@@ -1493,29 +1496,28 @@ public class MainController {
                     "Importiert aus: " + directory.getAbsolutePath(), currentFolder.getId());
             
             if (newFolder != null) {
-                // Importiere alle Dateien aus dem Ordner
-                File[] files = directory.listFiles();
-                int successful = 0;
-                
-                if (files != null) {
-                    for (File file : files) {
-                        if (file.isFile()) {
-                            try {
-                                EncryptedFile importedFile = FileStorage.getInstance().importFile(file, newFolder);
-                                if (importedFile != null) {
-                                    successful++;
-                                }
-                            } catch (Exception e) {
-                                LoggingUtil.logError("MainController", "Error importing file " + file.getName() + ": " + e.getMessage());
+                Alert progressDialog = new Alert(Alert.AlertType.INFORMATION, "Dateien werden gesucht...", ButtonType.CANCEL);
+                progressDialog.setTitle("Ordner importieren");
+                progressDialog.setHeaderText(directory.getName());
+
+                // Verschlüsselung und Schreiben laufen in eigenen Threads, der Dialog bleibt bedienbar
+                FolderImporter.Import run = FolderImporter.getInstance().start(directory.toPath(), newFolder,
+                        progress -> Platform.runLater(() -> {
+                            if (progress.finished()) {
+                                progressDialog.close();
+                                finishFolderImport(directory, newFolder, progress);
+                            } else {
+                                progressDialog.setContentText(formatImportProgress(progress));
                             }
-                        }
+                        }));
+                progressDialog.resultProperty().addListener((observable, oldResult, result) -> {
+                    if (result == ButtonType.CANCEL && !run.isFinished()) {
+                        run.cancel();
+                        statusLabel.setText("Import wird abgebrochen: " + directory.getName());
                     }
-                }
-                
-                refreshUI();
-                selectFolderInTree(newFolder);
-                statusLabel.setText(successful + " Dateien erfolgreich importiert aus: " + directory.getName());
-                LoggingUtil.logInfo("MainController", successful + " files imported from folder: " + directory.getName());
+                });
+                progressDialog.show();
+                statusLabel.setText("Importiere Ordner: " + directory.getName());
             } else {
                 statusLabel.setText("Fehler beim Erstellen des Ordners: " + directory.getName());
                 LoggingUtil.logError("MainController", "Failed to create folder: " + directory.getName());
@@ -1527,6 +1529,42 @@ public class MainController {
             showAlert(Alert.AlertType.ERROR, "Importfehler", "Fehler beim Importieren des Ordners: " + e.getMessage());
         }
     }
+
+    /**
+     * Aktualisiert die Oberfläche nach dem Ende eines Ordnerimports.
+     *
+     * @param directory Der importierte Ordner
+     * @param newFolder Der angelegte Zielordner
+     * @param progress Der abschließende Stand des Imports
+     */
+    private void finishFolderImport(File directory, VirtualFolder newFolder, FolderImporter.Progress progress) {
+        // Die Unterordner wurden vom Import direkt in der Datenbank angelegt
+        FolderManager.getInstance().reloadFromDatabase();
+        refreshUI();
+        selectFolderInTree(newFolder);
+        String summary = progress.filesImported() + " Dateien in " + (progress.foldersCreated() + 1)
+                + " Ordnern importiert aus: " + directory.getName();
+        if (progress.filesFailed() > 0) {
+            summary += " (" + progress.filesFailed() + " fehlgeschlagen)";
+        }
+        if (progress.cancelled()) {
+            summary += " - abgebrochen";
+        }
+        statusLabel.setText(summary);
+        LoggingUtil.logInfo("MainController", progress.filesImported() + " files imported from folder: " + directory.getName());
+    }
+
+    /**
+     * Formatiert den Fortschritt eines Ordnerimports für den Fortschrittsdialog.
+     *
+     * @param progress Der Fortschritt
+     * @return Der anzuzeigende Text
+     */
+    private static String formatImportProgress(FolderImporter.Progress progress) {
+        return String.format("%d von %d Dateien importiert (%d fehlgeschlagen)%n%.0f Dateien/s, %.1f MB/s",
+                progress.filesImported(), progress.filesFound(), progress.filesFailed(),
+                progress.filesPerSecond(), progress.bytesPerSecond() / (1024 * 1024));
+    }
     
     /**
      * Exportiert eine ausgewählte Datei an einen bestimmten Ort.
@@ -1,6 +1,7 @@
 package com.filevault.core;
 
 import java.io.File;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -8,6 +9,8 @@ import java.util.Map;
 import com.filevault.model.EncryptedFile;
 import com.filevault.model.VirtualFolder;
 import com.filevault.storage.FileStorage;
+import com.filevault.storage.FolderExporter;
+import com.filevault.storage.TrashManager;
 import com.filevault.util.FolderManager;
 import com.filevault.util.LoggingUtil;
 
@@ -56,10 +59,13 @@ public class Vault {
             throw new Exception("Ordner nicht gefunden: " + folderName);
         }
 
-        List<EncryptedFile> files = fileStorage.getFilesInFolder(folder);
-        for (EncryptedFile file : files) {
-            fileStorage.deleteFile(file);
-            LoggingUtil.logInfo("Vault", "Deleted file: " + file.getOriginalName());
+        // Mit Papierkorb wandert der Ordner samt Dateien in einem Schritt dorthin
+        if (!TrashManager.getInstance().isAvailable()) {
+            List<EncryptedFile> files = fileStorage.getFilesInFolder(folder);
+            for (EncryptedFile file : files) {
+                fileStorage.deleteFile(file);
+                LoggingUtil.logInfo("Vault", "Deleted file: " + file.getOriginalName());
+            }
         }
 
         folderManager.deleteFolder(folder);
@@ -123,6 +129,28 @@ public class Vault {
         return success;
     }
 
+    /**
+     * Exportiert einen Ordner samt aller Unterordner in ein Zielverzeichnis. Die Dateien werden
+     * parallel entschlüsselt; ein abgebrochener Export wird beim nächsten Aufruf mit demselben
+     * Zielverzeichnis fortgesetzt.
+     *
+     * @param folder  Der zu exportierende Ordner.
+     * @param target  Das Zielverzeichnis, wird bei Bedarf angelegt.
+     * @param options Die Einstellungen des Exports.
+     * @return Das Ergebnis des Exports.
+     * @throws Exception Wenn die Ordnerstruktur nicht gelesen oder das Zielverzeichnis nicht beschrieben werden kann.
+     */
+    public FolderExporter.Summary exportFolder(VirtualFolder folder, Path target, FolderExporter.Options options) throws Exception {
+        LoggingUtil.logInfo("Vault", "Attempting to export folder: " + folder.getName() + " to destination: " + target.toAbsolutePath());
+        FolderExporter.Summary summary = FolderExporter.getInstance().export(folder, target, options);
+        if (summary.failed() == 0) {
+            LoggingUtil.logInfo("Vault", "Folder exported successfully: " + folder.getName());
+        } else {
+            LoggingUtil.logError("Vault", "Failed to export " + summary.failed() + " files of folder: " + folder.getName());
+        }
+        return summary;
+    }
+
     /**
      * Benennt einen Ordner im Tresor um.
      *
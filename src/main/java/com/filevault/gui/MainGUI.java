@@ -160,7 +160,7 @@ public class MainGUI extends Application {
                 if (hasSubfolders) {
                     confirmMessage = "Der Ordner '" + selectedFolder.getValue() + "' enthält Unterordner.\n" +
                             "Möchten Sie diesen Ordner und ALLE darin enthaltenen Unterordner und Dateien löschen?\n" +
-                            "WARNUNG: Diese Aktion kann nicht rückgängig gemacht werden!";
+                            "Der Ordner wird in den Papierkorb verschoben und kann dort wiederhergestellt werden.";
                 } else {
                     confirmMessage = "Möchten Sie den Ordner '" + selectedFolder.getValue() + "' wirklich löschen?";
                 }
@@ -32,6 +32,21 @@ public class EncryptedFile {
     
     /** Datum und Uhrzeit des letzten Zugriffs */
     private LocalDateTime lastAccess;
+    
+    /** Kennung der Pack-Datei, die den verschlüsselten Inhalt enthält, oder null bei einer eigenen Datei */
+    private Integer packId;
+    
+    /** Position des verschlüsselten Inhalts innerhalb der Pack-Datei */
+    private long packOffset;
+    
+    /** Länge des verschlüsselten Inhalts innerhalb der Pack-Datei */
+    private int packLength;
+    
+    /** Speicherstufe der verschlüsselten Datei */
+    private StorageTier storageTier = StorageTier.HOT;
+    
+    /** Ob der Klartext vor der Verschlüsselung komprimiert wurde */
+    private boolean compressed;
 
     /**
      * Erstellt eine neue verschlüsselte Datei.
@@ -165,6 +180,84 @@ public class EncryptedFile {
         this.lastAccess = lastAccess;
     }
     
+    /**
+     * Gibt an, ob der verschlüsselte Inhalt in einer Pack-Datei statt in einer eigenen Datei liegt.
+     * 
+     * @return true, wenn die Datei gepackt ist
+     */
+    public boolean isPacked() {
+        return packId != null;
+    }
+    
+    /**
+     * Gibt die Kennung der Pack-Datei zurück.
+     * 
+     * @return Die Kennung der Pack-Datei oder null, wenn die Datei nicht gepackt ist
+     */
+    public Integer getPackId() {
+        return packId;
+    }
+    
+    /**
+     * Gibt die Position des verschlüsselten Inhalts innerhalb der Pack-Datei zurück.
+     * 
+     * @return Die Position in Bytes
+     */
+    public long getPackOffset() {
+        return packOffset;
+    }
+    
+    /**
+     * Gibt die Länge des verschlüsselten Inhalts innerhalb der Pack-Datei zurück.
+     * 
+     * @return Die Länge in Bytes
+     */
+    public int getPackLength() {
+        return packLength;
+    }
+    
+    /**
+     * Setzt die Lage des verschlüsselten Inhalts innerhalb einer Pack-Datei.
+     * 
+     * @param packId Die Kennung der Pack-Datei oder null für eine eigene Datei
+     * @param packOffset Die Position in Bytes
+     * @param packLength Die Länge in Bytes
+     */
+    public void setPackLocation(Integer packId, long packOffset, int packLength) {
+        this.packId = packId;
+        this.packOffset = packOffset;
+        this.packLength = packLength;
+    }
+    
+    /**
+     * Gibt die Speicherstufe der verschlüsselten Datei zurück.
+     * 
+     * @return Die Speicherstufe
+     */
+    public StorageTier getStorageTier() {
+        return storageTier;
+    }
+    
+    /**
+     * Gibt an, ob der Klartext vor der Verschlüsselung komprimiert wurde.
+     * 
+     * @return true, wenn der Inhalt beim Entschlüsseln entpackt werden muss
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+    
+    /**
+     * Setzt Speicherstufe und Komprimierung der verschlüsselten Datei.
+     * 
+     * @param storageTier Die Speicherstufe
+     * @param compressed Ob der Klartext komprimiert wurde
+     */
+    public void setStorage(StorageTier storageTier, boolean compressed) {
+        this.storageTier = storageTier;
+        this.compressed = compressed;
+    }
+    
     /**
      * Gibt die Dateigröße in einem lesbaren Format zurück (z. B. "500 B", "2.0 KB", "2.0 MB" oder "3.0 GB").
      * 
@@ -0,0 +1,16 @@
+package com.filevault.model;
+
+/**
+ * Kompakte Sicht auf eine Datei für Auflistungen.
+ * Enthält nur die Felder, die Listen und die API anzeigen; der Erstellungszeitpunkt
+ * liegt als Millisekunden seit der Epoche vor, damit pro Zeile keine Datumsobjekte
+ * erzeugt werden müssen.
+ *
+ * @param id Die ID der Datei
+ * @param name Der ursprüngliche Dateiname
+ * @param folderId Die ID des Ordners
+ * @param sizeBytes Die Größe der Originaldatei in Bytes
+ * @param createdAtMillis Der Erstellungszeitpunkt in Millisekunden seit der Epoche (UTC), 0 wenn unbekannt
+ */
+public record FileSummary(int id, String name, int folderId, long sizeBytes, long createdAtMillis) {
+}
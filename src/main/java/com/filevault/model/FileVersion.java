@@ -0,0 +1,86 @@
+package com.filevault.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Eine Version einer Datei im Tresor.
+ * Die aktuelle Version ist der Dateieintrag selbst, frühere Versionen werden getrennt aufbewahrt.
+ */
+public class FileVersion {
+    /** ID der Datei */
+    private final int fileId;
+
+    /** Fortlaufende Nummer der Version, beginnend bei 1 */
+    private final int version;
+
+    /** Größe der Version in Bytes */
+    private final long sizeBytes;
+
+    /** Zeitpunkt, zu dem die Version importiert wurde */
+    private final LocalDateTime createdAt;
+
+    /** Ob es sich um die aktuelle Version handelt */
+    private final boolean current;
+
+    /**
+     * Erstellt eine neue Dateiversion.
+     *
+     * @param fileId Die ID der Datei
+     * @param version Die Nummer der Version
+     * @param sizeBytes Die Größe in Bytes
+     * @param createdAt Der Zeitpunkt des Imports
+     * @param current Ob es sich um die aktuelle Version handelt
+     */
+    public FileVersion(int fileId, int version, long sizeBytes, LocalDateTime createdAt, boolean current) {
+        this.fileId = fileId;
+        this.version = version;
+        this.sizeBytes = sizeBytes;
+        this.createdAt = createdAt;
+        this.current = current;
+    }
+
+    /**
+     * Gibt die ID der Datei zurück.
+     *
+     * @return Die Datei-ID
+     */
+    public int getFileId() {
+        return fileId;
+    }
+
+    /**
+     * Gibt die Nummer der Version zurück.
+     *
+     * @return Die Versionsnummer
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Gibt die Größe der Version zurück.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Gibt den Zeitpunkt des Imports zurück.
+     *
+     * @return Der Zeitpunkt oder null, wenn er unbekannt ist
+     */
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Gibt zurück, ob es sich um die aktuelle Version handelt.
+     *
+     * @return true für die aktuelle Version
+     */
+    public boolean isCurrent() {
+        return current;
+    }
+}
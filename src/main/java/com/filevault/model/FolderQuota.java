@@ -0,0 +1,70 @@
+package com.filevault.model;
+
+/**
+ * Speicherkontingent eines virtuellen Ordners.
+ * Begrenzt Größe und Anzahl der Dateien entweder direkt im Ordner oder im gesamten Teilbaum.
+ */
+public class FolderQuota {
+    /** ID des Ordners */
+    private final int folderId;
+
+    /** Höchstgröße in Bytes oder null für unbegrenzt */
+    private final Long maxBytes;
+
+    /** Höchstzahl an Dateien oder null für unbegrenzt */
+    private final Long maxFiles;
+
+    /** Ob das Kontingent für den gesamten Teilbaum gilt */
+    private final boolean recursive;
+
+    /**
+     * Erstellt ein neues Speicherkontingent.
+     *
+     * @param folderId Die ID des Ordners
+     * @param maxBytes Höchstgröße in Bytes oder null für unbegrenzt
+     * @param maxFiles Höchstzahl an Dateien oder null für unbegrenzt
+     * @param recursive Ob das Kontingent für den gesamten Teilbaum gilt
+     */
+    public FolderQuota(int folderId, Long maxBytes, Long maxFiles, boolean recursive) {
+        this.folderId = folderId;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.recursive = recursive;
+    }
+
+    /**
+     * Gibt die ID des Ordners zurück.
+     *
+     * @return Die Ordner-ID
+     */
+    public int getFolderId() {
+        return folderId;
+    }
+
+    /**
+     * Gibt die Höchstgröße zurück.
+     *
+     * @return Die Größe in Bytes oder null für unbegrenzt
+     */
+    public Long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Gibt die Höchstzahl an Dateien zurück.
+     *
+     * @return Die Anzahl oder null für unbegrenzt
+     */
+    public Long getMaxFiles() {
+        return maxFiles;
+    }
+
+    /**
+     * Gibt zurück, ob das Kontingent für den gesamten Teilbaum gilt.
+     *
+     * @return true für den Teilbaum, false nur für Dateien direkt im Ordner
+     */
+    public boolean isRecursive() {
+        return recursive;
+    }
+}
@@ -0,0 +1,85 @@
+package com.filevault.model;
+
+/**
+ * Statistiken über die Dateien eines virtuellen Ordners.
+ * Unterscheidet zwischen den Dateien direkt im Ordner und denen im gesamten Teilbaum.
+ */
+public class FolderStats {
+    /** ID des Ordners */
+    private final int folderId;
+    
+    /** Anzahl der Dateien direkt im Ordner */
+    private final long directFileCount;
+    
+    /** Größe der Dateien direkt im Ordner in Bytes */
+    private final long directBytes;
+    
+    /** Anzahl der Dateien im gesamten Teilbaum */
+    private final long totalFileCount;
+    
+    /** Größe der Dateien im gesamten Teilbaum in Bytes */
+    private final long totalBytes;
+    
+    /**
+     * Erstellt neue Ordnerstatistiken.
+     * 
+     * @param folderId Die ID des Ordners
+     * @param directFileCount Anzahl der Dateien direkt im Ordner
+     * @param directBytes Größe der Dateien direkt im Ordner in Bytes
+     * @param totalFileCount Anzahl der Dateien im gesamten Teilbaum
+     * @param totalBytes Größe der Dateien im gesamten Teilbaum in Bytes
+     */
+    public FolderStats(int folderId, long directFileCount, long directBytes,
+                       long totalFileCount, long totalBytes) {
+        this.folderId = folderId;
+        this.directFileCount = directFileCount;
+        this.directBytes = directBytes;
+        this.totalFileCount = totalFileCount;
+        this.totalBytes = totalBytes;
+    }
+    
+    /**
+     * Gibt die ID des Ordners zurück.
+     * 
+     * @return Die Ordner-ID
+     */
+    public int getFolderId() {
+        return folderId;
+    }
+    
+    /**
+     * Gibt die Anzahl der Dateien direkt im Ordner zurück.
+     * 
+     * @return Die Anzahl der Dateien
+     */
+    public long getDirectFileCount() {
+        return directFileCount;
+    }
+    
+    /**
+     * Gibt die Größe der Dateien direkt im Ordner zurück.
+     * 
+     * @return Die Größe in Bytes
+     */
+    public long getDirectBytes() {
+        return directBytes;
+    }
+    
+    /**
+     * Gibt die Anzahl der Dateien im gesamten Teilbaum zurück.
+     * 
+     * @return Die Anzahl der Dateien
+     */
+    public long getTotalFileCount() {
+        return totalFileCount;
+    }
+    
+    /**
+     * Gibt die Größe der Dateien im gesamten Teilbaum zurück.
+     * 
+     * @return Die Größe in Bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+}
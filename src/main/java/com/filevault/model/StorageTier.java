@@ -0,0 +1,11 @@
+package com.filevault.model;
+
+/**
+ * Speicherstufe einer verschlüsselten Datei.
+ */
+public enum StorageTier {
+    /** Im schnellen Datenverzeichnis */
+    HOT,
+    /** Im Verzeichnis für selten genutzte Dateien, gegebenenfalls stärker komprimiert */
+    COLD
+}
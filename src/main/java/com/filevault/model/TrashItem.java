@@ -0,0 +1,109 @@
+package com.filevault.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Eine Datei oder ein Ordner im Papierkorb.
+ * Ordner liegen mit ihrem gesamten Teilbaum im Papierkorb, ihre Dateien werden nicht einzeln aufgeführt.
+ */
+public class TrashItem {
+
+    /** Art eines Eintrags im Papierkorb */
+    public enum Type {
+        /** Eine einzeln gelöschte Datei */
+        FILE,
+        /** Ein gelöschter Ordner samt Teilbaum */
+        FOLDER
+    }
+
+    /** Art des Eintrags */
+    private final Type type;
+
+    /** ID der Datei oder des Ordners */
+    private final int id;
+
+    /** Name der Datei oder des Ordners */
+    private final String name;
+
+    /** ID des Ordners, aus dem der Eintrag gelöscht wurde, oder null für die oberste Ebene */
+    private final Integer originalParentId;
+
+    /** Größe in Bytes, bei Ordnern die des gesamten Teilbaums */
+    private final long sizeBytes;
+
+    /** Zeitpunkt des Löschens */
+    private final LocalDateTime deletedAt;
+
+    /**
+     * Erstellt einen neuen Eintrag im Papierkorb.
+     *
+     * @param type Die Art des Eintrags
+     * @param id Die ID der Datei oder des Ordners
+     * @param name Der Name
+     * @param originalParentId Die ID des ursprünglichen Ordners oder null
+     * @param sizeBytes Die Größe in Bytes
+     * @param deletedAt Der Zeitpunkt des Löschens
+     */
+    public TrashItem(Type type, int id, String name, Integer originalParentId, long sizeBytes, LocalDateTime deletedAt) {
+        this.type = type;
+        this.id = id;
+        this.name = name;
+        this.originalParentId = originalParentId;
+        this.sizeBytes = sizeBytes;
+        this.deletedAt = deletedAt;
+    }
+
+    /**
+     * Gibt die Art des Eintrags zurück.
+     *
+     * @return Datei oder Ordner
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Gibt die ID der Datei oder des Ordners zurück.
+     *
+     * @return Die ID
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gibt den Namen zurück.
+     *
+     * @return Der Name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gibt die ID des Ordners zurück, aus dem der Eintrag gelöscht wurde.
+     *
+     * @return Die Ordner-ID oder null für die oberste Ebene
+     */
+    public Integer getOriginalParentId() {
+        return originalParentId;
+    }
+
+    /**
+     * Gibt die Größe zurück, bei Ordnern die des gesamten Teilbaums.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    /**
+     * Gibt den Zeitpunkt des Löschens zurück.
+     *
+     * @return Der Zeitpunkt oder null, wenn er unbekannt ist
+     */
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+}
@@ -1,8 +1,5 @@
 package com.filevault.model;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import org.mindrot.jbcrypt.BCrypt;
@@ -46,18 +43,10 @@ public class UserManager {
      */
     public boolean userExists() {
         LoggingUtil.logInfo("UserManager", "Checking if user exists.");
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM users");
-             ResultSet rs = stmt.executeQuery()) {
-
-            if (rs.next()) {
-                boolean exists = rs.getInt(1) > 0;
-                LoggingUtil.logInfo("UserManager", "User exists: " + exists);
-                return exists;
-            }
-
-            LoggingUtil.logInfo("UserManager", "No user found.");
-            return false;
+        try {
+            boolean exists = DatabaseManager.getMetadataStore().countUsers() > 0;
+            LoggingUtil.logInfo("UserManager", "User exists: " + exists);
+            return exists;
         } catch (SQLException e) {
             LoggingUtil.logError("UserManager", "Error checking user existence: " + e.getMessage());
             return false;
@@ -84,15 +73,8 @@ public class UserManager {
         String passwordHash = BCrypt.hashpw(masterPassword, BCrypt.gensalt());
         masterKey = PasswordUtils.generateKeyFromPassword(masterPassword);
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO users (username, password_hash, created_at) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
-
-            stmt.setString(1, "master");
-            stmt.setString(2, passwordHash);
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
+        try {
+            if (DatabaseManager.getMetadataStore().insertUser("master", passwordHash)) {
                 currentUser = "master";
                 LoggingUtil.logInfo("UserManager", "User created successfully.");
                 return true;
@@ -118,23 +100,14 @@ public class UserManager {
             return false;
         }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT username, password_hash FROM users WHERE username = ?")) {
-
-            stmt.setString(1, "master");
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    String storedHash = rs.getString("password_hash");
+        try {
+            String storedHash = DatabaseManager.getMetadataStore().getPasswordHash("master");
 
-                    if (BCrypt.checkpw(password, storedHash)) {
-                        currentUser = rs.getString("username");
-                        masterKey = PasswordUtils.generateKeyFromPassword(password);
-                        LoggingUtil.logInfo("UserManager", "Authentication successful.");
-                        return true;
-                    }
-                }
+            if (storedHash != null && BCrypt.checkpw(password, storedHash)) {
+                currentUser = "master";
+                masterKey = PasswordUtils.generateKeyFromPassword(password);
+                LoggingUtil.logInfo("UserManager", "Authentication successful.");
+                return true;
             }
 
             LoggingUtil.logError("UserManager", "Authentication failed: Invalid credentials.");
@@ -171,16 +144,8 @@ public class UserManager {
 
         String newPasswordHash = BCrypt.hashpw(newPassword, BCrypt.gensalt());
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE users SET password_hash = ? WHERE username = ?")) {
-
-            stmt.setString(1, newPasswordHash);
-            stmt.setString(2, "master");
-
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
+        try {
+            if (DatabaseManager.getMetadataStore().updatePasswordHash("master", newPasswordHash)) {
                 masterKey = PasswordUtils.generateKeyFromPassword(newPassword);
                 LoggingUtil.logInfo("UserManager", "Password changed successfully.");
                 return true;
@@ -224,11 +189,8 @@ public class UserManager {
      */
     public boolean deleteUser() {
         LoggingUtil.logInfo("UserManager", "Attempting to delete user.");
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("DELETE FROM users")) {
-
-            int affected = stmt.executeUpdate();
-            if (affected > 0) {
+        try {
+            if (DatabaseManager.getMetadataStore().deleteUsers() > 0) {
                 currentUser = null;
                 masterKey = null;
                 LoggingUtil.logInfo("UserManager", "User deleted successfully.");
@@ -3,7 +3,10 @@ package com.filevault.security;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.security.SecureRandom;
 
 import javax.crypto.Cipher;
@@ -61,6 +64,46 @@ public class EncryptionService {
      */
     public boolean encryptFile(File inputFile, File outputFile) throws Exception {
         LoggingUtil.logInfo("EncryptionService", "Starting encryption for file: " + inputFile.getAbsolutePath());
+        try (FileInputStream inputStream = new FileInputStream(inputFile);
+             FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+            encrypt(inputStream, outputStream);
+        }
+        LoggingUtil.logInfo("EncryptionService", "Encryption completed successfully for file: " + inputFile.getAbsolutePath());
+        return true;
+    }
+    
+    /**
+     * Verschlüsselt einen Datenstrom mit dem Master-Schlüssel. Die Ausgabe besteht aus dem
+     * Initialisierungsvektor, gefolgt vom Chiffrat mit Authentifizierungs-Tag, und hat damit
+     * dasselbe Format wie eine verschlüsselte Datei. Die Ströme werden nicht geschlossen.
+     * 
+     * @param inputStream Der zu verschlüsselnde Klartext
+     * @param outputStream Das Ziel für die verschlüsselten Daten
+     * @throws Exception wenn ein Fehler während der Verschlüsselung auftritt
+     */
+    public void encrypt(InputStream inputStream, OutputStream outputStream) throws Exception {
+        try (OutputStream cipherOutputStream = openEncryptingStream(outputStream)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                cipherOutputStream.write(buffer, 0, bytesRead);
+            }
+        } catch (Exception e) {
+            LoggingUtil.logError("EncryptionService", "Error during encryption: " + e.getMessage());
+            throw e;
+        }
+    }
+    
+    /**
+     * Öffnet einen Strom, der alles Geschriebene mit dem Master-Schlüssel verschlüsselt, etwa
+     * um einen Klartext vor der Verschlüsselung zu komprimieren. Der Initialisierungsvektor wird
+     * sofort geschrieben, das Authentifizierungs-Tag beim Schließen; der umhüllte Strom bleibt offen.
+     * 
+     * @param outputStream Das Ziel für die verschlüsselten Daten
+     * @return Der verschlüsselnde Strom, der geschlossen werden muss
+     * @throws Exception wenn kein Master-Schlüssel verfügbar ist oder die Verschlüsselung nicht initialisiert werden kann
+     */
+    public OutputStream openEncryptingStream(OutputStream outputStream) throws Exception {
         byte[] keyBytes = UserManager.getInstance().getMasterKey();
         if (keyBytes == null) {
             LoggingUtil.logError("EncryptionService", "Encryption failed: No master key available.");
@@ -76,25 +119,8 @@ public class EncryptionService {
         GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
         cipher.init(Cipher.ENCRYPT_MODE, secretKey, gcmParameterSpec);
 
-        try (FileInputStream inputStream = new FileInputStream(inputFile);
-             FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-
-            outputStream.write(iv);
-
-            try (CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher)) {
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = inputStream.read(buffer)) != -1) {
-                    cipherOutputStream.write(buffer, 0, bytesRead);
-                }
-            }
-        } catch (Exception e) {
-            LoggingUtil.logError("EncryptionService", "Error during encryption: " + e.getMessage());
-            throw e;
-        }
-
-        LoggingUtil.logInfo("EncryptionService", "Encryption completed successfully for file: " + inputFile.getAbsolutePath());
-        return true;
+        outputStream.write(iv);
+        return new CipherOutputStream(new NonClosingOutputStream(outputStream), cipher);
     }
     
     /**
@@ -107,18 +133,32 @@ public class EncryptionService {
      */
     public boolean decryptFile(File inputFile, File outputFile) throws Exception {
         LoggingUtil.logInfo("EncryptionService", "Starting decryption for file: " + inputFile.getAbsolutePath());
+        try (FileInputStream inputStream = new FileInputStream(inputFile);
+             FileOutputStream outputStream = new FileOutputStream(outputFile)) {
+            decrypt(inputStream, outputStream);
+        }
+        LoggingUtil.logInfo("EncryptionService", "Decryption completed successfully for file: " + inputFile.getAbsolutePath());
+        return true;
+    }
+    
+    /**
+     * Entschlüsselt einen Datenstrom im Format von {@link #encrypt(InputStream, OutputStream)}.
+     * Die Ströme werden nicht geschlossen.
+     * 
+     * @param inputStream Die verschlüsselten Daten
+     * @param outputStream Das Ziel für den Klartext
+     * @throws Exception wenn ein Fehler während der Entschlüsselung auftritt
+     */
+    public void decrypt(InputStream inputStream, OutputStream outputStream) throws Exception {
         byte[] keyBytes = UserManager.getInstance().getMasterKey();
         if (keyBytes == null) {
             LoggingUtil.logError("EncryptionService", "Decryption failed: No master key available.");
             throw new IllegalStateException("Kein Master-Schlüssel verfügbar. Benutzer muss authentifiziert sein.");
         }
 
-        try (FileInputStream inputStream = new FileInputStream(inputFile);
-             FileOutputStream outputStream = new FileOutputStream(outputFile)) {
-
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            int bytesRead = inputStream.read(iv);
-            if (bytesRead < GCM_IV_LENGTH) {
+        try {
+            byte[] iv = inputStream.readNBytes(GCM_IV_LENGTH);
+            if (iv.length < GCM_IV_LENGTH) {
                 LoggingUtil.logError("EncryptionService", "Decryption failed: Input file too short or corrupted.");
                 throw new IOException("Eingabedatei zu kurz oder beschädigt");
             }
@@ -128,18 +168,36 @@ public class EncryptionService {
             GCMParameterSpec gcmParameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
             cipher.init(Cipher.DECRYPT_MODE, secretKey, gcmParameterSpec);
 
-            try (CipherInputStream cipherInputStream = new CipherInputStream(inputStream, cipher)) {
-                byte[] buffer = new byte[8192];
-                while ((bytesRead = cipherInputStream.read(buffer)) != -1) {
-                    outputStream.write(buffer, 0, bytesRead);
-                }
+            CipherInputStream cipherInputStream = new CipherInputStream(inputStream, cipher);
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = cipherInputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, bytesRead);
             }
         } catch (Exception e) {
             LoggingUtil.logError("EncryptionService", "Error during decryption: " + e.getMessage());
             throw e;
         }
+    }
+    
+    /**
+     * Reicht Schreibzugriffe weiter, schließt den umhüllten Strom aber nicht, damit der
+     * CipherOutputStream das Tag schreiben kann, ohne den Strom des Aufrufers zu schließen.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        private NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
 
-        LoggingUtil.logInfo("EncryptionService", "Decryption completed successfully for file: " + inputFile.getAbsolutePath());
-        return true;
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
     }
 }
\ No newline at end of file
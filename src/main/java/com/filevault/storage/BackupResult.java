@@ -0,0 +1,88 @@
+package com.filevault.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Ergebnis einer Sicherung des Tresors.
+ */
+public class BackupResult {
+
+    /** Verzeichnis der Sicherung */
+    private final Path backupDirectory;
+
+    /** Anzahl der neu kopierten verschlüsselten Dateien */
+    private final int copiedBlobs;
+
+    /** Anzahl der aus der vorherigen Sicherung übernommenen Dateien */
+    private final int reusedBlobs;
+
+    /** Anzahl der Dateien, die zum Zeitpunkt der Kopie nicht mehr vorhanden waren */
+    private final int missingBlobs;
+
+    /** Anzahl der kopierten Bytes */
+    private final long bytesCopied;
+
+    /**
+     * Erstellt ein neues Sicherungsergebnis.
+     *
+     * @param backupDirectory Verzeichnis der Sicherung
+     * @param copiedBlobs Anzahl der neu kopierten Dateien
+     * @param reusedBlobs Anzahl der übernommenen Dateien
+     * @param missingBlobs Anzahl der fehlenden Dateien
+     * @param bytesCopied Anzahl der kopierten Bytes
+     */
+    public BackupResult(Path backupDirectory, int copiedBlobs, int reusedBlobs, int missingBlobs, long bytesCopied) {
+        this.backupDirectory = backupDirectory;
+        this.copiedBlobs = copiedBlobs;
+        this.reusedBlobs = reusedBlobs;
+        this.missingBlobs = missingBlobs;
+        this.bytesCopied = bytesCopied;
+    }
+
+    /**
+     * Gibt das Verzeichnis der Sicherung zurück.
+     *
+     * @return Das Sicherungsverzeichnis
+     */
+    public Path getBackupDirectory() {
+        return backupDirectory;
+    }
+
+    /**
+     * Gibt die Anzahl der neu kopierten verschlüsselten Dateien zurück.
+     *
+     * @return Die Anzahl der kopierten Dateien
+     */
+    public int getCopiedBlobs() {
+        return copiedBlobs;
+    }
+
+    /**
+     * Gibt die Anzahl der Dateien zurück, die per Hardlink oder Kopie aus der
+     * vorherigen Sicherung übernommen wurden.
+     *
+     * @return Die Anzahl der übernommenen Dateien
+     */
+    public int getReusedBlobs() {
+        return reusedBlobs;
+    }
+
+    /**
+     * Gibt die Anzahl der Dateien zurück, die in der Datenbank standen, aber beim
+     * Kopieren bereits gelöscht waren.
+     *
+     * @return Die Anzahl der fehlenden Dateien
+     */
+    public int getMissingBlobs() {
+        return missingBlobs;
+    }
+
+    /**
+     * Gibt die Anzahl der kopierten Bytes zurück.
+     *
+     * @return Die kopierten Bytes
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+}
@@ -0,0 +1,444 @@
+package com.filevault.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Erstellt Sicherungen des Tresors im laufenden Betrieb.
+ * <p>
+ * Die Datenbank wird über die Online-Backup-API von SQLite kopiert und ergibt einen
+ * konsistenten Stand, auch während die API weiter Anfragen bedient. Welche verschlüsselten
+ * Dateien zur Sicherung gehören, wird aus dieser Kopie gelesen. Dateien, die bereits in
+ * der vorherigen Sicherung enthalten sind, werden per Hardlink übernommen; nur neue
+ * Dateien werden kopiert, wobei die Schreibrate begrenzt werden kann.
+ * <p>
+ * Jedes Datenverzeichnis erhält einen eigenen Teilbaum: das Standard-Datenverzeichnis
+ * {@value #DATA_DIRECTORY}, jedes weitere Volume {@value #VOLUMES_DIRECTORY}/ID und das
+ * Verzeichnis der kalten Speicherstufe {@value #COLD_DIRECTORY}. Das Manifest hält fest,
+ * welchem ursprünglichen Verzeichnis jeder Teilbaum entspricht, sodass eine Wiederherstellung
+ * die absoluten Pfade der gesicherten Datenbank auf die neuen Orte umschreiben kann.
+ */
+public class BackupService {
+
+    /** Die einzige Instanz des BackupService */
+    private static BackupService instance;
+
+    /** Name der Datenbankkopie innerhalb einer Sicherung */
+    static final String DATABASE_FILE = "vault.db";
+
+    /** Name des Verzeichnisses der verschlüsselten Dateien innerhalb einer Sicherung */
+    static final String DATA_DIRECTORY = "data";
+
+    /** Name des Verzeichnisses, unter dem jedes weitere Volume nach seiner ID liegt */
+    static final String VOLUMES_DIRECTORY = "volumes";
+
+    /** Name des Verzeichnisses der kalten Speicherstufe innerhalb einer Sicherung */
+    static final String COLD_DIRECTORY = "cold";
+
+    /** Name des Verzeichnisses für Dateien außerhalb aller bekannten Datenverzeichnisse */
+    static final String EXTERNAL_DIRECTORY = "external";
+
+    /** Kennung der Manifestzeilen, die einen Teilbaum seinem ursprünglichen Verzeichnis zuordnen */
+    private static final String ROOT_RECORD = "root";
+
+    /** Name des Manifests; es wird zuletzt geschrieben und markiert eine vollständige Sicherung */
+    static final String MANIFEST_FILE = "manifest.txt";
+
+    /** Format der Verzeichnisnamen, sodass die lexikografische Reihenfolge der zeitlichen entspricht */
+    private static final DateTimeFormatter DIRECTORY_FORMAT = DateTimeFormatter.ofPattern("'backup-'yyyyMMdd-HHmmss-SSS");
+
+    /** Puffergröße beim Kopieren */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Maximale Schreibrate in Bytes pro Sekunde, 0 für unbegrenzt */
+    private volatile long maxBytesPerSecond = 0;
+
+    /**
+     * Privater Konstruktor für das Singleton-Pattern.
+     */
+    private BackupService() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des BackupService zurück.
+     *
+     * @return Die Singleton-Instanz
+     */
+    public static synchronized BackupService getInstance() {
+        if (instance == null) {
+            instance = new BackupService();
+        }
+        return instance;
+    }
+
+    /**
+     * Begrenzt die Rate, mit der verschlüsselte Dateien in die Sicherung kopiert werden.
+     *
+     * @param bytesPerSecond Maximale Bytes pro Sekunde, 0 für unbegrenzt
+     * @throws IllegalArgumentException wenn der Wert negativ ist
+     */
+    public void setMaxBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Schreibrate darf nicht negativ sein");
+        }
+        this.maxBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Gibt die maximale Schreibrate zurück.
+     *
+     * @return Maximale Bytes pro Sekunde, 0 für unbegrenzt
+     */
+    public long getMaxBytesPerSecond() {
+        return maxBytesPerSecond;
+    }
+
+    /**
+     * Erstellt eine neue Sicherung in einem eigenen Unterverzeichnis des Sicherungsordners.
+     * Gleichzeitige Aufrufe werden nacheinander ausgeführt.
+     *
+     * @param backupRoot Der Ordner, in dem alle Sicherungen liegen
+     * @return Das Ergebnis der Sicherung
+     * @throws IOException wenn Dateien nicht kopiert werden können
+     * @throws SQLException wenn die Datenbank nicht gesichert werden kann
+     */
+    public synchronized BackupResult createBackup(Path backupRoot) throws IOException, SQLException {
+        Files.createDirectories(backupRoot);
+        Path previous = findLatestBackup(backupRoot);
+        Map<String, Long> previousBlobs = previous != null ? readManifest(previous) : Map.of();
+
+        Path backupDir = backupRoot.resolve(LocalDateTime.now().format(DIRECTORY_FORMAT));
+        Files.createDirectory(backupDir);
+        LoggingUtil.logInfo("BackupService", "Starting backup into " + backupDir
+                + (previous != null ? " (incremental from " + previous.getFileName() + ")" : ""));
+
+        // 1. Konsistenter Stand der Datenbank über die Online-Backup-API
+        Path databaseCopy = backupDir.resolve(DATABASE_FILE);
+        try (Connection conn = DatabaseManager.openReadConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("backup to \"" + databaseCopy.toAbsolutePath().toString().replace("\"", "\"\"") + "\"");
+        }
+
+        // 2. Verschlüsselte Dateien gemäß diesem Stand übernehmen, je Datenverzeichnis in einen eigenen Teilbaum
+        Map<String, Path> roots = listRoots(databaseCopy);
+        Map<String, Long> blobs = new LinkedHashMap<>();
+        int copied = 0;
+        int reused = 0;
+        int missing = 0;
+        Throttle throttle = new Throttle(maxBytesPerSecond);
+
+        for (Map.Entry<String, Path> blob : listBlobs(databaseCopy, roots).entrySet()) {
+            String name = blob.getKey();
+            Path source = blob.getValue();
+            Path target = backupDir.resolve(name);
+            Files.createDirectories(target.getParent());
+
+            Long previousSize = previousBlobs.get(name);
+            Path previousCopy = previous != null ? previous.resolve(name) : null;
+            // Pack-Dateien wachsen durch Anhängen; eine geänderte Größe erfordert eine neue Kopie
+            if (previousSize != null && Files.isRegularFile(previousCopy)
+                    && (!Files.isRegularFile(source) || Files.size(source) == previousSize)) {
+                linkOrCopy(previousCopy, target, throttle);
+                blobs.put(name, previousSize);
+                reused++;
+                continue;
+            }
+
+            if (!Files.isRegularFile(source)) {
+                LoggingUtil.logWarning("BackupService", "Blob no longer exists, skipping: " + source);
+                missing++;
+                continue;
+            }
+            blobs.put(name, copyThrottled(source, target, throttle));
+            copied++;
+        }
+
+        // 3. Manifest zuletzt schreiben, damit nur vollständige Sicherungen als Basis dienen
+        writeManifest(backupDir, roots, blobs);
+
+        LoggingUtil.logInfo("BackupService", "Backup completed: " + copied + " copied, " + reused
+                + " reused, " + missing + " missing, " + throttle.getBytes() + " bytes written");
+        return new BackupResult(backupDir, copied, reused, missing, throttle.getBytes());
+    }
+
+    /**
+     * Sucht die jüngste vollständige Sicherung, also die mit einem Manifest.
+     *
+     * @param backupRoot Der Sicherungsordner
+     * @return Das Verzeichnis der Sicherung oder null, wenn keine existiert
+     * @throws IOException wenn der Ordner nicht gelesen werden kann
+     */
+    static Path findLatestBackup(Path backupRoot) throws IOException {
+        List<Path> candidates = new ArrayList<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(backupRoot, "backup-*")) {
+            for (Path dir : dirs) {
+                if (Files.isRegularFile(dir.resolve(MANIFEST_FILE))) {
+                    candidates.add(dir);
+                }
+            }
+        }
+        return candidates.stream()
+                .max(Comparator.comparing(p -> p.getFileName().toString()))
+                .orElse(null);
+    }
+
+    /**
+     * Bestimmt die Datenverzeichnisse des gesicherten Stands und ihren Teilbaum in der Sicherung.
+     * Die Volumes werden aus der Datenbankkopie gelesen, damit sie zu den gesicherten Pfaden passen.
+     *
+     * @param databaseCopy Die gesicherte Datenbank
+     * @return Das ursprüngliche Verzeichnis je Teilbaum
+     * @throws SQLException wenn die Datenbank nicht gelesen werden kann
+     */
+    private Map<String, Path> listRoots(Path databaseCopy) throws SQLException {
+        Map<String, Path> roots = new LinkedHashMap<>();
+        roots.put(DATA_DIRECTORY, BlobStore.getRoot());
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databaseCopy.toAbsolutePath());
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, path FROM volumes ORDER BY id")) {
+            while (rs.next()) {
+                roots.put(VOLUMES_DIRECTORY + "/" + rs.getInt(1), Paths.get(rs.getString(2)).toAbsolutePath().normalize());
+            }
+        }
+        Path coldRoot = TieringService.getInstance().getColdRoot();
+        if (coldRoot != null) {
+            roots.put(COLD_DIRECTORY, coldRoot);
+        }
+        return roots;
+    }
+
+    /**
+     * Liest die im Datenbankstand referenzierten verschlüsselten Dateien und Pack-Dateien.
+     *
+     * @param databaseCopy Die gesicherte Datenbank
+     * @param roots Das ursprüngliche Verzeichnis je Teilbaum der Sicherung
+     * @return Die Dateien nach ihrem Pfad innerhalb der Sicherung
+     * @throws SQLException wenn die Datenbank nicht gelesen werden kann
+     */
+    private Map<String, Path> listBlobs(Path databaseCopy, Map<String, Path> roots) throws SQLException {
+        Path dataDir = roots.get(DATA_DIRECTORY);
+        Map<String, Path> blobs = new LinkedHashMap<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + databaseCopy.toAbsolutePath());
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT encrypted_path FROM files WHERE encrypted_path <> '' " +
+                     "UNION ALL SELECT encrypted_path FROM file_versions WHERE encrypted_path <> '' " +
+                     "UNION ALL SELECT path FROM packs");
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                Path path = Paths.get(rs.getString(1));
+                Path source = path.isAbsolute() ? path : dataDir.resolve(path);
+                blobs.put(backupName(source, roots), source);
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Bestimmt den Pfad einer Datei innerhalb der Sicherung: relativ zu ihrem Datenverzeichnis
+     * im Teilbaum dieses Verzeichnisses. Liegen Verzeichnisse ineinander, gilt das innerste.
+     * Dateien außerhalb aller Datenverzeichnisse landen mit ihrem Dateinamen in
+     * {@value #EXTERNAL_DIRECTORY}.
+     *
+     * @param source Die verschlüsselte Datei
+     * @param roots Das ursprüngliche Verzeichnis je Teilbaum der Sicherung
+     * @return Der Pfad mit "/" als Trennzeichen
+     */
+    private static String backupName(Path source, Map<String, Path> roots) {
+        Path normalized = source.toAbsolutePath().normalize();
+        String subtree = null;
+        Path base = null;
+        for (Map.Entry<String, Path> root : roots.entrySet()) {
+            Path candidate = root.getValue().toAbsolutePath().normalize();
+            if (normalized.startsWith(candidate) && (base == null || candidate.startsWith(base))) {
+                subtree = root.getKey();
+                base = candidate;
+            }
+        }
+        if (base == null) {
+            LoggingUtil.logWarning("BackupService", "Blob outside all data directories: " + source);
+            return EXTERNAL_DIRECTORY + "/" + normalized.getFileName();
+        }
+        return subtree + "/" + base.relativize(normalized).toString().replace('\\', '/');
+    }
+
+    /**
+     * Übernimmt eine Datei aus der vorherigen Sicherung als Hardlink oder, falls das
+     * Dateisystem keine Hardlinks unterstützt, als Kopie.
+     *
+     * @param previousCopy Die Datei in der vorherigen Sicherung
+     * @param target Das Ziel in der neuen Sicherung
+     * @param throttle Die Ratenbegrenzung für den Kopierfall
+     * @throws IOException wenn die Datei weder verlinkt noch kopiert werden kann
+     */
+    private void linkOrCopy(Path previousCopy, Path target, Throttle throttle) throws IOException {
+        try {
+            Files.createLink(target, previousCopy);
+        } catch (IOException | UnsupportedOperationException e) {
+            copyThrottled(previousCopy, target, throttle);
+        }
+    }
+
+    /**
+     * Kopiert eine Datei unter Einhaltung der Ratenbegrenzung.
+     *
+     * @param source Die Quelldatei
+     * @param target Die Zieldatei
+     * @param throttle Die Ratenbegrenzung
+     * @return Die Anzahl der kopierten Bytes
+     * @throws IOException wenn das Kopieren fehlschlägt
+     */
+    private long copyThrottled(Path source, Path target, Throttle throttle) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".part");
+        long total = 0;
+        try (InputStream in = Files.newInputStream(source);
+             OutputStream out = Files.newOutputStream(temp)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                total += read;
+                throttle.acquire(read);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        return total;
+    }
+
+    /**
+     * Schreibt das Manifest einer Sicherung: zuerst die Zuordnung der Teilbäume zu ihren
+     * ursprünglichen Verzeichnissen, dann Größe und Pfad jeder enthaltenen Datei.
+     *
+     * @param backupDir Das Verzeichnis der Sicherung
+     * @param roots Das ursprüngliche Verzeichnis je Teilbaum
+     * @param blobs Die enthaltenen Dateien mit ihrer Größe
+     * @throws IOException wenn das Manifest nicht geschrieben werden kann
+     */
+    private static void writeManifest(Path backupDir, Map<String, Path> roots, Map<String, Long> blobs)
+            throws IOException {
+        Path temp = backupDir.resolve(MANIFEST_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write("# FileVault backup manifest");
+            writer.newLine();
+            writer.write("# created " + LocalDateTime.now());
+            writer.newLine();
+            for (Map.Entry<String, Path> root : roots.entrySet()) {
+                writer.write(ROOT_RECORD + "\t" + root.getKey() + "\t" + root.getValue());
+                writer.newLine();
+            }
+            for (Map.Entry<String, Long> blob : blobs.entrySet()) {
+                writer.write(blob.getValue() + "\t" + blob.getKey());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, backupDir.resolve(MANIFEST_FILE), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Liest das Manifest einer Sicherung. Manifeste ohne Zuordnung der Teilbäume stammen aus
+     * Sicherungen, die nur das Standard-Datenverzeichnis kannten; ihre Pfade werden auf
+     * {@value #DATA_DIRECTORY} bezogen.
+     *
+     * @param backupDir Das Verzeichnis der Sicherung
+     * @return Die enthaltenen Dateien mit ihrer Größe nach ihrem Pfad innerhalb der Sicherung
+     * @throws IOException wenn das Manifest nicht gelesen werden kann
+     */
+    static Map<String, Long> readManifest(Path backupDir) throws IOException {
+        List<String> lines = Files.readAllLines(backupDir.resolve(MANIFEST_FILE), StandardCharsets.UTF_8);
+        boolean hasRoots = lines.stream().anyMatch(line -> line.startsWith(ROOT_RECORD + "\t"));
+        Map<String, Long> blobs = new HashMap<>();
+        for (String line : lines) {
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith(ROOT_RECORD + "\t")) {
+                continue;
+            }
+            int tab = line.indexOf('\t');
+            if (tab > 0) {
+                String name = line.substring(tab + 1);
+                blobs.put(hasRoots ? name : DATA_DIRECTORY + "/" + name, Long.parseLong(line.substring(0, tab)));
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Liest die Zuordnung der Teilbäume einer Sicherung zu ihren ursprünglichen Verzeichnissen.
+     * Eine Wiederherstellung ersetzt in der gesicherten Datenbank jedes dieser Verzeichnisse
+     * durch den Ort, an den sein Teilbaum zurückkopiert wurde.
+     *
+     * @param backupDir Das Verzeichnis der Sicherung
+     * @return Das ursprüngliche Verzeichnis je Teilbaum, leer bei älteren Sicherungen
+     * @throws IOException wenn das Manifest nicht gelesen werden kann
+     */
+    public static Map<String, Path> readRoots(Path backupDir) throws IOException {
+        Map<String, Path> roots = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(backupDir.resolve(MANIFEST_FILE), StandardCharsets.UTF_8)) {
+            if (line.startsWith(ROOT_RECORD + "\t")) {
+                String[] fields = line.split("\t", 3);
+                if (fields.length == 3) {
+                    roots.put(fields[1], Paths.get(fields[2]));
+                }
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Einfache Ratenbegrenzung: Nach jedem geschriebenen Block wird so lange gewartet,
+     * bis die bisherige Laufzeit zur erlaubten Rate passt.
+     */
+    private static final class Throttle {
+        private final long bytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long bytes;
+
+        private Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        private void acquire(int count) throws IOException {
+            bytes += count;
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            long expectedNanos = bytes * 1_000_000_000L / bytesPerSecond;
+            long sleepNanos = expectedNanos - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Sicherung wurde unterbrochen");
+                }
+            }
+        }
+
+        private long getBytes() {
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Gleicht das Datenverzeichnis mit den Metadaten ab und räumt verwaiste verschlüsselte Dateien auf.
+ * <p>
+ * Verwaist ist eine Datei, auf die weder ein Dateieintrag noch eine Pack-Datei verweist,
+ * etwa nach dem Löschen eines Ordners oder einem abgebrochenen Import. Zunächst werden alle
+ * Verweise der Datenbank gesammelt, bei großen Tresoren in einem Bloom-Filter, der keinen
+ * Verweis übersieht. Danach werden das Datenverzeichnis und alle weiteren Volumes durchlaufen;
+ * Dateien, die jünger als die Mindestalterung sind, bleiben unberührt, weil ihr Eintrag noch
+ * entstehen kann. Jeder Kandidat wird vor dem Aufräumen noch einmal gezielt in der Datenbank geprüft.
+ * Verwaiste Dateien werden je nach {@link Mode} nur gemeldet, in die Quarantäne verschoben
+ * oder gelöscht. Einträge, deren Datei fehlt, werden nur gemeldet, da ein Löschen der
+ * Metadaten nicht rückgängig zu machen wäre.
+ */
+public class BlobGarbageCollector {
+
+    /**
+     * Behandlung verwaister Dateien.
+     */
+    public enum Mode {
+        /** Nur melden, nichts verändern */
+        DRY_RUN,
+        /** In die Quarantäne verschieben, aus der sie nach Ablauf der Aufbewahrungszeit gelöscht werden */
+        QUARANTINE,
+        /** Sofort löschen */
+        DELETE
+    }
+
+    /** Die einzige Instanz des BlobGarbageCollector */
+    private static BlobGarbageCollector instance;
+
+    /** Unterverzeichnis des Datenverzeichnisses für die Quarantäne */
+    static final String QUARANTINE_DIRECTORY = ".quarantine";
+
+    /** Format der Verzeichnisnamen eines Quarantänelaufs */
+    private static final DateTimeFormatter RUN_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /** Falsch-Positiv-Rate des Bloom-Filters */
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.001;
+
+    /** Mindestalter einer Datei in Millisekunden, bevor sie als verwaist gelten kann */
+    private volatile long minBlobAgeMillis = TimeUnit.HOURS.toMillis(1);
+
+    /** Aufbewahrungszeit der Quarantäne in Millisekunden */
+    private volatile long quarantineRetentionMillis = TimeUnit.DAYS.toMillis(7);
+
+    /** Ab dieser Anzahl an Verweisen wird ein Bloom-Filter statt einer exakten Menge verwendet */
+    private volatile long bloomFilterThreshold = 1_000_000;
+
+    /** Aktion der geplanten Läufe im Wartungsfenster */
+    private volatile Mode scheduledMode = Mode.QUARANTINE;
+
+    /** Bericht des letzten Laufs */
+    private volatile GcReport lastReport;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private BlobGarbageCollector() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des BlobGarbageCollector zurück.
+     *
+     * @return Die Instanz des BlobGarbageCollector
+     */
+    public static synchronized BlobGarbageCollector getInstance() {
+        if (instance == null) {
+            instance = new BlobGarbageCollector();
+        }
+        return instance;
+    }
+
+    /**
+     * Führt einen geplanten Lauf mit der eingestellten Aktion aus. Gegen die Testdatenbank
+     * und während der Migration des Datenverzeichnisses wird nichts verändert.
+     *
+     * @return Der Bericht oder null, wenn der Lauf übersprungen wurde
+     */
+    public GcReport runScheduled() {
+        if (DatabaseManager.isTestDatabase() || BlobLayoutMigrator.getInstance().isRunning()) {
+            return null;
+        }
+        try {
+            return collect(scheduledMode);
+        } catch (SQLException | IOException e) {
+            LoggingUtil.logError("BlobGarbageCollector", "Garbage collection failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gleicht Datenverzeichnis und Metadaten ab und behandelt verwaiste Dateien.
+     *
+     * @param mode Die Behandlung verwaister Dateien
+     * @return Der Bericht des Laufs
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     * @throws IOException wenn das Datenverzeichnis nicht gelesen werden kann
+     * @throws IllegalStateException wenn gerade die Migration des Datenverzeichnisses läuft
+     */
+    public synchronized GcReport collect(Mode mode) throws SQLException, IOException {
+        if (BlobLayoutMigrator.getInstance().isRunning()) {
+            throw new IllegalStateException("Die Migration des Datenverzeichnisses läuft noch");
+        }
+        long start = System.nanoTime();
+        List<Path> roots = new ArrayList<>();
+        roots.add(BlobStore.getRoot());
+        for (Volume volume : VolumeManager.getInstance().getVolumes()) {
+            roots.add(volume.root());
+        }
+        long cutoff = System.currentTimeMillis() - minBlobAgeMillis;
+
+        try (Connection conn = DatabaseManager.openReadConnection()) {
+            // 1. Alle Verweise der Datenbank sammeln
+            long referenceCount = queryLong(conn,
+                    "SELECT (SELECT COUNT(*) FROM files WHERE encrypted_path <> '') " +
+                    "+ (SELECT COUNT(*) FROM file_versions WHERE encrypted_path <> '') + (SELECT COUNT(*) FROM packs)");
+            KeySet referenced = KeySet.create(referenceCount, bloomFilterThreshold);
+            forEachString(conn, "SELECT encrypted_path FROM files WHERE encrypted_path <> '' " +
+                    "UNION ALL SELECT encrypted_path FROM file_versions WHERE encrypted_path <> '' " +
+                    "UNION ALL SELECT path FROM packs", path -> referenced.add(keyOf(path)));
+
+            // 2. Datenverzeichnis und weitere Volumes durchlaufen
+            KeySet existing = KeySet.create(referenceCount, bloomFilterThreshold);
+            List<Path> candidates = new ArrayList<>();
+            long scanned = 0;
+            for (Path volumeRoot : roots) {
+                scanned += scan(volumeRoot, referenced, existing, candidates, cutoff);
+            }
+
+            // 3. Kandidaten gezielt gegen die Datenbank prüfen
+            List<String> orphans = new ArrayList<>();
+            List<Path> orphanPaths = new ArrayList<>();
+            long orphanBytes = 0;
+            try (PreparedStatement check = conn.prepareStatement(
+                    "SELECT 1 FROM files WHERE encrypted_path IN (?, ?) " +
+                    "UNION ALL SELECT 1 FROM file_versions WHERE encrypted_path IN (?, ?) " +
+                    "UNION ALL SELECT 1 FROM packs WHERE path IN (?, ?) LIMIT 1")) {
+                for (Path candidate : candidates) {
+                    String key = keyOf(candidate.toString());
+                    if (isReferenced(check, key, candidate.toString())) {
+                        continue;
+                    }
+                    orphans.add(key);
+                    orphanPaths.add(candidate);
+                    orphanBytes += Files.size(candidate);
+                }
+            }
+
+            // 4. Einträge ohne Datei suchen
+            List<Integer> missing = new ArrayList<>();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                         "SELECT f.id, COALESCE(p.path, f.encrypted_path) FROM files f " +
+                         "LEFT JOIN packs p ON p.id = f.pack_id " +
+                         "WHERE f.encrypted_path <> '' OR f.pack_id IS NOT NULL")) {
+                while (rs.next()) {
+                    String key = keyOf(rs.getString(2));
+                    if (!existing.mightContain(key) && !Files.exists(Paths.get(BlobStore.resolve(key)))) {
+                        missing.add(rs.getInt(1));
+                    }
+                }
+            }
+
+            // 5. Verwaiste Dateien behandeln
+            if (mode != Mode.DRY_RUN && !orphans.isEmpty()) {
+                dispose(roots, orphanPaths, mode);
+            }
+            int purged = 0;
+            if (mode != Mode.DRY_RUN) {
+                for (Path volumeRoot : roots) {
+                    purged += purgeQuarantine(volumeRoot);
+                }
+            }
+
+            GcReport report = new GcReport(mode, scanned, referenceCount, referenced.isBloomFilter(),
+                    orphans, orphanBytes, missing, purged, (System.nanoTime() - start) / 1_000_000);
+            for (int fileId : missing) {
+                LoggingUtil.logWarning("BlobGarbageCollector", "Encrypted file missing for file id " + fileId);
+            }
+            LoggingUtil.logInfo("BlobGarbageCollector", "Garbage collection finished: " + report);
+            lastReport = report;
+            return report;
+        }
+    }
+
+    /**
+     * Durchläuft ein Datenverzeichnis ohne seine Quarantäne und sammelt nicht referenzierte
+     * Dateien, die älter als die Mindestalterung sind.
+     *
+     * @return Die Anzahl der durchlaufenen Dateien
+     */
+    private static long scan(Path root, KeySet referenced, KeySet existing, List<Path> candidates, long cutoff)
+            throws IOException {
+        long[] scanned = new long[1];
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                return dir.equals(root.resolve(QUARANTINE_DIRECTORY))
+                        ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile()) {
+                    return FileVisitResult.CONTINUE;
+                }
+                scanned[0]++;
+                String key = keyOf(file.toString());
+                existing.add(key);
+                if (!referenced.mightContain(key) && attrs.lastModifiedTime().toMillis() < cutoff) {
+                    candidates.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LoggingUtil.logWarning("BlobGarbageCollector", "Could not read " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return scanned[0];
+    }
+
+    /**
+     * Verschiebt verwaiste Dateien in die Quarantäne ihres Datenverzeichnisses oder löscht sie.
+     */
+    private void dispose(List<Path> roots, List<Path> orphans, Mode mode) {
+        String run = LocalDateTime.now().format(RUN_FORMAT);
+        for (Path blob : orphans) {
+            try {
+                if (mode == Mode.DELETE) {
+                    Files.deleteIfExists(blob);
+                } else {
+                    Path root = roots.stream().filter(blob::startsWith).findFirst().orElseThrow();
+                    Path target = root.resolve(QUARANTINE_DIRECTORY).resolve(run).resolve(root.relativize(blob));
+                    Files.createDirectories(target.getParent());
+                    Files.move(blob, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                LoggingUtil.logError("BlobGarbageCollector", "Could not dispose orphan " + blob + ": " + e.getMessage());
+            }
+        }
+        LoggingUtil.logInfo("BlobGarbageCollector", (mode == Mode.DELETE ? "Deleted " : "Quarantined ")
+                + orphans.size() + " orphaned blobs");
+    }
+
+    /**
+     * Löscht Quarantäneläufe, deren Aufbewahrungszeit abgelaufen ist.
+     *
+     * @return Die Anzahl der gelöschten Dateien
+     */
+    private int purgeQuarantine(Path root) throws IOException {
+        Path quarantine = root.resolve(QUARANTINE_DIRECTORY);
+        if (!Files.isDirectory(quarantine)) {
+            return 0;
+        }
+        long cutoff = System.currentTimeMillis() - quarantineRetentionMillis;
+        int purged = 0;
+        List<Path> runs;
+        try (Stream<Path> listing = Files.list(quarantine)) {
+            runs = listing.filter(Files::isDirectory).toList();
+        }
+        for (Path run : runs) {
+            if (Files.getLastModifiedTime(run).toMillis() >= cutoff) {
+                continue;
+            }
+            List<Path> entries;
+            try (Stream<Path> walk = Files.walk(run)) {
+                entries = walk.sorted(Comparator.reverseOrder()).toList();
+            }
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry)) {
+                    purged++;
+                }
+                Files.deleteIfExists(entry);
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Prüft, ob eine Datei unter ihrem relativen oder absoluten Pfad referenziert wird.
+     */
+    private static boolean isReferenced(PreparedStatement check, String key, String absolute) throws SQLException {
+        check.setString(1, key);
+        check.setString(2, absolute);
+        check.setString(3, key);
+        check.setString(4, absolute);
+        check.setString(5, key);
+        check.setString(6, absolute);
+        try (ResultSet rs = check.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Bildet den Vergleichsschlüssel eines gespeicherten Pfads: relativ zum Datenverzeichnis,
+     * sofern er darin liegt, sonst absolut.
+     */
+    private static String keyOf(String storedPath) {
+        return BlobStore.toStoredPath(BlobStore.resolve(storedPath));
+    }
+
+    private static long queryLong(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void forEachString(Connection conn, String sql, Consumer<String> action) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                action.accept(rs.getString(1));
+            }
+        }
+    }
+
+    /**
+     * Gibt den Bericht des letzten Laufs zurück.
+     *
+     * @return Der Bericht oder null, wenn noch kein Lauf stattfand
+     */
+    public GcReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Setzt das Mindestalter, ab dem eine Datei als verwaist gelten kann.
+     *
+     * @param minBlobAgeMillis Das Alter in Millisekunden
+     */
+    public void setMinBlobAgeMillis(long minBlobAgeMillis) {
+        this.minBlobAgeMillis = minBlobAgeMillis;
+    }
+
+    /**
+     * Setzt die Aufbewahrungszeit der Quarantäne.
+     *
+     * @param quarantineRetentionMillis Die Zeit in Millisekunden
+     */
+    public void setQuarantineRetentionMillis(long quarantineRetentionMillis) {
+        this.quarantineRetentionMillis = quarantineRetentionMillis;
+    }
+
+    /**
+     * Setzt die Anzahl an Verweisen, ab der ein Bloom-Filter verwendet wird.
+     *
+     * @param bloomFilterThreshold Die Anzahl der Verweise
+     */
+    public void setBloomFilterThreshold(long bloomFilterThreshold) {
+        this.bloomFilterThreshold = bloomFilterThreshold;
+    }
+
+    /**
+     * Gibt die Aktion der geplanten Läufe zurück.
+     *
+     * @return Die Aktion
+     */
+    public Mode getScheduledMode() {
+        return scheduledMode;
+    }
+
+    /**
+     * Setzt die Aktion der geplanten Läufe, etwa {@link Mode#DRY_RUN} für reine Berichte.
+     *
+     * @param scheduledMode Die Aktion
+     */
+    public void setScheduledMode(Mode scheduledMode) {
+        this.scheduledMode = scheduledMode;
+    }
+
+    /**
+     * Menge von Schlüsseln, exakt oder als Bloom-Filter. In beiden Fällen wird ein
+     * hinzugefügter Schlüssel immer gefunden.
+     */
+    private static final class KeySet {
+
+        private final Set<String> exact;
+
+        private final BloomFilter bloom;
+
+        private KeySet(Set<String> exact, BloomFilter bloom) {
+            this.exact = exact;
+            this.bloom = bloom;
+        }
+
+        static KeySet create(long expectedKeys, long bloomFilterThreshold) {
+            return expectedKeys >= bloomFilterThreshold
+                    ? new KeySet(null, new BloomFilter(expectedKeys, BLOOM_FALSE_POSITIVE_RATE))
+                    : new KeySet(new HashSet<>(), null);
+        }
+
+        void add(String key) {
+            if (exact != null) {
+                exact.add(key);
+            } else {
+                bloom.add(key);
+            }
+        }
+
+        boolean mightContain(String key) {
+            return exact != null ? exact.contains(key) : bloom.mightContain(key);
+        }
+
+        boolean isBloomFilter() {
+            return bloom != null;
+        }
+    }
+}
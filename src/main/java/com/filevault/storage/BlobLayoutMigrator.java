@@ -0,0 +1,253 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Verschiebt verschlüsselte Dateien aus dem alten, flachen Datenverzeichnis in das verteilte
+ * Layout des {@link BlobStore} und speichert ihre Pfade relativ zum Datenverzeichnis.
+ * <p>
+ * Die Migration läuft in einem Hintergrund-Thread mit eigener Verbindung und kann jederzeit
+ * unterbrochen werden. Jede Datei wird zunächst unter dem neuen Pfad verlinkt (oder kopiert),
+ * dann wird der Eintrag umgeschrieben und erst danach die alte Datei entfernt. So verweist
+ * der Eintrag zu jedem Zeitpunkt auf eine vorhandene Datei, und ein abgebrochener Lauf wird
+ * beim nächsten Start einfach fortgesetzt.
+ */
+public class BlobLayoutMigrator {
+
+    /** Die einzige Instanz des BlobLayoutMigrator */
+    private static BlobLayoutMigrator instance;
+
+    /** Anzahl der Einträge, die pro Abfrage gelesen werden */
+    private static final int BATCH_SIZE = 200;
+
+    /** Thread der laufenden Hintergrundmigration, null wenn keine läuft */
+    private Thread worker;
+
+    /** Gesetzt, wenn die Hintergrundmigration beendet werden soll */
+    private volatile boolean stopRequested;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private BlobLayoutMigrator() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des BlobLayoutMigrator zurück.
+     *
+     * @return Die Instanz des BlobLayoutMigrator
+     */
+    public static synchronized BlobLayoutMigrator getInstance() {
+        if (instance == null) {
+            instance = new BlobLayoutMigrator();
+        }
+        return instance;
+    }
+
+    /**
+     * Startet die Migration in einem Hintergrund-Thread. Läuft bereits eine Migration oder
+     * werden die Metadaten nicht in SQLite gehalten, geschieht nichts.
+     */
+    public synchronized void start() {
+        if (worker != null && worker.isAlive()) {
+            return;
+        }
+        if (!(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return;
+        }
+        stopRequested = false;
+        worker = new Thread(() -> {
+            try {
+                migrateAll();
+            } catch (SQLException e) {
+                LoggingUtil.logError("BlobLayoutMigrator", "Blob migration failed: " + e.getMessage());
+            }
+        }, "blob-migrator");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Beendet die Hintergrundmigration nach der gerade bearbeiteten Datei.
+     */
+    public synchronized void stop() {
+        if (worker == null) {
+            return;
+        }
+        stopRequested = true;
+        try {
+            worker.join(30_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        worker = null;
+    }
+
+    /**
+     * Gibt an, ob die Hintergrundmigration gerade läuft.
+     *
+     * @return true, wenn der Migrations-Thread aktiv ist
+     */
+    public synchronized boolean isRunning() {
+        return worker != null && worker.isAlive();
+    }
+
+    /**
+     * Migriert alle Dateien, deren gespeicherter Pfad noch nicht dem verteilten Layout entspricht.
+     * Dateien außerhalb des Datenverzeichnisses bleiben unverändert.
+     *
+     * @return Die Anzahl der migrierten Dateien
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     */
+    public int migrateAll() throws SQLException {
+        Path root = BlobStore.getRoot();
+        int migrated = 0;
+        int skipped = 0;
+        int lastId = 0;
+
+        try (Connection conn = DatabaseManager.openWriteConnection();
+             PreparedStatement select = conn.prepareStatement(
+                     "SELECT id, encrypted_path FROM files WHERE id > ? AND encrypted_path <> '' " +
+                     "AND encrypted_path NOT GLOB '[0-9a-f][0-9a-f]/[0-9a-f][0-9a-f]/*' ORDER BY id LIMIT ?");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE files SET encrypted_path = ? WHERE id = ? AND encrypted_path = ?");
+             PreparedStatement updateVersions = conn.prepareStatement(
+                     "UPDATE file_versions SET encrypted_path = ? WHERE encrypted_path = ?")) {
+
+            while (!stopRequested) {
+                Map<Integer, String> batch = new LinkedHashMap<>();
+                select.setInt(1, lastId);
+                select.setInt(2, BATCH_SIZE);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        batch.put(rs.getInt(1), rs.getString(2));
+                    }
+                }
+                if (batch.isEmpty()) {
+                    break;
+                }
+
+                List<Path> obsolete = new ArrayList<>();
+                for (Map.Entry<Integer, String> entry : batch.entrySet()) {
+                    if (stopRequested) {
+                        break;
+                    }
+                    lastId = entry.getKey();
+                    if (migrate(root, entry.getKey(), entry.getValue(), update, updateVersions, obsolete)) {
+                        migrated++;
+                    } else {
+                        skipped++;
+                    }
+                }
+
+                // Zwischengespeicherte Dateien tragen noch die alten Pfade; erst nach dem
+                // Verwerfen des Caches dürfen die alten Dateien verschwinden
+                FileStorage.getInstance().invalidateCache();
+                obsolete.forEach(BlobLayoutMigrator::deleteQuietly);
+            }
+        }
+
+        if (migrated > 0 || skipped > 0) {
+            LoggingUtil.logInfo("BlobLayoutMigrator", "Blob migration " + (stopRequested ? "interrupted" : "finished")
+                    + ": " + migrated + " migrated, " + skipped + " skipped");
+        }
+        return migrated;
+    }
+
+    /**
+     * Migriert eine einzelne Datei.
+     *
+     * @param root Das Datenverzeichnis
+     * @param fileId Die ID des Eintrags
+     * @param storedPath Der bisher gespeicherte Pfad
+     * @param update Die vorbereitete Anweisung zum Umschreiben des Pfads
+     * @param updateVersions Die vorbereitete Anweisung zum Umschreiben von Versionen, die die Datei teilen
+     * @param obsolete Nimmt den alten Pfad auf, der nach dem Umschreiben gelöscht werden kann
+     * @return true, wenn der Eintrag umgeschrieben wurde
+     * @throws SQLException wenn der Eintrag nicht umgeschrieben werden kann
+     */
+    private boolean migrate(Path root, int fileId, String storedPath, PreparedStatement update,
+                            PreparedStatement updateVersions, List<Path> obsolete) throws SQLException {
+        Path source = Paths.get(BlobStore.resolve(storedPath)).normalize();
+        if (!source.startsWith(root)) {
+            return false;
+        }
+        String targetPath = BlobStore.shardedPath(source.getFileName().toString());
+        Path target = root.resolve(targetPath);
+
+        try {
+            if (source.equals(target)) {
+                // Bereits verteilt, nur der Pfad ist noch absolut gespeichert
+            } else if (Files.exists(source)) {
+                Files.createDirectories(target.getParent());
+                link(source, target);
+            } else if (!Files.exists(target)) {
+                LoggingUtil.logWarning("BlobLayoutMigrator", "Encrypted file missing, not migrated: " + source);
+                return false;
+            }
+        } catch (IOException e) {
+            LoggingUtil.logError("BlobLayoutMigrator", "Could not move " + source + ": " + e.getMessage());
+            return false;
+        }
+
+        update.setString(1, targetPath);
+        update.setInt(2, fileId);
+        update.setString(3, storedPath);
+        boolean updated = update.executeUpdate() > 0;
+        if (updated) {
+            // Versionen von Kopien können noch auf den alten Pfad verweisen
+            updateVersions.setString(1, targetPath);
+            updateVersions.setString(2, storedPath);
+            updateVersions.executeUpdate();
+        }
+        if (!source.equals(target)) {
+            // Ohne umgeschriebenen Eintrag wurde dieser inzwischen gelöscht oder geändert;
+            // dann wird die neue Verknüpfung verworfen, sonst die alte Datei
+            obsolete.add(updated ? source : target);
+        }
+        return updated;
+    }
+
+    /**
+     * Legt die Datei zusätzlich unter dem Zielpfad an, bevorzugt als harte Verknüpfung.
+     * Ohne Unterstützung für Verknüpfungen wird über eine temporäre Datei kopiert, damit
+     * ein vorhandener Zielpfad immer eine vollständige Datei bezeichnet.
+     */
+    private static void link(Path source, Path target) throws IOException {
+        try {
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            // Von einem abgebrochenen Lauf bereits angelegt
+        } catch (UnsupportedOperationException | IOException e) {
+            Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.copy(source, temp, StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Löscht eine Datei und protokolliert Fehler nur.
+     */
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LoggingUtil.logWarning("BlobLayoutMigrator", "Could not delete " + path + ": " + e.getMessage());
+        }
+    }
+}
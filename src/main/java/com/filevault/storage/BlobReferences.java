@@ -0,0 +1,95 @@
+package com.filevault.storage;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Zählt die Verweise auf verschlüsselte Dateien.
+ * <p>
+ * Kopien von Dateien teilen sich ihre verschlüsselte Datei, bis eine von ihnen neuen
+ * Inhalt erhält; da verschlüsselte Dateien nie verändert, sondern immer neu geschrieben
+ * werden, genügt das als Copy-on-Write. Die Anzahl der Verweise ergibt sich aus den
+ * Datei- und Versionseinträgen mit demselben gespeicherten Pfad, die jeweils über einen
+ * Index gefunden werden. Eine verschlüsselte Datei darf erst gelöscht werden, wenn kein
+ * Eintrag mehr auf sie verweist.
+ */
+final class BlobReferences {
+
+    /** Abfrage der Verweise auf einen gespeicherten Pfad */
+    private static final String COUNT_SQL =
+            "SELECT (SELECT COUNT(*) FROM files WHERE encrypted_path = ?) + " +
+            "(SELECT COUNT(*) FROM file_versions WHERE encrypted_path = ?)";
+
+    /**
+     * Keine Instanzen; nur statische Hilfsmethoden.
+     */
+    private BlobReferences() {
+    }
+
+    /**
+     * Zählt die Datei- und Versionseinträge, die auf eine verschlüsselte Datei verweisen,
+     * einschließlich der Einträge im Papierkorb.
+     *
+     * @param conn Die zu verwendende Verbindung
+     * @param storedPath Der gespeicherte Pfad
+     * @return Die Anzahl der Verweise
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     */
+    static int count(Connection conn, String storedPath) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(COUNT_SQL)) {
+            stmt.setString(1, storedPath);
+            stmt.setString(2, storedPath);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Löscht die verschlüsselten Dateien, auf die nach dem Entfernen ihrer Einträge kein
+     * Eintrag mehr verweist. Noch geteilte Dateien bleiben erhalten; Fehler beim Löschen
+     * werden nur protokolliert.
+     *
+     * @param conn Die zu verwendende Verbindung
+     * @param storedPaths Die gespeicherten Pfade der entfernten Einträge
+     * @param component Der Name der aufrufenden Komponente für das Protokoll
+     * @return Die Anzahl der gelöschten Dateien
+     * @throws SQLException wenn die Verweise nicht gelesen werden können
+     */
+    static int deleteUnreferenced(Connection conn, Collection<String> storedPaths, String component)
+            throws SQLException {
+        int deleted = 0;
+        int shared = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(COUNT_SQL)) {
+            for (String storedPath : new LinkedHashSet<>(storedPaths)) {
+                stmt.setString(1, storedPath);
+                stmt.setString(2, storedPath);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next() && rs.getInt(1) > 0) {
+                        shared++;
+                        continue;
+                    }
+                }
+                try {
+                    if (Files.deleteIfExists(Paths.get(BlobStore.resolve(storedPath)))) {
+                        deleted++;
+                    }
+                } catch (Exception e) {
+                    LoggingUtil.logWarning(component, "Could not delete blob " + storedPath + ": " + e.getMessage());
+                }
+            }
+        }
+        if (shared > 0) {
+            LoggingUtil.logInfo(component, "Kept " + shared + " blobs still referenced by copies");
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,119 @@
+package com.filevault.storage;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.StorageTier;
+
+/**
+ * Verlegt verschlüsselte Dateien an einen anderen Ort, etwa in eine andere Speicherstufe
+ * oder auf ein anderes Volume.
+ * <p>
+ * Die neue Kopie wird vollständig geschrieben und atomar umbenannt, bevor die Dateitabelle
+ * auf sie zeigt. Umgestellt werden alle Einträge, die noch auf den alten Ort verweisen,
+ * auch Kopien und Versionen, die sich die Datei teilen; erst danach wird die alte Kopie gelöscht.
+ */
+final class BlobRelocator {
+
+    /**
+     * Überträgt den Inhalt einer Datei in die neue Kopie.
+     */
+    @FunctionalInterface
+    interface Transfer {
+        void transfer(InputStream inputStream, OutputStream outputStream) throws Exception;
+    }
+
+    /**
+     * Keine Instanzen; nur statische Hilfsmethoden.
+     */
+    private BlobRelocator() {
+    }
+
+    /**
+     * Schreibt eine Kopie unter einem temporären Namen, zwingt sie auf die Platte und benennt
+     * sie atomar auf den Zielpfad um.
+     *
+     * @param source Die bisherige Datei
+     * @param target Der Zielpfad
+     * @param transfer Die Übertragung des Inhalts, etwa ein unverändertes Kopieren
+     * @throws Exception wenn die Kopie nicht geschrieben werden kann; sie ist dann entfernt
+     */
+    static void copy(Path source, Path target, Transfer transfer) throws Exception {
+        Files.createDirectories(target.getParent());
+        Path temp = DurableBlobWriter.tempPathOf(target);
+        try {
+            try (InputStream in = new FileInputStream(source.toFile());
+                 FileOutputStream out = new FileOutputStream(temp.toFile())) {
+                transfer.transfer(in, out);
+                out.flush();
+                out.getChannel().force(false);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+    }
+
+    /**
+     * Stellt alle Einträge, die noch auf den bisherigen Ort einer Datei verweisen, auf die
+     * neue Kopie um und entfernt danach die alte Kopie. Neben der Datei selbst sind das ihre
+     * Kopien und Versionen, die dieselbe verschlüsselte Datei teilen. Verweist kein Eintrag
+     * mehr auf den bisherigen Ort, wird die neue Kopie verworfen.
+     *
+     * @param file Die Datei mit ihrem bisherigen Ort
+     * @param target Die neue Kopie
+     * @param tier Die Speicherstufe der neuen Kopie
+     * @param compressed Ob der Klartext der neuen Kopie komprimiert ist
+     * @return true, wenn die Einträge umgestellt wurden
+     * @throws Exception wenn die Datenbank oder das Dateisystem einen Fehler meldet
+     */
+    static boolean switchLocation(EncryptedFile file, Path target, StorageTier tier, boolean compressed)
+            throws Exception {
+        Integer volumeId = VolumeManager.getInstance().volumeIdOf(target.toString());
+        String storedSource = BlobStore.toStoredPath(file.getEncryptedPath());
+        String storedTarget = BlobStore.toStoredPath(target.toString());
+        int updated = 0;
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (String table : new String[] {"files", "file_versions"}) {
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "UPDATE " + table + " SET encrypted_path = ?, volume_id = ?, storage_tier = ?, " +
+                            "compressed = ? WHERE encrypted_path = ?")) {
+                        stmt.setString(1, storedTarget);
+                        VolumeManager.setVolumeId(stmt, 2, volumeId);
+                        stmt.setString(3, tier.name());
+                        stmt.setInt(4, compressed ? 1 : 0);
+                        stmt.setString(5, storedSource);
+                        updated += stmt.executeUpdate();
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            Files.deleteIfExists(target);
+            throw e;
+        }
+        if (updated == 0) {
+            Files.deleteIfExists(target);
+            return false;
+        }
+        FileStorage.getInstance().invalidateCache();
+        Files.deleteIfExists(Paths.get(file.getEncryptedPath()));
+        return true;
+    }
+}
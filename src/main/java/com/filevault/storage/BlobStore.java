@@ -0,0 +1,134 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.filevault.util.FolderManager;
+
+/**
+ * Legt fest, wo die verschlüsselten Dateien im Datenverzeichnis liegen.
+ * <p>
+ * Dateien werden auf zwei Verzeichnisebenen verteilt ({@code data/ab/cd/<id>}), damit kein
+ * einzelnes Verzeichnis Millionen Einträge erhält. In den Metadaten werden die Pfade relativ
+ * zum Datenverzeichnis gespeichert, sodass das Datenverzeichnis verschoben werden kann;
+ * Dateiobjekte im Speicher tragen dagegen immer den aufgelösten absoluten Pfad.
+ * Ältere Einträge mit absoluten Pfaden werden weiterhin unverändert aufgelöst.
+ */
+public final class BlobStore {
+
+    /** Zwei Ebenen aus je zwei Hex-Zeichen, gefolgt vom Dateinamen */
+    private static final Pattern SHARDED_PATH = Pattern.compile("[0-9a-f]{2}/[0-9a-f]{2}/[^/]+");
+
+    /** Dateinamen, deren erste vier Zeichen direkt als Verteilschlüssel dienen */
+    private static final Pattern HEX_PREFIX = Pattern.compile("^[0-9a-f]{4}.*");
+
+    /** Abweichendes Datenverzeichnis, etwa für Tests; null für das Standardverzeichnis */
+    private static volatile Path rootOverride;
+
+    /**
+     * Keine Instanzen; nur statische Hilfsmethoden.
+     */
+    private BlobStore() {
+    }
+
+    /**
+     * Gibt das Datenverzeichnis zurück, auf das sich relative Pfade beziehen.
+     *
+     * @return Der absolute Pfad des Datenverzeichnisses
+     */
+    public static Path getRoot() {
+        Path override = rootOverride;
+        if (override != null) {
+            return override;
+        }
+        return Paths.get(FolderManager.getInstance().getDataDirectoryPath()).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Setzt ein abweichendes Datenverzeichnis.
+     *
+     * @param root Das Datenverzeichnis oder null für das Standardverzeichnis
+     */
+    static void setRoot(Path root) {
+        rootOverride = root != null ? root.toAbsolutePath().normalize() : null;
+    }
+
+    /**
+     * Reserviert den Pfad für eine neue verschlüsselte Datei und legt die Verteilverzeichnisse an.
+     * Das Datenverzeichnis wählt der {@link VolumeManager} nach Kapazität aus.
+     *
+     * @return Der absolute Pfad der neuen Datei
+     * @throws IOException wenn die Verzeichnisse nicht angelegt werden können
+     */
+    public static Path newBlobPath() throws IOException {
+        Path path = VolumeManager.getInstance().chooseRoot().resolve(shardedPath(UUID.randomUUID().toString()));
+        Files.createDirectories(path.getParent());
+        return path;
+    }
+
+    /**
+     * Bildet den relativen, verteilten Pfad für einen Dateinamen. UUIDs werden nach ihren
+     * ersten vier Hex-Zeichen verteilt, andere Namen nach ihrem Hashwert.
+     *
+     * @param name Der Dateiname
+     * @return Der relative Pfad mit "/" als Trennzeichen, z.B. "ab/cd/abcd1234-..."
+     */
+    public static String shardedPath(String name) {
+        String key = HEX_PREFIX.matcher(name).matches()
+                ? name
+                : String.format("%08x", name.hashCode());
+        return key.substring(0, 2) + "/" + key.substring(2, 4) + "/" + name;
+    }
+
+    /**
+     * Prüft, ob ein gespeicherter Pfad bereits dem verteilten Layout entspricht.
+     *
+     * @param storedPath Der Pfad aus den Metadaten
+     * @return true, wenn der Pfad relativ und verteilt ist
+     */
+    public static boolean isSharded(String storedPath) {
+        return storedPath != null && SHARDED_PATH.matcher(storedPath).matches();
+    }
+
+    /**
+     * Löst einen gespeicherten Pfad gegen das Datenverzeichnis auf. Absolute Pfade und
+     * leere Pfade bleiben unverändert.
+     *
+     * @param storedPath Der Pfad aus den Metadaten
+     * @return Der absolute Pfad als Zeichenkette
+     */
+    public static String resolve(String storedPath) {
+        if (storedPath == null || storedPath.isEmpty()) {
+            return storedPath;
+        }
+        Path path = Paths.get(storedPath);
+        return path.isAbsolute() ? storedPath : getRoot().resolve(path).toString();
+    }
+
+    /**
+     * Wandelt einen absoluten Pfad innerhalb des Datenverzeichnisses in den zu speichernden
+     * relativen Pfad um. Pfade außerhalb des Datenverzeichnisses bleiben unverändert.
+     *
+     * @param path Der Pfad einer verschlüsselten Datei
+     * @return Der zu speichernde Pfad
+     */
+    public static String toStoredPath(String path) {
+        if (path == null || path.isEmpty()) {
+            return path;
+        }
+        Path candidate = Paths.get(path);
+        if (!candidate.isAbsolute()) {
+            return path;
+        }
+        Path root = getRoot();
+        Path normalized = candidate.normalize();
+        if (!normalized.startsWith(root) || normalized.equals(root)) {
+            return path;
+        }
+        return root.relativize(normalized).toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,87 @@
+package com.filevault.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Einfacher Bloom-Filter für Zeichenketten. Er meldet nie fälschlich, dass ein hinzugefügter
+ * Schlüssel fehlt; dass ein Schlüssel enthalten ist, stimmt dagegen nur mit der beim Anlegen
+ * gewählten Wahrscheinlichkeit.
+ */
+final class BloomFilter {
+
+    /** Die Bits des Filters */
+    private final BitSet bits;
+
+    /** Anzahl der Bits */
+    private final int size;
+
+    /** Anzahl der Hashfunktionen */
+    private final int hashes;
+
+    /**
+     * Erstellt einen Filter, der für die erwartete Anzahl an Schlüsseln die gewünschte
+     * Falsch-Positiv-Rate einhält.
+     *
+     * @param expectedKeys Die erwartete Anzahl an Schlüsseln
+     * @param falsePositiveRate Die Falsch-Positiv-Rate zwischen 0 und 1
+     */
+    BloomFilter(long expectedKeys, double falsePositiveRate) {
+        long n = Math.max(1, expectedKeys);
+        double bitsNeeded = -n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.size = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 64, Math.ceil(bitsNeeded)));
+        this.hashes = Math.max(1, (int) Math.round((double) size / n * Math.log(2)));
+        this.bits = new BitSet(size);
+    }
+
+    /**
+     * Fügt einen Schlüssel hinzu.
+     *
+     * @param key Der Schlüssel
+     */
+    void add(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            bits.set(index(h1 + i * h2));
+        }
+    }
+
+    /**
+     * Prüft, ob ein Schlüssel enthalten sein könnte.
+     *
+     * @param key Der Schlüssel
+     * @return false, wenn der Schlüssel sicher nicht hinzugefügt wurde
+     */
+    boolean mightContain(String key) {
+        long hash = hash(key);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashes; i++) {
+            if (!bits.get(index(h1 + i * h2))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int index(int combined) {
+        return (combined & Integer.MAX_VALUE) % size;
+    }
+
+    /**
+     * 64-Bit-FNV-1a über die UTF-8-Bytes des Schlüssels, mit abschließender Durchmischung.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
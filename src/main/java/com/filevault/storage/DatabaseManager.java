@@ -6,9 +6,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
+import org.sqlite.SQLiteConfig;
+
 import com.filevault.util.LoggingUtil;
 
 /**
@@ -21,8 +24,14 @@ public class DatabaseManager {
     private static String currentDbPath = DB_PATH;
     private static final String DB_URL_PREFIX = "jdbc:sqlite:";
     
+    /** Wartezeit in Millisekunden, bevor ein gesperrter Zugriff mit SQLITE_BUSY fehlschlägt */
+    private static final int BUSY_TIMEOUT_MS = 5000;
+    
     private static Connection connection;
     
+    /** Der aktive Metadatenspeicher, standardmäßig die SQLite-Datenbank */
+    private static volatile MetadataStore metadataStore = new SqliteMetadataStore();
+    
     /**
      * Initialisiert die Datenbank, erstellt Tabellen falls sie nicht existieren.
      */
@@ -53,11 +62,20 @@ public class DatabaseManager {
             
             // Verbindung zur Datenbank herstellen (erstellt sie, falls sie nicht existiert)
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(DB_URL_PREFIX + currentDbPath);
+            connection = InstrumentedConnection.wrap(DriverManager.getConnection(DB_URL_PREFIX + currentDbPath));
+            
+            // Zwischengespeicherte Metadaten gehören zur vorherigen Datenbank
+            FileStorage.getInstance().invalidateCache();
+            PackStore.getInstance().clearCache();
             
             // Fremdschlüssel aktivieren
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute("PRAGMA foreign_keys = ON");
+                // Wirkt nur bei neuen Datenbanken; bestehende stellt die Wartung per VACUUM um
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                // WAL erlaubt Lesezugriffe über eigene Verbindungen parallel zu Schreibzugriffen
+                stmt.execute("PRAGMA journal_mode = WAL");
+                stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
             }
             
             // Prüfen, ob die Tabellenstruktur korrekt ist
@@ -72,15 +90,23 @@ public class DatabaseManager {
             if (needsRecreate) {
                 // Tabellen löschen und neu erstellen
                 try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("DROP TABLE IF EXISTS file_versions");
                     stmt.execute("DROP TABLE IF EXISTS files");
                     stmt.execute("DROP TABLE IF EXISTS folders");
                     stmt.execute("DROP TABLE IF EXISTS users");
                     stmt.execute("DROP TABLE IF EXISTS settings");
+                    stmt.execute("DROP TABLE IF EXISTS search_index");
+                    stmt.execute("DROP TABLE IF EXISTS folder_closure");
+                    stmt.execute("DROP TABLE IF EXISTS folder_stats");
+                    stmt.execute("DROP TABLE IF EXISTS folder_quotas");
                 }
             }
             
             // Ensure tables are created even if no recreation is needed
             createTables();
+            VolumeManager.getInstance().clearCache();
+            // Abgebrochene Importe eines früheren Laufs aufräumen
+            ImportJournal.getInstance().replay();
             LoggingUtil.logDatabase("Initialize", "Database", "Database initialized successfully.");
             
         } catch (Exception e) {
@@ -123,12 +149,466 @@ public class DatabaseManager {
                          "last_access TIMESTAMP, " +
                          "FOREIGN KEY (folder_id) REFERENCES folders(id))");
             
+            // Index für Ordnerinhalte, sortiert nach Namen
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_folder_name ON files (folder_id, original_name)");
+            
+            // Indizes für die seitenweise Auflistung nach Größe und Erstellungsdatum
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_folder_size ON files (folder_id, size_bytes)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_folder_created ON files (folder_id, created_at)");
+            
+            // Index für die Zuordnung verschlüsselter Dateien zu ihren Einträgen
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_encrypted_path ON files (encrypted_path)");
+            
             // Einstellungstabelle
             stmt.execute("CREATE TABLE IF NOT EXISTS settings (" +
                          "key TEXT PRIMARY KEY, " +
                          "value TEXT, " +
                          "description TEXT)");
         }
+        
+        createFolderHierarchy();
+        createFolderStats();
+        createSearchIndex();
+        createPackTables();
+        createTierColumns();
+        createVolumeTables();
+        createQuotaTables();
+        createVersionTables();
+        createTrashColumns();
+    }
+    
+    /**
+     * Erstellt die Closure-Tabelle der Ordnerhierarchie. Sie enthält für jeden Ordner
+     * eine Zeile pro Vorfahre (einschließlich sich selbst mit Tiefe 0), sodass Teilbäume,
+     * Pfade und Zyklusprüfungen mit einer einzigen indizierten Abfrage beantwortet werden.
+     * Trigger halten die Tabelle beim Anlegen, Verschieben und Löschen von Ordnern
+     * innerhalb derselben Transaktion aktuell.
+     */
+    private static void createFolderHierarchy() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'folder_closure'")) {
+                exists = rs.next();
+            }
+            
+            stmt.execute("CREATE TABLE IF NOT EXISTS folder_closure (" +
+                         "ancestor INTEGER NOT NULL, " +
+                         "descendant INTEGER NOT NULL, " +
+                         "depth INTEGER NOT NULL, " +
+                         "PRIMARY KEY (ancestor, descendant)) WITHOUT ROWID");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_folder_closure_descendant " +
+                         "ON folder_closure (descendant, depth)");
+            
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_closure_ai AFTER INSERT ON folders BEGIN " +
+                         "INSERT INTO folder_closure (ancestor, descendant, depth) VALUES (new.id, new.id, 0); " +
+                         "INSERT INTO folder_closure (ancestor, descendant, depth) " +
+                         "SELECT ancestor, new.id, depth + 1 FROM folder_closure WHERE descendant = new.parent_id; " +
+                         "END");
+            // Beim Verschieben werden alle Pfade vom alten Vorfahren in den Teilbaum entfernt
+            // und über das Kreuzprodukt aus neuen Vorfahren und Teilbaum neu angelegt
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_closure_au AFTER UPDATE OF parent_id ON folders " +
+                         "WHEN old.parent_id IS NOT new.parent_id BEGIN " +
+                         "DELETE FROM folder_closure " +
+                         "WHERE descendant IN (SELECT descendant FROM folder_closure WHERE ancestor = new.id) " +
+                         "AND ancestor NOT IN (SELECT descendant FROM folder_closure WHERE ancestor = new.id); " +
+                         "INSERT INTO folder_closure (ancestor, descendant, depth) " +
+                         "SELECT super.ancestor, sub.descendant, super.depth + sub.depth + 1 " +
+                         "FROM folder_closure super JOIN folder_closure sub ON sub.ancestor = new.id " +
+                         "WHERE super.descendant = new.parent_id; " +
+                         "END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_closure_ad AFTER DELETE ON folders BEGIN " +
+                         "DELETE FROM folder_closure WHERE descendant = old.id; " +
+                         "DELETE FROM folder_closure WHERE ancestor = old.id; " +
+                         "END");
+            
+            if (!exists) {
+                LoggingUtil.logDatabase("Initialize", "FolderClosure", "Building folder closure from existing folders.");
+                stmt.execute("WITH RECURSIVE tree (ancestor, descendant, depth) AS (" +
+                             "SELECT id, id, 0 FROM folders " +
+                             "UNION ALL " +
+                             "SELECT tree.ancestor, folders.id, tree.depth + 1 " +
+                             "FROM tree JOIN folders ON folders.parent_id = tree.descendant) " +
+                             "INSERT OR IGNORE INTO folder_closure (ancestor, descendant, depth) " +
+                             "SELECT ancestor, descendant, depth FROM tree");
+            }
+        }
+    }
+    
+    /**
+     * Erstellt die Tabelle der Ordnerstatistiken, die Anzahl und Größe der Dateien je Ordner
+     * direkt und für den gesamten Teilbaum vorhält. Die Werte werden durch Trigger bei jeder
+     * Änderung an Dateien und Ordnern inkrementell nachgeführt, sodass Ordnergrößen ohne
+     * Scan der Dateitabelle abgefragt werden können.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createFolderStats() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'folder_stats'")) {
+                exists = rs.next();
+            }
+            
+            stmt.execute("CREATE TABLE IF NOT EXISTS folder_stats (" +
+                         "folder_id INTEGER PRIMARY KEY, " +
+                         "direct_file_count INTEGER NOT NULL DEFAULT 0, " +
+                         "direct_bytes INTEGER NOT NULL DEFAULT 0, " +
+                         "total_file_count INTEGER NOT NULL DEFAULT 0, " +
+                         "total_bytes INTEGER NOT NULL DEFAULT 0)");
+            
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_stats_ai AFTER INSERT ON folders BEGIN " +
+                         "INSERT OR IGNORE INTO folder_stats (folder_id) VALUES (new.id); " +
+                         "END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_stats_ad AFTER DELETE ON folders BEGIN " +
+                         "DELETE FROM folder_stats WHERE folder_id = old.id; " +
+                         "END");
+            // Läuft vor der Aktualisierung der Closure-Tabelle: Die Vorfahren des alten und des
+            // neuen Elternordners liegen außerhalb des verschobenen Teilbaums und sind daher stabil.
+            // Zuerst werden die Teilbaum-Kontingente des neuen Elternordners geprüft, solange seine
+            // Statistiken den verschobenen Teilbaum noch nicht enthalten; ältere Stände des
+            // Triggers ohne diese Prüfung werden ersetzt
+            if (!triggerContains(stmt, "folders_stats_bu", QuotaManager.TRIGGER_MESSAGE)) {
+                stmt.execute("DROP TRIGGER IF EXISTS folders_stats_bu");
+            }
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_stats_bu BEFORE UPDATE OF parent_id ON folders " +
+                         "WHEN old.parent_id IS NOT new.parent_id BEGIN " +
+                         "SELECT RAISE(ABORT, '" + QuotaManager.TRIGGER_MESSAGE + "') " +
+                         "WHERE new.parent_id IS NOT NULL AND EXISTS (SELECT 1 " +
+                         QuotaManager.applicableQuotas("new.parent_id") + " AND q.recursive = 1 AND " +
+                         QuotaManager.exceeds("(SELECT total_bytes FROM folder_stats WHERE folder_id = old.id)",
+                                 "(SELECT total_file_count FROM folder_stats WHERE folder_id = old.id)") + " AND " +
+                         QuotaManager.notCovering("old.parent_id") + "); " +
+                         "UPDATE folder_stats SET " +
+                         "total_file_count = total_file_count - " +
+                         "(SELECT total_file_count FROM folder_stats WHERE folder_id = old.id), " +
+                         "total_bytes = total_bytes - (SELECT total_bytes FROM folder_stats WHERE folder_id = old.id) " +
+                         "WHERE folder_id IN (SELECT ancestor FROM folder_closure WHERE descendant = old.parent_id); " +
+                         "UPDATE folder_stats SET " +
+                         "total_file_count = total_file_count + " +
+                         "(SELECT total_file_count FROM folder_stats WHERE folder_id = old.id), " +
+                         "total_bytes = total_bytes + (SELECT total_bytes FROM folder_stats WHERE folder_id = old.id) " +
+                         "WHERE folder_id IN (SELECT ancestor FROM folder_closure WHERE descendant = new.parent_id); " +
+                         "END");
+            
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_stats_ai AFTER INSERT ON files BEGIN " +
+                         "UPDATE folder_stats SET direct_file_count = direct_file_count + 1, " +
+                         "direct_bytes = direct_bytes + COALESCE(new.size_bytes, 0) " +
+                         "WHERE folder_id = new.folder_id; " +
+                         "UPDATE folder_stats SET total_file_count = total_file_count + 1, " +
+                         "total_bytes = total_bytes + COALESCE(new.size_bytes, 0) " +
+                         "WHERE folder_id IN (SELECT ancestor FROM folder_closure WHERE descendant = new.folder_id); " +
+                         "END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_stats_ad AFTER DELETE ON files BEGIN " +
+                         "UPDATE folder_stats SET direct_file_count = direct_file_count - 1, " +
+                         "direct_bytes = direct_bytes - COALESCE(old.size_bytes, 0) " +
+                         "WHERE folder_id = old.folder_id; " +
+                         "UPDATE folder_stats SET total_file_count = total_file_count - 1, " +
+                         "total_bytes = total_bytes - COALESCE(old.size_bytes, 0) " +
+                         "WHERE folder_id IN (SELECT ancestor FROM folder_closure WHERE descendant = old.folder_id); " +
+                         "END");
+            // Verschieben und Größenänderungen werden als Entfernen aus dem alten und
+            // Hinzufügen zum neuen Ordner verbucht
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_stats_au AFTER UPDATE OF folder_id, size_bytes ON files " +
+                         "WHEN old.folder_id IS NOT new.folder_id OR old.size_bytes IS NOT new.size_bytes BEGIN " +
+                         "UPDATE folder_stats SET direct_file_count = direct_file_count - 1, " +
+                         "direct_bytes = direct_bytes - COALESCE(old.size_bytes, 0) " +
+                         "WHERE folder_id = old.folder_id; " +
+                         "UPDATE folder_stats SET total_file_count = total_file_count - 1, " +
+                         "total_bytes = total_bytes - COALESCE(old.size_bytes, 0) " +
+                         "WHERE folder_id IN (SELECT ancestor FROM folder_closure WHERE descendant = old.folder_id); " +
+                         "UPDATE folder_stats SET direct_file_count = direct_file_count + 1, " +
+                         "direct_bytes = direct_bytes + COALESCE(new.size_bytes, 0) " +
+                         "WHERE folder_id = new.folder_id; " +
+                         "UPDATE folder_stats SET total_file_count = total_file_count + 1, " +
+                         "total_bytes = total_bytes + COALESCE(new.size_bytes, 0) " +
+                         "WHERE folder_id IN (SELECT ancestor FROM folder_closure WHERE descendant = new.folder_id); " +
+                         "END");
+            
+            if (!exists) {
+                LoggingUtil.logDatabase("Initialize", "FolderStats", "Computing folder statistics from existing files.");
+                stmt.execute("INSERT OR IGNORE INTO folder_stats " +
+                             "(folder_id, direct_file_count, direct_bytes, total_file_count, total_bytes) " +
+                             "SELECT f.id, " +
+                             "(SELECT COUNT(*) FROM files WHERE folder_id = f.id), " +
+                             "(SELECT COALESCE(SUM(size_bytes), 0) FROM files WHERE folder_id = f.id), " +
+                             "(SELECT COUNT(*) FROM files WHERE folder_id IN " +
+                             "(SELECT descendant FROM folder_closure WHERE ancestor = f.id)), " +
+                             "(SELECT COALESCE(SUM(size_bytes), 0) FROM files WHERE folder_id IN " +
+                             "(SELECT descendant FROM folder_closure WHERE ancestor = f.id)) " +
+                             "FROM folders f");
+            }
+        }
+    }
+    
+    /**
+     * Erstellt die Tabelle der Pack-Dateien und ergänzt die Dateitabelle um die Lage einer
+     * Datei innerhalb einer Pack-Datei. Bei Dateien, die als eigene Datei gespeichert sind,
+     * bleibt pack_id leer.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createPackTables() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS packs (" +
+                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         "path TEXT NOT NULL, " +
+                         "sealed INTEGER NOT NULL DEFAULT 0, " +
+                         "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            
+            addColumnIfMissing(stmt, "files", "pack_id", "INTEGER REFERENCES packs(id)");
+            addColumnIfMissing(stmt, "files", "pack_offset", "INTEGER");
+            addColumnIfMissing(stmt, "files", "pack_length", "INTEGER");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_pack ON files (pack_id) WHERE pack_id IS NOT NULL");
+        }
+    }
+    
+    /**
+     * Ergänzt die Dateitabelle um Speicherstufe und Komprimierung. Der Index deckt die Suche
+     * nach lange nicht genutzten Dateien im schnellen Datenverzeichnis ab; nie gelesene
+     * Dateien zählen ab ihrer Erstellung.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createTierColumns() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            addColumnIfMissing(stmt, "files", "storage_tier", "TEXT NOT NULL DEFAULT 'HOT'");
+            addColumnIfMissing(stmt, "files", "compressed", "INTEGER NOT NULL DEFAULT 0");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_hot_access ON files " +
+                         "((" + TieringService.LAST_USED_MILLIS + ")) " +
+                         "WHERE storage_tier = 'HOT' AND pack_id IS NULL");
+        }
+    }
+    
+    /**
+     * Erstellt die Tabelle der weiteren Datenverzeichnisse und ergänzt die Dateitabelle um
+     * das Volume einer Datei. Dateien im Standard-Datenverzeichnis haben kein Volume.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createVolumeTables() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS volumes (" +
+                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         "path TEXT NOT NULL UNIQUE, " +
+                         "capacity_bytes INTEGER, " +
+                         "draining INTEGER NOT NULL DEFAULT 0, " +
+                         "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)");
+            
+            addColumnIfMissing(stmt, "files", "volume_id", "INTEGER REFERENCES volumes(id)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_volume ON files (volume_id) WHERE volume_id IS NOT NULL");
+        }
+    }
+    
+    /**
+     * Erstellt die Tabelle der Speicherkontingente. Trigger prüfen beim Anlegen und beim
+     * Verschieben von Dateien und Ordnern die Kontingente des Zielordners und seiner Vorfahren gegen die
+     * Ordnerstatistiken und brechen die Anweisung ab, wenn eines überschritten würde.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createQuotaTables() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS folder_quotas (" +
+                         "folder_id INTEGER PRIMARY KEY REFERENCES folders(id) ON DELETE CASCADE, " +
+                         "max_bytes INTEGER, " +
+                         "max_files INTEGER, " +
+                         "recursive INTEGER NOT NULL DEFAULT 1)");
+            
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_quota_bi BEFORE INSERT ON files " +
+                         "WHEN EXISTS (SELECT 1 " + QuotaManager.applicableQuotas("new.folder_id") + " AND " +
+                         QuotaManager.exceeds("COALESCE(new.size_bytes, 0)", "1") + ") BEGIN " +
+                         "SELECT RAISE(ABORT, '" + QuotaManager.TRIGGER_MESSAGE + "'); " +
+                         "END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_quota_bu BEFORE UPDATE OF folder_id ON files " +
+                         "WHEN old.folder_id IS NOT new.folder_id AND EXISTS (SELECT 1 " +
+                         QuotaManager.applicableQuotas("new.folder_id") + " AND " +
+                         QuotaManager.exceeds("COALESCE(new.size_bytes, 0)", "1") + " AND " +
+                         QuotaManager.notCovering("old.folder_id") + ") BEGIN " +
+                         "SELECT RAISE(ABORT, '" + QuotaManager.TRIGGER_MESSAGE + "'); " +
+                         "END");
+            // Ältere Stände prüften Ordnerverschiebungen in einem eigenen Trigger; die Prüfung
+            // steckt nun in folders_stats_bu, da SQLite keine Reihenfolge zwischen Triggern zusichert
+            stmt.execute("DROP TRIGGER IF EXISTS folders_quota_bu");
+        }
+    }
+    
+    /**
+     * Erstellt die Tabelle der früheren Dateiversionen und ergänzt die Dateitabelle um die
+     * Nummer der aktuellen Version. Eine Version trägt dieselben Inhaltsspalten wie ein
+     * Dateieintrag, damit Archivieren und Wiederherstellen reine Kopien zwischen den Tabellen sind.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createVersionTables() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            addColumnIfMissing(stmt, "files", "version", "INTEGER NOT NULL DEFAULT 1");
+            stmt.execute("CREATE TABLE IF NOT EXISTS file_versions (" +
+                         "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                         "file_id INTEGER NOT NULL REFERENCES files(id) ON DELETE CASCADE, " +
+                         "version INTEGER NOT NULL, " +
+                         "encrypted_path TEXT NOT NULL DEFAULT '', " +
+                         "size_bytes INTEGER, " +
+                         "mime_type TEXT, " +
+                         "pack_id INTEGER REFERENCES packs(id), " +
+                         "pack_offset INTEGER, " +
+                         "pack_length INTEGER, " +
+                         "volume_id INTEGER REFERENCES volumes(id), " +
+                         "storage_tier TEXT NOT NULL DEFAULT 'HOT', " +
+                         "compressed INTEGER NOT NULL DEFAULT 0, " +
+                         "created_at TIMESTAMP, " +
+                         "UNIQUE (file_id, version))");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_file_versions_path ON file_versions (encrypted_path)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_file_versions_pack ON file_versions (pack_id) WHERE pack_id IS NOT NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_file_versions_volume ON file_versions (volume_id) WHERE volume_id IS NOT NULL");
+        }
+    }
+    
+    /**
+     * Ergänzt Datei- und Ordnertabelle um die Spalten des Papierkorbs. Gelöschte Einträge
+     * merken sich ihren ursprünglichen Ordner ohne Fremdschlüssel, damit das endgültige
+     * Entfernen eines Ordners nicht an früher gelöschten Einträgen scheitert. Zusätzliche
+     * Trigger nehmen gelöschte Einträge aus dem Suchindex und fügen wiederhergestellte wieder ein.
+     *
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void createTrashColumns() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            addColumnIfMissing(stmt, "files", "deleted_at", "TIMESTAMP");
+            addColumnIfMissing(stmt, "files", "trashed_from", "INTEGER");
+            addColumnIfMissing(stmt, "folders", "deleted_at", "TIMESTAMP");
+            addColumnIfMissing(stmt, "folders", "trashed_parent", "INTEGER");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_files_deleted ON files (deleted_at) WHERE deleted_at IS NOT NULL");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_folders_deleted ON folders (deleted_at) WHERE deleted_at IS NOT NULL");
+
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_search_trash AFTER UPDATE OF deleted_at ON files " +
+                         "WHEN old.deleted_at IS NULL AND new.deleted_at IS NOT NULL BEGIN " +
+                         "DELETE FROM search_index WHERE rowid = new.id * 2; END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_search_restore AFTER UPDATE OF deleted_at ON files " +
+                         "WHEN old.deleted_at IS NOT NULL AND new.deleted_at IS NULL BEGIN " +
+                         "INSERT OR REPLACE INTO search_index (rowid, name, mime_type, description, folder_id) " +
+                         "VALUES (new.id * 2, new.original_name, new.mime_type, NULL, new.folder_id); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_search_trash AFTER UPDATE OF deleted_at ON folders " +
+                         "WHEN old.deleted_at IS NULL AND new.deleted_at IS NOT NULL BEGIN " +
+                         "DELETE FROM search_index WHERE rowid = new.id * 2 + 1; END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_search_restore AFTER UPDATE OF deleted_at ON folders " +
+                         "WHEN old.deleted_at IS NOT NULL AND new.deleted_at IS NULL BEGIN " +
+                         "INSERT OR REPLACE INTO search_index (rowid, name, mime_type, description, folder_id) " +
+                         "VALUES (new.id * 2 + 1, new.name, NULL, new.description, new.parent_id); END");
+        }
+    }
+    
+    /**
+     * Fügt einer bestehenden Tabelle eine Spalte hinzu, sofern sie noch nicht existiert.
+     *
+     * @param stmt Die zu verwendende Anweisung
+     * @param table Der Name der Tabelle
+     * @param column Der Name der Spalte
+     * @param definition Typ und Einschränkungen der Spalte
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static void addColumnIfMissing(Statement stmt, String table, String column, String definition)
+            throws SQLException {
+        try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        LoggingUtil.logDatabase("Migrate", table, "Adding column " + column);
+        stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+    }
+
+    /**
+     * Prüft, ob die Definition eines bestehenden Triggers einen bestimmten Text enthält.
+     *
+     * @param stmt Die zu verwendende Anweisung
+     * @param trigger Der Name des Triggers
+     * @param text Der gesuchte Text
+     * @return true, wenn der Trigger existiert und den Text enthält
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     */
+    private static boolean triggerContains(Statement stmt, String trigger, String text) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+                "SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name = '" + trigger + "'")) {
+            return rs.next() && rs.getString(1) != null && rs.getString(1).contains(text);
+        }
+    }
+    
+    /**
+     * Erstellt den FTS5-Suchindex über Datei- und Ordner-Metadaten sowie die Trigger,
+     * die ihn synchron halten. Dateien belegen die geraden rowids (id * 2), Ordner die
+     * ungeraden (id * 2 + 1), damit Trigger Einträge direkt über die rowid finden.
+     * Wird der Index neu angelegt, werden bereits vorhandene Zeilen übernommen.
+     */
+    private static void createSearchIndex() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            boolean exists;
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'search_index'")) {
+                exists = rs.next();
+            }
+            
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS search_index USING fts5(" +
+                         "name, mime_type, description, folder_id UNINDEXED, " +
+                         "tokenize = 'unicode61 remove_diacritics 2', prefix = '2 3')");
+            
+            // Trigger für Dateien
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_search_ai AFTER INSERT ON files BEGIN " +
+                         "INSERT INTO search_index (rowid, name, mime_type, description, folder_id) " +
+                         "VALUES (new.id * 2, new.original_name, new.mime_type, NULL, new.folder_id); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_search_au " +
+                         "AFTER UPDATE OF original_name, mime_type, folder_id ON files BEGIN " +
+                         "UPDATE search_index SET name = new.original_name, mime_type = new.mime_type, " +
+                         "folder_id = new.folder_id WHERE rowid = new.id * 2; END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS files_search_ad AFTER DELETE ON files BEGIN " +
+                         "DELETE FROM search_index WHERE rowid = old.id * 2; END");
+            
+            // Trigger für Ordner
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_search_ai AFTER INSERT ON folders BEGIN " +
+                         "INSERT INTO search_index (rowid, name, mime_type, description, folder_id) " +
+                         "VALUES (new.id * 2 + 1, new.name, NULL, new.description, new.parent_id); END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_search_au " +
+                         "AFTER UPDATE OF name, description, parent_id ON folders BEGIN " +
+                         "UPDATE search_index SET name = new.name, description = new.description, " +
+                         "folder_id = new.parent_id WHERE rowid = new.id * 2 + 1; END");
+            stmt.execute("CREATE TRIGGER IF NOT EXISTS folders_search_ad AFTER DELETE ON folders BEGIN " +
+                         "DELETE FROM search_index WHERE rowid = old.id * 2 + 1; END");
+            
+            if (!exists) {
+                LoggingUtil.logDatabase("Initialize", "SearchIndex", "Populating search index from existing rows.");
+                stmt.execute("INSERT INTO search_index (rowid, name, mime_type, description, folder_id) " +
+                             "SELECT id * 2, original_name, mime_type, NULL, folder_id FROM files");
+                stmt.execute("INSERT INTO search_index (rowid, name, mime_type, description, folder_id) " +
+                             "SELECT id * 2 + 1, name, NULL, description, parent_id FROM folders");
+            }
+        }
+    }
+    
+    /**
+     * Gibt den aktiven Metadatenspeicher zurück, über den Ordner, Dateien und Benutzer
+     * gelesen und geschrieben werden.
+     * @return Der Metadatenspeicher
+     */
+    public static MetadataStore getMetadataStore() {
+        return metadataStore;
+    }
+    
+    /**
+     * Ersetzt den aktiven Metadatenspeicher, etwa durch einen {@link InMemoryMetadataStore}.
+     * Die Caches des FileStorage werden dabei verworfen.
+     * @param store Der neue Metadatenspeicher
+     * @throws IllegalArgumentException wenn der Speicher null ist
+     */
+    public static void setMetadataStore(MetadataStore store) {
+        if (store == null) {
+            throw new IllegalArgumentException("Metadatenspeicher darf nicht null sein");
+        }
+        metadataStore = store;
+        FileStorage.getInstance().invalidateCache();
+        LoggingUtil.logDatabase("Configure", "MetadataStore", "Using " + store.getClass().getSimpleName());
     }
     
     /**
@@ -139,15 +619,62 @@ public class DatabaseManager {
     public static Connection getConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
             LoggingUtil.logDatabase("Connection", "Database", "Establishing new database connection.");
-            connection = DriverManager.getConnection(DB_URL_PREFIX + currentDbPath);
+            connection = InstrumentedConnection.wrap(DriverManager.getConnection(DB_URL_PREFIX + currentDbPath));
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute("PRAGMA foreign_keys = ON");
+                stmt.execute("PRAGMA busy_timeout = " + BUSY_TIMEOUT_MS);
             }
             LoggingUtil.logDatabase("Connection", "Database", "Database connection established.");
         }
         return connection;
     }
     
+    /**
+     * Öffnet eine eigene, schreibgeschützte Verbindung zur Datenbank.
+     * Sie ist für lang laufende Lesevorgänge wie Scans über alle Dateien gedacht, die
+     * die gemeinsame Verbindung nicht blockieren sollen. Der Aufrufer muss sie schließen.
+     * @return Eine neue schreibgeschützte Verbindung
+     * @throws SQLException wenn die Verbindung nicht hergestellt werden kann
+     */
+    public static Connection openReadConnection() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        return InstrumentedConnection.wrap(
+                DriverManager.getConnection(DB_URL_PREFIX + currentDbPath, config.toProperties()));
+    }
+    
+    /**
+     * Öffnet eine eigene Schreibverbindung zur Datenbank.
+     * Sie ist für Hintergrundaufgaben wie die Datenbankwartung gedacht, die die gemeinsame
+     * Verbindung weder belegen noch schließen dürfen. Der Aufrufer muss sie schließen.
+     * @return Eine neue Verbindung mit aktivierten Fremdschlüsseln
+     * @throws SQLException wenn die Verbindung nicht hergestellt werden kann
+     */
+    public static Connection openWriteConnection() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.enforceForeignKeys(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        return InstrumentedConnection.wrap(
+                DriverManager.getConnection(DB_URL_PREFIX + currentDbPath, config.toProperties()));
+    }
+    
+    /**
+     * Gibt den Pfad der aktuell verwendeten Datenbankdatei zurück.
+     * @return Der Pfad der Datenbankdatei
+     */
+    public static Path getDatabasePath() {
+        return Paths.get(currentDbPath);
+    }
+    
+    /**
+     * Gibt an, ob gerade die Testdatenbank verwendet wird.
+     * @return true, wenn die Testdatenbank aktiv ist
+     */
+    public static boolean isTestDatabase() {
+        return TEST_DB_PATH.equals(currentDbPath);
+    }
+    
     /**
      * Schließt alle Datenbankverbindungen.
      */
@@ -170,7 +697,11 @@ public class DatabaseManager {
         LoggingUtil.logDatabase("Delete", "TestDatabase", "Attempting to delete test database.");
         try {
             closeConnections();
+            ImportJournal.getInstance().close();
             Files.deleteIfExists(Paths.get(TEST_DB_PATH));
+            Files.deleteIfExists(Paths.get(TEST_DB_PATH + "-wal"));
+            Files.deleteIfExists(Paths.get(TEST_DB_PATH + "-shm"));
+            Files.deleteIfExists(Paths.get(TEST_DB_PATH + ImportJournal.JOURNAL_SUFFIX));
             LoggingUtil.logDatabase("Delete", "TestDatabase", "Test database deleted successfully.");
         } catch (Exception e) {
             LoggingUtil.logError("DatabaseManager", "Error deleting test database: " + e.getMessage());
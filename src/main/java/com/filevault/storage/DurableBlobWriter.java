@@ -0,0 +1,361 @@
+package com.filevault.storage;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Schreibt verschlüsselte Dateien so, dass ein Absturz keine halb geschriebenen Dateien
+ * hinterlässt, auf die ein Eintrag verweist.
+ * <p>
+ * Der Inhalt wird zunächst unter einem temporären Namen geschrieben und im
+ * {@link ImportJournal} vermerkt. Vor dem Anlegen der Metadaten werden Inhalt und Journal
+ * auf die Platte geschrieben, die Datei atomar auf ihren endgültigen Namen umbenannt und
+ * das Verzeichnis synchronisiert. Im Modus {@link DurabilityMode#BATCHED} sammelt ein Thread
+ * die Dateien gleichzeitig laufender Importe und schreibt sie gemeinsam auf die Platte, sodass
+ * Journal und Verzeichnisse nur einmal je Gruppe statt einmal je Datei synchronisiert werden.
+ */
+public class DurableBlobWriter {
+
+    /**
+     * Wie die Dateien einzelner Importe auf die Platte geschrieben werden.
+     */
+    public enum DurabilityMode {
+        /** Jede Datei wird sofort mit eigenem Journal- und Verzeichnis-Sync geschrieben */
+        PER_FILE,
+        /** Gleichzeitige Importe werden gesammelt und gemeinsam geschrieben */
+        BATCHED
+    }
+
+    /**
+     * Schreibt den Inhalt einer verschlüsselten Datei.
+     */
+    @FunctionalInterface
+    public interface BlobContent {
+        /**
+         * Schreibt den Inhalt in den Datenstrom, ohne ihn zu schließen.
+         *
+         * @param outputStream Das Ziel
+         * @throws Exception wenn der Inhalt nicht geschrieben werden kann
+         */
+        void writeTo(OutputStream outputStream) throws Exception;
+    }
+
+    /**
+     * Eine geschriebene, aber noch nicht veröffentlichte oder noch nicht bestätigte Datei.
+     */
+    public static final class StagedBlob {
+
+        private final Path path;
+
+        private boolean done;
+
+        private IOException error;
+
+        private StagedBlob(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * Gibt den endgültigen Pfad der Datei zurück.
+         *
+         * @return Der absolute Pfad
+         */
+        public Path getPath() {
+            return path;
+        }
+    }
+
+    /** Die einzige Instanz des DurableBlobWriter */
+    private static DurableBlobWriter instance;
+
+    /** Endung der temporären Dateien */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Aktueller Modus */
+    private volatile DurabilityMode durabilityMode = DurabilityMode.PER_FILE;
+
+    /** Wartezeit in Millisekunden, in der eine Gruppe weitere Dateien aufnimmt */
+    private volatile long batchWindowMillis = 2;
+
+    /** Höchstzahl an Dateien einer Gruppe */
+    private volatile int maxBatchSize = 64;
+
+    /** Sperre und Signal für die Gruppenbildung */
+    private final Object groupLock = new Object();
+
+    /** Dateien, die auf die nächste Gruppe warten */
+    private List<StagedBlob> queue = new ArrayList<>();
+
+    /** Ob gerade ein Thread eine Gruppe schreibt */
+    private boolean flushing;
+
+    /** Anzahl der bisher geschriebenen Gruppen */
+    private long groupFlushes;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private DurableBlobWriter() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des DurableBlobWriter zurück.
+     *
+     * @return Die Instanz des DurableBlobWriter
+     */
+    public static synchronized DurableBlobWriter getInstance() {
+        if (instance == null) {
+            instance = new DurableBlobWriter();
+        }
+        return instance;
+    }
+
+    /**
+     * Schreibt eine neue verschlüsselte Datei und kehrt erst zurück, wenn sie unter ihrem
+     * endgültigen Namen dauerhaft auf der Platte liegt. Danach müssen die Metadaten angelegt
+     * und {@link #committed(StagedBlob)} oder {@link #discard(StagedBlob)} aufgerufen werden.
+     *
+     * @param content Der Inhalt
+     * @return Die geschriebene Datei
+     * @throws Exception wenn der Inhalt nicht geschrieben werden kann; die Datei ist dann entfernt
+     */
+    public StagedBlob write(BlobContent content) throws Exception {
+        StagedBlob blob = stage(content);
+        try {
+            if (durabilityMode == DurabilityMode.BATCHED) {
+                awaitGroup(blob);
+            } else {
+                publish(List.of(blob));
+            }
+        } catch (IOException e) {
+            discard(blob);
+            throw e;
+        }
+        return blob;
+    }
+
+    /**
+     * Schreibt den Inhalt einer neuen Datei unter einem temporären Namen, ohne ihn auf die
+     * Platte zu zwingen. Mehrere so vorbereitete Dateien werden mit {@link #publish(List)}
+     * gemeinsam veröffentlicht.
+     *
+     * @param content Der Inhalt
+     * @return Die vorbereitete Datei
+     * @throws Exception wenn der Inhalt nicht geschrieben werden kann; die Datei ist dann entfernt
+     */
+    public StagedBlob stage(BlobContent content) throws Exception {
+        StagedBlob blob = new StagedBlob(BlobStore.newBlobPath());
+        ImportJournal.getInstance().begin(blob.path);
+        try (OutputStream outputStream = new FileOutputStream(tempPathOf(blob.path).toFile())) {
+            content.writeTo(outputStream);
+        } catch (Exception e) {
+            discard(blob);
+            throw e;
+        }
+        return blob;
+    }
+
+    /**
+     * Schreibt Journal und vorbereitete Dateien auf die Platte, benennt die Dateien atomar
+     * um und synchronisiert ihre Verzeichnisse, jedes nur einmal.
+     *
+     * @param blobs Die vorbereiteten Dateien
+     * @throws IOException wenn eine Datei nicht geschrieben werden kann
+     */
+    public void publish(List<StagedBlob> blobs) throws IOException {
+        if (blobs.isEmpty()) {
+            return;
+        }
+        ImportJournal.getInstance().force();
+        for (StagedBlob blob : blobs) {
+            try (FileChannel channel = FileChannel.open(tempPathOf(blob.path), StandardOpenOption.WRITE)) {
+                channel.force(false);
+            }
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        for (StagedBlob blob : blobs) {
+            Files.move(tempPathOf(blob.path), blob.path, StandardCopyOption.ATOMIC_MOVE);
+            directories.add(blob.path.getParent());
+        }
+        for (Path directory : directories) {
+            syncDirectory(directory);
+        }
+    }
+
+    /**
+     * Bestätigt, dass die Metadaten einer Datei angelegt wurden.
+     *
+     * @param blob Die Datei
+     */
+    public void committed(StagedBlob blob) {
+        ImportJournal.getInstance().complete(blob.path);
+    }
+
+    /**
+     * Verwirft eine Datei, deren Metadaten nicht angelegt wurden, samt temporärer Datei.
+     *
+     * @param blob Die Datei
+     */
+    public void discard(StagedBlob blob) {
+        try {
+            Files.deleteIfExists(tempPathOf(blob.path));
+            Files.deleteIfExists(blob.path);
+        } catch (IOException e) {
+            LoggingUtil.logWarning("DurableBlobWriter", "Could not remove discarded blob " + blob.path + ": " + e.getMessage());
+        }
+        ImportJournal.getInstance().complete(blob.path);
+    }
+
+    /**
+     * Reiht eine vorbereitete Datei in die nächste Gruppe ein und wartet, bis diese geschrieben ist.
+     * Der erste wartende Thread schreibt die Gruppe, sobald sie voll oder das Zeitfenster
+     * abgelaufen ist; alle anderen warten auf ihn.
+     */
+    private void awaitGroup(StagedBlob blob) throws IOException {
+        List<StagedBlob> batch = null;
+        boolean interrupted = false;
+        synchronized (groupLock) {
+            queue.add(blob);
+            groupLock.notifyAll();
+            while (flushing && !blob.done) {
+                interrupted |= waitForGroup(0);
+            }
+            if (!blob.done) {
+                // Dieser Thread schreibt die nächste Gruppe
+                flushing = true;
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchWindowMillis);
+                long remaining;
+                while (queue.size() < maxBatchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                    interrupted |= waitForGroup(remaining);
+                }
+                batch = queue;
+                queue = new ArrayList<>();
+            }
+        }
+        if (batch != null) {
+            IOException failure = null;
+            try {
+                publish(batch);
+            } catch (IOException e) {
+                failure = e;
+            }
+            synchronized (groupLock) {
+                for (StagedBlob member : batch) {
+                    member.error = failure;
+                    member.done = true;
+                }
+                groupFlushes++;
+                flushing = false;
+                groupLock.notifyAll();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (blob.error != null) {
+            throw blob.error;
+        }
+    }
+
+    /**
+     * Wartet auf ein Signal der Gruppenbildung. Eine Unterbrechung wird vermerkt statt
+     * abgebrochen, da die Datei bereits eingereiht ist und ihr Ergebnis abgewartet werden muss.
+     *
+     * @param nanos Höchste Wartezeit in Nanosekunden oder 0 für unbegrenzt
+     * @return true, wenn der Thread unterbrochen wurde
+     */
+    private boolean waitForGroup(long nanos) {
+        try {
+            if (nanos > 0) {
+                TimeUnit.NANOSECONDS.timedWait(groupLock, nanos);
+            } else {
+                groupLock.wait();
+            }
+            return false;
+        } catch (InterruptedException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Synchronisiert ein Verzeichnis, damit eine Umbenennung darin dauerhaft wird. Nicht jedes
+     * Betriebssystem erlaubt das Öffnen von Verzeichnissen; dort genügt die Umbenennung.
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Nicht unterstützt, etwa unter Windows
+        }
+    }
+
+    /**
+     * Gibt den temporären Pfad zu einem endgültigen Pfad zurück.
+     *
+     * @param blob Der endgültige Pfad
+     * @return Der temporäre Pfad im selben Verzeichnis
+     */
+    static Path tempPathOf(Path blob) {
+        return blob.resolveSibling(blob.getFileName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Gibt den aktuellen Modus zurück.
+     *
+     * @return Der Modus
+     */
+    public DurabilityMode getDurabilityMode() {
+        return durabilityMode;
+    }
+
+    /**
+     * Setzt den Modus.
+     *
+     * @param durabilityMode Der Modus
+     */
+    public void setDurabilityMode(DurabilityMode durabilityMode) {
+        this.durabilityMode = durabilityMode;
+    }
+
+    /**
+     * Setzt das Zeitfenster, in dem eine Gruppe weitere Dateien aufnimmt.
+     *
+     * @param batchWindowMillis Das Zeitfenster in Millisekunden
+     */
+    public void setBatchWindowMillis(long batchWindowMillis) {
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    /**
+     * Setzt die Höchstzahl an Dateien einer Gruppe.
+     *
+     * @param maxBatchSize Die Anzahl der Dateien
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Gibt die Anzahl der bisher gemeinsam geschriebenen Gruppen zurück.
+     *
+     * @return Die Anzahl der Gruppen
+     */
+    public long getGroupFlushes() {
+        synchronized (groupLock) {
+            return groupFlushes;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Kopiert Dateien und Ordner innerhalb des Tresors, ohne Inhalte zu entschlüsseln oder
+ * neu zu verschlüsseln.
+ * <p>
+ * Mit dem SQLite-Metadatenspeicher verweist eine Kopie auf dieselbe verschlüsselte Datei
+ * oder denselben Eintrag einer Pack-Datei wie das Original; kopiert werden nur die
+ * Metadaten, für einen ganzen Teilbaum mit einer Anweisung je Ordner in einer Transaktion.
+ * Die Dauer hängt damit von der Anzahl der Ordner ab, nicht von der Größe der Dateien.
+ * Erhält eine Kopie später neuen Inhalt, wird dieser wie jeder Import in eine neue Datei
+ * geschrieben; geteilte Dateien werden nie verändert und erst gelöscht, wenn kein Eintrag
+ * mehr auf sie verweist (siehe {@link BlobReferences}). Ohne SQLite wird die verschlüsselte
+ * Datei unverändert dupliziert.
+ */
+final class FileCopier {
+
+    /** Spalten, die eine Kopie vom Original übernimmt */
+    private static final String COPIED_COLUMNS = "encrypted_path, size_bytes, mime_type, pack_id, pack_offset, "
+            + "pack_length, volume_id, storage_tier, compressed";
+
+    /**
+     * Prüft, ob ein Name im Ziel bereits vergeben ist.
+     */
+    @FunctionalInterface
+    private interface NameCheck {
+        boolean isTaken(String name) throws SQLException;
+    }
+
+    /**
+     * Keine Instanzen; nur statische Hilfsmethoden.
+     */
+    private FileCopier() {
+    }
+
+    /**
+     * Kopiert eine Datei in einen Ordner. Trägt der Ordner bereits eine Datei gleichen
+     * Namens, erhält die Kopie den Zusatz "(Kopie)".
+     *
+     * @param file Die zu kopierende Datei
+     * @param targetFolder Der Zielordner
+     * @return Die Kopie oder null, wenn die Datei nicht mehr existiert
+     * @throws QuotaExceededException wenn die Kopie ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     * @throws IOException wenn die verschlüsselte Datei ohne SQLite nicht dupliziert werden kann
+     */
+    static EncryptedFile copyFile(EncryptedFile file, VirtualFolder targetFolder)
+            throws QuotaExceededException, SQLException, IOException {
+        QuotaManager.getInstance().checkImport(targetFolder.getId(), file.getSizeBytes(), 1);
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        if (!(store instanceof SqliteMetadataStore)) {
+            return duplicate(store, file, targetFolder.getId(),
+                    copyName(file.getOriginalName(), fileNames(store, targetFolder.getId())));
+        }
+
+        int copyId;
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            String name = copyName(file.getOriginalName(), fileNames(conn, targetFolder.getId()));
+            copyId = insertCopy(conn, file.getId(), targetFolder.getId(), name);
+        } catch (SQLException e) {
+            throw quotaViolationOr(e, targetFolder.getId());
+        }
+        if (copyId == 0) {
+            return null;
+        }
+        LoggingUtil.logDatabase("Insert", "files", "Copied file " + file.getId() + " to file " + copyId
+                + " in folder " + targetFolder.getId());
+        return store.getFile(copyId);
+    }
+
+    /**
+     * Kopiert einen Ordner samt aller Unterordner und Dateien. Trägt der Zielordner bereits
+     * einen Unterordner gleichen Namens, erhält die Kopie den Zusatz "(Kopie)".
+     *
+     * @param source Der zu kopierende Ordner
+     * @param targetParentId Die ID des übergeordneten Zielordners oder null für die oberste Ebene
+     * @return Die Kopie des Ordners oder null, wenn er nicht mehr existiert oder im Papierkorb liegt
+     * @throws IllegalArgumentException wenn der Zielordner im kopierten Teilbaum liegt
+     * @throws QuotaExceededException wenn die Kopie ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     * @throws IOException wenn verschlüsselte Dateien ohne SQLite nicht dupliziert werden können
+     */
+    static VirtualFolder copyFolder(VirtualFolder source, Integer targetParentId)
+            throws QuotaExceededException, SQLException, IOException {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        if (targetParentId != null && store.isAncestor(source.getId(), targetParentId)) {
+            throw new IllegalArgumentException("Ein Ordner kann nicht in sich selbst kopiert werden");
+        }
+        if (!(store instanceof SqliteMetadataStore)) {
+            if (store.getFolder(source.getId()) == null) {
+                return null;
+            }
+            return duplicateTree(store, source, targetParentId,
+                    copyName(source.getName(), folderNames(store, targetParentId)));
+        }
+        if (TrashManager.getInstance().isFolderTrashed(source.getId())) {
+            return null;
+        }
+        if (targetParentId != null) {
+            long[] totals = subtreeTotals(source.getId());
+            QuotaManager.getInstance().checkImport(targetParentId, totals[1], (int) totals[0]);
+        }
+
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Nach Tiefe sortiert, übergeordnete Ordner werden also zuerst kopiert
+                List<VirtualFolder> folders = new ArrayList<>();
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT f.id, f.name, f.description, f.parent_id FROM folder_closure c " +
+                        "JOIN folders f ON f.id = c.descendant WHERE c.ancestor = ? ORDER BY c.depth, f.id")) {
+                    stmt.setInt(1, source.getId());
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            folders.add(new VirtualFolder(rs.getInt(1), rs.getString(2), rs.getString(3),
+                                    rs.getObject(4) != null ? rs.getInt(4) : null));
+                        }
+                    }
+                }
+                if (folders.isEmpty()) {
+                    conn.rollback();
+                    return null;
+                }
+
+                LocalDateTime createdAt = LocalDateTime.now();
+                Map<Integer, Integer> copies = new HashMap<>();
+                VirtualFolder root = null;
+                int copiedFiles = 0;
+                try (PreparedStatement insertFolder = conn.prepareStatement(
+                             "INSERT INTO folders (name, description, parent_id, created_at) VALUES (?, ?, ?, ?)",
+                             Statement.RETURN_GENERATED_KEYS);
+                     PreparedStatement insertFiles = conn.prepareStatement(
+                             "INSERT INTO files (folder_id, original_name, " + COPIED_COLUMNS + ", created_at) " +
+                             "SELECT ?, original_name, " + COPIED_COLUMNS + ", CURRENT_TIMESTAMP FROM files " +
+                             "WHERE folder_id = ? ORDER BY id")) {
+                    for (VirtualFolder folder : folders) {
+                        boolean isRoot = folder.getId() == source.getId();
+                        Integer parentId = isRoot ? targetParentId : copies.get(folder.getParentId());
+                        String name = isRoot ? copyName(folder.getName(), folderNames(conn, targetParentId)) : folder.getName();
+                        insertFolder.setString(1, name);
+                        insertFolder.setString(2, folder.getDescription());
+                        insertFolder.setObject(3, parentId);
+                        insertFolder.setTimestamp(4, Timestamp.valueOf(createdAt));
+                        insertFolder.executeUpdate();
+                        int copyId;
+                        try (ResultSet keys = insertFolder.getGeneratedKeys()) {
+                            if (!keys.next()) {
+                                throw new SQLException("Copying folder failed, no ID obtained.");
+                            }
+                            copyId = keys.getInt(1);
+                        }
+                        copies.put(folder.getId(), copyId);
+                        if (isRoot) {
+                            root = new VirtualFolder(copyId, name, folder.getDescription(), targetParentId);
+                            root.setCreatedAt(createdAt);
+                        }
+
+                        insertFiles.setInt(1, copyId);
+                        insertFiles.setInt(2, folder.getId());
+                        copiedFiles += insertFiles.executeUpdate();
+                    }
+                }
+                conn.commit();
+                LoggingUtil.logDatabase("Insert", "folders", "Copied folder " + source.getId() + " to folder "
+                        + root.getId() + ": " + folders.size() + " folders, " + copiedFiles + " files");
+                return root;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw quotaViolationOr(e, targetParentId != null ? targetParentId : source.getId());
+            }
+        }
+    }
+
+    /**
+     * Legt die Kopie eines Dateieintrags an, sofern das Original noch existiert.
+     *
+     * @param conn Eine eigene Schreibverbindung, die nicht mit anderen Threads geteilt wird
+     * @return Die ID der Kopie oder 0
+     */
+    private static int insertCopy(Connection conn, int fileId, int folderId, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO files (folder_id, original_name, " + COPIED_COLUMNS + ", created_at) " +
+                "SELECT ?, ?, " + COPIED_COLUMNS + ", CURRENT_TIMESTAMP FROM files " +
+                "WHERE id = ? AND " + TrashManager.liveFile(), Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, folderId);
+            stmt.setString(2, name);
+            stmt.setInt(3, fileId);
+            if (stmt.executeUpdate() == 0) {
+                return 0;
+            }
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Copying file failed, no ID obtained.");
+                }
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    /**
+     * Liest Anzahl und Größe der Dateien eines Teilbaums aus den Ordnerstatistiken.
+     *
+     * @return Anzahl und Größe in Bytes
+     */
+    private static long[] subtreeTotals(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT total_file_count, total_bytes FROM folder_stats WHERE folder_id = ?")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? new long[] {rs.getLong(1), rs.getLong(2)} : new long[2];
+            }
+        }
+    }
+
+    /**
+     * Dupliziert die verschlüsselte Datei und legt einen Eintrag für das Duplikat an.
+     * Ohne SQLite gibt es keine gepackten oder komprimierten Dateien.
+     */
+    private static EncryptedFile duplicate(MetadataStore store, EncryptedFile file, int folderId, String name)
+            throws SQLException, IOException {
+        if (store.getFile(file.getId()) == null) {
+            return null;
+        }
+        Path target = BlobStore.newBlobPath();
+        try {
+            BlobRelocator.copy(Paths.get(file.getEncryptedPath()), target, InputStream::transferTo);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Datei " + file.getId() + " kann nicht kopiert werden: " + e.getMessage(), e);
+        }
+        return store.insertFile(folderId, name, target.toString(), file.getSizeBytes(), file.getMimeType());
+    }
+
+    /**
+     * Dupliziert einen Teilbaum samt seiner verschlüsselten Dateien.
+     */
+    private static VirtualFolder duplicateTree(MetadataStore store, VirtualFolder source, Integer parentId, String name)
+            throws SQLException, IOException {
+        VirtualFolder copy = store.insertFolder(name, source.getDescription(), parentId);
+        for (EncryptedFile file : store.getFilesInFolder(source.getId())) {
+            duplicate(store, file, copy.getId(), file.getOriginalName());
+        }
+        for (VirtualFolder child : store.getAllFolders()) {
+            if (child.getParentId() != null && child.getParentId() == source.getId()) {
+                duplicateTree(store, child, copy.getId(), child.getName());
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Bildet einen im Ziel freien Namen: zuerst den ursprünglichen, dann "Name (Kopie).ext",
+     * "Name (Kopie 2).ext" und so weiter.
+     */
+    private static String copyName(String name, NameCheck check) throws SQLException {
+        if (!check.isTaken(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String candidate = base + (i == 1 ? " (Kopie)" : " (Kopie " + i + ")") + extension;
+            if (!check.isTaken(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    /**
+     * Prüft Dateinamen eines Ordners über den Index auf (folder_id, original_name).
+     */
+    private static NameCheck fileNames(Connection conn, int folderId) {
+        return name -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT 1 FROM files WHERE folder_id = ? AND original_name = ? LIMIT 1")) {
+                stmt.setInt(1, folderId);
+                stmt.setString(2, name);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        };
+    }
+
+    /**
+     * Prüft die Namen der Unterordner eines Ordners, ohne gelöschte Ordner.
+     */
+    private static NameCheck folderNames(Connection conn, Integer parentId) {
+        return name -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT 1 FROM folders WHERE parent_id IS ? AND name = ? AND deleted_at IS NULL LIMIT 1")) {
+                stmt.setObject(1, parentId);
+                stmt.setString(2, name);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next();
+                }
+            }
+        };
+    }
+
+    /**
+     * Prüft Dateinamen eines Ordners im Speicher.
+     */
+    private static NameCheck fileNames(MetadataStore store, int folderId) {
+        return name -> store.getFilesInFolder(folderId).stream().anyMatch(file -> file.getOriginalName().equals(name));
+    }
+
+    /**
+     * Prüft die Namen der Unterordner eines Ordners im Speicher.
+     */
+    private static NameCheck folderNames(MetadataStore store, Integer parentId) {
+        return name -> store.getAllFolders().stream().anyMatch(folder ->
+                Objects.equals(folder.getParentId(), parentId) && folder.getName().equals(name));
+    }
+
+    /**
+     * Wandelt den Abbruch durch einen Kontingent-Trigger in eine {@link QuotaExceededException} um.
+     */
+    private static SQLException quotaViolationOr(SQLException e, int folderId) throws QuotaExceededException {
+        if (QuotaManager.isQuotaViolation(e)) {
+            throw new QuotaExceededException(folderId, "Speicherkontingent überschritten");
+        }
+        return e;
+    }
+}
@@ -0,0 +1,30 @@
+package com.filevault.storage;
+
+/**
+ * Sortierungen für die seitenweise Auflistung von Dateien eines Ordners.
+ * Jede Sortierung ist durch einen Index über (folder_id, Spalte) abgedeckt.
+ */
+public enum FileSortKey {
+    /** Sortierung nach Dateinamen */
+    NAME("original_name"),
+    /** Sortierung nach Dateigröße */
+    SIZE("size_bytes"),
+    /** Sortierung nach Erstellungsdatum */
+    CREATED_AT("created_at");
+
+    /** Die zugehörige Spalte der Tabelle files */
+    private final String column;
+
+    FileSortKey(String column) {
+        this.column = column;
+    }
+
+    /**
+     * Gibt die Spalte der Tabelle files zurück, nach der sortiert wird.
+     *
+     * @return Der Spaltenname
+     */
+    public String getColumn() {
+        return column;
+    }
+}
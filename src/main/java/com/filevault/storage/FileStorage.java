@@ -1,9 +1,16 @@
 package com.filevault.storage;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -11,13 +18,21 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.List;
-import java.util.UUID;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.InflaterOutputStream;
 
 import com.filevault.model.EncryptedFile;
+import com.filevault.model.FileSummary;
+import com.filevault.model.StorageTier;
 import com.filevault.model.VirtualFolder;
 import com.filevault.security.EncryptionService;
-import com.filevault.util.FolderManager;
 import com.filevault.util.LoggingUtil;
 
 /**
@@ -28,6 +43,43 @@ public class FileStorage {
     /** Die einzige Instanz des FileStorage */
     private static FileStorage instance;
     
+    /** Standardanzahl der Zeilen, die bei Scans pro Abruf gelesen werden */
+    private static final int DEFAULT_SCAN_FETCH_SIZE = 256;
+    
+    /** Anzahl der Zeilen, die bei Scans pro Abruf gelesen werden */
+    private volatile int scanFetchSize = DEFAULT_SCAN_FETCH_SIZE;
+    
+    /**
+     * Spalten der kompakten Projektion in der von {@link #mapSummary(ResultSet)} erwarteten
+     * Reihenfolge. Der Erstellungszeitpunkt wird bereits in SQLite in Millisekunden seit der
+     * Epoche umgerechnet; als Text gespeicherte Werte von CURRENT_TIMESTAMP sind UTC.
+     */
+    private static final String SUMMARY_COLUMNS = "id, original_name, folder_id, size_bytes, "
+            + "CASE typeof(created_at) WHEN 'integer' THEN created_at "
+            + "ELSE COALESCE(CAST(strftime('%s', created_at) AS INTEGER) * 1000, 0) END";
+    
+    /** Kennzeichnet im Cursor einen vorhandenen Sortierwert; ein NULL-Wert bleibt leer */
+    private static final String CURSOR_VALUE_PREFIX = "=";
+    
+    /** Standardkapazität der Metadaten-Caches */
+    private static final int DEFAULT_CACHE_CAPACITY = 10_000;
+    
+    /** Zwischengespeicherte Dateien nach ID */
+    private volatile MetadataCache<Integer, EncryptedFile> fileCache =
+            new MetadataCache<>(DEFAULT_CACHE_CAPACITY, 0);
+    
+    /** Zwischengespeicherte Dateilisten nach Ordner-ID, sortiert nach Namen */
+    private volatile MetadataCache<Integer, List<EncryptedFile>> folderListingCache =
+            new MetadataCache<>(DEFAULT_CACHE_CAPACITY, 0);
+    
+    /**
+     * Bildet die aktuelle Zeile eines ResultSets auf ein Objekt ab.
+     */
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+    
     /**
      * Privater Konstruktor für das Singleton-Pattern.
      */
@@ -60,55 +112,369 @@ public class FileStorage {
             LoggingUtil.logError("FileStorage", "File import failed: Source file cannot be read: " + sourceFile.getAbsolutePath());
             throw new IOException("Quelldatei kann nicht gelesen werden: " + sourceFile.getAbsolutePath());
         }
+        // Ein erneuter Import unter demselben Namen wird zur neuen Version der bestehenden Datei
+        EncryptedFile existing = VersionManager.getInstance().findCurrent(folder.getId(), sourceFile.getName());
+        // Kontingente werden vor der Verschlüsselung geprüft
+        if (existing == null) {
+            QuotaManager.getInstance().checkImport(folder.getId(), sourceFile.length(), 1);
+        } else if (sourceFile.length() > existing.getSizeBytes()) {
+            QuotaManager.getInstance().checkImport(folder.getId(), sourceFile.length() - existing.getSizeBytes(), 0);
+        }
+
+        String mimeType = Files.probeContentType(sourceFile.toPath());
+        if (mimeType == null) {
+            mimeType = "application/octet-stream";
+        }
+
+        if (PackStore.getInstance().accepts(sourceFile.length())) {
+            EncryptedFile draft = new EncryptedFile(0, folder.getId(), sourceFile.getName(), "",
+                    sourceFile.length(), mimeType, null, null);
+            PackLocation location = PackStore.getInstance().append(encryptToMemory(sourceFile));
+            draft.setPackLocation(location.packId(), location.offset(), location.length());
+            // Bei einem Fehler bleibt nur ein toter Bereich in der Pack-Datei zurück
+            EncryptedFile imported;
+            try {
+                imported = storeImported(null, existing, draft);
+            } catch (SQLException e) {
+                throw quotaViolationOr(e, folder.getId());
+            }
+            folderListingCache.invalidate(folder.getId());
+            LoggingUtil.logInfo("FileStorage", "File imported successfully into pack " + location.packId() + ": " + sourceFile.getAbsolutePath());
+            return imported;
+        }
+
+        // Die Datei liegt vollständig unter ihrem endgültigen Namen, bevor ihr Eintrag entsteht
+        DurableBlobWriter writer = DurableBlobWriter.getInstance();
+        DurableBlobWriter.StagedBlob blob;
+        try (InputStream inputStream = new FileInputStream(sourceFile)) {
+            blob = writer.write(outputStream -> EncryptionService.getInstance().encrypt(inputStream, outputStream));
+        }
+
+        try {
+            EncryptedFile imported = storeImported(null, existing, new EncryptedFile(0, folder.getId(), sourceFile.getName(),
+                    blob.getPath().toString(), sourceFile.length(), mimeType, null, null));
+            writer.committed(blob);
+            folderListingCache.invalidate(folder.getId());
+            LoggingUtil.logInfo("FileStorage", "File imported successfully: " + sourceFile.getAbsolutePath());
+            return imported;
+        } catch (QuotaExceededException e) {
+            writer.discard(blob);
+            throw e;
+        } catch (SQLException e) {
+            writer.discard(blob);
+            LoggingUtil.logError("FileStorage", "File import failed: Database insertion error.");
+            throw quotaViolationOr(e, folder.getId());
+        }
+    }
+
+    /**
+     * Legt den Eintrag einer importierten Datei an oder stellt eine bestehende Datei gleichen
+     * Namens auf den neuen Inhalt um. Wurde die bestehende Datei inzwischen gelöscht, entsteht
+     * ein neuer Eintrag.
+     *
+     * @param conn Eine eigene Verbindung des aufrufenden Threads oder null für die gemeinsame
+     * @param existing Die bestehende Datei oder null
+     * @param draft Der neue Inhalt
+     * @return Die importierte Datei
+     * @throws QuotaExceededException wenn der größere Inhalt ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    private EncryptedFile storeImported(Connection conn, EncryptedFile existing, EncryptedFile draft)
+            throws QuotaExceededException, SQLException {
+        if (existing != null && VersionManager.getInstance().addVersion(existing.getId(), draft)) {
+            invalidateFile(existing.getId(), existing.getFolderId());
+            if (conn != null && DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore sqliteStore) {
+                return sqliteStore.getFile(conn, existing.getId());
+            }
+            return getFileById(existing.getId());
+        }
+        return insertFiles(conn, draft.getFolderId(), List.of(draft)).get(0);
+    }
+
+    /**
+     * Legt neue Dateieinträge an, über die angegebene Schreibverbindung, sofern der
+     * SQLite-Speicher verwendet wird, sonst über den Metadatenspeicher.
+     *
+     * @param conn Eine eigene Schreibverbindung oder null
+     * @param folderId Die ID des Ordners
+     * @param drafts Die anzulegenden Dateien
+     * @return Die angelegten Dateien mit ihren IDs
+     * @throws SQLException wenn die Einträge nicht angelegt werden können
+     */
+    private static List<EncryptedFile> insertFiles(Connection conn, int folderId, List<EncryptedFile> drafts)
+            throws SQLException {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        if (conn != null && store instanceof SqliteMetadataStore sqliteStore) {
+            return sqliteStore.insertFiles(conn, folderId, drafts);
+        }
+        return store.insertFiles(folderId, drafts);
+    }
+
+    /**
+     * Wandelt den Abbruch durch einen Kontingent-Trigger in eine {@link QuotaExceededException} um.
+     * Andere Datenbankfehler bleiben unverändert.
+     *
+     * @param e Der Datenbankfehler
+     * @param folderId Die ID des Zielordners
+     * @return Die auszulösende Ausnahme
+     */
+    private static Exception quotaViolationOr(SQLException e, int folderId) {
+        return QuotaManager.isQuotaViolation(e)
+                ? new QuotaExceededException(folderId, "Speicherkontingent überschritten")
+                : e;
+    }
+    
+    /**
+     * Importiert mehrere Dateien in einen Ordner. Jede Datei wird einzeln verschlüsselt,
+     * alle verschlüsselten Dateien werden gemeinsam auf die Platte geschrieben und ihre
+     * Metadaten anschließend in einer gemeinsamen Transaktion angelegt. Schlägt diese fehl,
+     * werden die bereits verschlüsselten Dateien wieder gelöscht und alle betroffenen Importe als fehlgeschlagen gemeldet.
+     *
+     * @param sourceFiles Die zu importierenden Dateien
+     * @param folder Der Zielordner
+     * @return Ein Ergebnis je Quelldatei, in der Reihenfolge der Eingabe
+     */
+    public List<ImportResult> importBatch(List<File> sourceFiles, VirtualFolder folder) {
+        LoggingUtil.logInfo("FileStorage", "Starting batch import of " + sourceFiles.size() + " files into folder " + folder.getId());
+        List<ImportResult> results = new ArrayList<>(sourceFiles.size());
+        List<PreparedImport> prepared = new ArrayList<>();
+        List<Integer> preparedIndexes = new ArrayList<>();
+        long pendingBytes = 0;
+        int pendingFiles = 0;
+
+        for (File sourceFile : sourceFiles) {
+            if (!sourceFile.exists() || !sourceFile.isFile() || !sourceFile.canRead()) {
+                LoggingUtil.logError("FileStorage", "File import failed: Source file cannot be read: " + sourceFile.getAbsolutePath());
+                results.add(ImportResult.failed(sourceFile, "Quelldatei kann nicht gelesen werden: " + sourceFile.getAbsolutePath()));
+                continue;
+            }
+
+            try {
+                EncryptedFile existing = VersionManager.getInstance().findCurrent(folder.getId(), sourceFile.getName());
+                long growth = existing == null ? sourceFile.length() : sourceFile.length() - existing.getSizeBytes();
+                int newFiles = existing == null ? 1 : 0;
+                // Bereits angenommene Dateien des Stapels zählen mit
+                QuotaManager.getInstance().checkImport(folder.getId(), pendingBytes + Math.max(growth, 0), pendingFiles + newFiles);
+                PreparedImport item = prepareImport(sourceFile);
+                item.existing = existing;
+                prepared.add(item);
+                preparedIndexes.add(results.size());
+                results.add(null);
+                pendingBytes += Math.max(growth, 0);
+                pendingFiles += newFiles;
+            } catch (QuotaExceededException e) {
+                results.add(ImportResult.failed(sourceFile, e.getMessage()));
+            } catch (Exception e) {
+                LoggingUtil.logError("FileStorage", "File import failed: Encryption error for " + sourceFile.getAbsolutePath() + ": " + e.getMessage());
+                results.add(ImportResult.failed(sourceFile, "Verschlüsselung fehlgeschlagen: " + e.getMessage()));
+            }
+        }
+
+        List<ImportResult> stored = storePrepared(prepared, folder);
+        for (int i = 0; i < stored.size(); i++) {
+            results.set(preparedIndexes.get(i), stored.get(i));
+        }
+        return results;
+    }
+
+    /**
+     * Eine verschlüsselte Quelldatei, deren Eintrag noch nicht angelegt ist. Kleine Dateien
+     * liegen verschlüsselt im Speicher, große als vorbereitete Datei des {@link DurableBlobWriter}.
+     */
+    static final class PreparedImport {
+
+        /** Die Quelldatei */
+        final File sourceFile;
+
+        /** Größe der Quelldatei in Bytes */
+        final long sizeBytes;
 
-        String encryptedFileName = UUID.randomUUID().toString();
-        String encryptedFilePath = Paths.get(FolderManager.getInstance().getDataDirectoryPath(), encryptedFileName).toString();
-        File encryptedFile = new File(encryptedFilePath);
+        /** MIME-Typ der Quelldatei */
+        final String mimeType;
 
-        EncryptionService.getInstance().encryptFile(sourceFile, encryptedFile);
+        /** Verschlüsselter Inhalt für eine Pack-Datei, null bei eigener Datei */
+        final byte[] packRecord;
 
+        /** Vorbereitete verschlüsselte Datei, null bei Pack-Inhalt */
+        final DurableBlobWriter.StagedBlob blob;
+
+        /** Bestehende Datei, deren neue Version der Import wird, oder null */
+        EncryptedFile existing;
+
+        private PreparedImport(File sourceFile, long sizeBytes, String mimeType,
+                               byte[] packRecord, DurableBlobWriter.StagedBlob blob) {
+            this.sourceFile = sourceFile;
+            this.sizeBytes = sizeBytes;
+            this.mimeType = mimeType;
+            this.packRecord = packRecord;
+            this.blob = blob;
+        }
+    }
+
+    /**
+     * Verschlüsselt eine Quelldatei, ohne Metadaten anzulegen oder die Datenbank zu lesen.
+     * Kann daher von mehreren Threads gleichzeitig aufgerufen werden.
+     *
+     * @param sourceFile Die Quelldatei
+     * @return Die verschlüsselte Datei
+     * @throws Exception wenn die Datei nicht gelesen oder verschlüsselt werden kann
+     */
+    PreparedImport prepareImport(File sourceFile) throws Exception {
+        long sizeBytes = sourceFile.length();
         String mimeType = Files.probeContentType(sourceFile.toPath());
         if (mimeType == null) {
             mimeType = "application/octet-stream";
         }
+        if (PackStore.getInstance().accepts(sizeBytes)) {
+            return new PreparedImport(sourceFile, sizeBytes, mimeType, encryptToMemory(sourceFile), null);
+        }
+        DurableBlobWriter.StagedBlob blob;
+        try (InputStream inputStream = new FileInputStream(sourceFile)) {
+            blob = DurableBlobWriter.getInstance().stage(outputStream -> EncryptionService.getInstance().encrypt(inputStream, outputStream));
+        }
+        return new PreparedImport(sourceFile, sizeBytes, mimeType, null, blob);
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO files (folder_id, original_name, encrypted_path, size_bytes, mime_type, created_at) " +
-                     "VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)",
-                     PreparedStatement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setInt(1, folder.getId());
-            stmt.setString(2, sourceFile.getName());
-            stmt.setString(3, encryptedFilePath);
-            stmt.setLong(4, sourceFile.length());
-            stmt.setString(5, mimeType);
-
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
-                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        int id = generatedKeys.getInt(1);
-                        LoggingUtil.logInfo("FileStorage", "File imported successfully: " + sourceFile.getAbsolutePath());
-                        return new EncryptedFile(
-                                id,
-                                folder.getId(),
-                                sourceFile.getName(),
-                                encryptedFilePath,
-                                sourceFile.length(),
-                                mimeType,
-                                LocalDateTime.now(),
-                                null
-                        );
+    /**
+     * Verwirft eine verschlüsselte Datei, deren Eintrag nicht angelegt wird.
+     *
+     * @param item Die verschlüsselte Datei
+     */
+    void discardPrepared(PreparedImport item) {
+        if (item.blob != null) {
+            DurableBlobWriter.getInstance().discard(item.blob);
+        }
+    }
+
+    /**
+     * Legt die Einträge verschlüsselter Dateien eines Ordners an. Alle eigenen Dateien werden
+     * mit einem gemeinsamen Journal-Sync veröffentlicht, alle kleinen Dateien gemeinsam an eine
+     * Pack-Datei angehängt und alle neuen Einträge in einer gemeinsamen Transaktion angelegt.
+     * Schlägt diese fehl, werden die verschlüsselten Dateien wieder gelöscht und alle Importe
+     * als fehlgeschlagen gemeldet.
+     *
+     * @param prepared Die verschlüsselten Dateien
+     * @param folder Der Zielordner
+     * @return Ein Ergebnis je Datei, in der Reihenfolge der Eingabe
+     */
+    List<ImportResult> storePrepared(List<PreparedImport> prepared, VirtualFolder folder) {
+        return storePrepared(prepared, folder, null);
+    }
+
+    /**
+     * Legt die Einträge verschlüsselter Dateien eines Ordners an. Ist eine eigene
+     * Schreibverbindung angegeben, werden die neuen Einträge über diese angelegt.
+     *
+     * @param prepared Die verschlüsselten Dateien
+     * @param folder Der Zielordner
+     * @param conn Eine eigene Schreibverbindung des aufrufenden Threads oder null
+     * @return Ein Ergebnis je Datei, in der Reihenfolge der Eingabe
+     * @see #storePrepared(List, VirtualFolder)
+     */
+    List<ImportResult> storePrepared(List<PreparedImport> prepared, VirtualFolder folder, Connection conn) {
+        List<ImportResult> results = new ArrayList<>(prepared.size());
+        if (prepared.isEmpty()) {
+            return results;
+        }
+        DurableBlobWriter writer = DurableBlobWriter.getInstance();
+        List<EncryptedFile> drafts = new ArrayList<>(prepared.size());
+        List<DurableBlobWriter.StagedBlob> stagedBlobs = new ArrayList<>();
+        List<EncryptedFile> packedDrafts = new ArrayList<>();
+        List<byte[]> packedRecords = new ArrayList<>();
+        for (PreparedImport item : prepared) {
+            String path = item.blob == null ? "" : item.blob.getPath().toString();
+            EncryptedFile draft = new EncryptedFile(0, folder.getId(), item.sourceFile.getName(), path,
+                    item.sizeBytes, item.mimeType, null, null);
+            if (item.blob == null) {
+                packedDrafts.add(draft);
+                packedRecords.add(item.packRecord);
+            } else {
+                stagedBlobs.add(item.blob);
+            }
+            drafts.add(draft);
+            results.add(null);
+        }
+
+        try {
+            // Alle verschlüsselten Dateien werden mit einem gemeinsamen Journal-Sync veröffentlicht
+            writer.publish(stagedBlobs);
+            // Kleine Dateien werden gemeinsam angehängt und nur einmal auf die Platte geschrieben
+            if (!packedRecords.isEmpty()) {
+                List<PackLocation> locations = conn != null
+                        ? PackStore.getInstance().append(conn, packedRecords)
+                        : PackStore.getInstance().append(packedRecords);
+                for (int i = 0; i < locations.size(); i++) {
+                    PackLocation location = locations.get(i);
+                    packedDrafts.get(i).setPackLocation(location.packId(), location.offset(), location.length());
+                }
+            }
+            // Neue Dateien entstehen gemeinsam, neue Versionen bestehender Dateien danach einzeln
+            List<EncryptedFile> newDrafts = new ArrayList<>();
+            List<Integer> newPositions = new ArrayList<>();
+            for (int i = 0; i < drafts.size(); i++) {
+                if (prepared.get(i).existing == null) {
+                    newDrafts.add(drafts.get(i));
+                    newPositions.add(i);
+                }
+            }
+            List<EncryptedFile> inserted = newDrafts.isEmpty()
+                    ? List.of()
+                    : insertFiles(conn, folder.getId(), newDrafts);
+            for (int i = 0; i < inserted.size(); i++) {
+                int index = newPositions.get(i);
+                results.set(index, ImportResult.imported(prepared.get(index).sourceFile, inserted.get(i)));
+            }
+            int imported = inserted.size();
+            for (int i = 0; i < drafts.size(); i++) {
+                PreparedImport item = prepared.get(i);
+                if (item.existing == null) {
+                    continue;
+                }
+                try {
+                    results.set(i, ImportResult.imported(item.sourceFile, storeImported(conn, item.existing, drafts.get(i))));
+                    imported++;
+                } catch (QuotaExceededException | SQLException e) {
+                    LoggingUtil.logError("FileStorage", "File import failed: Could not store new version of " + item.sourceFile.getAbsolutePath() + ": " + e.getMessage());
+                    if (item.blob != null) {
+                        writer.discard(item.blob);
+                        stagedBlobs.remove(item.blob);
                     }
+                    results.set(i, ImportResult.failed(item.sourceFile, e instanceof QuotaExceededException
+                            ? e.getMessage() : "Datenbankfehler: " + e.getMessage()));
                 }
             }
-
-            encryptedFile.delete();
-            LoggingUtil.logError("FileStorage", "File import failed: Database insertion error.");
-            return null;
+            LoggingUtil.logInfo("FileStorage", "Batch import completed: " + imported + " of " + prepared.size() + " files imported");
+        } catch (SQLException | IOException e) {
+            LoggingUtil.logError("FileStorage", "Batch import failed: Database insertion error, removing encrypted files: " + e.getMessage());
+            for (DurableBlobWriter.StagedBlob blob : stagedBlobs) {
+                writer.discard(blob);
+            }
+            stagedBlobs.clear();
+            for (int i = 0; i < prepared.size(); i++) {
+                results.set(i, ImportResult.failed(prepared.get(i).sourceFile, "Datenbankfehler: " + e.getMessage()));
+            }
+        } finally {
+            for (DurableBlobWriter.StagedBlob blob : stagedBlobs) {
+                writer.committed(blob);
+            }
+            folderListingCache.invalidate(folder.getId());
         }
+        return results;
+    }
+    
+    /**
+     * Verschlüsselt eine kleine Datei im Speicher, um sie an eine Pack-Datei anzuhängen.
+     *
+     * @param sourceFile Die zu verschlüsselnde Datei
+     * @return Der verschlüsselte Inhalt
+     * @throws Exception wenn die Datei nicht gelesen oder verschlüsselt werden kann
+     */
+    private static byte[] encryptToMemory(File sourceFile) throws Exception {
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream((int) sourceFile.length() + 256);
+        try (InputStream inputStream = new FileInputStream(sourceFile)) {
+            EncryptionService.getInstance().encrypt(inputStream, encrypted);
+        }
+        return encrypted.toByteArray();
     }
     
     /**
@@ -121,26 +487,82 @@ public class FileStorage {
      */
     public boolean exportFile(EncryptedFile encryptedFile, File destinationFile) throws Exception {
         LoggingUtil.logInfo("FileStorage", "Starting file export: " + encryptedFile.getOriginalName());
+        try (InputStream inputStream = openEncrypted(encryptedFile);
+             OutputStream outputStream = new FileOutputStream(destinationFile)) {
+            decrypt(encryptedFile, inputStream, outputStream);
+        }
+        recordAccess(encryptedFile);
+        LoggingUtil.logInfo("FileStorage", "File exported successfully: " + encryptedFile.getOriginalName());
+        return true;
+    }
+
+    /**
+     * Öffnet den verschlüsselten Inhalt einer Datei, aus ihrer Pack-Datei oder ihrer eigenen Datei.
+     *
+     * @param encryptedFile Die Datei
+     * @return Der verschlüsselte Inhalt, der geschlossen werden muss
+     * @throws IOException wenn die verschlüsselte Datei nicht gelesen werden kann
+     * @throws SQLException wenn die Pack-Datei unbekannt ist
+     */
+    InputStream openEncrypted(EncryptedFile encryptedFile) throws IOException, SQLException {
+        if (encryptedFile.isPacked()) {
+            return new ByteArrayInputStream(PackStore.getInstance().read(encryptedFile.getPackId(),
+                    encryptedFile.getPackOffset(), encryptedFile.getPackLength()));
+        }
         File sourceFile = new File(encryptedFile.getEncryptedPath());
         if (!sourceFile.exists() || !sourceFile.isFile() || !sourceFile.canRead()) {
             LoggingUtil.logError("FileStorage", "File export failed: Encrypted file cannot be read: " + sourceFile.getAbsolutePath());
             throw new IOException("Verschlüsselte Datei kann nicht gelesen werden: " + sourceFile.getAbsolutePath());
         }
+        return new FileInputStream(sourceFile);
+    }
 
-        boolean success = EncryptionService.getInstance().decryptFile(sourceFile, destinationFile);
-
-        if (success) {
-            updateLastAccess(encryptedFile.getId());
-            LoggingUtil.logInfo("FileStorage", "File exported successfully: " + encryptedFile.getOriginalName());
-        } else {
-            LoggingUtil.logError("FileStorage", "File export failed: Decryption error.");
+    /**
+     * Entschlüsselt den Inhalt einer Datei. Berührt die Datenbank nicht und kann daher von
+     * mehreren Threads gleichzeitig aufgerufen werden. Die Ströme werden nicht geschlossen.
+     *
+     * @param encryptedFile Die Datei
+     * @param inputStream Der verschlüsselte Inhalt aus {@link #openEncrypted(EncryptedFile)}
+     * @param outputStream Das Ziel für den Klartext
+     * @throws Exception wenn der Inhalt nicht entschlüsselt werden kann
+     */
+    void decrypt(EncryptedFile encryptedFile, InputStream inputStream, OutputStream outputStream) throws Exception {
+        if (!encryptedFile.isCompressed()) {
+            EncryptionService.getInstance().decrypt(inputStream, outputStream);
+            return;
         }
+        // Der Klartext wurde vor der Verschlüsselung komprimiert
+        InflaterOutputStream inflater = new InflaterOutputStream(new FilterOutputStream(outputStream) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        });
+        EncryptionService.getInstance().decrypt(inputStream, inflater);
+        inflater.close();
+    }
 
-        return success;
+    /**
+     * Vermerkt den Zugriff auf eine exportierte Datei. Kalte Dateien werden danach im
+     * Hintergrund zurückgeholt.
+     *
+     * @param encryptedFile Die Datei
+     */
+    void recordAccess(EncryptedFile encryptedFile) {
+        updateLastAccess(encryptedFile.getId(), encryptedFile.getFolderId());
+        if (encryptedFile.getStorageTier() == StorageTier.COLD) {
+            TieringService.getInstance().requestPromotion(encryptedFile);
+        }
     }
     
     /**
-     * Löscht eine Datei aus dem Tresor.
+     * Löscht eine Datei aus dem Tresor. Mit SQLite-Metadaten wird sie nur in den Papierkorb
+     * verschoben; ihre verschlüsselte Datei und frühere Versionen entfernt erst der Aufräumlauf.
      * 
      * @param encryptedFile Die zu löschende Datei
      * @return true, wenn das Löschen erfolgreich war
@@ -148,22 +570,24 @@ public class FileStorage {
     public boolean deleteFile(EncryptedFile encryptedFile) {
         LoggingUtil.logInfo("FileStorage", "Starting file deletion: " + encryptedFile.getOriginalName());
         try {
-            File file = new File(encryptedFile.getEncryptedPath());
-            if (file.exists()) {
-                file.delete();
+            boolean deleted;
+            if (TrashManager.getInstance().isAvailable()) {
+                deleted = TrashManager.getInstance().trashFile(encryptedFile.getId());
+            } else {
+                // Gepackte Inhalte werden bei der Verdichtung ihrer Pack-Datei entfernt
+                if (!encryptedFile.isPacked()) {
+                    File file = new File(encryptedFile.getEncryptedPath());
+                    if (file.exists()) {
+                        file.delete();
+                    }
+                }
+                deleted = DatabaseManager.getMetadataStore().deleteFile(encryptedFile.getId());
             }
+            invalidateFile(encryptedFile.getId(), encryptedFile.getFolderId());
 
-            try (Connection conn = DatabaseManager.getConnection();
-                 PreparedStatement stmt = conn.prepareStatement(
-                         "DELETE FROM files WHERE id = ?")) {
-
-                stmt.setInt(1, encryptedFile.getId());
-                int affected = stmt.executeUpdate();
-
-                if (affected > 0) {
-                    LoggingUtil.logInfo("FileStorage", "File deleted successfully: " + encryptedFile.getOriginalName());
-                    return true;
-                }
+            if (deleted) {
+                LoggingUtil.logInfo("FileStorage", "File deleted successfully: " + encryptedFile.getOriginalName());
+                return true;
             }
         } catch (Exception e) {
             LoggingUtil.logError("FileStorage", "Error deleting file: " + e.getMessage());
@@ -181,15 +605,11 @@ public class FileStorage {
      * @return true, wenn das Umbenennen erfolgreich war
      */
     public boolean renameFile(EncryptedFile encryptedFile, String newName) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE files SET original_name = ? WHERE id = ?")) {
-            
-            stmt.setString(1, newName);
-            stmt.setInt(2, encryptedFile.getId());
-            int affected = stmt.executeUpdate();
+        try {
+            boolean renamed = DatabaseManager.getMetadataStore().renameFile(encryptedFile.getId(), newName);
+            invalidateFile(encryptedFile.getId(), encryptedFile.getFolderId());
             
-            if (affected > 0) {
+            if (renamed) {
                 encryptedFile.setOriginalName(newName);
                 return true;
             }
@@ -209,19 +629,20 @@ public class FileStorage {
      * @return true, wenn die Datei erfolgreich verschoben wurde
      */
     public boolean moveFile(EncryptedFile encryptedFile, VirtualFolder targetFolder) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE files SET folder_id = ? WHERE id = ?")) {
-            
-            stmt.setInt(1, targetFolder.getId());
-            stmt.setInt(2, encryptedFile.getId());
-            int affected = stmt.executeUpdate();
+        try {
+            QuotaManager.getInstance().checkMove(encryptedFile.getFolderId(), targetFolder.getId(), encryptedFile.getSizeBytes());
+            boolean moved = DatabaseManager.getMetadataStore().moveFile(encryptedFile.getId(), targetFolder.getId());
+            invalidateFile(encryptedFile.getId(), encryptedFile.getFolderId());
+            folderListingCache.invalidate(targetFolder.getId());
             
-            if (affected > 0) {
+            if (moved) {
                 encryptedFile.setFolderId(targetFolder.getId());
                 return true;
             }
             
+            return false;
+        } catch (QuotaExceededException e) {
+            LoggingUtil.logWarning("FileStorage", "Datei nicht verschoben: " + e.getMessage());
             return false;
         } catch (SQLException e) {
             LoggingUtil.logError("FileStorage", "Fehler beim Verschieben der Datei: " + e.getMessage());
@@ -229,6 +650,52 @@ public class FileStorage {
         }
     }
     
+    /**
+     * Kopiert eine Datei in einen Ordner, ohne ihren Inhalt neu zu verschlüsseln. Die Kopie
+     * teilt sich die verschlüsselte Datei mit dem Original, bis eine der beiden neuen Inhalt
+     * erhält; trägt der Ordner bereits eine Datei gleichen Namens, erhält sie den Zusatz "(Kopie)".
+     * 
+     * @param encryptedFile Die zu kopierende Datei
+     * @param targetFolder Der Zielordner
+     * @return Die Kopie oder null, wenn die Datei nicht mehr existiert
+     * @throws QuotaExceededException wenn die Kopie ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     * @throws IOException wenn die verschlüsselte Datei nicht dupliziert werden kann
+     */
+    public EncryptedFile copyFile(EncryptedFile encryptedFile, VirtualFolder targetFolder)
+            throws QuotaExceededException, SQLException, IOException {
+        EncryptedFile copy = FileCopier.copyFile(encryptedFile, targetFolder);
+        folderListingCache.invalidate(targetFolder.getId());
+        if (copy != null) {
+            LoggingUtil.logInfo("FileStorage", "File copied: " + encryptedFile.getOriginalName() + " -> " + copy.getId());
+        }
+        return copy;
+    }
+    
+    /**
+     * Kopiert einen Ordner samt aller Unterordner und Dateien, ohne Inhalte neu zu verschlüsseln.
+     * Nur die Metadaten werden in einer Transaktion kopiert, sodass die Dauer nicht von der
+     * Größe der Dateien abhängt. Die Ordnerstruktur der Oberfläche muss danach neu geladen werden.
+     * 
+     * @param sourceFolder Der zu kopierende Ordner
+     * @param targetParent Der übergeordnete Zielordner oder null für die oberste Ebene
+     * @return Die Kopie des Ordners oder null, wenn er nicht mehr existiert
+     * @throws IllegalArgumentException wenn der Zielordner im kopierten Teilbaum liegt
+     * @throws QuotaExceededException wenn die Kopie ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     * @throws IOException wenn verschlüsselte Dateien nicht dupliziert werden können
+     */
+    public VirtualFolder copyFolder(VirtualFolder sourceFolder, VirtualFolder targetParent)
+            throws QuotaExceededException, SQLException, IOException {
+        long start = System.nanoTime();
+        VirtualFolder copy = FileCopier.copyFolder(sourceFolder, targetParent != null ? targetParent.getId() : null);
+        if (copy != null) {
+            LoggingUtil.logInfo("FileStorage", "Folder copied: " + sourceFolder.getName() + " -> " + copy.getId()
+                    + " in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        return copy;
+    }
+    
     /**
      * Gibt alle Dateien in einem Ordner zurück.
      * 
@@ -236,45 +703,197 @@ public class FileStorage {
      * @return Eine Liste der Dateien im Ordner
      */
     public List<EncryptedFile> getFilesInFolder(VirtualFolder folder) {
-        List<EncryptedFile> files = new ArrayList<>();
+        return getFilesByFolderId(folder.getId());
+    }
+    
+    /**
+     * Gibt eine Seite der Dateien eines Ordners nach Namen sortiert zurück.
+     * Die Seite beginnt hinter der Position (afterName, afterId), sodass die Abfrage
+     * unabhängig von der Seitenzahl direkt über den Index einsteigt.
+     * 
+     * @param folder Der Ordner, aus dem die Dateien abgerufen werden sollen
+     * @param afterName Name der letzten Datei der vorherigen Seite oder null für die erste Seite
+     * @param afterId ID der letzten Datei der vorherigen Seite
+     * @param limit Maximale Anzahl der Dateien dieser Seite
+     * @return Die Seite mit den Dateien und dem Cursor für die nächste Seite
+     */
+    public ResultPage<EncryptedFile> getFilesInFolder(VirtualFolder folder, String afterName, int afterId, int limit) {
+        String cursor = afterName != null ? encodeFileCursor(FileSortKey.NAME, afterName, afterId) : null;
+        return getFilesInFolder(folder, FileSortKey.NAME, cursor, limit);
+    }
+    
+    /**
+     * Gibt eine Seite der Dateien eines Ordners in der gewünschten Sortierung zurück.
+     * Jede Sortierung wird von einem Index über (folder_id, Sortierspalte) getragen;
+     * die Datei-ID dient als eindeutiges zweites Sortierkriterium.
+     * 
+     * @param folder Der Ordner, aus dem die Dateien abgerufen werden sollen
+     * @param sortKey Die Sortierung
+     * @param cursor Cursor einer vorherigen Seite oder null für die erste Seite
+     * @param limit Maximale Anzahl der Dateien dieser Seite
+     * @return Die Seite mit den Dateien und dem Cursor für die nächste Seite
+     * @throws IllegalArgumentException wenn das Limit ungültig ist oder der Cursor nicht zur Sortierung passt
+     */
+    public ResultPage<EncryptedFile> getFilesInFolder(VirtualFolder folder, FileSortKey sortKey, String cursor, int limit) {
+        return getFilesByFolderId(folder.getId(), sortKey, cursor, limit);
+    }
+    
+    /**
+     * Gibt eine Seite der Dateien eines Ordners in der gewünschten Sortierung zurück.
+     * 
+     * @param folderId Die ID des Ordners
+     * @param sortKey Die Sortierung
+     * @param cursor Cursor einer vorherigen Seite oder null für die erste Seite
+     * @param limit Maximale Anzahl der Dateien dieser Seite
+     * @return Die Seite mit den Dateien und dem Cursor für die nächste Seite
+     * @throws IllegalArgumentException wenn das Limit ungültig ist oder der Cursor nicht zur Sortierung passt
+     * @see #getFilesInFolder(VirtualFolder, FileSortKey, String, int)
+     */
+    public ResultPage<EncryptedFile> getFilesByFolderId(int folderId, FileSortKey sortKey, String cursor, int limit) {
+        return queryFolderPage(folderId, sortKey, cursor, limit, "*", FileStorage::mapFile);
+    }
+    
+    /**
+     * Gibt eine Seite der Dateien eines Ordners als kompakte Projektion zurück.
+     * Gelesen werden nur die für Auflistungen nötigen Spalten; die Cursor sind mit
+     * {@link #getFilesByFolderId(int, FileSortKey, String, int)} austauschbar.
+     * 
+     * @param folderId Die ID des Ordners
+     * @param sortKey Die Sortierung
+     * @param cursor Cursor einer vorherigen Seite oder null für die erste Seite
+     * @param limit Maximale Anzahl der Dateien dieser Seite
+     * @return Die Seite mit den Dateien und dem Cursor für die nächste Seite
+     * @throws IllegalArgumentException wenn das Limit ungültig ist oder der Cursor nicht zur Sortierung passt
+     */
+    public ResultPage<FileSummary> getFileSummariesByFolderId(int folderId, FileSortKey sortKey, String cursor, int limit) {
+        return queryFolderPage(folderId, sortKey, cursor, limit, SUMMARY_COLUMNS, FileStorage::mapSummary);
+    }
+    
+    /**
+     * Gibt eine Seite der Dateien eines Ordners über eine bestimmte Verbindung zurück, etwa
+     * eine eigene Leseverbindung eines Threads außerhalb der Benutzeroberfläche.
+     * 
+     * @param conn Die zu verwendende Verbindung; sie wird nicht geschlossen
+     * @param folderId Die ID des Ordners
+     * @param sortKey Die Sortierung
+     * @param cursor Cursor einer vorherigen Seite oder null für die erste Seite
+     * @param limit Maximale Anzahl der Dateien dieser Seite
+     * @return Die Seite mit den Dateien und dem Cursor für die nächste Seite
+     * @throws SQLException wenn ein Datenbankfehler auftritt
+     * @throws IllegalArgumentException wenn das Limit ungültig ist oder der Cursor nicht zur Sortierung passt
+     */
+    ResultPage<EncryptedFile> getFilesByFolderId(Connection conn, int folderId, FileSortKey sortKey, String cursor,
+                                                 int limit) throws SQLException {
+        return queryFolderPage(conn, folderId, sortKey, cursor, limit, "*", FileStorage::mapFile);
+    }
+    
+    /**
+     * Liest eine Seite der Dateien eines Ordners über die gemeinsame Verbindung.
+     * Datenbankfehler werden protokolliert und ergeben eine leere Seite.
+     */
+    private <T> ResultPage<T> queryFolderPage(int folderId, FileSortKey sortKey, String cursor, int limit,
+                                              String selectList, RowMapper<T> mapper) {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return queryFolderPage(conn, folderId, sortKey, cursor, limit, selectList, mapper);
+        } catch (SQLException e) {
+            LoggingUtil.logError("FileStorage", "Fehler beim seitenweisen Abrufen der Dateien: " + e.getMessage());
+            return new ResultPage<>(new ArrayList<>(), null);
+        }
+    }
+    
+    /**
+     * Liest eine Seite der Dateien eines Ordners. Die Sortierspalte wird als letzte Spalte
+     * zusätzlich gelesen, um daraus den Cursor der nächsten Seite zu bilden.
+     * 
+     * @param conn Die zu verwendende Verbindung; sie wird nicht geschlossen
+     * @param selectList Die zu lesenden Spalten
+     * @param mapper Bildet eine Zeile auf das Ergebnisobjekt ab
+     */
+    private <T> ResultPage<T> queryFolderPage(Connection conn, int folderId, FileSortKey sortKey, String cursor,
+                                              int limit, String selectList, RowMapper<T> mapper) throws SQLException {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit muss größer als 0 sein");
+        }
         
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT * FROM files WHERE folder_id = ? ORDER BY original_name")) {
+        String[] position = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            position = decodeCursor(cursor).split("\u0000", 3);
+            if (position.length != 3 || !position[0].equals(sortKey.name())
+                    || !(position[1].isEmpty() || position[1].startsWith(CURSOR_VALUE_PREFIX))) {
+                throw new IllegalArgumentException("Cursor passt nicht zur Sortierung " + sortKey);
+            }
+        }
+        boolean afterNull = position != null && position[1].isEmpty();
+        
+        // NULL-Werte stehen in SQLite vorne; hinter einem NULL folgen die übrigen NULL-Werte
+        // mit größerer ID und alle Werte, hinter einem Wert liefert der Zeilenvergleich nie NULL-Werte
+        String column = sortKey.getColumn();
+        String after = "";
+        if (afterNull) {
+            after = "AND ((" + column + " IS NULL AND id > ?) OR " + column + " IS NOT NULL) ";
+        } else if (position != null) {
+            after = "AND (" + column + ", id) > (?, ?) ";
+        }
+        String sql = "SELECT " + selectList + ", " + column + " FROM files WHERE folder_id = ? AND "
+                + TrashManager.liveFile() + " " + after + "ORDER BY " + column + ", id LIMIT ?";
+        
+        List<T> items = new ArrayList<>();
+        String nextCursor = null;
+        
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setInt(1, folder.getId());
+            int index = 1;
+            stmt.setInt(index++, folderId);
+            if (position != null) {
+                try {
+                    // Hinter einem NULL-Wert ergibt sich die Position allein aus der ID
+                    if (!afterNull) {
+                        String value = position[1].substring(CURSOR_VALUE_PREFIX.length());
+                        if (sortKey == FileSortKey.SIZE) {
+                            stmt.setLong(index++, Long.parseLong(value));
+                        } else {
+                            stmt.setString(index++, value);
+                        }
+                    }
+                    stmt.setInt(index++, Integer.parseInt(position[2]));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Ungültiger Cursor", e);
+                }
+            }
+            stmt.setInt(index, limit + 1);
             
             try (ResultSet rs = stmt.executeQuery()) {
+                int sortValueIndex = rs.getMetaData().getColumnCount();
+                String lastValue = null;
+                int lastId = 0;
                 while (rs.next()) {
-                    Timestamp createdTimestamp = rs.getTimestamp("created_at");
-                    Timestamp lastAccessTimestamp = rs.getTimestamp("last_access");
-                    
-                    LocalDateTime createdAt = createdTimestamp != null 
-                            ? createdTimestamp.toLocalDateTime() 
-                            : null;
-                            
-                    LocalDateTime lastAccess = lastAccessTimestamp != null 
-                            ? lastAccessTimestamp.toLocalDateTime() 
-                            : null;
-                    
-                    EncryptedFile file = new EncryptedFile(
-                            rs.getInt("id"),
-                            rs.getInt("folder_id"),
-                            rs.getString("original_name"),
-                            rs.getString("encrypted_path"),
-                            rs.getLong("size_bytes"),
-                            rs.getString("mime_type"),
-                            createdAt,
-                            lastAccess
-                    );
-                    files.add(file);
+                    if (items.size() == limit) {
+                        nextCursor = encodeFileCursor(sortKey, lastValue, lastId);
+                        break;
+                    }
+                    items.add(mapper.map(rs));
+                    lastValue = rs.getString(sortValueIndex);
+                    lastId = rs.getInt("id");
                 }
             }
-        } catch (SQLException e) {
-            LoggingUtil.logError("FileStorage", "Fehler beim Abrufen der Dateien: " + e.getMessage());
         }
         
-        return files;
+        return new ResultPage<>(items, nextCursor);
+    }
+    
+    /**
+     * Kodiert die Position einer Datei in einer sortierten Auflistung als Cursor.
+     * Ein Wert wird mit {@link #CURSOR_VALUE_PREFIX} eingeleitet, ein NULL-Wert bleibt leer,
+     * damit er sich auch von einem leeren Namen unterscheidet.
+     * 
+     * @param sortKey Die Sortierung
+     * @param value Der Wert der Sortierspalte oder null
+     * @param id Die ID der Datei
+     * @return Der kodierte Cursor
+     */
+    private static String encodeFileCursor(FileSortKey sortKey, String value, int id) {
+        String encodedValue = value != null ? CURSOR_VALUE_PREFIX + value : "";
+        return encodeCursor(sortKey.name() + '\u0000' + encodedValue + '\u0000' + id);
     }
     
     /**
@@ -284,36 +903,19 @@ public class FileStorage {
      * @return Die Datei oder null, wenn sie nicht gefunden wurde
      */
     public EncryptedFile getFileById(int fileId) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT * FROM files WHERE id = ?")) {
-            
-            stmt.setInt(1, fileId);
-            
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    Timestamp createdTimestamp = rs.getTimestamp("created_at");
-                    Timestamp lastAccessTimestamp = rs.getTimestamp("last_access");
-                    
-                    LocalDateTime createdAt = createdTimestamp != null 
-                            ? createdTimestamp.toLocalDateTime() 
-                            : null;
-                            
-                    LocalDateTime lastAccess = lastAccessTimestamp != null 
-                            ? lastAccessTimestamp.toLocalDateTime() 
-                            : null;
-                    
-                    return new EncryptedFile(
-                            rs.getInt("id"),
-                            rs.getInt("folder_id"),
-                            rs.getString("original_name"),
-                            rs.getString("encrypted_path"),
-                            rs.getLong("size_bytes"),
-                            rs.getString("mime_type"),
-                            createdAt,
-                            lastAccess
-                    );
-                }
+        MetadataCache<Integer, EncryptedFile> cache = fileCache;
+        EncryptedFile cached = cache.get(fileId);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+        
+        try {
+            long generation = cache.getGeneration();
+            EncryptedFile file = DatabaseManager.getMetadataStore().getFile(fileId);
+            if (file != null) {
+                // Eine gleichzeitige Änderung darf nicht durch die vorher gelesene Zeile überschrieben werden
+                cache.putIfUnchanged(fileId, file, generation);
+                return copyOf(file);
             }
         } catch (SQLException e) {
             LoggingUtil.logError("FileStorage", "Fehler beim Abrufen der Datei: " + e.getMessage());
@@ -326,14 +928,12 @@ public class FileStorage {
      * Aktualisiert den Zeitstempel des letzten Zugriffs auf eine Datei.
      * 
      * @param fileId Die ID der Datei
+     * @param folderId Die ID des Ordners der Datei
      */
-    private void updateLastAccess(int fileId) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE files SET last_access = CURRENT_TIMESTAMP WHERE id = ?")) {
-            
-            stmt.setInt(1, fileId);
-            stmt.executeUpdate();
+    private void updateLastAccess(int fileId, int folderId) {
+        try {
+            DatabaseManager.getMetadataStore().touchFile(fileId);
+            invalidateFile(fileId, folderId);
         } catch (SQLException e) {
             LoggingUtil.logError("FileStorage", "Fehler beim Aktualisieren des letzten Zugriffs: " + e.getMessage());
         }
@@ -345,89 +945,212 @@ public class FileStorage {
      * @return A list of all encrypted files.
      */
     public List<EncryptedFile> getAllFiles() {
-        List<EncryptedFile> files = new ArrayList<>();
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM files ORDER BY original_name");
-             ResultSet rs = stmt.executeQuery()) {
-
-            while (rs.next()) {
-                Timestamp createdTimestamp = rs.getTimestamp("created_at");
-                Timestamp lastAccessTimestamp = rs.getTimestamp("last_access");
-
-                LocalDateTime createdAt = createdTimestamp != null
-                        ? createdTimestamp.toLocalDateTime()
-                        : null;
-
-                LocalDateTime lastAccess = lastAccessTimestamp != null
-                        ? lastAccessTimestamp.toLocalDateTime()
-                        : null;
-
-                EncryptedFile file = new EncryptedFile(
-                        rs.getInt("id"),
-                        rs.getInt("folder_id"),
-                        rs.getString("original_name"),
-                        rs.getString("encrypted_path"),
-                        rs.getLong("size_bytes"),
-                        rs.getString("mime_type"),
-                        createdAt,
-                        lastAccess
-                );
-                files.add(file);
-            }
+        try {
+            return DatabaseManager.getMetadataStore().getAllFiles();
         } catch (SQLException e) {
             LoggingUtil.logError("FileStorage", "Error retrieving all files: " + e.getMessage());
+            return new ArrayList<>();
         }
+    }
 
-        return files;
+    /**
+     * Retrieves one page of all files, ordered by ID.
+     *
+     * @param cursor The cursor of a previous page, or null for the first page.
+     * @param limit The maximum number of files on this page.
+     * @return The page of files and the cursor for the next page.
+     * @throws IllegalArgumentException if the limit or the cursor is invalid.
+     */
+    public ResultPage<EncryptedFile> getAllFiles(String cursor, int limit) {
+        return queryAllFilesPage(cursor, limit, "*", FileStorage::mapFile);
     }
 
     /**
-     * Retrieves files by folder ID.
+     * Retrieves one page of all files, ordered by ID, as compact projections that only
+     * read the columns needed for listings. Cursors are interchangeable with
+     * {@link #getAllFiles(String, int)}.
      *
-     * @param folderId The ID of the folder.
-     * @return A list of files in the specified folder.
+     * @param cursor The cursor of a previous page, or null for the first page.
+     * @param limit The maximum number of files on this page.
+     * @return The page of file summaries and the cursor for the next page.
+     * @throws IllegalArgumentException if the limit or the cursor is invalid.
      */
-    public List<EncryptedFile> getFilesByFolderId(int folderId) {
-        List<EncryptedFile> files = new ArrayList<>();
+    public ResultPage<FileSummary> getAllFileSummaries(String cursor, int limit) {
+        return queryAllFilesPage(cursor, limit, SUMMARY_COLUMNS, FileStorage::mapSummary);
+    }
+
+    /**
+     * Reads one page of all files ordered by ID using the given columns and row mapper.
+     */
+    private <T> ResultPage<T> queryAllFilesPage(String cursor, int limit, String selectList, RowMapper<T> mapper) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit muss größer als 0 sein");
+        }
+
+        int afterId = 0;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                afterId = Integer.parseInt(decodeCursor(cursor));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Ungültiger Cursor", e);
+            }
+        }
+
+        List<T> items = new ArrayList<>();
+        String nextCursor = null;
 
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                     "SELECT * FROM files WHERE folder_id = ? ORDER BY original_name")) {
+                     "SELECT " + selectList + " FROM files WHERE id > ? AND " + TrashManager.liveFile() +
+                     " ORDER BY id LIMIT ?")) {
 
-            stmt.setInt(1, folderId);
+            stmt.setInt(1, afterId);
+            stmt.setInt(2, limit + 1);
 
             try (ResultSet rs = stmt.executeQuery()) {
+                int lastId = 0;
                 while (rs.next()) {
-                    Timestamp createdTimestamp = rs.getTimestamp("created_at");
-                    Timestamp lastAccessTimestamp = rs.getTimestamp("last_access");
-
-                    LocalDateTime createdAt = createdTimestamp != null
-                            ? createdTimestamp.toLocalDateTime()
-                            : null;
-
-                    LocalDateTime lastAccess = lastAccessTimestamp != null
-                            ? lastAccessTimestamp.toLocalDateTime()
-                            : null;
-
-                    EncryptedFile file = new EncryptedFile(
-                            rs.getInt("id"),
-                            rs.getInt("folder_id"),
-                            rs.getString("original_name"),
-                            rs.getString("encrypted_path"),
-                            rs.getLong("size_bytes"),
-                            rs.getString("mime_type"),
-                            createdAt,
-                            lastAccess
-                    );
-                    files.add(file);
+                    if (items.size() == limit) {
+                        nextCursor = encodeCursor(Integer.toString(lastId));
+                        break;
+                    }
+                    items.add(mapper.map(rs));
+                    lastId = rs.getInt("id");
                 }
             }
+        } catch (SQLException e) {
+            LoggingUtil.logError("FileStorage", "Error retrieving page of files: " + e.getMessage());
+        }
+
+        return new ResultPage<>(items, nextCursor);
+    }
+
+    /**
+     * Besucht alle Dateien des Tresors nacheinander, ohne sie vorher in eine Liste zu laden.
+     * Die Zeilen werden über eine eigene Leseverbindung einzeln gelesen und abgebildet,
+     * sodass auch ein Scan über den gesamten Tresor mit konstantem Speicher auskommt.
+     *
+     * @param filter Filter, den eine Datei erfüllen muss, oder null für alle Dateien
+     * @param sink Empfänger der gefilterten Dateien
+     * @throws RuntimeException wenn beim Lesen ein Datenbankfehler auftritt
+     */
+    public void forEachFile(Predicate<EncryptedFile> filter, Consumer<EncryptedFile> sink) {
+        try (Stream<EncryptedFile> files = streamFiles()) {
+            (filter != null ? files.filter(filter) : files).forEach(sink);
+        }
+    }
+
+    /**
+     * Gibt alle Dateien des Tresors als lazy gelesenen Stream zurück, sortiert nach ID.
+     * Der Stream hält eine eigene Leseverbindung offen, bis er geschlossen wird, und muss
+     * daher in einem try-with-resources-Block verwendet werden.
+     *
+     * @return Stream aller Dateien
+     * @throws RuntimeException wenn die Abfrage nicht gestartet werden kann
+     */
+    public Stream<EncryptedFile> streamFiles() {
+        Connection conn = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            conn = DatabaseManager.openReadConnection();
+            stmt = conn.prepareStatement("SELECT * FROM files WHERE " + TrashManager.liveFile() + " ORDER BY id");
+            stmt.setFetchSize(scanFetchSize);
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(rs, stmt, conn);
+            LoggingUtil.logError("FileStorage", "Error starting file scan: " + e.getMessage());
+            throw new RuntimeException("Fehler beim Starten des Datei-Scans", e);
+        }
+
+        final Connection scanConnection = conn;
+        final PreparedStatement scanStatement = stmt;
+        final ResultSet scanResults = rs;
+        Spliterator<EncryptedFile> spliterator = new Spliterators.AbstractSpliterator<>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super EncryptedFile> action) {
+                try {
+                    if (!scanResults.next()) {
+                        return false;
+                    }
+                    action.accept(mapFile(scanResults));
+                    return true;
+                } catch (SQLException e) {
+                    LoggingUtil.logError("FileStorage", "Error during file scan: " + e.getMessage());
+                    throw new RuntimeException("Fehler beim Datei-Scan", e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> closeQuietly(scanResults, scanStatement, scanConnection));
+    }
+
+    /**
+     * Setzt die Anzahl der Zeilen, die bei Scans pro Abruf aus der Datenbank gelesen werden.
+     *
+     * @param fetchSize Die Abrufgröße (mindestens 1)
+     * @throws IllegalArgumentException wenn die Abrufgröße kleiner als 1 ist
+     */
+    public void setScanFetchSize(int fetchSize) {
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException("Abrufgröße muss mindestens 1 sein");
+        }
+        this.scanFetchSize = fetchSize;
+    }
+
+    /**
+     * Gibt die Anzahl der Zeilen zurück, die bei Scans pro Abruf gelesen werden.
+     *
+     * @return Die Abrufgröße
+     */
+    public int getScanFetchSize() {
+        return scanFetchSize;
+    }
+
+    /**
+     * Schließt die übergebenen JDBC-Ressourcen und protokolliert dabei auftretende Fehler.
+     *
+     * @param resources Die zu schließenden Ressourcen; null-Einträge werden übersprungen
+     */
+    private static void closeQuietly(AutoCloseable... resources) {
+        for (AutoCloseable resource : resources) {
+            if (resource == null) {
+                continue;
+            }
+            try {
+                resource.close();
+            } catch (Exception e) {
+                LoggingUtil.logError("FileStorage", "Error closing scan resource: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Retrieves files by folder ID.
+     *
+     * @param folderId The ID of the folder.
+     * @return A list of files in the specified folder.
+     */
+    public List<EncryptedFile> getFilesByFolderId(int folderId) {
+        MetadataCache<Integer, List<EncryptedFile>> cache = folderListingCache;
+        List<EncryptedFile> cached = cache.get(folderId);
+        if (cached != null) {
+            return copyOf(cached);
+        }
+
+        long generation = cache.getGeneration();
+        List<EncryptedFile> files;
+        try {
+            files = DatabaseManager.getMetadataStore().getFilesInFolder(folderId);
         } catch (SQLException e) {
             LoggingUtil.logError("FileStorage", "Error retrieving files by folder ID: " + e.getMessage());
+            return new ArrayList<>();
         }
 
-        return files;
+        // Skip the put if the listing was invalidated while it was being read
+        cache.putIfUnchanged(folderId, List.copyOf(files), generation);
+        return copyOf(files);
     }
 
     /**
@@ -438,44 +1161,192 @@ public class FileStorage {
      * @return The created EncryptedFile object.
      */
     public EncryptedFile createFileRecord(String fileName, int folderId) {
+        try {
+            EncryptedFile file = DatabaseManager.getMetadataStore().insertFile(
+                    folderId, fileName, "", 0, "application/octet-stream");
+            folderListingCache.invalidate(folderId);
+            return file;
+        } catch (SQLException e) {
+            LoggingUtil.logError("FileStorage", "Error creating file record: " + e.getMessage());
+        }
+
+        return null;
+    }
+
+    /**
+     * Durchsucht die Namen, MIME-Typen und Beschreibungen aller Dateien und Ordner
+     * über den FTS5-Suchindex. Jeder Suchbegriff wird als Präfix behandelt und alle
+     * Begriffe müssen vorkommen. Die Treffer sind nach BM25-Relevanz sortiert.
+     *
+     * @param query Die Suchanfrage, z.B. "doc pdf"
+     * @param limit Maximale Anzahl der Treffer dieser Seite
+     * @param cursor Cursor einer vorherigen Seite oder null für die erste Seite
+     * @return Die Ergebnisseite mit den Treffern und dem Cursor für die nächste Seite
+     * @throws IllegalArgumentException wenn das Limit oder der Cursor ungültig ist
+     */
+    public ResultPage<SearchHit> search(String query, int limit, String cursor) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit muss größer als 0 sein");
+        }
+
+        String matchExpression = toMatchExpression(query);
+        List<SearchHit> hits = new ArrayList<>();
+        if (matchExpression.isEmpty()) {
+            return new ResultPage<>(hits, null);
+        }
+
+        double afterScore = Double.NEGATIVE_INFINITY;
+        long afterRowId = Long.MIN_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = decodeCursor(cursor).split(":");
+            try {
+                afterScore = Double.parseDouble(parts[0]);
+                afterRowId = Long.parseLong(parts[1]);
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Ungültiger Cursor", e);
+            }
+        }
+
+        boolean hasMore = false;
         try (Connection conn = DatabaseManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO files (folder_id, original_name, encrypted_path, size_bytes, mime_type, created_at) " +
-                             "VALUES (?, ?, '', 0, 'application/octet-stream', CURRENT_TIMESTAMP)",
-                     PreparedStatement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setInt(1, folderId);
-            stmt.setString(2, fileName);
-
-            int affected = stmt.executeUpdate();
-
-            if (affected > 0) {
-                try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                    if (generatedKeys.next()) {
-                        int id = generatedKeys.getInt(1);
-
-                        return new EncryptedFile(
-                                id,
-                                folderId,
-                                fileName,
-                                "",
-                                0,
-                                "application/octet-stream",
-                                LocalDateTime.now(),
-                                null
-                        );
-                    } else {
-                        LoggingUtil.logError("FileStorage", "No generated keys returned for the new file record.");
+                     "SELECT rowid, name, mime_type, folder_id, rank FROM search_index " +
+                     "WHERE search_index MATCH ? AND (rank > ? OR (rank = ? AND rowid > ?)) " +
+                     "AND (folder_id IS NULL OR " + TrashManager.notTrashed("folder_id") + ") " +
+                     "ORDER BY rank, rowid LIMIT ?")) {
+
+            stmt.setString(1, matchExpression);
+            stmt.setDouble(2, afterScore);
+            stmt.setDouble(3, afterScore);
+            stmt.setLong(4, afterRowId);
+            stmt.setInt(5, limit + 1);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (hits.size() == limit) {
+                        hasMore = true;
+                        break;
                     }
+                    long rowId = rs.getLong("rowid");
+                    Object folderId = rs.getObject("folder_id");
+                    hits.add(new SearchHit(
+                            rowId % 2 == 0 ? SearchHit.Type.FILE : SearchHit.Type.FOLDER,
+                            (int) (rowId / 2),
+                            rs.getString("name"),
+                            rs.getString("mime_type"),
+                            folderId != null ? ((Number) folderId).intValue() : null,
+                            rs.getDouble("rank")));
+                    afterScore = rs.getDouble("rank");
+                    afterRowId = rowId;
                 }
-            } else {
-                LoggingUtil.logError("FileStorage", "No rows were affected when attempting to insert the file record.");
             }
         } catch (SQLException e) {
-            LoggingUtil.logError("FileStorage", "Error creating file record: " + e.getMessage());
+            LoggingUtil.logError("FileStorage", "Fehler bei der Suche: " + e.getMessage());
+            return new ResultPage<>(new ArrayList<>(), null);
         }
 
-        return null;
+        String nextCursor = hasMore ? encodeCursor(afterScore + ":" + afterRowId) : null;
+        return new ResultPage<>(hits, nextCursor);
+    }
+
+    /**
+     * Erstellt eine Projektion aus der aktuellen Zeile einer Abfrage über {@link #SUMMARY_COLUMNS}.
+     * Die Spalten werden über ihre Position gelesen.
+     *
+     * @param rs Das ResultSet, positioniert auf einer Zeile
+     * @return Die Projektion der Datei
+     * @throws SQLException wenn eine Spalte nicht gelesen werden kann
+     */
+    static FileSummary mapSummary(ResultSet rs) throws SQLException {
+        return new FileSummary(rs.getInt(1), rs.getString(2), rs.getInt(3), rs.getLong(4), rs.getLong(5));
+    }
+
+    /**
+     * Erstellt ein EncryptedFile-Objekt aus der aktuellen Zeile eines ResultSets der Tabelle files.
+     *
+     * @param rs Das ResultSet, positioniert auf einer Zeile
+     * @return Die Datei
+     * @throws SQLException wenn eine Spalte nicht gelesen werden kann
+     */
+    static EncryptedFile mapFile(ResultSet rs) throws SQLException {
+        Timestamp createdTimestamp = rs.getTimestamp("created_at");
+        Timestamp lastAccessTimestamp = rs.getTimestamp("last_access");
+
+        LocalDateTime createdAt = createdTimestamp != null
+                ? createdTimestamp.toLocalDateTime()
+                : null;
+
+        LocalDateTime lastAccess = lastAccessTimestamp != null
+                ? lastAccessTimestamp.toLocalDateTime()
+                : null;
+
+        EncryptedFile file = new EncryptedFile(
+                rs.getInt("id"),
+                rs.getInt("folder_id"),
+                rs.getString("original_name"),
+                BlobStore.resolve(rs.getString("encrypted_path")),
+                rs.getLong("size_bytes"),
+                rs.getString("mime_type"),
+                createdAt,
+                lastAccess
+        );
+        int packId = rs.getInt("pack_id");
+        if (!rs.wasNull()) {
+            file.setPackLocation(packId, rs.getLong("pack_offset"), rs.getInt("pack_length"));
+        }
+        file.setStorage(StorageTier.valueOf(rs.getString("storage_tier")), rs.getInt("compressed") != 0);
+        return file;
+    }
+
+    /**
+     * Wandelt eine Benutzereingabe in einen FTS5-MATCH-Ausdruck um. Jeder Begriff wird
+     * in Anführungszeichen gesetzt, damit Sonderzeichen keine FTS5-Syntax bilden, und
+     * als Präfix gesucht.
+     *
+     * @param query Die Benutzereingabe
+     * @return Der MATCH-Ausdruck oder ein leerer String, wenn keine Begriffe enthalten sind
+     */
+    static String toMatchExpression(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder expression = new StringBuilder();
+        for (String term : query.trim().split("\\s+")) {
+            String cleaned = term.replace("\"", "");
+            if (cleaned.isEmpty()) {
+                continue;
+            }
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append('"').append(cleaned).append("\"*");
+        }
+        return expression.toString();
+    }
+
+    /**
+     * Kodiert den internen Zustand eines Cursors als undurchsichtige Zeichenkette.
+     *
+     * @param state Der interne Zustand
+     * @return Der kodierte Cursor
+     */
+    static String encodeCursor(String state) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(state.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Dekodiert einen mit {@link #encodeCursor(String)} erzeugten Cursor.
+     *
+     * @param cursor Der kodierte Cursor
+     * @return Der interne Zustand
+     * @throws IllegalArgumentException wenn der Cursor nicht dekodiert werden kann
+     */
+    static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Ungültiger Cursor", e);
+        }
     }
 
     /**
@@ -484,7 +1355,98 @@ public class FileStorage {
      */
     public void reloadFromDatabase() {
         LoggingUtil.logInfo("FileStorage", "Reloading files from database");
-        // Die Dateiliste wird nicht zwischengespeichert, sondern immer direkt geladen
-        // Daher muss hier nichts getan werden außer zu loggen
+        invalidateCache();
+    }
+
+    /**
+     * Verwirft alle zwischengespeicherten Dateien und Dateilisten.
+     * Muss aufgerufen werden, wenn die Datenbank außerhalb des FileStorage verändert wurde.
+     */
+    public void invalidateCache() {
+        fileCache.invalidateAll();
+        folderListingCache.invalidateAll();
+    }
+
+    /**
+     * Verwirft die zwischengespeicherte Dateiliste eines Ordners und alle
+     * zwischengespeicherten Dateien dieses Ordners.
+     *
+     * @param folderId Die ID des Ordners
+     */
+    public void invalidateFolder(int folderId) {
+        folderListingCache.invalidate(folderId);
+        fileCache.invalidateIf((id, file) -> file.getFolderId() == folderId);
+    }
+
+    /**
+     * Konfiguriert die Metadaten-Caches neu. Bestehende Einträge und Zähler werden verworfen.
+     *
+     * @param capacity Maximale Anzahl der Einträge je Cache
+     * @param ttlMillis Lebensdauer der Einträge in Millisekunden, 0 für unbegrenzt
+     * @throws IllegalArgumentException wenn Kapazität oder Lebensdauer ungültig sind
+     */
+    public void configureCache(int capacity, long ttlMillis) {
+        fileCache = new MetadataCache<>(capacity, ttlMillis);
+        folderListingCache = new MetadataCache<>(capacity, ttlMillis);
+        LoggingUtil.logInfo("FileStorage", "Metadata cache configured: capacity=" + capacity + ", ttl=" + ttlMillis + "ms");
+    }
+
+    /**
+     * Gibt den Cache der Dateien nach ID zurück, etwa um dessen Zähler auszulesen.
+     *
+     * @return Der Datei-Cache
+     */
+    public MetadataCache<Integer, EncryptedFile> getFileCache() {
+        return fileCache;
+    }
+
+    /**
+     * Gibt den Cache der Dateilisten nach Ordner-ID zurück, etwa um dessen Zähler auszulesen.
+     *
+     * @return Der Cache der Dateilisten
+     */
+    public MetadataCache<Integer, List<EncryptedFile>> getFolderListingCache() {
+        return folderListingCache;
+    }
+
+    /**
+     * Verwirft eine Datei und die Dateiliste ihres Ordners aus dem Cache.
+     *
+     * @param fileId Die ID der Datei
+     * @param folderId Die ID des Ordners der Datei
+     */
+    private void invalidateFile(int fileId, int folderId) {
+        fileCache.invalidate(fileId);
+        folderListingCache.invalidate(folderId);
+    }
+
+    /**
+     * Erstellt eine unabhängige Kopie einer Datei, damit Aufrufer zwischengespeicherte
+     * Einträge nicht verändern können.
+     *
+     * @param file Die zu kopierende Datei
+     * @return Die Kopie
+     */
+    private static EncryptedFile copyOf(EncryptedFile file) {
+        EncryptedFile copy = new EncryptedFile(file.getId(), file.getFolderId(), file.getOriginalName(),
+                file.getEncryptedPath(), file.getSizeBytes(), file.getMimeType(),
+                file.getCreatedAt(), file.getLastAccess());
+        copy.setPackLocation(file.getPackId(), file.getPackOffset(), file.getPackLength());
+        copy.setStorage(file.getStorageTier(), file.isCompressed());
+        return copy;
+    }
+
+    /**
+     * Erstellt eine veränderbare Liste mit Kopien der übergebenen Dateien.
+     *
+     * @param files Die zu kopierenden Dateien
+     * @return Die Liste der Kopien
+     */
+    private static List<EncryptedFile> copyOf(List<EncryptedFile> files) {
+        List<EncryptedFile> copies = new ArrayList<>(files.size());
+        for (EncryptedFile file : files) {
+            copies.add(copyOf(file));
+        }
+        return copies;
     }
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+package com.filevault.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Schreibt einen Ordner samt aller Unterordner als ZIP-Archiv in einen Datenstrom.
+ * <p>
+ * Das Archiv wird nie als Ganzes gehalten: Die Dateien werden seitenweise aufgelistet und
+ * direkt in den ZIP-Strom entschlüsselt, sodass die ersten Bytes unabhängig von der Größe
+ * des Ordners sofort geschrieben werden. Bereits komprimierte Formate werden je nach
+ * MIME-Typ ohne erneute Kompression übernommen.
+ */
+public class FolderArchiver {
+
+    /** Die einzige Instanz des FolderArchiver */
+    private static FolderArchiver instance;
+
+    /** Anzahl der Dateien, die pro Abfrage aufgelistet werden */
+    private static final int PAGE_SIZE = 256;
+
+    /** Größe des Puffers vor dem Ausgabestrom */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** MIME-Typen, die standardmäßig ohne Kompression übernommen werden */
+    private static final List<String> DEFAULT_STORED_MIME_TYPES = List.of(
+            "image/jpeg", "image/png", "image/gif", "image/webp", "video/*", "audio/*",
+            "application/zip", "application/gzip", "application/x-7z-compressed", "application/x-rar-compressed",
+            "application/x-bzip2", "application/x-xz", "application/pdf");
+
+    /** MIME-Typen, die ohne Kompression übernommen werden; "typ/*" gilt für alle Untertypen */
+    private volatile Set<String> storedMimeTypes = Set.copyOf(DEFAULT_STORED_MIME_TYPES);
+
+    /** Kompressionsstufe für alle übrigen Dateien */
+    private volatile int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private FolderArchiver() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des FolderArchiver zurück.
+     *
+     * @return Die Instanz des FolderArchiver
+     */
+    public static synchronized FolderArchiver getInstance() {
+        if (instance == null) {
+            instance = new FolderArchiver();
+        }
+        return instance;
+    }
+
+    /**
+     * Schreibt einen Ordner als ZIP-Archiv. Die Dateien des Ordners liegen auf der obersten
+     * Ebene des Archivs, jeder Unterordner als Verzeichnis. Dateien, deren verschlüsselter
+     * Inhalt nicht geöffnet werden kann, werden ausgelassen. Der Ausgabestrom wird nicht geschlossen.
+     *
+     * @param folder Der Ordner
+     * @param outputStream Das Ziel für das Archiv
+     * @return Die Anzahl der geschriebenen Dateien
+     * @throws IOException wenn das Archiv nicht geschrieben oder eine Datei nicht entschlüsselt
+     *                     werden kann; das Archiv ist dann unvollständig
+     * @throws SQLException wenn die Ordnerstruktur nicht gelesen werden kann
+     */
+    public int writeArchive(VirtualFolder folder, OutputStream outputStream) throws IOException, SQLException {
+        LoggingUtil.logInfo("FolderArchiver", "Starting archive of folder " + folder.getId());
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        if (!(store instanceof SqliteMetadataStore sqliteStore)) {
+            return writeArchive(folder, outputStream, store, null, null);
+        }
+        // Das Archiv wird auf einer eigenen Leseverbindung aufgelistet, damit es auch aus
+        // einem anderen Thread als dem der gemeinsamen Verbindung geschrieben werden kann
+        try (Connection conn = DatabaseManager.openReadConnection()) {
+            return writeArchive(folder, outputStream, store, sqliteStore, conn);
+        }
+    }
+
+    /**
+     * Schreibt das Archiv; mit einer Verbindung werden alle Metadaten über sie gelesen.
+     */
+    private int writeArchive(VirtualFolder folder, OutputStream outputStream, MetadataStore store,
+                             SqliteMetadataStore sqliteStore, Connection conn) throws IOException, SQLException {
+        FileStorage storage = FileStorage.getInstance();
+        BufferedOutputStream buffered = new BufferedOutputStream(outputStream, BUFFER_SIZE);
+        ZipOutputStream zip = new ZipOutputStream(buffered);
+        Map<Integer, String> directories = new HashMap<>();
+        directories.put(folder.getId(), "");
+        Set<String> usedNames = new HashSet<>();
+        int written = 0;
+        int skipped = 0;
+
+        // Der Teilbaum ist nach Tiefe sortiert, übergeordnete Ordner kommen also zuerst
+        List<Integer> subtree = conn == null ? store.getSubtreeFolderIds(folder.getId())
+                : sqliteStore.getSubtreeFolderIds(conn, folder.getId());
+        for (int folderId : subtree) {
+            if (folderId != folder.getId()) {
+                VirtualFolder subfolder = conn == null ? store.getFolder(folderId) : sqliteStore.getFolder(conn, folderId);
+                String parentPath = subfolder == null ? null : directories.get(subfolder.getParentId());
+                if (parentPath == null) {
+                    continue;
+                }
+                String path = uniqueName(parentPath, subfolder.getName(), subfolder.getId(), usedNames);
+                directories.put(folderId, path);
+                zip.putNextEntry(new ZipEntry(path + "/"));
+                zip.closeEntry();
+            }
+            String directory = directories.get(folderId);
+
+            String cursor = null;
+            ResultPage<EncryptedFile> page;
+            do {
+                if (conn == null) {
+                    page = storage.getFilesByFolderId(folderId, FileSortKey.NAME, cursor, PAGE_SIZE);
+                } else {
+                    page = storage.getFilesByFolderId(conn, folderId, FileSortKey.NAME, cursor, PAGE_SIZE);
+                    // Pfade der Pack-Dateien vorab auflösen, damit das Lesen die Datenbank nicht braucht
+                    for (EncryptedFile file : page.getItems()) {
+                        if (file.isPacked()) {
+                            PackStore.getInstance().pathOf(conn, file.getPackId());
+                        }
+                    }
+                }
+                for (EncryptedFile file : page.getItems()) {
+                    String name = uniqueName(directory, file.getOriginalName(), file.getId(), usedNames);
+                    if (writeEntry(zip, storage, file, name)) {
+                        written++;
+                    } else {
+                        skipped++;
+                    }
+                }
+                cursor = page.getNextCursor();
+            } while (page.hasMore());
+        }
+
+        zip.finish();
+        buffered.flush();
+        LoggingUtil.logInfo("FolderArchiver", "Archive of folder " + folder.getId() + " completed: " + written
+                + " files, " + skipped + " skipped");
+        return written;
+    }
+
+    /**
+     * Entschlüsselt eine Datei direkt in einen neuen Eintrag des Archivs.
+     *
+     * @return false, wenn der verschlüsselte Inhalt nicht geöffnet werden kann
+     */
+    private boolean writeEntry(ZipOutputStream zip, FileStorage storage, EncryptedFile file, String name)
+            throws IOException {
+        InputStream inputStream;
+        try {
+            inputStream = storage.openEncrypted(file);
+        } catch (IOException | SQLException e) {
+            LoggingUtil.logWarning("FolderArchiver", "Skipping unreadable file " + file.getId() + ": " + e.getMessage());
+            return false;
+        }
+
+        try (inputStream) {
+            ZipEntry entry = new ZipEntry(name);
+            if (file.getCreatedAt() != null) {
+                entry.setTimeLocal(file.getCreatedAt());
+            }
+            // Bereits komprimierte Formate werden ohne erneute Kompression übernommen
+            zip.setLevel(isStored(file.getMimeType()) ? Deflater.NO_COMPRESSION : deflateLevel);
+            zip.putNextEntry(entry);
+            storage.decrypt(file, inputStream, zip);
+            zip.closeEntry();
+            return true;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Datei " + file.getId() + " kann nicht entschlüsselt werden: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Bildet einen eindeutigen Namen innerhalb des Archivs.
+     */
+    private static String uniqueName(String parentPath, String name, int id, Set<String> usedNames) {
+        String safeName = FolderExporter.safeName(name, id);
+        String path = parentPath.isEmpty() ? safeName : parentPath + "/" + safeName;
+        if (!usedNames.add(path.toLowerCase())) {
+            path = path + " (" + id + ")";
+            usedNames.add(path.toLowerCase());
+        }
+        return path;
+    }
+
+    /**
+     * Gibt an, ob Dateien eines MIME-Typs ohne Kompression übernommen werden.
+     *
+     * @param mimeType Der MIME-Typ oder null
+     * @return true, wenn der Typ oder sein Obertyp als bereits komprimiert eingetragen ist
+     */
+    public boolean isStored(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        String type = mimeType.toLowerCase();
+        int slash = type.indexOf('/');
+        Set<String> stored = storedMimeTypes;
+        return stored.contains(type) || (slash > 0 && stored.contains(type.substring(0, slash) + "/*"));
+    }
+
+    /**
+     * Legt fest, welche MIME-Typen ohne Kompression übernommen werden. Ein Eintrag der Form
+     * "typ/*" gilt für alle Untertypen.
+     *
+     * @param mimeTypes Die MIME-Typen
+     */
+    public void setStoredMimeTypes(Collection<String> mimeTypes) {
+        Set<String> normalized = new HashSet<>();
+        for (String mimeType : mimeTypes) {
+            normalized.add(mimeType.toLowerCase());
+        }
+        this.storedMimeTypes = Set.copyOf(normalized);
+    }
+
+    /**
+     * Stellt die standardmäßigen MIME-Typen ohne Kompression wieder her.
+     */
+    public void resetStoredMimeTypes() {
+        setStoredMimeTypes(DEFAULT_STORED_MIME_TYPES);
+    }
+
+    /**
+     * Setzt die Kompressionsstufe für alle Dateien, die komprimiert werden.
+     *
+     * @param deflateLevel Die Stufe von 1 (schnell) bis 9 (klein)
+     */
+    public void setDeflateLevel(int deflateLevel) {
+        this.deflateLevel = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, deflateLevel));
+    }
+}
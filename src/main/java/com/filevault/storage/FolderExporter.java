@@ -0,0 +1,459 @@
+package com.filevault.storage;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Exportiert einen Ordner samt aller Unterordner in ein Zielverzeichnis.
+ * <p>
+ * Die Dateien werden von einer begrenzten Zahl von Threads parallel entschlüsselt, der
+ * Fortschritt wird dennoch in der Reihenfolge der Auflistung gemeldet. Jede Datei entsteht
+ * zunächst als {@code .part}-Datei und erhält ihren Namen erst, wenn sie vollständig
+ * geschrieben ist; danach wird sie mit Größe und SHA-256-Prüfsumme in einem Manifest im
+ * Zielverzeichnis vermerkt. Ein abgebrochener Export wird beim nächsten Aufruf fortgesetzt,
+ * indem vollständige und geprüfte Dateien übersprungen werden.
+ */
+public class FolderExporter {
+
+    /** Die einzige Instanz des FolderExporter */
+    private static FolderExporter instance;
+
+    /** Name des Manifests im Zielverzeichnis */
+    public static final String MANIFEST_NAME = ".filevault-export";
+
+    /** Endung unvollständiger Dateien */
+    static final String PART_SUFFIX = ".part";
+
+    /** Zeichen, die in Datei- und Ordnernamen des Zielverzeichnisses ersetzt werden */
+    private static final String UNSAFE_NAME_CHARS = "[/\\\\:*?\"<>|\\x00-\\x1f]";
+
+    /**
+     * Ergebnis des Exports einer einzelnen Datei.
+     */
+    public enum Status {
+        /** Die Datei wurde entschlüsselt und geschrieben */
+        EXPORTED,
+        /** Die Datei lag bereits vollständig und geprüft im Zielverzeichnis */
+        SKIPPED,
+        /** Die Datei konnte nicht exportiert werden */
+        FAILED
+    }
+
+    /**
+     * Empfängt den Fortschritt eines Exports. Die Meldungen kommen in der Reihenfolge der
+     * Auflistung und aus dem aufrufenden Thread.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Meldet das Ergebnis einer Datei.
+         *
+         * @param index Position der Datei in der Auflistung, beginnend bei 0
+         * @param total Anzahl aller Dateien des Exports
+         * @param file Die Datei
+         * @param target Die Zieldatei
+         * @param status Das Ergebnis
+         */
+        void onFile(int index, int total, EncryptedFile file, Path target, Status status);
+    }
+
+    /**
+     * Einstellungen eines Ordnerexports.
+     */
+    public static class Options {
+
+        /** Anzahl der Dateien, die gleichzeitig entschlüsselt werden */
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+
+        /** Gibt an, ob vorhandene Dateien vor dem Überspringen gegen ihre Prüfsumme geprüft werden */
+        private boolean verifyExisting = true;
+
+        /** Empfänger des Fortschritts oder null */
+        private ProgressListener listener;
+
+        /**
+         * Gibt die Anzahl der Dateien zurück, die gleichzeitig entschlüsselt werden.
+         *
+         * @return Die Anzahl der Threads
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * Setzt die Anzahl der Dateien, die gleichzeitig entschlüsselt werden.
+         *
+         * @param parallelism Die Anzahl der Threads, mindestens 1
+         */
+        public void setParallelism(int parallelism) {
+            this.parallelism = Math.max(1, parallelism);
+        }
+
+        /**
+         * Gibt an, ob vorhandene Dateien vor dem Überspringen gegen ihre Prüfsumme geprüft werden.
+         *
+         * @return true, wenn der Inhalt geprüft wird; sonst nur die Größe
+         */
+        public boolean isVerifyExisting() {
+            return verifyExisting;
+        }
+
+        /**
+         * Legt fest, ob vorhandene Dateien vor dem Überspringen gegen ihre Prüfsumme geprüft werden.
+         *
+         * @param verifyExisting true, um den Inhalt zu prüfen; false, um nur die Größe zu vergleichen
+         */
+        public void setVerifyExisting(boolean verifyExisting) {
+            this.verifyExisting = verifyExisting;
+        }
+
+        /**
+         * Gibt den Empfänger des Fortschritts zurück.
+         *
+         * @return Der Empfänger oder null
+         */
+        public ProgressListener getListener() {
+            return listener;
+        }
+
+        /**
+         * Setzt den Empfänger des Fortschritts.
+         *
+         * @param listener Der Empfänger oder null
+         */
+        public void setListener(ProgressListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Ergebnis eines Ordnerexports.
+     *
+     * @param exported Anzahl der geschriebenen Dateien
+     * @param skipped Anzahl der bereits vollständig vorhandenen Dateien
+     * @param failed Anzahl der fehlgeschlagenen Dateien
+     * @param bytesExported Summe der Größen der geschriebenen Dateien
+     * @param failures Fehlermeldung je relativem Pfad einer fehlgeschlagenen Datei
+     */
+    public record Summary(int exported, int skipped, int failed, long bytesExported, Map<String, String> failures) {
+    }
+
+    /**
+     * Eine zu exportierende Datei und ihr Pfad relativ zum Zielverzeichnis.
+     */
+    private record Task(EncryptedFile file, String relativePath) {
+    }
+
+    /**
+     * Ergebnis einer Datei aus einem der parallelen Threads.
+     */
+    private record Outcome(Status status, String sha256) {
+    }
+
+    /**
+     * Ein Eintrag des Manifests: eine vollständig exportierte Datei.
+     */
+    private record ManifestEntry(int fileId, long sizeBytes, String contentKey, String sha256) {
+    }
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private FolderExporter() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des FolderExporter zurück.
+     *
+     * @return Die Instanz des FolderExporter
+     */
+    public static synchronized FolderExporter getInstance() {
+        if (instance == null) {
+            instance = new FolderExporter();
+        }
+        return instance;
+    }
+
+    /**
+     * Exportiert einen Ordner samt Unterordnern in ein Zielverzeichnis. Die Dateien des
+     * Ordners landen direkt im Zielverzeichnis, jeder Unterordner als gleichnamiges Verzeichnis.
+     *
+     * @param folder Der zu exportierende Ordner
+     * @param target Das Zielverzeichnis, wird bei Bedarf angelegt
+     * @param options Die Einstellungen
+     * @return Das Ergebnis des Exports
+     * @throws IOException wenn das Zielverzeichnis oder das Manifest nicht geschrieben werden kann
+     * @throws SQLException wenn die Ordnerstruktur nicht gelesen werden kann
+     */
+    public Summary export(VirtualFolder folder, Path target, Options options) throws IOException, SQLException {
+        LoggingUtil.logInfo("FolderExporter", "Starting export of folder " + folder.getId() + " to " + target);
+        Files.createDirectories(target);
+        List<Task> tasks = listTasks(folder, target);
+        Map<String, ManifestEntry> manifest = readManifest(target.resolve(MANIFEST_NAME));
+
+        ExecutorService decryptors = Executors.newFixedThreadPool(options.getParallelism(), runnable -> {
+            Thread thread = new Thread(runnable, "folder-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int exported = 0;
+        int skipped = 0;
+        long bytesExported = 0;
+        Map<String, String> failures = new LinkedHashMap<>();
+        try (BufferedWriter manifestWriter = Files.newBufferedWriter(target.resolve(MANIFEST_NAME),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            List<Future<Outcome>> results = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                ManifestEntry previous = manifest.get(task.relativePath());
+                results.add(decryptors.submit(() -> exportOne(task, target, previous, options.isVerifyExisting())));
+            }
+
+            // Ergebnisse werden in der Reihenfolge der Auflistung abgeholt, während die
+            // übrigen Dateien weiter parallel entschlüsselt werden
+            for (int i = 0; i < tasks.size(); i++) {
+                Task task = tasks.get(i);
+                Outcome outcome;
+                try {
+                    outcome = results.get(i).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    LoggingUtil.logError("FolderExporter", "Export failed for " + task.relativePath() + ": " + cause.getMessage());
+                    failures.put(task.relativePath(), cause.getMessage());
+                    outcome = new Outcome(Status.FAILED, null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Export unterbrochen", e);
+                }
+                if (outcome.status() == Status.EXPORTED) {
+                    exported++;
+                    bytesExported += task.file().getSizeBytes();
+                    manifestWriter.write(manifestLine(task, outcome.sha256()));
+                    manifestWriter.flush();
+                    // Der Zugriff wird hier vermerkt, damit nur dieser Thread in die Datenbank schreibt
+                    FileStorage.getInstance().recordAccess(task.file());
+                } else if (outcome.status() == Status.SKIPPED) {
+                    skipped++;
+                }
+                if (options.getListener() != null) {
+                    options.getListener().onFile(i, tasks.size(), task.file(), target.resolve(task.relativePath()),
+                            outcome.status());
+                }
+            }
+        } finally {
+            decryptors.shutdownNow();
+        }
+
+        LoggingUtil.logInfo("FolderExporter", "Folder export completed: " + exported + " exported, " + skipped
+                + " skipped, " + failures.size() + " failed");
+        return new Summary(exported, skipped, failures.size(), bytesExported, failures);
+    }
+
+    /**
+     * Listet alle Dateien des Teilbaums mit ihrem relativen Zielpfad auf und legt die
+     * Verzeichnisse an. Namen, die im Dateisystem nicht erlaubt sind oder doppelt vorkommen,
+     * werden angepasst.
+     */
+    private List<Task> listTasks(VirtualFolder folder, Path target) throws IOException, SQLException {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        Map<Integer, String> directories = new HashMap<>();
+        directories.put(folder.getId(), "");
+        Set<String> usedPaths = new HashSet<>();
+        List<Task> tasks = new ArrayList<>();
+        Set<Integer> packIds = new HashSet<>();
+
+        // Der Teilbaum ist nach Tiefe sortiert, übergeordnete Ordner kommen also zuerst
+        for (int folderId : store.getSubtreeFolderIds(folder.getId())) {
+            if (folderId != folder.getId()) {
+                VirtualFolder subfolder = store.getFolder(folderId);
+                String parentPath = subfolder == null ? null : directories.get(subfolder.getParentId());
+                if (parentPath == null) {
+                    continue;
+                }
+                String path = uniquePath(parentPath, subfolder.getName(), subfolder.getId(), usedPaths);
+                directories.put(folderId, path);
+                Files.createDirectories(target.resolve(path));
+            }
+            String directory = directories.get(folderId);
+            for (EncryptedFile file : FileStorage.getInstance().getFilesByFolderId(folderId)) {
+                tasks.add(new Task(file, uniquePath(directory, file.getOriginalName(), file.getId(), usedPaths)));
+                if (file.isPacked()) {
+                    packIds.add(file.getPackId());
+                }
+            }
+        }
+
+        // Pfade der Pack-Dateien werden vorab aufgelöst, damit die Threads nur Dateien lesen
+        for (int packId : packIds) {
+            PackStore.getInstance().pathOf(packId);
+        }
+        return tasks;
+    }
+
+    /**
+     * Bildet einen im Zielverzeichnis zulässigen und eindeutigen relativen Pfad.
+     */
+    private static String uniquePath(String parentPath, String name, int id, Set<String> usedPaths) {
+        String safeName = safeName(name, id);
+        if (safeName.equals(MANIFEST_NAME) || safeName.endsWith(PART_SUFFIX)) {
+            safeName = safeName + "_" + id;
+        }
+        String path = parentPath.isEmpty() ? safeName : parentPath + "/" + safeName;
+        if (!usedPaths.add(path.toLowerCase())) {
+            path = path + " (" + id + ")";
+            usedPaths.add(path.toLowerCase());
+        }
+        return path;
+    }
+
+    /**
+     * Ersetzt Zeichen, die in Datei- und Ordnernamen eines Dateisystems nicht erlaubt sind.
+     * Leere Namen sowie "." und ".." erhalten die ID angehängt.
+     *
+     * @param name Der Name im Tresor
+     * @param id Die ID der Datei oder des Ordners
+     * @return Der zulässige Name
+     */
+    static String safeName(String name, int id) {
+        String safeName = name == null ? "" : name.replaceAll(UNSAFE_NAME_CHARS, "_");
+        if (safeName.isBlank() || safeName.equals(".") || safeName.equals("..")) {
+            safeName = safeName + "_" + id;
+        }
+        return safeName;
+    }
+
+    /**
+     * Exportiert eine Datei, sofern sie nicht bereits vollständig und geprüft vorliegt.
+     * Läuft in einem der parallelen Threads und liest die Datenbank nicht.
+     */
+    private Outcome exportOne(Task task, Path target, ManifestEntry previous, boolean verifyExisting) throws Exception {
+        EncryptedFile file = task.file();
+        Path destination = target.resolve(task.relativePath());
+        if (isComplete(file, destination, previous, verifyExisting)) {
+            return new Outcome(Status.SKIPPED, previous.sha256());
+        }
+
+        // Die Prüfsumme entsteht beim Schreiben, die Datei wird dafür nicht erneut gelesen
+        Path part = destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+        FileStorage storage = FileStorage.getInstance();
+        MessageDigest digest = newDigest();
+        try (InputStream inputStream = storage.openEncrypted(file);
+             OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(part), digest)) {
+            storage.decrypt(file, inputStream, outputStream);
+        } catch (Exception e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+        if (Files.size(part) != file.getSizeBytes()) {
+            Files.deleteIfExists(part);
+            throw new IOException("Unerwartete Größe nach dem Entschlüsseln: " + task.relativePath());
+        }
+        Files.move(part, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Outcome(Status.EXPORTED, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * Prüft, ob eine Datei bereits vollständig im Zielverzeichnis liegt: Das Manifest muss
+     * dieselbe Datei mit demselben Inhalt verzeichnen, und die vorhandene Datei muss dessen
+     * Größe und, falls gewünscht, dessen Prüfsumme haben.
+     */
+    private static boolean isComplete(EncryptedFile file, Path destination, ManifestEntry previous,
+                                      boolean verifyExisting) throws IOException {
+        if (previous == null || previous.fileId() != file.getId() || previous.sizeBytes() != file.getSizeBytes()
+                || !previous.contentKey().equals(contentKey(file)) || !Files.isRegularFile(destination)
+                || Files.size(destination) != file.getSizeBytes()) {
+            return false;
+        }
+        return !verifyExisting || previous.sha256().equals(sha256(destination));
+    }
+
+    /**
+     * Bildet eine Zeile des Manifests für eine gerade exportierte Datei.
+     */
+    private static String manifestLine(Task task, String sha256) {
+        EncryptedFile file = task.file();
+        return file.getId() + "\t" + file.getSizeBytes() + "\t" + contentKey(file) + "\t"
+                + sha256 + "\t" + task.relativePath() + "\n";
+    }
+
+    /**
+     * Kennzeichnet den Inhalt einer Datei. Eine neue oder wiederhergestellte Version erhält
+     * einen neuen Zeitstempel, sodass ein früherer Export nicht mehr als vollständig gilt.
+     */
+    private static String contentKey(EncryptedFile file) {
+        return String.valueOf(file.getCreatedAt());
+    }
+
+    /**
+     * Liest das Manifest eines früheren Exports. Spätere Einträge ersetzen frühere.
+     */
+    private static Map<String, ManifestEntry> readManifest(Path manifestPath) throws IOException {
+        Map<String, ManifestEntry> entries = new HashMap<>();
+        if (!Files.exists(manifestPath)) {
+            return entries;
+        }
+        for (String line : Files.readAllLines(manifestPath, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t", 5);
+            if (parts.length < 5) {
+                continue;
+            }
+            try {
+                entries.put(parts[4], new ManifestEntry(Integer.parseInt(parts[0]), Long.parseLong(parts[1]),
+                        parts[2], parts[3]));
+            } catch (NumberFormatException e) {
+                // Eine abgebrochene letzte Zeile wird ignoriert
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Berechnet die SHA-256-Prüfsumme einer Datei.
+     */
+    private static String sha256(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream inputStream = new DigestInputStream(Files.newInputStream(path), digest)) {
+            inputStream.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Erzeugt einen neuen SHA-256-Digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,735 @@
+package com.filevault.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Importiert ein Quellverzeichnis samt aller Unterverzeichnisse in einen virtuellen Ordner.
+ * <p>
+ * Der Import läuft als Pipeline aus drei Stufen: Ein Thread durchläuft das Verzeichnis, ein
+ * Pool von Threads verschlüsselt die gefundenen Dateien parallel, und ein einzelner Thread
+ * legt die Unterordner an und schreibt die Metadaten stapelweise je Ordner. Die Zahl der
+ * gleichzeitig verschlüsselten, aber noch nicht geschriebenen Dateien ist begrenzt, sodass
+ * ein großes Verzeichnis nicht vollständig im Speicher landet.
+ * <p>
+ * Speicherkontingente prüft bereits der Verzeichnis-Thread, bevor eine Datei verschlüsselt
+ * wird. Dabei zählen die angenommenen, aber noch nicht geschriebenen Dateien mit, sodass
+ * abgelehnte Dateien keine Verschlüsselung verursachen.
+ * <p>
+ * Ein laufender Import kann abgebrochen werden. Bereits geschriebene Dateien bleiben erhalten,
+ * verschlüsselte, aber noch nicht geschriebene Dateien werden verworfen.
+ */
+public class FolderImporter {
+
+    /** Die einzige Instanz des FolderImporter */
+    private static FolderImporter instance;
+
+    /** Standardmäßige Höchstzahl der Dateien, deren Metadaten gemeinsam geschrieben werden */
+    private static final int DEFAULT_BATCH_SIZE = 256;
+
+    /** Standardmäßige Anzahl verschlüsselter Dateien, die auf das Schreiben warten dürfen */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /** Wartezeit des Schreib-Threads auf neue Eingaben, bevor er den Fortschritt erneut meldet */
+    private static final long IDLE_POLL_MILLIS = 200;
+
+    /** Mindestabstand zwischen zwei Fortschrittsmeldungen */
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Anzahl der Verschlüsselungs-Threads */
+    private volatile int workerCount = Runtime.getRuntime().availableProcessors();
+
+    /** Höchstzahl der Dateien, deren Metadaten gemeinsam geschrieben werden */
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+
+    /** Anzahl verschlüsselter Dateien, die auf das Schreiben warten dürfen */
+    private volatile int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+    /**
+     * Empfängt den Fortschritt eines Imports. Wird aus den Threads des Imports aufgerufen.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+
+        /**
+         * Meldet den aktuellen Stand des Imports.
+         *
+         * @param progress Der Fortschritt
+         */
+        void onProgress(Progress progress);
+    }
+
+    /**
+     * Stand eines Imports.
+     *
+     * @param filesFound Anzahl der bisher gefundenen Dateien
+     * @param filesImported Anzahl der importierten Dateien
+     * @param filesFailed Anzahl der fehlgeschlagenen Dateien
+     * @param bytesImported Summe der Größen der importierten Dateien
+     * @param foldersCreated Anzahl der angelegten Unterordner
+     * @param elapsedMillis Seit dem Start vergangene Zeit in Millisekunden
+     * @param finished true, wenn der Import beendet ist
+     * @param cancelled true, wenn der Import abgebrochen wurde
+     */
+    public record Progress(long filesFound, long filesImported, long filesFailed, long bytesImported,
+                           int foldersCreated, long elapsedMillis, boolean finished, boolean cancelled) {
+
+        /**
+         * Gibt den Durchsatz in Dateien pro Sekunde zurück.
+         *
+         * @return Die importierten Dateien pro Sekunde
+         */
+        public double filesPerSecond() {
+            return elapsedMillis == 0 ? 0 : filesImported * 1000.0 / elapsedMillis;
+        }
+
+        /**
+         * Gibt den Durchsatz in Bytes pro Sekunde zurück.
+         *
+         * @return Die importierten Bytes pro Sekunde
+         */
+        public double bytesPerSecond() {
+            return elapsedMillis == 0 ? 0 : bytesImported * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private FolderImporter() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des FolderImporter zurück.
+     *
+     * @return Die Instanz des FolderImporter
+     */
+    public static synchronized FolderImporter getInstance() {
+        if (instance == null) {
+            instance = new FolderImporter();
+        }
+        return instance;
+    }
+
+    /**
+     * Startet den Import eines Quellverzeichnisses in einen bestehenden Ordner. Die Dateien
+     * des Verzeichnisses landen direkt im Zielordner, jedes Unterverzeichnis wird als
+     * gleichnamiger Unterordner angelegt.
+     *
+     * @param sourceDirectory Das Quellverzeichnis
+     * @param target Der Zielordner
+     * @param listener Empfänger des Fortschritts oder null
+     * @return Der laufende Import
+     * @throws IOException wenn das Quellverzeichnis nicht gelesen werden kann
+     */
+    public Import start(Path sourceDirectory, VirtualFolder target, ProgressListener listener) throws IOException {
+        if (!Files.isDirectory(sourceDirectory) || !Files.isReadable(sourceDirectory)) {
+            throw new IOException("Quellverzeichnis kann nicht gelesen werden: " + sourceDirectory);
+        }
+        Import run = new Import(sourceDirectory, target, listener, workerCount, batchSize, queueCapacity);
+        run.start();
+        return run;
+    }
+
+    /**
+     * Setzt die Anzahl der Verschlüsselungs-Threads für künftige Importe.
+     *
+     * @param workerCount Die Anzahl der Threads, mindestens 1
+     */
+    public void setWorkerCount(int workerCount) {
+        this.workerCount = Math.max(1, workerCount);
+    }
+
+    /**
+     * Setzt die Höchstzahl der Dateien, deren Metadaten gemeinsam geschrieben werden.
+     *
+     * @param batchSize Die Stapelgröße, mindestens 1
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Setzt die Anzahl verschlüsselter Dateien, die auf das Schreiben warten dürfen.
+     *
+     * @param queueCapacity Die Kapazität, mindestens 1
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Ein laufender oder beendeter Import.
+     */
+    public static final class Import {
+
+        /** Markiert das Ende der Eingaben des Schreib-Threads */
+        private static final Object END = new Object();
+
+        /** Das Quellverzeichnis */
+        private final Path sourceDirectory;
+
+        /** Der Zielordner */
+        private final VirtualFolder target;
+
+        /** Empfänger des Fortschritts oder null */
+        private final ProgressListener listener;
+
+        /** Anzahl der Verschlüsselungs-Threads */
+        private final int workerCount;
+
+        /** Höchstzahl der Dateien, deren Metadaten gemeinsam geschrieben werden */
+        private final int batchSize;
+
+        /** Begrenzt die verschlüsselten Dateien, die auf das Schreiben warten */
+        private final Semaphore inFlight;
+
+        /** Eingaben des Schreib-Threads: verschlüsselte Dateien, Fehler und Verzeichnisse */
+        private final BlockingQueue<Object> written = new LinkedBlockingQueue<>();
+
+        /** Wird beim Ende des Schreib-Threads ausgelöst */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        /** Gesetzt, wenn der Import abgebrochen werden soll */
+        private volatile boolean cancelled;
+
+        /** Gesetzt, sobald alle Stufen beendet sind */
+        private volatile boolean finished;
+
+        /** Startzeitpunkt in Nanosekunden */
+        private long startNanos;
+
+        /** Zeitpunkt der letzten Fortschrittsmeldung in Nanosekunden, nur vom Schreib-Thread verwendet */
+        private long lastReportNanos;
+
+        /** Anzahl der gefundenen Dateien */
+        private final AtomicLong filesFound = new AtomicLong();
+
+        /** Anzahl der importierten Dateien */
+        private final AtomicLong filesImported = new AtomicLong();
+
+        /** Anzahl der fehlgeschlagenen Dateien */
+        private final AtomicLong filesFailed = new AtomicLong();
+
+        /** Summe der Größen der importierten Dateien */
+        private final AtomicLong bytesImported = new AtomicLong();
+
+        /** Anzahl der angelegten Unterordner */
+        private final AtomicInteger foldersCreated = new AtomicInteger();
+
+        /** Fehlermeldungen je fehlgeschlagener Quelldatei */
+        private final Map<File, String> failures = new LinkedHashMap<>();
+
+        /** Angelegte Ordner je relativem Verzeichnispfad, nur vom Schreib-Thread verwendet */
+        private final Map<Path, VirtualFolder> folders = new HashMap<>();
+
+        /** Noch nicht geschriebene Dateien je relativem Verzeichnispfad, nur vom Schreib-Thread verwendet */
+        private final Map<Path, List<Encrypted>> pending = new LinkedHashMap<>();
+
+        /** Eigene Schreibverbindung des Schreib-Threads oder null, wenn kein SQLite-Speicher verwendet wird */
+        private Connection connection;
+
+        /** Eigene Leseverbindung des Verzeichnis-Threads für die Kontingentprüfung oder null */
+        private Connection quotaConnection;
+
+        /** Angenommene, noch nicht geschriebene Bytes im gesamten Teilbaum des Zielordners */
+        private final AtomicLong reservedBytes = new AtomicLong();
+
+        /** Angenommene, noch nicht geschriebene neue Dateien im gesamten Teilbaum des Zielordners */
+        private final AtomicLong reservedFiles = new AtomicLong();
+
+        /** Angenommene, noch nicht geschriebene Bytes direkt im Zielordner */
+        private final AtomicLong reservedDirectBytes = new AtomicLong();
+
+        /** Angenommene, noch nicht geschriebene neue Dateien direkt im Zielordner */
+        private final AtomicLong reservedDirectFiles = new AtomicLong();
+
+        /**
+         * Eine gefundene Datei, ihr Verzeichnis relativ zum Quellverzeichnis und der für sie
+         * im Kontingent vorgemerkte Zuwachs.
+         */
+        private record Found(Path directory, File file, long growth, int newFiles) {
+        }
+
+        /**
+         * Eine verschlüsselte Datei, ihr Verzeichnis relativ zum Quellverzeichnis und der für
+         * sie im Kontingent vorgemerkte Zuwachs.
+         */
+        private record Encrypted(Path directory, FileStorage.PreparedImport item, long growth, int newFiles) {
+        }
+
+        /**
+         * Eine Datei, die nicht verschlüsselt werden konnte.
+         */
+        private record Failed(File file, String error) {
+        }
+
+        /**
+         * Ein Verzeichnis relativ zum Quellverzeichnis, das auch ohne Dateien angelegt wird.
+         */
+        private record Directory(Path directory) {
+        }
+
+        private Import(Path sourceDirectory, VirtualFolder target, ProgressListener listener,
+                       int workerCount, int batchSize, int queueCapacity) {
+            this.sourceDirectory = sourceDirectory;
+            this.target = target;
+            this.listener = listener;
+            this.workerCount = workerCount;
+            this.batchSize = batchSize;
+            this.inFlight = new Semaphore(queueCapacity);
+            folders.put(Path.of(""), target);
+        }
+
+        /**
+         * Startet Verzeichnis- und Schreib-Thread.
+         */
+        private void start() {
+            startNanos = System.nanoTime();
+            LoggingUtil.logInfo("FolderImporter", "Starting folder import of " + sourceDirectory + " into folder "
+                    + target.getId() + " with " + workerCount + " workers");
+            Thread walker = new Thread(this::walk, "folder-import-walker");
+            walker.setDaemon(true);
+            Thread writer = new Thread(this::write, "folder-import-writer");
+            writer.setDaemon(true);
+            writer.start();
+            walker.start();
+        }
+
+        /**
+         * Bricht den Import ab. Bereits geschriebene Dateien bleiben erhalten.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Gibt an, ob der Import abgebrochen wurde.
+         *
+         * @return true nach {@link #cancel()}
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Gibt an, ob der Import beendet ist.
+         *
+         * @return true, wenn alle Stufen beendet sind
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Wartet auf das Ende des Imports.
+         *
+         * @return Der abschließende Stand
+         * @throws InterruptedException wenn der wartende Thread unterbrochen wird
+         */
+        public Progress await() throws InterruptedException {
+            done.await();
+            return progress();
+        }
+
+        /**
+         * Gibt den aktuellen Stand des Imports zurück.
+         *
+         * @return Der Fortschritt
+         */
+        public Progress progress() {
+            return new Progress(filesFound.get(), filesImported.get(), filesFailed.get(), bytesImported.get(),
+                    foldersCreated.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos),
+                    isFinished(), cancelled);
+        }
+
+        /**
+         * Gibt die Fehlermeldungen der fehlgeschlagenen Quelldateien zurück.
+         *
+         * @return Fehlermeldung je Quelldatei
+         */
+        public synchronized Map<File, String> getFailures() {
+            return new LinkedHashMap<>(failures);
+        }
+
+        /**
+         * Erste Stufe: Durchläuft das Quellverzeichnis, prüft jede Datei gegen die Kontingente
+         * und übergibt sie dem Pool der Verschlüsselungs-Threads. Wartet, wenn zu viele
+         * verschlüsselte Dateien ungeschrieben sind.
+         */
+        private void walk() {
+            if (DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore) {
+                try {
+                    quotaConnection = DatabaseManager.openReadConnection();
+                } catch (SQLException e) {
+                    LoggingUtil.logWarning("FolderImporter", "Cannot open quota connection, checking on write only: " + e.getMessage());
+                }
+            }
+            ExecutorService encryptors = Executors.newFixedThreadPool(workerCount, runnable -> {
+                Thread thread = new Thread(runnable, "folder-import-encrypt");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                Files.walkFileTree(sourceDirectory, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (cancelled) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        Path relative = sourceDirectory.relativize(dir);
+                        if (!relative.toString().isEmpty()) {
+                            written.add(new Directory(relative));
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                        if (cancelled) {
+                            return FileVisitResult.TERMINATE;
+                        }
+                        if (!attrs.isRegularFile()) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        filesFound.incrementAndGet();
+                        Found found;
+                        try {
+                            found = reserve(sourceDirectory.relativize(file.getParent()), file.toFile());
+                        } catch (QuotaExceededException e) {
+                            written.add(new Failed(file.toFile(), e.getMessage()));
+                            return FileVisitResult.CONTINUE;
+                        } catch (SQLException e) {
+                            written.add(new Failed(file.toFile(), "Datenbankfehler: " + e.getMessage()));
+                            return FileVisitResult.CONTINUE;
+                        }
+                        try {
+                            inFlight.acquire();
+                        } catch (InterruptedException e) {
+                            release(found.directory(), found.growth(), found.newFiles());
+                            Thread.currentThread().interrupt();
+                            return FileVisitResult.TERMINATE;
+                        }
+                        encryptors.execute(() -> encrypt(found));
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        LoggingUtil.logError("FolderImporter", "Cannot read " + file + ": " + e.getMessage());
+                        filesFound.incrementAndGet();
+                        written.add(new Failed(file.toFile(), "Quelldatei kann nicht gelesen werden: " + e.getMessage()));
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                LoggingUtil.logError("FolderImporter", "Folder walk failed: " + e.getMessage());
+            } finally {
+                encryptors.shutdown();
+                try {
+                    while (!encryptors.awaitTermination(1, TimeUnit.SECONDS)) {
+                        // Die laufenden Verschlüsselungen werden in jedem Fall abgewartet
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (quotaConnection != null) {
+                    try {
+                        quotaConnection.close();
+                    } catch (SQLException e) {
+                        LoggingUtil.logWarning("FolderImporter", "Cannot close quota connection: " + e.getMessage());
+                    }
+                }
+                written.add(END);
+            }
+        }
+
+        /**
+         * Prüft eine gefundene Datei gegen die Kontingente und merkt ihren Zuwachs vor. Für
+         * Dateien direkt im Zielordner gelten alle seine Kontingente und eine gleichnamige Datei
+         * erhält eine neue Version; Dateien in Unterverzeichnissen landen in neuen Ordnern, für
+         * die nur Teilbaum-Kontingente gelten. Die vorgemerkten, noch nicht geschriebenen
+         * Dateien zählen jeweils mit.
+         */
+        private Found reserve(Path directory, File file) throws QuotaExceededException, SQLException {
+            boolean direct = directory.toString().isEmpty();
+            EncryptedFile existing = direct && quotaConnection != null
+                    ? VersionManager.getInstance().findCurrent(quotaConnection, target.getId(), file.getName())
+                    : null;
+            long growth = Math.max(existing == null ? file.length() : file.length() - existing.getSizeBytes(), 0);
+            int newFiles = existing == null ? 1 : 0;
+            QuotaManager quotas = QuotaManager.getInstance();
+            if (quotaConnection != null) {
+                if (direct) {
+                    quotas.checkImport(quotaConnection, target.getId(), reservedDirectBytes.get() + growth,
+                            (int) reservedDirectFiles.get() + newFiles);
+                }
+                quotas.checkSubtreeImport(quotaConnection, target.getId(), reservedBytes.get() + growth,
+                        (int) reservedFiles.get() + newFiles);
+            }
+            reservedBytes.addAndGet(growth);
+            reservedFiles.addAndGet(newFiles);
+            if (direct) {
+                reservedDirectBytes.addAndGet(growth);
+                reservedDirectFiles.addAndGet(newFiles);
+            }
+            return new Found(directory, file, growth, newFiles);
+        }
+
+        /**
+         * Gibt den vorgemerkten Zuwachs einer Datei frei, sobald sie geschrieben oder verworfen wird.
+         */
+        private void release(Path directory, long growth, int newFiles) {
+            reservedBytes.addAndGet(-growth);
+            reservedFiles.addAndGet(-newFiles);
+            if (directory.toString().isEmpty()) {
+                reservedDirectBytes.addAndGet(-growth);
+                reservedDirectFiles.addAndGet(-newFiles);
+            }
+        }
+
+        /**
+         * Zweite Stufe: Verschlüsselt eine Datei und übergibt sie dem Schreib-Thread.
+         * Nach einem Abbruch werden keine weiteren Dateien verschlüsselt.
+         */
+        private void encrypt(Found found) {
+            if (cancelled) {
+                release(found.directory(), found.growth(), found.newFiles());
+                inFlight.release();
+                return;
+            }
+            try {
+                written.add(new Encrypted(found.directory(), FileStorage.getInstance().prepareImport(found.file()),
+                        found.growth(), found.newFiles()));
+            } catch (Exception e) {
+                LoggingUtil.logError("FolderImporter", "Encryption failed for " + found.file() + ": " + e.getMessage());
+                release(found.directory(), found.growth(), found.newFiles());
+                inFlight.release();
+                written.add(new Failed(found.file(), "Verschlüsselung fehlgeschlagen: " + e.getMessage()));
+            }
+        }
+
+        /**
+         * Dritte Stufe: Legt Unterordner an und schreibt die Metadaten verschlüsselter Dateien
+         * stapelweise je Ordner. Nur dieser Thread schreibt in die Datenbank, und zwar über eine
+         * eigene Schreibverbindung, damit die gemeinsame Verbindung nicht zwischen Threads wechselt.
+         */
+        private void write() {
+            try {
+                if (DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore) {
+                    connection = DatabaseManager.openWriteConnection();
+                }
+                while (true) {
+                    Object next = written.poll();
+                    if (next == null) {
+                        // Liegt nichts mehr an, werden angefangene Stapel sofort geschrieben; solange
+                        // geschrieben wird, sammeln sich neue Dateien zum nächsten, größeren Stapel
+                        flushAll();
+                        report(false);
+                        next = written.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            continue;
+                        }
+                    }
+                    if (next == END) {
+                        break;
+                    }
+                    if (next instanceof Encrypted encrypted) {
+                        List<Encrypted> batch = pending.computeIfAbsent(encrypted.directory(), d -> new ArrayList<>());
+                        batch.add(encrypted);
+                        if (batch.size() >= batchSize) {
+                            flush(encrypted.directory(), pending.remove(encrypted.directory()));
+                            report(false);
+                        }
+                    } else if (next instanceof Failed failed) {
+                        fail(failed.file(), failed.error());
+                    } else if (next instanceof Directory directory && !cancelled) {
+                        try {
+                            folderFor(directory.directory());
+                        } catch (SQLException e) {
+                            LoggingUtil.logError("FolderImporter", "Cannot create folder for " + directory.directory() + ": " + e.getMessage());
+                        }
+                    }
+                }
+                flushAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancelled = true;
+                flushAll();
+            } catch (SQLException e) {
+                LoggingUtil.logError("FolderImporter", "Cannot open write connection: " + e.getMessage());
+                cancelled = true;
+                flushAll();
+            } finally {
+                if (connection != null) {
+                    try {
+                        connection.close();
+                    } catch (SQLException e) {
+                        LoggingUtil.logWarning("FolderImporter", "Cannot close write connection: " + e.getMessage());
+                    }
+                }
+                FileStorage.getInstance().invalidateCache();
+                finished = true;
+                Progress progress = progress();
+                LoggingUtil.logInfo("FolderImporter", "Folder import " + (cancelled ? "cancelled" : "completed") + ": "
+                        + progress.filesImported() + " imported, " + progress.filesFailed() + " failed, "
+                        + progress.foldersCreated() + " folders, " + Math.round(progress.filesPerSecond()) + " files/s");
+                report(true);
+                done.countDown();
+            }
+        }
+
+        /**
+         * Schreibt alle angefangenen Stapel.
+         */
+        private void flushAll() {
+            for (Map.Entry<Path, List<Encrypted>> entry : pending.entrySet()) {
+                flush(entry.getKey(), entry.getValue());
+            }
+            pending.clear();
+        }
+
+        /**
+         * Schreibt einen Stapel verschlüsselter Dateien eines Verzeichnisses. Gleichnamige
+         * Dateien im Ordner erhalten eine neue Version. Dateien, die ein Kontingent überschreiten
+         * würden, und alle Dateien nach einem Abbruch werden verworfen. Die Kontingente werden
+         * über die Schreibverbindung erneut geprüft, da sich die Belegung seit der Prüfung im
+         * Verzeichnis-Thread geändert haben kann.
+         */
+        private void flush(Path directory, List<Encrypted> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            inFlight.release(batch.size());
+            // Ab hier zählen die Dateien über die Ordnerstatistiken oder gar nicht mehr
+            for (Encrypted encrypted : batch) {
+                release(encrypted.directory(), encrypted.growth(), encrypted.newFiles());
+            }
+            FileStorage storage = FileStorage.getInstance();
+            if (cancelled) {
+                batch.forEach(encrypted -> storage.discardPrepared(encrypted.item()));
+                return;
+            }
+            VirtualFolder folder;
+            try {
+                folder = folderFor(directory);
+            } catch (SQLException e) {
+                LoggingUtil.logError("FolderImporter", "Cannot create folder for " + directory + ": " + e.getMessage());
+                for (Encrypted encrypted : batch) {
+                    storage.discardPrepared(encrypted.item());
+                    fail(encrypted.item().sourceFile, "Ordner konnte nicht angelegt werden: " + e.getMessage());
+                }
+                return;
+            }
+
+            List<FileStorage.PreparedImport> accepted = new ArrayList<>(batch.size());
+            long pendingBytes = 0;
+            int pendingFiles = 0;
+            for (Encrypted encrypted : batch) {
+                FileStorage.PreparedImport item = encrypted.item();
+                try {
+                    EncryptedFile existing = VersionManager.getInstance()
+                            .findCurrent(connection, folder.getId(), item.sourceFile.getName());
+                    long growth = existing == null ? item.sizeBytes : item.sizeBytes - existing.getSizeBytes();
+                    int newFiles = existing == null ? 1 : 0;
+                    // Bereits angenommene Dateien des Stapels zählen mit
+                    QuotaManager.getInstance().checkImport(connection, folder.getId(),
+                            pendingBytes + Math.max(growth, 0), pendingFiles + newFiles);
+                    item.existing = existing;
+                    accepted.add(item);
+                    pendingBytes += Math.max(growth, 0);
+                    pendingFiles += newFiles;
+                } catch (QuotaExceededException e) {
+                    storage.discardPrepared(item);
+                    fail(item.sourceFile, e.getMessage());
+                } catch (SQLException e) {
+                    storage.discardPrepared(item);
+                    fail(item.sourceFile, "Datenbankfehler: " + e.getMessage());
+                }
+            }
+
+            for (ImportResult result : storage.storePrepared(accepted, folder, connection)) {
+                if (result.isSuccess()) {
+                    filesImported.incrementAndGet();
+                    bytesImported.addAndGet(result.getImportedFile().getSizeBytes());
+                } else {
+                    fail(result.getSourceFile(), result.getError());
+                }
+            }
+        }
+
+        /**
+         * Gibt den Ordner eines Verzeichnisses zurück und legt ihn samt fehlender
+         * übergeordneter Ordner an.
+         */
+        private VirtualFolder folderFor(Path directory) throws SQLException {
+            VirtualFolder folder = folders.get(directory);
+            if (folder != null) {
+                return folder;
+            }
+            Path parentDirectory = directory.getParent() == null ? Path.of("") : directory.getParent();
+            VirtualFolder parent = folderFor(parentDirectory);
+            String name = directory.getFileName().toString();
+            String description = "Importiert aus: " + sourceDirectory.resolve(directory);
+            MetadataStore store = DatabaseManager.getMetadataStore();
+            folder = connection != null && store instanceof SqliteMetadataStore sqliteStore
+                    ? sqliteStore.insertFolder(connection, name, description, parent.getId())
+                    : store.insertFolder(name, description, parent.getId());
+            folders.put(directory, folder);
+            foldersCreated.incrementAndGet();
+            return folder;
+        }
+
+        /**
+         * Vermerkt eine fehlgeschlagene Quelldatei.
+         */
+        private synchronized void fail(File file, String error) {
+            failures.put(file, error);
+            filesFailed.incrementAndGet();
+        }
+
+        /**
+         * Meldet den aktuellen Stand an den Empfänger, höchstens alle 100 Millisekunden.
+         */
+        private void report(boolean last) {
+            if (listener == null) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (!last && now - lastReportNanos < REPORT_INTERVAL_NANOS) {
+                return;
+            }
+            lastReportNanos = now;
+            try {
+                listener.onProgress(progress());
+            } catch (RuntimeException e) {
+                LoggingUtil.logWarning("FolderImporter", "Progress listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
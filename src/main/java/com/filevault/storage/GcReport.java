@@ -0,0 +1,157 @@
+package com.filevault.storage;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ergebnis eines Laufs der {@link BlobGarbageCollector}: verschlüsselte Dateien ohne Eintrag
+ * und Einträge ohne verschlüsselte Datei.
+ */
+public class GcReport {
+
+    /** Die Aktion, mit der verwaiste Dateien behandelt wurden */
+    private final BlobGarbageCollector.Mode mode;
+
+    /** Anzahl der untersuchten Dateien im Datenverzeichnis */
+    private final long scannedBlobs;
+
+    /** Anzahl der untersuchten Verweise aus der Datenbank */
+    private final long referencedEntries;
+
+    /** Ob die Verweise in einem Bloom-Filter statt einer exakten Menge gehalten wurden */
+    private final boolean bloomFilterUsed;
+
+    /** Verwaiste Dateien relativ zum Datenverzeichnis */
+    private final List<String> orphanBlobs;
+
+    /** Gesamtgröße der verwaisten Dateien in Bytes */
+    private final long orphanBytes;
+
+    /** IDs der Einträge, deren verschlüsselte Datei fehlt */
+    private final List<Integer> missingBlobFileIds;
+
+    /** Anzahl der aus der Quarantäne endgültig gelöschten Dateien */
+    private final int purgedFromQuarantine;
+
+    /** Gesamtdauer des Laufs in Millisekunden */
+    private final long durationMillis;
+
+    /**
+     * Erstellt einen neuen Bericht.
+     *
+     * @param mode Die Aktion für verwaiste Dateien
+     * @param scannedBlobs Anzahl der untersuchten Dateien
+     * @param referencedEntries Anzahl der untersuchten Verweise
+     * @param bloomFilterUsed Ob ein Bloom-Filter verwendet wurde
+     * @param orphanBlobs Die verwaisten Dateien
+     * @param orphanBytes Die Größe der verwaisten Dateien
+     * @param missingBlobFileIds Die Einträge ohne Datei
+     * @param purgedFromQuarantine Anzahl der aus der Quarantäne gelöschten Dateien
+     * @param durationMillis Die Dauer des Laufs
+     */
+    public GcReport(BlobGarbageCollector.Mode mode, long scannedBlobs, long referencedEntries,
+                    boolean bloomFilterUsed, List<String> orphanBlobs, long orphanBytes,
+                    List<Integer> missingBlobFileIds, int purgedFromQuarantine, long durationMillis) {
+        this.mode = mode;
+        this.scannedBlobs = scannedBlobs;
+        this.referencedEntries = referencedEntries;
+        this.bloomFilterUsed = bloomFilterUsed;
+        this.orphanBlobs = Collections.unmodifiableList(orphanBlobs);
+        this.orphanBytes = orphanBytes;
+        this.missingBlobFileIds = Collections.unmodifiableList(missingBlobFileIds);
+        this.purgedFromQuarantine = purgedFromQuarantine;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Gibt die Aktion zurück, mit der verwaiste Dateien behandelt wurden.
+     *
+     * @return Die Aktion
+     */
+    public BlobGarbageCollector.Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gibt die Anzahl der untersuchten Dateien im Datenverzeichnis zurück.
+     *
+     * @return Die Anzahl der Dateien
+     */
+    public long getScannedBlobs() {
+        return scannedBlobs;
+    }
+
+    /**
+     * Gibt die Anzahl der untersuchten Verweise aus der Datenbank zurück.
+     *
+     * @return Die Anzahl der Verweise
+     */
+    public long getReferencedEntries() {
+        return referencedEntries;
+    }
+
+    /**
+     * Gibt an, ob die Verweise in einem Bloom-Filter gehalten wurden.
+     *
+     * @return true bei Verwendung eines Bloom-Filters
+     */
+    public boolean isBloomFilterUsed() {
+        return bloomFilterUsed;
+    }
+
+    /**
+     * Gibt die verwaisten Dateien relativ zum Datenverzeichnis zurück.
+     *
+     * @return Die verwaisten Dateien
+     */
+    public List<String> getOrphanBlobs() {
+        return orphanBlobs;
+    }
+
+    /**
+     * Gibt die Gesamtgröße der verwaisten Dateien zurück.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getOrphanBytes() {
+        return orphanBytes;
+    }
+
+    /**
+     * Gibt die IDs der Einträge zurück, deren verschlüsselte Datei fehlt.
+     *
+     * @return Die IDs der Einträge
+     */
+    public List<Integer> getMissingBlobFileIds() {
+        return missingBlobFileIds;
+    }
+
+    /**
+     * Gibt die Anzahl der aus der Quarantäne endgültig gelöschten Dateien zurück.
+     *
+     * @return Die Anzahl der Dateien
+     */
+    public int getPurgedFromQuarantine() {
+        return purgedFromQuarantine;
+    }
+
+    /**
+     * Gibt die Gesamtdauer des Laufs zurück.
+     *
+     * @return Die Dauer in Millisekunden
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "mode " + mode
+                + ", scanned " + scannedBlobs + " blobs / " + referencedEntries + " references"
+                + (bloomFilterUsed ? " (bloom filter)" : "")
+                + ", orphans " + orphanBlobs.size() + " (" + orphanBytes + " bytes)"
+                + ", missing blobs " + missingBlobFileIds.size()
+                + ", purged from quarantine " + purgedFromQuarantine
+                + ", total " + durationMillis + " ms";
+    }
+}
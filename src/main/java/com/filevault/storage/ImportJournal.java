@@ -0,0 +1,219 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Absichtsjournal für Importe, das neben der Datenbankdatei liegt.
+ * <p>
+ * Bevor eine verschlüsselte Datei geschrieben wird, vermerkt das Journal ihren Pfad; nachdem
+ * ihr Eintrag in der Datenbank angelegt oder der Import verworfen wurde, wird der Vermerk
+ * abgeschlossen. Stürzt der Prozess dazwischen ab, bleiben offene Vermerke zurück. Beim
+ * nächsten Start werden sie abgeglichen: Dateien, auf die kein Eintrag verweist, und
+ * zurückgebliebene temporäre Dateien werden gelöscht.
+ */
+public class ImportJournal {
+
+    /** Die einzige Instanz des ImportJournal */
+    private static ImportJournal instance;
+
+    /** Endung des Journals hinter dem Pfad der Datenbankdatei */
+    static final String JOURNAL_SUFFIX = "-imports.journal";
+
+    /** Kennung eines begonnenen Imports */
+    private static final String BEGIN = "B ";
+
+    /** Kennung eines abgeschlossenen Imports */
+    private static final String COMPLETE = "C ";
+
+    /** Größe in Bytes, ab der das Journal auf die offenen Vermerke gekürzt wird */
+    private static final long REWRITE_THRESHOLD_BYTES = 256 * 1024;
+
+    /** Geöffnetes Journal oder null */
+    private FileChannel channel;
+
+    /** Pfad des geöffneten Journals */
+    private Path channelPath;
+
+    /** Gespeicherte Pfade der offenen Importe */
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private ImportJournal() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des ImportJournal zurück.
+     *
+     * @return Die Instanz des ImportJournal
+     */
+    public static synchronized ImportJournal getInstance() {
+        if (instance == null) {
+            instance = new ImportJournal();
+        }
+        return instance;
+    }
+
+    /**
+     * Gibt den Pfad des Journals zur aktuellen Datenbank zurück.
+     *
+     * @return Der Pfad des Journals
+     */
+    public static Path getJournalPath() {
+        return Paths.get(DatabaseManager.getDatabasePath() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Vermerkt den Beginn eines Imports. Der Vermerk wird erst mit {@link #force()} dauerhaft.
+     *
+     * @param blob Der endgültige Pfad der verschlüsselten Datei
+     * @throws IOException wenn das Journal nicht geschrieben werden kann
+     */
+    public synchronized void begin(Path blob) throws IOException {
+        String stored = BlobStore.toStoredPath(blob.toString());
+        append(BEGIN + stored);
+        pending.add(stored);
+    }
+
+    /**
+     * Schließt den Vermerk eines Imports ab, nachdem sein Eintrag angelegt oder er verworfen wurde.
+     * Ein verlorener Abschluss ist unschädlich, da beim Abgleich die Datenbank entscheidet.
+     *
+     * @param blob Der endgültige Pfad der verschlüsselten Datei
+     */
+    public synchronized void complete(Path blob) {
+        String stored = BlobStore.toStoredPath(blob.toString());
+        if (!pending.remove(stored)) {
+            return;
+        }
+        try {
+            append(COMPLETE + stored);
+            if (channel.size() > REWRITE_THRESHOLD_BYTES) {
+                rewrite();
+            }
+        } catch (IOException e) {
+            LoggingUtil.logWarning("ImportJournal", "Could not record completed import: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schreibt alle bisherigen Vermerke auf die Platte.
+     *
+     * @throws IOException wenn das Journal nicht geschrieben werden kann
+     */
+    public synchronized void force() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Gleicht die offenen Vermerke eines früheren Laufs mit der Datenbank ab und leert das Journal.
+     * Wird beim Initialisieren der Datenbank aufgerufen.
+     *
+     * @return Die Anzahl der gelöschten verschlüsselten Dateien
+     */
+    public synchronized int replay() {
+        close();
+        Path journal = getJournalPath();
+        if (!Files.exists(journal)) {
+            return 0;
+        }
+        int removed = 0;
+        try {
+            Set<String> open = new LinkedHashSet<>();
+            for (String line : Files.readAllLines(journal, StandardCharsets.UTF_8)) {
+                if (line.startsWith(BEGIN)) {
+                    open.add(line.substring(BEGIN.length()));
+                } else if (line.startsWith(COMPLETE)) {
+                    open.remove(line.substring(COMPLETE.length()));
+                }
+            }
+            if (!open.isEmpty()) {
+                Set<String> referenced = new HashSet<>();
+                for (EncryptedFile file : DatabaseManager.getMetadataStore().getAllFiles()) {
+                    referenced.add(file.getEncryptedPath());
+                }
+                for (String stored : open) {
+                    Path blob = Paths.get(BlobStore.resolve(stored));
+                    Files.deleteIfExists(DurableBlobWriter.tempPathOf(blob));
+                    if (!referenced.contains(blob.toString()) && Files.deleteIfExists(blob)) {
+                        removed++;
+                    }
+                }
+                LoggingUtil.logWarning("ImportJournal", "Recovered " + open.size()
+                        + " interrupted imports, removed " + removed + " encrypted files");
+            }
+            Files.delete(journal);
+        } catch (Exception e) {
+            // Das Journal bleibt für den nächsten Start erhalten
+            LoggingUtil.logError("ImportJournal", "Could not replay import journal: " + e.getMessage());
+        }
+        return removed;
+    }
+
+    /**
+     * Schließt das Journal. Offene Vermerke bleiben in der Datei für den nächsten Abgleich erhalten.
+     */
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LoggingUtil.logWarning("ImportJournal", "Could not close import journal: " + e.getMessage());
+            }
+        }
+        channel = null;
+        channelPath = null;
+        pending.clear();
+    }
+
+    /**
+     * Hängt eine Zeile an das Journal der aktuellen Datenbank an.
+     */
+    private void append(String line) throws IOException {
+        Path journal = getJournalPath();
+        if (channel == null || !journal.equals(channelPath)) {
+            close();
+            channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            channelPath = journal;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Ersetzt das Journal durch eines, das nur die offenen Vermerke enthält.
+     */
+    private void rewrite() throws IOException {
+        Path journal = channelPath;
+        Path temp = journal.resolveSibling(journal.getFileName() + ".tmp");
+        List<String> lines = pending.stream().map(stored -> BEGIN + stored).toList();
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        try (FileChannel tempChannel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            tempChannel.force(false);
+        }
+        channel.close();
+        Files.move(temp, journal, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(journal, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,91 @@
+package com.filevault.storage;
+
+import java.io.File;
+
+import com.filevault.model.EncryptedFile;
+
+/**
+ * Ergebnis des Imports einer einzelnen Datei im Rahmen eines Sammelimports.
+ */
+public class ImportResult {
+
+    /** Die Quelldatei */
+    private final File sourceFile;
+
+    /** Der angelegte Dateieintrag, null wenn der Import fehlgeschlagen ist */
+    private final EncryptedFile importedFile;
+
+    /** Fehlermeldung, null wenn der Import erfolgreich war */
+    private final String error;
+
+    /**
+     * Erstellt ein neues Importergebnis.
+     *
+     * @param sourceFile Die Quelldatei
+     * @param importedFile Der angelegte Dateieintrag oder null
+     * @param error Die Fehlermeldung oder null
+     */
+    private ImportResult(File sourceFile, EncryptedFile importedFile, String error) {
+        this.sourceFile = sourceFile;
+        this.importedFile = importedFile;
+        this.error = error;
+    }
+
+    /**
+     * Erstellt das Ergebnis eines erfolgreichen Imports.
+     *
+     * @param sourceFile Die Quelldatei
+     * @param importedFile Der angelegte Dateieintrag
+     * @return Das Ergebnis
+     */
+    static ImportResult imported(File sourceFile, EncryptedFile importedFile) {
+        return new ImportResult(sourceFile, importedFile, null);
+    }
+
+    /**
+     * Erstellt das Ergebnis eines fehlgeschlagenen Imports.
+     *
+     * @param sourceFile Die Quelldatei
+     * @param error Die Fehlermeldung
+     * @return Das Ergebnis
+     */
+    static ImportResult failed(File sourceFile, String error) {
+        return new ImportResult(sourceFile, null, error);
+    }
+
+    /**
+     * Gibt die Quelldatei zurück.
+     *
+     * @return Die Quelldatei
+     */
+    public File getSourceFile() {
+        return sourceFile;
+    }
+
+    /**
+     * Gibt den angelegten Dateieintrag zurück.
+     *
+     * @return Der Dateieintrag oder null, wenn der Import fehlgeschlagen ist
+     */
+    public EncryptedFile getImportedFile() {
+        return importedFile;
+    }
+
+    /**
+     * Gibt die Fehlermeldung zurück.
+     *
+     * @return Die Fehlermeldung oder null, wenn der Import erfolgreich war
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Gibt an, ob der Import erfolgreich war.
+     *
+     * @return true, wenn ein Dateieintrag angelegt wurde
+     */
+    public boolean isSuccess() {
+        return importedFile != null;
+    }
+}
@@ -0,0 +1,686 @@
+package com.filevault.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Metadatenspeicher, der alle Ordner, Dateien und Benutzer ausschließlich im Hauptspeicher hält.
+ * Gedacht für kurzlebige Tresore mit hohem Durchsatz und für Messungen ohne SQLite.
+ * <p>
+ * Dateioperationen sperren nur den Lock-Streifen ihres Ordners, sodass Zugriffe auf
+ * verschiedene Ordner parallel laufen. Änderungen an der Ordnerhierarchie sperren den
+ * gesamten Baum. Der Inhalt kann als Snapshot auf die Festplatte geschrieben und
+ * wieder geladen werden.
+ */
+public class InMemoryMetadataStore implements MetadataStore {
+
+    /** Anzahl der Lock-Streifen für Dateioperationen */
+    private static final int STRIPE_COUNT = 32;
+
+    /** Kennung am Anfang einer Snapshot-Datei */
+    private static final int SNAPSHOT_MAGIC = 0x46564D31;
+
+    /** Ordner nach ID */
+    private final Map<Integer, VirtualFolder> folders = new ConcurrentHashMap<>();
+
+    /** Dateien nach ID */
+    private final Map<Integer, EncryptedFile> files = new ConcurrentHashMap<>();
+
+    /** IDs der Dateien je Ordner */
+    private final Map<Integer, Set<Integer>> filesByFolder = new ConcurrentHashMap<>();
+
+    /** Passwort-Hashes nach Benutzername */
+    private final Map<String, String> users = new ConcurrentHashMap<>();
+
+    /** Nächste freie Ordner-ID */
+    private final AtomicInteger folderSequence = new AtomicInteger();
+
+    /** Nächste freie Datei-ID */
+    private final AtomicInteger fileSequence = new AtomicInteger();
+
+    /** Sperre für die Ordnerhierarchie */
+    private final ReadWriteLock treeLock = new ReentrantReadWriteLock();
+
+    /** Lock-Streifen für die Dateien der Ordner */
+    private final ReadWriteLock[] stripes = new ReadWriteLock[STRIPE_COUNT];
+
+    /**
+     * Erstellt einen leeren Speicher.
+     */
+    public InMemoryMetadataStore() {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    @Override
+    public VirtualFolder insertFolder(String name, String description, Integer parentId) {
+        treeLock.writeLock().lock();
+        try {
+            VirtualFolder folder = new VirtualFolder(folderSequence.incrementAndGet(), name, description, parentId);
+            folder.setCreatedAt(LocalDateTime.now());
+            folders.put(folder.getId(), folder);
+            return copyOf(folder);
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public VirtualFolder getFolder(int folderId) {
+        VirtualFolder folder = folders.get(folderId);
+        return folder != null ? copyOf(folder) : null;
+    }
+
+    @Override
+    public List<VirtualFolder> getAllFolders() {
+        treeLock.readLock().lock();
+        try {
+            List<VirtualFolder> result = new ArrayList<>();
+            for (VirtualFolder folder : folders.values()) {
+                result.add(copyOf(folder));
+            }
+            result.sort(Comparator.comparing(VirtualFolder::getName));
+            return result;
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateFolder(int folderId, String name, String description) {
+        treeLock.writeLock().lock();
+        try {
+            VirtualFolder folder = folders.get(folderId);
+            if (folder == null) {
+                return false;
+            }
+            folder.setName(name);
+            folder.setDescription(description);
+            return true;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean moveFolder(int folderId, Integer parentId) {
+        treeLock.writeLock().lock();
+        try {
+            VirtualFolder folder = folders.get(folderId);
+            if (folder == null || (parentId != null && isAncestorLocked(folderId, parentId))) {
+                return false;
+            }
+            folder.setParentId(parentId);
+            return true;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteFolder(int folderId) throws SQLException {
+        treeLock.writeLock().lock();
+        try {
+            if (!folders.containsKey(folderId)) {
+                return false;
+            }
+            if (countSubfoldersLocked(folderId) > 0) {
+                throw new SQLException("Ordner " + folderId + " hat Unterordner");
+            }
+            removeFolderLocked(folderId);
+            return true;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> deleteFolderTree(int folderId) {
+        treeLock.writeLock().lock();
+        try {
+            List<Integer> subtreeIds = collectSubtreeLocked(folderId);
+            for (int id : subtreeIds) {
+                removeFolderLocked(id);
+            }
+            return subtreeIds;
+        } finally {
+            treeLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> getSubtreeFolderIds(int folderId) {
+        treeLock.readLock().lock();
+        try {
+            return collectSubtreeLocked(folderId);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isAncestor(int ancestorId, int descendantId) {
+        treeLock.readLock().lock();
+        try {
+            return isAncestorLocked(ancestorId, descendantId);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int countSubfolders(int folderId) {
+        treeLock.readLock().lock();
+        try {
+            return countSubfoldersLocked(folderId);
+        } finally {
+            treeLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public EncryptedFile insertFile(int folderId, String originalName, String encryptedPath,
+                                    long sizeBytes, String mimeType) {
+        EncryptedFile file = new EncryptedFile(fileSequence.incrementAndGet(), folderId, originalName,
+                encryptedPath, sizeBytes, mimeType, LocalDateTime.now(), null);
+        ReadWriteLock stripe = stripeFor(folderId);
+        stripe.writeLock().lock();
+        try {
+            files.put(file.getId(), file);
+            filesByFolder.computeIfAbsent(folderId, id -> ConcurrentHashMap.newKeySet()).add(file.getId());
+        } finally {
+            stripe.writeLock().unlock();
+        }
+        return copyOf(file);
+    }
+
+    @Override
+    public List<EncryptedFile> insertFiles(int folderId, List<EncryptedFile> drafts) {
+        List<EncryptedFile> inserted = new ArrayList<>(drafts.size());
+        ReadWriteLock stripe = stripeFor(folderId);
+        stripe.writeLock().lock();
+        try {
+            Set<Integer> folderFiles = filesByFolder.computeIfAbsent(folderId, id -> ConcurrentHashMap.newKeySet());
+            LocalDateTime now = LocalDateTime.now();
+            for (EncryptedFile draft : drafts) {
+                EncryptedFile file = new EncryptedFile(fileSequence.incrementAndGet(), folderId,
+                        draft.getOriginalName(), draft.getEncryptedPath(), draft.getSizeBytes(),
+                        draft.getMimeType(), now, null);
+                file.setPackLocation(draft.getPackId(), draft.getPackOffset(), draft.getPackLength());
+                files.put(file.getId(), file);
+                folderFiles.add(file.getId());
+                inserted.add(copyOf(file));
+            }
+        } finally {
+            stripe.writeLock().unlock();
+        }
+        return inserted;
+    }
+
+    @Override
+    public EncryptedFile getFile(int fileId) {
+        EncryptedFile file = files.get(fileId);
+        if (file == null) {
+            return null;
+        }
+        ReadWriteLock stripe = stripeFor(file.getFolderId());
+        stripe.readLock().lock();
+        try {
+            return copyOf(file);
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<EncryptedFile> getFilesInFolder(int folderId) {
+        ReadWriteLock stripe = stripeFor(folderId);
+        stripe.readLock().lock();
+        try {
+            List<EncryptedFile> result = new ArrayList<>();
+            for (int fileId : filesByFolder.getOrDefault(folderId, Set.of())) {
+                EncryptedFile file = files.get(fileId);
+                if (file != null) {
+                    result.add(copyOf(file));
+                }
+            }
+            result.sort(Comparator.comparing(EncryptedFile::getOriginalName));
+            return result;
+        } finally {
+            stripe.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<EncryptedFile> getAllFiles() {
+        List<EncryptedFile> result = new ArrayList<>();
+        for (EncryptedFile file : files.values()) {
+            result.add(copyOf(file));
+        }
+        result.sort(Comparator.comparing(EncryptedFile::getOriginalName));
+        return result;
+    }
+
+    @Override
+    public boolean renameFile(int fileId, String newName) {
+        EncryptedFile file = files.get(fileId);
+        if (file == null) {
+            return false;
+        }
+        ReadWriteLock stripe = stripeFor(file.getFolderId());
+        stripe.writeLock().lock();
+        try {
+            file.setOriginalName(newName);
+            return true;
+        } finally {
+            stripe.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean moveFile(int fileId, int folderId) {
+        while (true) {
+            EncryptedFile file = files.get(fileId);
+            if (file == null) {
+                return false;
+            }
+            int sourceFolderId = file.getFolderId();
+            int first = stripeIndex(sourceFolderId);
+            int second = stripeIndex(folderId);
+            // Streifen immer in aufsteigender Reihenfolge sperren, um Verklemmungen zu vermeiden
+            ReadWriteLock lower = stripes[Math.min(first, second)];
+            ReadWriteLock upper = stripes[Math.max(first, second)];
+            lower.writeLock().lock();
+            upper.writeLock().lock();
+            try {
+                // Wurde die Datei inzwischen verschoben, mit dem neuen Quellordner wiederholen
+                if (file.getFolderId() != sourceFolderId) {
+                    continue;
+                }
+                Set<Integer> source = filesByFolder.get(sourceFolderId);
+                if (source != null) {
+                    source.remove(fileId);
+                }
+                filesByFolder.computeIfAbsent(folderId, id -> ConcurrentHashMap.newKeySet()).add(fileId);
+                file.setFolderId(folderId);
+                return true;
+            } finally {
+                upper.writeLock().unlock();
+                lower.writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public void touchFile(int fileId) {
+        EncryptedFile file = files.get(fileId);
+        if (file == null) {
+            return;
+        }
+        ReadWriteLock stripe = stripeFor(file.getFolderId());
+        stripe.writeLock().lock();
+        try {
+            file.setLastAccess(LocalDateTime.now());
+        } finally {
+            stripe.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteFile(int fileId) {
+        EncryptedFile file = files.get(fileId);
+        if (file == null) {
+            return false;
+        }
+        ReadWriteLock stripe = stripeFor(file.getFolderId());
+        stripe.writeLock().lock();
+        try {
+            Set<Integer> folderFiles = filesByFolder.get(file.getFolderId());
+            if (folderFiles != null) {
+                folderFiles.remove(fileId);
+            }
+            return files.remove(fileId) != null;
+        } finally {
+            stripe.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int countFilesInFolder(int folderId) {
+        return filesByFolder.getOrDefault(folderId, Set.of()).size();
+    }
+
+    @Override
+    public int countUsers() {
+        return users.size();
+    }
+
+    @Override
+    public boolean insertUser(String username, String passwordHash) {
+        return users.putIfAbsent(username, passwordHash) == null;
+    }
+
+    @Override
+    public String getPasswordHash(String username) {
+        return users.get(username);
+    }
+
+    @Override
+    public boolean updatePasswordHash(String username, String passwordHash) {
+        return users.replace(username, passwordHash) != null;
+    }
+
+    @Override
+    public int deleteUsers() {
+        int count = users.size();
+        users.clear();
+        return count;
+    }
+
+    /**
+     * Schreibt den gesamten Inhalt des Speichers in eine Snapshot-Datei. Die Datei wird
+     * zunächst unter einem temporären Namen geschrieben und dann atomar ersetzt.
+     *
+     * @param target Der Pfad der Snapshot-Datei
+     * @throws IOException wenn die Datei nicht geschrieben werden kann
+     */
+    public void saveSnapshot(Path target) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        // Hierarchie und alle Streifen sperren, damit der Snapshot in sich konsistent ist
+        treeLock.writeLock().lock();
+        for (ReadWriteLock stripe : stripes) {
+            stripe.readLock().lock();
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(folderSequence.get());
+            out.writeInt(fileSequence.get());
+
+            out.writeInt(users.size());
+            for (Map.Entry<String, String> user : users.entrySet()) {
+                out.writeUTF(user.getKey());
+                out.writeUTF(user.getValue());
+            }
+
+            out.writeInt(folders.size());
+            for (VirtualFolder folder : folders.values()) {
+                out.writeInt(folder.getId());
+                out.writeUTF(folder.getName());
+                writeNullable(out, folder.getDescription());
+                out.writeBoolean(folder.getParentId() != null);
+                out.writeInt(folder.getParentId() != null ? folder.getParentId() : 0);
+                writeTimestamp(out, folder.getCreatedAt());
+            }
+
+            List<EncryptedFile> snapshotFiles = new ArrayList<>(files.values());
+            out.writeInt(snapshotFiles.size());
+            for (EncryptedFile file : snapshotFiles) {
+                out.writeInt(file.getId());
+                out.writeInt(file.getFolderId());
+                out.writeUTF(file.getOriginalName());
+                out.writeUTF(BlobStore.toStoredPath(file.getEncryptedPath()));
+                out.writeLong(file.getSizeBytes());
+                writeNullable(out, file.getMimeType());
+                writeTimestamp(out, file.getCreatedAt());
+                writeTimestamp(out, file.getLastAccess());
+            }
+        } finally {
+            for (int i = STRIPE_COUNT - 1; i >= 0; i--) {
+                stripes[i].readLock().unlock();
+            }
+            treeLock.writeLock().unlock();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LoggingUtil.logInfo("InMemoryMetadataStore", "Snapshot written: " + target);
+    }
+
+    /**
+     * Lädt einen Speicher aus einer Snapshot-Datei.
+     *
+     * @param source Der Pfad der Snapshot-Datei
+     * @return Der geladene Speicher
+     * @throws IOException wenn die Datei nicht gelesen werden kann oder kein gültiger Snapshot ist
+     */
+    public static InMemoryMetadataStore loadSnapshot(Path source) throws IOException {
+        InMemoryMetadataStore store = new InMemoryMetadataStore();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(source)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Keine gültige Snapshot-Datei: " + source);
+            }
+            store.folderSequence.set(in.readInt());
+            store.fileSequence.set(in.readInt());
+
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                store.users.put(in.readUTF(), in.readUTF());
+            }
+
+            int folderCount = in.readInt();
+            for (int i = 0; i < folderCount; i++) {
+                int id = in.readInt();
+                String name = in.readUTF();
+                String description = readNullable(in);
+                boolean hasParent = in.readBoolean();
+                int parentId = in.readInt();
+                VirtualFolder folder = new VirtualFolder(id, name, description, hasParent ? parentId : null);
+                folder.setCreatedAt(readTimestamp(in));
+                store.folders.put(id, folder);
+            }
+
+            int fileCount = in.readInt();
+            for (int i = 0; i < fileCount; i++) {
+                EncryptedFile file = new EncryptedFile(in.readInt(), in.readInt(), in.readUTF(),
+                        BlobStore.resolve(in.readUTF()),
+                        in.readLong(), readNullable(in), readTimestamp(in), readTimestamp(in));
+                store.files.put(file.getId(), file);
+                store.filesByFolder.computeIfAbsent(file.getFolderId(), id -> ConcurrentHashMap.newKeySet())
+                        .add(file.getId());
+            }
+        }
+        LoggingUtil.logInfo("InMemoryMetadataStore", "Snapshot loaded: " + source);
+        return store;
+    }
+
+    /**
+     * Sammelt die IDs eines Teilbaums in Breitensuche. Erwartet die Sperre der Hierarchie.
+     *
+     * @param folderId Die ID des Wurzelordners
+     * @return Die IDs, sortiert nach Tiefe, oder eine leere Liste, wenn der Ordner nicht existiert
+     */
+    private List<Integer> collectSubtreeLocked(int folderId) {
+        List<Integer> result = new ArrayList<>();
+        if (!folders.containsKey(folderId)) {
+            return result;
+        }
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(folderId);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            result.add(current);
+            for (VirtualFolder folder : folders.values()) {
+                if (folder.getParentId() != null && folder.getParentId() == current) {
+                    queue.add(folder.getId());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Zählt die direkten Unterordner. Erwartet die Sperre der Hierarchie.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Die Anzahl der Unterordner
+     */
+    private int countSubfoldersLocked(int folderId) {
+        int count = 0;
+        for (VirtualFolder folder : folders.values()) {
+            if (folder.getParentId() != null && folder.getParentId() == folderId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Prüft, ob ein Ordner Vorfahre eines anderen ist. Erwartet eine Sperre der Hierarchie.
+     *
+     * @param ancestorId Die ID des möglichen Vorfahren
+     * @param descendantId Die ID des möglichen Nachfahren
+     * @return true, wenn ancestorId auf dem Pfad von descendantId zur Wurzel liegt
+     */
+    private boolean isAncestorLocked(int ancestorId, int descendantId) {
+        VirtualFolder current = folders.get(descendantId);
+        // Die Anzahl der Schritte ist begrenzt, damit ein fehlerhafter Zyklus nicht endlos läuft
+        for (int steps = 0; current != null && steps <= folders.size(); steps++) {
+            if (current.getId() == ancestorId) {
+                return true;
+            }
+            current = current.getParentId() != null ? folders.get(current.getParentId()) : null;
+        }
+        return false;
+    }
+
+    /**
+     * Entfernt einen Ordner samt seiner Dateien. Erwartet die Schreibsperre der Hierarchie.
+     *
+     * @param folderId Die ID des Ordners
+     */
+    private void removeFolderLocked(int folderId) {
+        ReadWriteLock stripe = stripeFor(folderId);
+        stripe.writeLock().lock();
+        try {
+            Set<Integer> folderFiles = filesByFolder.remove(folderId);
+            if (folderFiles != null) {
+                for (int fileId : folderFiles) {
+                    files.remove(fileId);
+                }
+            }
+            folders.remove(folderId);
+        } finally {
+            stripe.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gibt den Lock-Streifen eines Ordners zurück.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Die Sperre des Streifens
+     */
+    private ReadWriteLock stripeFor(int folderId) {
+        return stripes[stripeIndex(folderId)];
+    }
+
+    /**
+     * Berechnet den Index des Lock-Streifens eines Ordners.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Der Index im Bereich [0, STRIPE_COUNT)
+     */
+    private static int stripeIndex(int folderId) {
+        return Math.floorMod(Integer.hashCode(folderId) * 0x9E3779B9, STRIPE_COUNT);
+    }
+
+    /**
+     * Erstellt eine unabhängige Kopie eines Ordners ohne Kindbeziehungen.
+     *
+     * @param folder Der zu kopierende Ordner
+     * @return Die Kopie
+     */
+    private static VirtualFolder copyOf(VirtualFolder folder) {
+        VirtualFolder copy = new VirtualFolder(folder.getId(), folder.getName(),
+                folder.getDescription(), folder.getParentId());
+        copy.setCreatedAt(folder.getCreatedAt());
+        return copy;
+    }
+
+    /**
+     * Erstellt eine unabhängige Kopie einer Datei.
+     *
+     * @param file Die zu kopierende Datei
+     * @return Die Kopie
+     */
+    private static EncryptedFile copyOf(EncryptedFile file) {
+        EncryptedFile copy = new EncryptedFile(file.getId(), file.getFolderId(), file.getOriginalName(),
+                file.getEncryptedPath(), file.getSizeBytes(), file.getMimeType(),
+                file.getCreatedAt(), file.getLastAccess());
+        copy.setPackLocation(file.getPackId(), file.getPackOffset(), file.getPackLength());
+        copy.setStorage(file.getStorageTier(), file.isCompressed());
+        return copy;
+    }
+
+    /**
+     * Schreibt einen String, der null sein darf.
+     *
+     * @param out Der Ausgabestrom
+     * @param value Der Wert oder null
+     * @throws IOException wenn das Schreiben fehlschlägt
+     */
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Liest einen mit {@link #writeNullable} geschriebenen String.
+     *
+     * @param in Der Eingabestrom
+     * @return Der Wert oder null
+     * @throws IOException wenn das Lesen fehlschlägt
+     */
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Schreibt einen Zeitstempel, der null sein darf.
+     *
+     * @param out Der Ausgabestrom
+     * @param value Der Zeitstempel oder null
+     * @throws IOException wenn das Schreiben fehlschlägt
+     */
+    private static void writeTimestamp(DataOutputStream out, LocalDateTime value) throws IOException {
+        writeNullable(out, value != null ? value.toString() : null);
+    }
+
+    /**
+     * Liest einen mit {@link #writeTimestamp} geschriebenen Zeitstempel.
+     *
+     * @param in Der Eingabestrom
+     * @return Der Zeitstempel oder null
+     * @throws IOException wenn das Lesen fehlschlägt
+     */
+    private static LocalDateTime readTimestamp(DataInputStream in) throws IOException {
+        String value = readNullable(in);
+        return value != null ? LocalDateTime.parse(value) : null;
+    }
+}
@@ -0,0 +1,228 @@
+package com.filevault.storage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Set;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Umhüllt JDBC-Verbindungen mit dynamischen Proxys, die jede ausgeführte Anweisung in den
+ * {@link QueryStatistics} erfassen.
+ * <p>
+ * Gemessen wird die Zeit bis zur Rückkehr von {@code execute*}; bei Abfragen also bis zur
+ * ersten Zeile. Die gelieferten Zeilen werden beim Durchlaufen des {@link ResultSet} gezählt.
+ * Schlägt eine Anweisung außerhalb einer Transaktion mit SQLITE_BUSY oder SQLITE_LOCKED fehl,
+ * obwohl der Busy-Timeout bereits abgewartet wurde, wird sie einige Male wiederholt.
+ */
+final class InstrumentedConnection {
+
+    /** Primärer Ergebniscode von SQLite für eine gesperrte Datenbank */
+    private static final int SQLITE_BUSY = 5;
+
+    /** Primärer Ergebniscode von SQLite für eine gesperrte Tabelle */
+    private static final int SQLITE_LOCKED = 6;
+
+    /** Wartezeit vor der ersten Wiederholung in Millisekunden; sie wächst linear */
+    private static final long RETRY_BACKOFF_MILLIS = 50;
+
+    /** Methoden, die eine Anweisung ausführen */
+    private static final Set<String> EXECUTE_METHODS = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    /**
+     * Keine Instanzen; Zugriff über {@link #wrap(Connection)}.
+     */
+    private InstrumentedConnection() {
+    }
+
+    /**
+     * Umhüllt eine Verbindung, sodass alle über sie erzeugten Anweisungen erfasst werden.
+     *
+     * @param connection Die zu umhüllende Verbindung
+     * @return Die instrumentierte Verbindung
+     */
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, new ConnectionHandler(connection));
+    }
+
+    /**
+     * Ruft eine Methode auf dem umhüllten Objekt auf und reicht dessen Ausnahmen unverändert weiter.
+     */
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Prüft, ob eine Ausnahme auf eine gesperrte Datenbank zurückgeht.
+     */
+    private static boolean isBusy(SQLException e) {
+        int primary = e.getErrorCode() & 0xff;
+        return primary == SQLITE_BUSY || primary == SQLITE_LOCKED;
+    }
+
+    /**
+     * Proxy-Handler für Verbindungen.
+     */
+    private static final class ConnectionHandler implements InvocationHandler {
+
+        /** Die umhüllte Verbindung */
+        private final Connection delegate;
+
+        private ConnectionHandler(Connection delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = InstrumentedConnection.invoke(delegate, method, args);
+            switch (method.getName()) {
+                case "createStatement" -> {
+                    return wrapStatement((Statement) result, Statement.class, null);
+                }
+                case "prepareStatement" -> {
+                    StatementStats stats = QueryStatistics.getInstance().statsForSql((String) args[0]);
+                    return wrapStatement((Statement) result, PreparedStatement.class, stats);
+                }
+                default -> {
+                    return result;
+                }
+            }
+        }
+
+        private Object wrapStatement(Statement statement, Class<?> type, StatementStats stats) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type},
+                    new StatementHandler(delegate, statement, stats));
+        }
+    }
+
+    /**
+     * Proxy-Handler für einfache und vorbereitete Anweisungen.
+     */
+    private static final class StatementHandler implements InvocationHandler {
+
+        /** Die Verbindung der Anweisung, um den Transaktionszustand zu prüfen */
+        private final Connection connection;
+
+        /** Die umhüllte Anweisung */
+        private final Statement delegate;
+
+        /** Statistik der Vorlage bei vorbereiteten Anweisungen, sonst null */
+        private final StatementStats preparedStats;
+
+        /** Statistik der zuletzt ausgeführten Anweisung, für {@code getResultSet} */
+        private StatementStats lastStats;
+
+        /** Vorlage der ersten per {@code addBatch} hinzugefügten Anweisung */
+        private String batchTemplate;
+
+        private StatementHandler(Connection connection, Statement delegate, StatementStats preparedStats) {
+            this.connection = connection;
+            this.delegate = delegate;
+            this.preparedStats = preparedStats;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (EXECUTE_METHODS.contains(name)) {
+                return execute(method, args, statsFor(name, args));
+            }
+            if ("addBatch".equals(name) && args != null && args.length == 1 && batchTemplate == null) {
+                batchTemplate = QueryStatistics.getInstance().templateOf((String) args[0]);
+            }
+            Object result = InstrumentedConnection.invoke(delegate, method, args);
+            if ("getResultSet".equals(name) && result != null && lastStats != null) {
+                return wrapResultSet((ResultSet) result, lastStats);
+            }
+            return result;
+        }
+
+        private StatementStats statsFor(String name, Object[] args) {
+            QueryStatistics statistics = QueryStatistics.getInstance();
+            if (args != null && args.length > 0 && args[0] instanceof String sql) {
+                return statistics.statsForSql(sql);
+            }
+            if (preparedStats != null) {
+                return preparedStats;
+            }
+            return statistics.statsFor(batchTemplate != null ? batchTemplate : name);
+        }
+
+        private Object execute(Method method, Object[] args, StatementStats stats) throws Throwable {
+            QueryStatistics statistics = QueryStatistics.getInstance();
+            lastStats = stats;
+            for (int attempt = 0; ; attempt++) {
+                long start = System.nanoTime();
+                Object result;
+                try {
+                    result = InstrumentedConnection.invoke(delegate, method, args);
+                } catch (SQLException e) {
+                    if (isBusy(e) && attempt < statistics.getMaxBusyRetries() && connection.getAutoCommit()) {
+                        stats.recordBusyRetry();
+                        LoggingUtil.logWarning("QueryStatistics", "Database busy, retrying ("
+                                + (attempt + 1) + "): " + stats.getTemplate());
+                        Thread.sleep(RETRY_BACKOFF_MILLIS * (attempt + 1));
+                        continue;
+                    }
+                    stats.recordError();
+                    throw e;
+                }
+                statistics.recordExecution(stats, System.nanoTime() - start);
+                if (method.getName().endsWith("Batch")) {
+                    batchTemplate = null;
+                }
+                return countRows(result, stats);
+            }
+        }
+
+        private Object countRows(Object result, StatementStats stats) {
+            if (result instanceof ResultSet resultSet) {
+                return wrapResultSet(resultSet, stats);
+            } else if (result instanceof Integer updated && updated > 0) {
+                stats.addRows(updated);
+            } else if (result instanceof Long updated && updated > 0) {
+                stats.addRows(updated);
+            } else if (result instanceof int[] batch) {
+                for (int updated : batch) {
+                    if (updated > 0) {
+                        stats.addRows(updated);
+                    }
+                }
+            } else if (result instanceof long[] batch) {
+                for (long updated : batch) {
+                    if (updated > 0) {
+                        stats.addRows(updated);
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Umhüllt ein Abfrageergebnis, sodass gelieferte Zeilen gezählt werden.
+     */
+    private static ResultSet wrapResultSet(ResultSet resultSet, StatementStats stats) {
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class},
+                (proxy, method, args) -> {
+                    Object result = invoke(resultSet, method, args);
+                    if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                        stats.addRows(1);
+                    }
+                    return result;
+                });
+    }
+}
@@ -0,0 +1,184 @@
+package com.filevault.storage;
+
+/**
+ * Ergebnis eines Wartungslaufs der Datenbank mit Größen vor und nach dem Lauf
+ * sowie der Dauer der einzelnen Schritte.
+ */
+public class MaintenanceReport {
+
+    /** Größe der Datenbankdatei vor dem Lauf in Bytes */
+    private final long databaseBytesBefore;
+
+    /** Größe der Datenbankdatei nach dem Lauf in Bytes */
+    private final long databaseBytesAfter;
+
+    /** Größe der WAL-Datei vor dem Lauf in Bytes */
+    private final long walBytesBefore;
+
+    /** Größe der WAL-Datei nach dem Lauf in Bytes */
+    private final long walBytesAfter;
+
+    /** Anzahl freier Seiten vor dem Lauf */
+    private final long freePagesBefore;
+
+    /** Anzahl freier Seiten nach dem Lauf */
+    private final long freePagesAfter;
+
+    /** Ob die Datenbank in diesem Lauf per VACUUM auf inkrementelles Aufräumen umgestellt wurde */
+    private final boolean autoVacuumEnabled;
+
+    /** Dauer von PRAGMA optimize bzw. ANALYZE in Millisekunden */
+    private final long optimizeMillis;
+
+    /** Dauer des inkrementellen VACUUM in Millisekunden */
+    private final long vacuumMillis;
+
+    /** Dauer des WAL-Checkpoints in Millisekunden */
+    private final long checkpointMillis;
+
+    /** Gesamtdauer des Laufs in Millisekunden */
+    private final long durationMillis;
+
+    /**
+     * Erstellt einen neuen Wartungsbericht.
+     *
+     * @param databaseBytesBefore Größe der Datenbankdatei vor dem Lauf
+     * @param databaseBytesAfter Größe der Datenbankdatei nach dem Lauf
+     * @param walBytesBefore Größe der WAL-Datei vor dem Lauf
+     * @param walBytesAfter Größe der WAL-Datei nach dem Lauf
+     * @param freePagesBefore Freie Seiten vor dem Lauf
+     * @param freePagesAfter Freie Seiten nach dem Lauf
+     * @param autoVacuumEnabled Ob das inkrementelle Aufräumen in diesem Lauf aktiviert wurde
+     * @param optimizeMillis Dauer von PRAGMA optimize bzw. ANALYZE
+     * @param vacuumMillis Dauer des inkrementellen VACUUM
+     * @param checkpointMillis Dauer des WAL-Checkpoints
+     * @param durationMillis Gesamtdauer des Laufs
+     */
+    public MaintenanceReport(long databaseBytesBefore, long databaseBytesAfter, long walBytesBefore,
+                             long walBytesAfter, long freePagesBefore, long freePagesAfter,
+                             boolean autoVacuumEnabled, long optimizeMillis, long vacuumMillis,
+                             long checkpointMillis, long durationMillis) {
+        this.databaseBytesBefore = databaseBytesBefore;
+        this.databaseBytesAfter = databaseBytesAfter;
+        this.walBytesBefore = walBytesBefore;
+        this.walBytesAfter = walBytesAfter;
+        this.freePagesBefore = freePagesBefore;
+        this.freePagesAfter = freePagesAfter;
+        this.autoVacuumEnabled = autoVacuumEnabled;
+        this.optimizeMillis = optimizeMillis;
+        this.vacuumMillis = vacuumMillis;
+        this.checkpointMillis = checkpointMillis;
+        this.durationMillis = durationMillis;
+    }
+
+    /**
+     * Gibt die Größe der Datenbankdatei vor dem Lauf zurück.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getDatabaseBytesBefore() {
+        return databaseBytesBefore;
+    }
+
+    /**
+     * Gibt die Größe der Datenbankdatei nach dem Lauf zurück.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getDatabaseBytesAfter() {
+        return databaseBytesAfter;
+    }
+
+    /**
+     * Gibt die Größe der WAL-Datei vor dem Lauf zurück.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getWalBytesBefore() {
+        return walBytesBefore;
+    }
+
+    /**
+     * Gibt die Größe der WAL-Datei nach dem Lauf zurück.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getWalBytesAfter() {
+        return walBytesAfter;
+    }
+
+    /**
+     * Gibt die Anzahl freier Seiten vor dem Lauf zurück.
+     *
+     * @return Die Anzahl freier Seiten
+     */
+    public long getFreePagesBefore() {
+        return freePagesBefore;
+    }
+
+    /**
+     * Gibt die Anzahl freier Seiten nach dem Lauf zurück.
+     *
+     * @return Die Anzahl freier Seiten
+     */
+    public long getFreePagesAfter() {
+        return freePagesAfter;
+    }
+
+    /**
+     * Gibt an, ob die Datenbank in diesem Lauf auf inkrementelles Aufräumen umgestellt wurde.
+     *
+     * @return true, wenn ein vollständiges VACUUM zur Umstellung lief
+     */
+    public boolean isAutoVacuumEnabled() {
+        return autoVacuumEnabled;
+    }
+
+    /**
+     * Gibt die Dauer von PRAGMA optimize bzw. ANALYZE zurück.
+     *
+     * @return Die Dauer in Millisekunden
+     */
+    public long getOptimizeMillis() {
+        return optimizeMillis;
+    }
+
+    /**
+     * Gibt die Dauer des inkrementellen VACUUM zurück.
+     *
+     * @return Die Dauer in Millisekunden
+     */
+    public long getVacuumMillis() {
+        return vacuumMillis;
+    }
+
+    /**
+     * Gibt die Dauer des WAL-Checkpoints zurück.
+     *
+     * @return Die Dauer in Millisekunden
+     */
+    public long getCheckpointMillis() {
+        return checkpointMillis;
+    }
+
+    /**
+     * Gibt die Gesamtdauer des Laufs zurück.
+     *
+     * @return Die Dauer in Millisekunden
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "database " + databaseBytesBefore + " -> " + databaseBytesAfter + " bytes"
+                + ", wal " + walBytesBefore + " -> " + walBytesAfter + " bytes"
+                + ", free pages " + freePagesBefore + " -> " + freePagesAfter
+                + (autoVacuumEnabled ? ", auto_vacuum enabled" : "")
+                + ", optimize " + optimizeMillis + " ms"
+                + ", vacuum " + vacuumMillis + " ms"
+                + ", checkpoint " + checkpointMillis + " ms"
+                + ", total " + durationMillis + " ms";
+    }
+}
@@ -0,0 +1,375 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.filevault.util.LoggingUtil;
+import com.filevault.util.RequestRateMonitor;
+
+/**
+ * Führt die regelmäßige Wartung der SQLite-Datenbank in Zeiten geringer Last aus.
+ * <p>
+ * Ein Lauf aktualisiert die Statistiken des Query-Planers ({@code PRAGMA optimize} bzw.
+ * {@code ANALYZE} beim ersten Lauf), gibt freie Seiten per {@code incremental_vacuum} an das
+ * Dateisystem zurück und schreibt die WAL-Datei per Checkpoint in die Datenbank zurück.
+ * Vorher werden Pack-Dateien mit vielen gelöschten Einträgen verdichtet und verwaiste
+ * verschlüsselte Dateien vom {@link BlobGarbageCollector} aufgeräumt sowie lange nicht
+ * genutzte Dateien vom {@link TieringService} in das kalte Verzeichnis verschoben.
+ * Ob gerade wenig Last herrscht, wird an der Anfragerate des {@link RequestRateMonitor}
+ * gemessen. Die Wartung nutzt eine eigene Verbindung, damit die gemeinsame Verbindung
+ * des {@link DatabaseManager} nicht aus einem Hintergrund-Thread geschlossen wird.
+ */
+public class MaintenanceScheduler {
+
+    /**
+     * Ein einzelner Schritt eines Wartungslaufs.
+     */
+    @FunctionalInterface
+    private interface MaintenanceStep {
+        void run() throws Exception;
+    }
+
+    /** Die einzige Instanz des MaintenanceScheduler */
+    private static MaintenanceScheduler instance;
+
+    /** Wert von PRAGMA auto_vacuum für inkrementelles Aufräumen */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /** Anzahl der Seiten, die ein Aufräumschritt höchstens in einer Transaktion freigibt */
+    private static final long VACUUM_CHUNK_PAGES = 256;
+
+    /** Abstand zwischen zwei Lastprüfungen in Millisekunden */
+    private long checkIntervalMillis = TimeUnit.MINUTES.toMillis(5);
+
+    /** Mindestabstand zwischen zwei Wartungsläufen in Millisekunden */
+    private long minRunIntervalMillis = TimeUnit.HOURS.toMillis(6);
+
+    /** Höchste Anfragerate pro Minute, bei der noch von geringer Last ausgegangen wird */
+    private long lowLoadRequestsPerMinute = 5;
+
+    /** Höchstzahl freier Seiten, die ein Lauf zurückgibt, um die Schreibsperre kurz zu halten */
+    private int maxVacuumPages = 10_000;
+
+    /** Executor für die periodische Lastprüfung, null wenn nicht gestartet */
+    private ScheduledExecutorService executor;
+
+    /** Zeitpunkt des letzten Wartungslaufs in Millisekunden seit der Epoche */
+    private volatile long lastRunMillis;
+
+    /** Bericht des letzten Wartungslaufs */
+    private volatile MaintenanceReport lastReport;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private MaintenanceScheduler() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des MaintenanceScheduler zurück.
+     *
+     * @return Die Instanz des MaintenanceScheduler
+     */
+    public static synchronized MaintenanceScheduler getInstance() {
+        if (instance == null) {
+            instance = new MaintenanceScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Startet die periodische Lastprüfung. Ein bereits gestarteter Scheduler bleibt unverändert.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "db-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::checkAndRun, checkIntervalMillis, checkIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        LoggingUtil.logInfo("MaintenanceScheduler", "Database maintenance scheduled, checking load every "
+                + checkIntervalMillis + " ms");
+    }
+
+    /**
+     * Stoppt die periodische Lastprüfung. Ein laufender Wartungslauf wird noch beendet.
+     */
+    public synchronized void stop() {
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        executor = null;
+        LoggingUtil.logInfo("MaintenanceScheduler", "Database maintenance stopped");
+    }
+
+    /**
+     * Gibt an, ob die periodische Lastprüfung läuft.
+     *
+     * @return true, wenn der Scheduler gestartet ist
+     */
+    public synchronized boolean isRunning() {
+        return executor != null;
+    }
+
+    /**
+     * Führt einen Wartungslauf aus, wenn der letzte lange genug zurückliegt und die
+     * Anfragerate unter der Schwelle liegt. Die Last wird vor jedem Schritt erneut geprüft;
+     * steigt sie, wird der Lauf abgebrochen und im nächsten ruhigen Zeitfenster wiederholt.
+     * Ein fehlgeschlagener Schritt wird protokolliert, ohne die folgenden zu verhindern.
+     *
+     * @return true, wenn der Wartungslauf vollständig ausgeführt wurde
+     */
+    public boolean runIfIdle() {
+        long now = System.currentTimeMillis();
+        if (lastRunMillis != 0 && now - lastRunMillis < minRunIntervalMillis) {
+            return false;
+        }
+        // Entfernte Einträge und Versionen hinterlassen tote Bereiche, die die Verdichtung danach zurückgewinnt
+        Map<String, MaintenanceStep> steps = new LinkedHashMap<>();
+        steps.put("trash purge", () -> TrashManager.getInstance().purgeExpired());
+        steps.put("version pruning", () -> VersionManager.getInstance().prune());
+        steps.put("pack compaction", () -> PackStore.getInstance().compact());
+        steps.put("blob garbage collection", () -> BlobGarbageCollector.getInstance().runScheduled());
+        steps.put("tiering", () -> TieringService.getInstance().runScheduled());
+        steps.put("volume rebalancing", () -> VolumeManager.getInstance().rebalanceIfNeeded());
+        steps.put("database maintenance", () -> runMaintenance(true));
+
+        for (Map.Entry<String, MaintenanceStep> step : steps.entrySet()) {
+            if (isBusy(step.getKey())) {
+                return false;
+            }
+            try {
+                step.getValue().run();
+            } catch (Exception e) {
+                LoggingUtil.logError("MaintenanceScheduler", "Maintenance step " + step.getKey() + " failed: "
+                        + e.getMessage());
+            }
+        }
+        lastRunMillis = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Führt sofort einen Wartungslauf aus, unabhängig von der aktuellen Last.
+     *
+     * @return Der Bericht des Laufs
+     * @throws SQLException wenn ein Wartungsschritt fehlschlägt
+     */
+    public MaintenanceReport runMaintenance() throws SQLException {
+        return runMaintenance(false);
+    }
+
+    /**
+     * Führt die Wartung der Datenbank aus.
+     *
+     * @param onlyWhenIdle true, wenn die einmalige Umstellung per VACUUM bei hoher Last
+     *        auf einen späteren Lauf verschoben werden soll
+     * @return Der Bericht des Laufs
+     * @throws SQLException wenn ein Wartungsschritt fehlschlägt
+     */
+    private synchronized MaintenanceReport runMaintenance(boolean onlyWhenIdle) throws SQLException {
+        Path database = DatabaseManager.getDatabasePath();
+        Path wal = Paths.get(database + "-wal");
+        long start = System.nanoTime();
+        LoggingUtil.logDatabase("Maintenance", "Database", "Starting database maintenance");
+
+        try (Connection conn = DatabaseManager.openWriteConnection();
+             Statement stmt = conn.createStatement()) {
+            long databaseBefore = fileSize(database);
+            long walBefore = fileSize(wal);
+            long freeBefore = queryLong(stmt, "PRAGMA freelist_count");
+
+            // Bestehende Datenbanken ohne inkrementelles Aufräumen einmalig umstellen; das
+            // vollständige VACUUM sperrt die Datenbank lange und wartet daher auf geringe Last
+            boolean autoVacuumEnabled = false;
+            if (queryLong(stmt, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL
+                    && !(onlyWhenIdle && isBusy("full VACUUM"))) {
+                stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                stmt.execute("VACUUM");
+                autoVacuumEnabled = true;
+            }
+
+            long stepStart = System.nanoTime();
+            if (hasPlannerStatistics(stmt)) {
+                stmt.execute("PRAGMA optimize");
+            } else {
+                stmt.execute("ANALYZE");
+            }
+            long optimizeMillis = elapsedMillis(stepStart);
+
+            stepStart = System.nanoTime();
+            // Das Pragma liefert je freigegebener Seite eine Zeile ohne Spalten; execute() führt es nur
+            // einen Schritt weit aus und executeQuery() lehnt es ab, executeUpdate() führt es dagegen
+            // vollständig aus. Jeder Abschnitt läuft in einer eigenen Transaktion, damit Schreiber
+            // zwischendurch zum Zug kommen
+            long pages = Math.min(queryLong(stmt, "PRAGMA freelist_count"), maxVacuumPages);
+            while (pages > 0) {
+                long before = queryLong(stmt, "PRAGMA freelist_count");
+                stmt.executeUpdate("PRAGMA incremental_vacuum(" + Math.min(pages, VACUUM_CHUNK_PAGES) + ")");
+                long freed = before - queryLong(stmt, "PRAGMA freelist_count");
+                if (freed <= 0) {
+                    break;
+                }
+                pages -= freed;
+            }
+            long vacuumMillis = elapsedMillis(stepStart);
+
+            stepStart = System.nanoTime();
+            try (ResultSet rs = stmt.executeQuery("PRAGMA wal_checkpoint(TRUNCATE)")) {
+                if (rs.next() && rs.getInt(1) != 0) {
+                    LoggingUtil.logWarning("MaintenanceScheduler",
+                            "WAL checkpoint was blocked by active readers and did not complete");
+                }
+            }
+            long checkpointMillis = elapsedMillis(stepStart);
+
+            MaintenanceReport report = new MaintenanceReport(databaseBefore, fileSize(database), walBefore,
+                    fileSize(wal), freeBefore, queryLong(stmt, "PRAGMA freelist_count"), autoVacuumEnabled,
+                    optimizeMillis, vacuumMillis, checkpointMillis, elapsedMillis(start));
+            lastRunMillis = System.currentTimeMillis();
+            lastReport = report;
+            LoggingUtil.logDatabase("Maintenance", "Database", "Database maintenance completed: " + report);
+            return report;
+        }
+    }
+
+    /**
+     * Gibt den Bericht des letzten Wartungslaufs zurück.
+     *
+     * @return Der letzte Bericht oder null, wenn noch kein Lauf stattfand
+     */
+    public MaintenanceReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Setzt den Abstand zwischen zwei Lastprüfungen. Wirkt beim nächsten Start.
+     *
+     * @param checkIntervalMillis Der Abstand in Millisekunden
+     */
+    public synchronized void setCheckIntervalMillis(long checkIntervalMillis) {
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    /**
+     * Setzt den Mindestabstand zwischen zwei Wartungsläufen.
+     *
+     * @param minRunIntervalMillis Der Mindestabstand in Millisekunden
+     */
+    public void setMinRunIntervalMillis(long minRunIntervalMillis) {
+        this.minRunIntervalMillis = minRunIntervalMillis;
+    }
+
+    /**
+     * Setzt die höchste Anfragerate, bei der noch gewartet wird.
+     *
+     * @param lowLoadRequestsPerMinute Die Schwelle in Anfragen pro Minute
+     */
+    public void setLowLoadRequestsPerMinute(long lowLoadRequestsPerMinute) {
+        this.lowLoadRequestsPerMinute = lowLoadRequestsPerMinute;
+    }
+
+    /**
+     * Setzt die Höchstzahl freier Seiten, die ein Lauf zurückgibt.
+     *
+     * @param maxVacuumPages Die Anzahl der Seiten
+     */
+    public synchronized void setMaxVacuumPages(int maxVacuumPages) {
+        this.maxVacuumPages = maxVacuumPages;
+    }
+
+    /**
+     * Setzt den Zeitpunkt des letzten Laufs zurück, sodass der nächste Lauf sofort erlaubt ist.
+     */
+    void resetLastRun() {
+        lastRunMillis = 0;
+    }
+
+    /**
+     * Periodische Aufgabe; Fehler werden protokolliert, damit der Zeitplan bestehen bleibt.
+     */
+    private void checkAndRun() {
+        try {
+            runIfIdle();
+        } catch (RuntimeException e) {
+            LoggingUtil.logError("MaintenanceScheduler", "Unexpected error during maintenance: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Prüft vor einem Wartungsschritt, ob die Anfragerate über der Schwelle liegt.
+     *
+     * @param nextStep Der Name des nächsten Schritts für das Protokoll
+     * @return true, wenn gerade zu viel Last herrscht
+     */
+    private boolean isBusy(String nextStep) {
+        long rate = RequestRateMonitor.getInstance().getRequestsPerMinute();
+        if (rate <= lowLoadRequestsPerMinute) {
+            return false;
+        }
+        LoggingUtil.logInfo("MaintenanceScheduler", "Deferring database maintenance before " + nextStep
+                + ", current load is " + rate + " requests/min");
+        return true;
+    }
+
+    /**
+     * Prüft, ob bereits Statistiken für den Query-Planer vorliegen.
+     */
+    private static boolean hasPlannerStatistics(Statement stmt) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * Liest den ersten Wert einer einzeiligen Abfrage.
+     */
+    private static long queryLong(Statement stmt, String sql) throws SQLException {
+        try (ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Gibt die Größe einer Datei zurück, oder 0 wenn sie nicht existiert.
+     */
+    private static long fileSize(Path path) {
+        try {
+            return Files.exists(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Berechnet die seit dem Startzeitpunkt vergangenen Millisekunden.
+     */
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -0,0 +1,218 @@
+package com.filevault.storage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiPredicate;
+
+/**
+ * Ein begrenzter, threadsicherer LRU-Cache für Metadaten aus der Datenbank.
+ * Bei Überschreiten der Kapazität wird der am längsten nicht genutzte Eintrag verdrängt.
+ * Optional verfallen Einträge nach einer festen Lebensdauer.
+ * <p>
+ * Jedes Verwerfen erhöht eine Generation. Wer einen Wert aus der Datenbank nachlädt, merkt
+ * sich vorher die Generation und legt den Wert mit {@link #putIfUnchanged} ab; wurde
+ * zwischenzeitlich etwas verworfen, könnte der gelesene Wert veraltet sein und wird verworfen.
+ *
+ * @param <K> Der Typ der Schlüssel
+ * @param <V> Der Typ der Werte
+ */
+public class MetadataCache<K, V> {
+
+    /** Ein Eintrag mit Zeitpunkt der Aufnahme in den Cache */
+    private static final class Entry<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Entry(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /** Maximale Anzahl der Einträge */
+    private final int capacity;
+
+    /** Lebensdauer der Einträge in Millisekunden, 0 für unbegrenzt */
+    private final long ttlMillis;
+
+    /** Die Einträge in Zugriffsreihenfolge */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /** Anzahl der Treffer */
+    private long hits;
+
+    /** Anzahl der Fehlschläge */
+    private long misses;
+
+    /** Anzahl der verdrängten oder verfallenen Einträge */
+    private long evictions;
+
+    /** Wird bei jedem Verwerfen erhöht */
+    private long generation;
+
+    /**
+     * Erstellt einen neuen Cache.
+     *
+     * @param capacity Maximale Anzahl der Einträge (mindestens 1)
+     * @param ttlMillis Lebensdauer der Einträge in Millisekunden, 0 für unbegrenzt
+     * @throws IllegalArgumentException wenn Kapazität oder Lebensdauer ungültig sind
+     */
+    public MetadataCache(int capacity, long ttlMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Kapazität muss mindestens 1 sein");
+        }
+        if (ttlMillis < 0) {
+            throw new IllegalArgumentException("Lebensdauer darf nicht negativ sein");
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > MetadataCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Gibt den Wert zu einem Schlüssel zurück und zählt Treffer bzw. Fehlschlag.
+     *
+     * @param key Der Schlüssel
+     * @return Der Wert oder null, wenn er nicht im Cache liegt oder verfallen ist
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && isExpired(entry)) {
+            entries.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * Legt einen Wert im Cache ab.
+     *
+     * @param key Der Schlüssel
+     * @param value Der Wert
+     */
+    public synchronized void put(K key, V value) {
+        entries.put(key, new Entry<>(value, System.currentTimeMillis()));
+    }
+
+    /**
+     * Legt einen nachgeladenen Wert nur dann im Cache ab, wenn seit Beginn des Ladens
+     * nichts verworfen wurde.
+     *
+     * @param key Der Schlüssel
+     * @param value Der Wert
+     * @param loadGeneration Die vor dem Laden mit {@link #getGeneration()} gelesene Generation
+     * @return true, wenn der Wert abgelegt wurde
+     */
+    public synchronized boolean putIfUnchanged(K key, V value, long loadGeneration) {
+        if (generation != loadGeneration) {
+            return false;
+        }
+        put(key, value);
+        return true;
+    }
+
+    /**
+     * Gibt die aktuelle Generation zurück, die bei jedem Verwerfen erhöht wird.
+     *
+     * @return Die Generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Entfernt den Eintrag zu einem Schlüssel.
+     *
+     * @param key Der Schlüssel
+     */
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    /**
+     * Entfernt alle Einträge, auf die die Bedingung zutrifft.
+     *
+     * @param condition Bedingung über Schlüssel und Wert
+     */
+    public synchronized void invalidateIf(BiPredicate<K, V> condition) {
+        generation++;
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<K, Entry<V>> entry = it.next();
+            if (condition.test(entry.getKey(), entry.getValue().value)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Entfernt alle Einträge.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+    }
+
+    /**
+     * Gibt die aktuelle Anzahl der Einträge zurück.
+     *
+     * @return Die Anzahl der Einträge
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gibt die Anzahl der Treffer zurück.
+     *
+     * @return Die Anzahl der Treffer
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Gibt die Anzahl der Fehlschläge zurück.
+     *
+     * @return Die Anzahl der Fehlschläge
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Gibt die Anzahl der verdrängten oder verfallenen Einträge zurück.
+     *
+     * @return Die Anzahl der Verdrängungen
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    /**
+     * Prüft, ob ein Eintrag seine Lebensdauer überschritten hat.
+     *
+     * @param entry Der Eintrag
+     * @return true, wenn der Eintrag verfallen ist
+     */
+    private boolean isExpired(Entry<V> entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.loadedAt >= ttlMillis;
+    }
+}
@@ -0,0 +1,258 @@
+package com.filevault.storage;
+
+import java.sql.SQLException;
+import java.util.List;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Speicher für die Metadaten des Tresors: Ordner, Dateien und den Benutzer.
+ * FileStorage, FolderManager, UserManager und die API greifen über diese Schnittstelle
+ * auf die Metadaten zu, sodass die SQLite-Datenbank durch eine andere Implementierung,
+ * etwa einen reinen Hauptspeicher-Tresor, ersetzt werden kann.
+ * <p>
+ * Funktionen, die auf SQLite-Erweiterungen aufbauen (Volltextsuche, Ordnerstatistiken,
+ * seitenweise Abfragen und Streaming-Scans), sind nicht Teil dieser Schnittstelle.
+ */
+public interface MetadataStore {
+
+    /**
+     * Legt einen neuen Ordner an.
+     *
+     * @param name Der Name des Ordners
+     * @param description Die Beschreibung des Ordners
+     * @param parentId Die ID des übergeordneten Ordners oder null für die oberste Ebene
+     * @return Der angelegte Ordner
+     * @throws SQLException wenn der Ordner nicht angelegt werden kann
+     */
+    VirtualFolder insertFolder(String name, String description, Integer parentId) throws SQLException;
+
+    /**
+     * Gibt einen Ordner anhand seiner ID zurück.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Der Ordner oder null, wenn er nicht existiert
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    VirtualFolder getFolder(int folderId) throws SQLException;
+
+    /**
+     * Gibt alle Ordner nach Namen sortiert zurück. Die Kindbeziehungen sind nicht aufgebaut.
+     *
+     * @return Liste aller Ordner
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    List<VirtualFolder> getAllFolders() throws SQLException;
+
+    /**
+     * Ändert Namen und Beschreibung eines Ordners.
+     *
+     * @param folderId Die ID des Ordners
+     * @param name Der neue Name
+     * @param description Die neue Beschreibung
+     * @return true, wenn der Ordner existiert und geändert wurde
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    boolean updateFolder(int folderId, String name, String description) throws SQLException;
+
+    /**
+     * Hängt einen Ordner unter einen anderen übergeordneten Ordner. Liegt der neue
+     * übergeordnete Ordner im Teilbaum des Ordners, wird nichts geändert; Prüfung und
+     * Änderung erfolgen atomar.
+     *
+     * @param folderId Die ID des Ordners
+     * @param parentId Die ID des neuen übergeordneten Ordners oder null für die oberste Ebene
+     * @return true, wenn der Ordner existiert und verschoben wurde, false auch bei einem Zyklus
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    boolean moveFolder(int folderId, Integer parentId) throws SQLException;
+
+    /**
+     * Löscht einen Ordner samt der Dateien, die direkt in ihm liegen.
+     *
+     * @param folderId Die ID des Ordners
+     * @return true, wenn der Ordner gelöscht wurde
+     * @throws SQLException wenn ein Fehler beim Löschen auftritt, etwa weil Unterordner existieren
+     */
+    boolean deleteFolder(int folderId) throws SQLException;
+
+    /**
+     * Löscht einen Ordner mit allen Unterordnern und allen Dateien des Teilbaums in einem Schritt.
+     *
+     * @param folderId Die ID des Wurzelordners des Teilbaums
+     * @return Die IDs der gelöschten Ordner
+     * @throws SQLException wenn ein Fehler beim Löschen auftritt
+     */
+    List<Integer> deleteFolderTree(int folderId) throws SQLException;
+
+    /**
+     * Gibt die IDs aller Ordner im Teilbaum eines Ordners zurück, einschließlich des Ordners selbst.
+     *
+     * @param folderId Die ID des Wurzelordners des Teilbaums
+     * @return Die IDs, sortiert nach Tiefe
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    List<Integer> getSubtreeFolderIds(int folderId) throws SQLException;
+
+    /**
+     * Prüft, ob ein Ordner Vorfahre eines anderen ist. Jeder Ordner gilt als sein eigener Vorfahre.
+     *
+     * @param ancestorId Die ID des möglichen Vorfahren
+     * @param descendantId Die ID des möglichen Nachfahren
+     * @return true, wenn ancestorId auf dem Pfad von descendantId zur Wurzel liegt
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    boolean isAncestor(int ancestorId, int descendantId) throws SQLException;
+
+    /**
+     * Zählt die direkten Unterordner eines Ordners.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Die Anzahl der Unterordner
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    int countSubfolders(int folderId) throws SQLException;
+
+    /**
+     * Legt einen neuen Dateieintrag an.
+     *
+     * @param folderId Die ID des Ordners
+     * @param originalName Der ursprüngliche Dateiname
+     * @param encryptedPath Der Pfad der verschlüsselten Datei
+     * @param sizeBytes Die Größe der Originaldatei in Bytes
+     * @param mimeType Der MIME-Typ
+     * @return Der angelegte Dateieintrag
+     * @throws SQLException wenn der Eintrag nicht angelegt werden kann
+     */
+    EncryptedFile insertFile(int folderId, String originalName, String encryptedPath,
+                             long sizeBytes, String mimeType) throws SQLException;
+
+    /**
+     * Legt mehrere Dateieinträge in einem Ordner gemeinsam an. Entweder werden alle
+     * Einträge angelegt oder keiner. Die Lage gepackter Dateien wird übernommen.
+     *
+     * @param folderId Die ID des Ordners
+     * @param files Die anzulegenden Einträge; ihre IDs und Ordner-IDs werden ignoriert
+     * @return Die angelegten Einträge mit ihren IDs, in der Reihenfolge der Eingabe
+     * @throws SQLException wenn die Einträge nicht angelegt werden können
+     */
+    List<EncryptedFile> insertFiles(int folderId, List<EncryptedFile> files) throws SQLException;
+
+    /**
+     * Gibt einen Dateieintrag anhand seiner ID zurück.
+     *
+     * @param fileId Die ID der Datei
+     * @return Der Dateieintrag oder null, wenn er nicht existiert
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    EncryptedFile getFile(int fileId) throws SQLException;
+
+    /**
+     * Gibt alle Dateien eines Ordners nach Namen sortiert zurück.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Liste der Dateien
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    List<EncryptedFile> getFilesInFolder(int folderId) throws SQLException;
+
+    /**
+     * Gibt alle Dateien nach Namen sortiert zurück.
+     *
+     * @return Liste aller Dateien
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    List<EncryptedFile> getAllFiles() throws SQLException;
+
+    /**
+     * Benennt eine Datei um.
+     *
+     * @param fileId Die ID der Datei
+     * @param newName Der neue Name
+     * @return true, wenn die Datei existiert und umbenannt wurde
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    boolean renameFile(int fileId, String newName) throws SQLException;
+
+    /**
+     * Verschiebt eine Datei in einen anderen Ordner.
+     *
+     * @param fileId Die ID der Datei
+     * @param folderId Die ID des Zielordners
+     * @return true, wenn die Datei existiert und verschoben wurde
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    boolean moveFile(int fileId, int folderId) throws SQLException;
+
+    /**
+     * Setzt den Zeitstempel des letzten Zugriffs einer Datei auf jetzt.
+     *
+     * @param fileId Die ID der Datei
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    void touchFile(int fileId) throws SQLException;
+
+    /**
+     * Löscht einen Dateieintrag.
+     *
+     * @param fileId Die ID der Datei
+     * @return true, wenn der Eintrag existierte und gelöscht wurde
+     * @throws SQLException wenn ein Fehler beim Löschen auftritt
+     */
+    boolean deleteFile(int fileId) throws SQLException;
+
+    /**
+     * Zählt die Dateien, die direkt in einem Ordner liegen.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Die Anzahl der Dateien
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    int countFilesInFolder(int folderId) throws SQLException;
+
+    /**
+     * Zählt die registrierten Benutzer.
+     *
+     * @return Die Anzahl der Benutzer
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    int countUsers() throws SQLException;
+
+    /**
+     * Legt einen Benutzer an.
+     *
+     * @param username Der Benutzername
+     * @param passwordHash Der BCrypt-Hash des Passworts
+     * @return true, wenn der Benutzer angelegt wurde
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    boolean insertUser(String username, String passwordHash) throws SQLException;
+
+    /**
+     * Gibt den Passwort-Hash eines Benutzers zurück.
+     *
+     * @param username Der Benutzername
+     * @return Der Hash oder null, wenn der Benutzer nicht existiert
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    String getPasswordHash(String username) throws SQLException;
+
+    /**
+     * Ersetzt den Passwort-Hash eines Benutzers.
+     *
+     * @param username Der Benutzername
+     * @param passwordHash Der neue BCrypt-Hash
+     * @return true, wenn der Benutzer existiert und geändert wurde
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt
+     */
+    boolean updatePasswordHash(String username, String passwordHash) throws SQLException;
+
+    /**
+     * Löscht alle Benutzer.
+     *
+     * @return Die Anzahl der gelöschten Benutzer
+     * @throws SQLException wenn ein Fehler beim Löschen auftritt
+     */
+    int deleteUsers() throws SQLException;
+}
@@ -0,0 +1,11 @@
+package com.filevault.storage;
+
+/**
+ * Lage eines verschlüsselten Inhalts innerhalb einer Pack-Datei.
+ *
+ * @param packId Die ID der Pack-Datei
+ * @param offset Die Position des Inhalts in Bytes
+ * @param length Die Länge des Inhalts in Bytes
+ */
+public record PackLocation(int packId, long offset, int length) {
+}
@@ -0,0 +1,436 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Speichert kleine verschlüsselte Dateien gemeinsam in Pack-Dateien statt als eigene Dateien.
+ * <p>
+ * Verschlüsselte Inhalte werden nur an die aktive Pack-Datei angehängt; die Dateitabelle hält
+ * für jede gepackte Datei Pack-ID, Position und Länge. Erreicht die aktive Pack-Datei ihre
+ * Höchstgröße, wird sie versiegelt und eine neue begonnen. Gelöschte Dateien hinterlassen
+ * tote Bereiche; welcher Anteil einer Pack-Datei noch belegt ist, ergibt sich aus der
+ * Dateitabelle. Die Verdichtung schreibt die belegten Einträge versiegelter Pack-Dateien mit
+ * zu hohem toten Anteil in die aktive Pack-Datei um und entfernt die alte Datei.
+ * Gepackt wird nur mit dem SQLite-Metadatenspeicher, da die Verdichtung die Dateitabelle liest.
+ */
+public class PackStore {
+
+    /** Die einzige Instanz des PackStore */
+    private static PackStore instance;
+
+    /** Unterverzeichnis des Datenverzeichnisses für die Pack-Dateien */
+    private static final String PACK_DIRECTORY = "packs";
+
+    /** Dateien bis zu dieser Größe in Bytes werden gepackt, ein negativer Wert schaltet das Packen ab */
+    private volatile long smallFileThreshold = 16 * 1024;
+
+    /** Größe in Bytes, ab der eine Pack-Datei versiegelt und eine neue begonnen wird */
+    private volatile long maxPackBytes = 64L * 1024 * 1024;
+
+    /** Anteil toter Bytes, ab dem eine versiegelte Pack-Datei verdichtet wird */
+    private volatile double compactionThreshold = 0.5;
+
+    /** Aufgelöste Pfade der Pack-Dateien nach ID */
+    private final Map<Integer, Path> packPaths = new ConcurrentHashMap<>();
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private PackStore() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des PackStore zurück.
+     *
+     * @return Die Instanz des PackStore
+     */
+    public static synchronized PackStore getInstance() {
+        if (instance == null) {
+            instance = new PackStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Prüft, ob eine Datei dieser Größe gepackt werden soll.
+     *
+     * @param sizeBytes Die Größe der Originaldatei in Bytes
+     * @return true, wenn die Datei in eine Pack-Datei geschrieben werden soll
+     */
+    public boolean accepts(long sizeBytes) {
+        return sizeBytes <= smallFileThreshold
+                && DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore;
+    }
+
+    /**
+     * Hängt einen verschlüsselten Inhalt an die aktive Pack-Datei an und schreibt ihn auf die Platte.
+     *
+     * @param record Der verschlüsselte Inhalt
+     * @return Die Lage des Inhalts
+     * @throws IOException wenn die Pack-Datei nicht geschrieben werden kann
+     * @throws SQLException wenn die Pack-Datei nicht registriert werden kann
+     */
+    public PackLocation append(byte[] record) throws IOException, SQLException {
+        return append(List.of(record)).get(0);
+    }
+
+    /**
+     * Hängt mehrere verschlüsselte Inhalte an und schreibt sie gemeinsam auf die Platte.
+     *
+     * @param records Die verschlüsselten Inhalte
+     * @return Die Lage der Inhalte, in der Reihenfolge der Eingabe
+     * @throws IOException wenn die Pack-Datei nicht geschrieben werden kann
+     * @throws SQLException wenn eine Pack-Datei nicht registriert werden kann
+     */
+    public synchronized List<PackLocation> append(List<byte[]> records) throws IOException, SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return append(conn, records);
+        }
+    }
+
+    /**
+     * Hängt mehrere verschlüsselte Inhalte an und registriert neue Pack-Dateien über eine
+     * bestimmte Verbindung, etwa die eigene Schreibverbindung eines Imports.
+     *
+     * @param conn Die zu verwendende Verbindung; sie wird nicht geschlossen
+     * @param records Die verschlüsselten Inhalte
+     * @return Die Lage der Inhalte, in der Reihenfolge der Eingabe
+     * @throws IOException wenn die Pack-Datei nicht geschrieben werden kann
+     * @throws SQLException wenn eine Pack-Datei nicht registriert werden kann
+     */
+    synchronized List<PackLocation> append(Connection conn, List<byte[]> records) throws IOException, SQLException {
+        List<PackLocation> locations = new ArrayList<>(records.size());
+        int packId = activePack(conn);
+        FileChannel channel = openForAppend(conn, packId);
+        try {
+            for (byte[] record : records) {
+                long offset = channel.size();
+                if (offset > 0 && offset + record.length > maxPackBytes) {
+                    channel.force(false);
+                    channel.close();
+                    seal(conn, packId);
+                    packId = createPack(conn);
+                    channel = openForAppend(conn, packId);
+                    offset = 0;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, offset + buffer.position());
+                }
+                locations.add(new PackLocation(packId, offset, record.length));
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        return locations;
+    }
+
+    /**
+     * Liest einen verschlüsselten Inhalt aus einer Pack-Datei.
+     *
+     * @param packId Die ID der Pack-Datei
+     * @param offset Die Position des Inhalts
+     * @param length Die Länge des Inhalts
+     * @return Der verschlüsselte Inhalt
+     * @throws IOException wenn die Pack-Datei nicht gelesen werden kann
+     * @throws SQLException wenn die Pack-Datei nicht gefunden wird
+     */
+    public byte[] read(int packId, long offset, int length) throws IOException, SQLException {
+        byte[] record = new byte[length];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        try (FileChannel channel = FileChannel.open(pathOf(packId), StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new IOException("Pack-Datei " + packId + " ist kürzer als erwartet");
+                }
+            }
+        }
+        return record;
+    }
+
+    /**
+     * Verdichtet alle versiegelten Pack-Dateien, deren Anteil toter Bytes die Schwelle
+     * erreicht. Die noch belegten Einträge werden in die aktive Pack-Datei übertragen,
+     * die Dateieinträge umgeschrieben und die alte Pack-Datei gelöscht.
+     *
+     * @return Die Anzahl der freigegebenen Bytes
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     */
+    public synchronized long compact() throws SQLException {
+        if (!(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return 0;
+        }
+        long reclaimed = 0;
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            Map<Integer, Long> liveBytes = new HashMap<>();
+            List<Integer> sealed = new ArrayList<>();
+            try (Statement stmt = conn.createStatement()) {
+                try (ResultSet rs = stmt.executeQuery("SELECT id FROM packs WHERE sealed = 1 ORDER BY id")) {
+                    while (rs.next()) {
+                        sealed.add(rs.getInt(1));
+                    }
+                }
+                try (ResultSet rs = stmt.executeQuery(
+                        "SELECT pack_id, SUM(pack_length) FROM (" +
+                        "SELECT pack_id, pack_offset, pack_length FROM files WHERE pack_id IS NOT NULL " +
+                        "UNION SELECT pack_id, pack_offset, pack_length FROM file_versions WHERE pack_id IS NOT NULL) " +
+                        "GROUP BY pack_id")) {
+                    while (rs.next()) {
+                        liveBytes.put(rs.getInt(1), rs.getLong(2));
+                    }
+                }
+            }
+
+            for (int packId : sealed) {
+                Path path = pathOf(packId);
+                long size;
+                try {
+                    size = Files.exists(path) ? Files.size(path) : 0;
+                } catch (IOException e) {
+                    LoggingUtil.logError("PackStore", "Could not read size of pack " + packId + ": " + e.getMessage());
+                    continue;
+                }
+                long live = liveBytes.getOrDefault(packId, 0L);
+                if (size > 0 && (size - live) < size * compactionThreshold) {
+                    continue;
+                }
+                try {
+                    compactPack(conn, packId, path);
+                    reclaimed += size - live;
+                } catch (IOException e) {
+                    LoggingUtil.logError("PackStore", "Compaction of pack " + packId + " failed: " + e.getMessage());
+                }
+            }
+        }
+        if (reclaimed > 0) {
+            LoggingUtil.logInfo("PackStore", "Pack compaction reclaimed " + reclaimed + " bytes");
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Überträgt die belegten Einträge einer Pack-Datei in die aktive Pack-Datei und entfernt sie.
+     */
+    private void compactPack(Connection conn, int packId, Path path) throws SQLException, IOException {
+        List<Entry> entries = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT 'files', id, pack_offset, pack_length FROM files WHERE pack_id = ? " +
+                "UNION ALL SELECT 'file_versions', id, pack_offset, pack_length FROM file_versions WHERE pack_id = ? " +
+                "ORDER BY pack_offset")) {
+            stmt.setInt(1, packId);
+            stmt.setInt(2, packId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entries.add(new Entry(rs.getString(1), rs.getInt(2), rs.getLong(3), rs.getInt(4)));
+                }
+            }
+        }
+
+        // Kopien teilen sich einen Eintrag; er wird nur einmal übertragen
+        Map<Long, Integer> recordIndexes = new HashMap<>();
+        List<byte[]> records = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (!recordIndexes.containsKey(entry.offset())) {
+                recordIndexes.put(entry.offset(), records.size());
+                records.add(read(packId, entry.offset(), entry.length()));
+            }
+        }
+        List<PackLocation> moved = append(conn, records);
+
+        conn.setAutoCommit(false);
+        try {
+            // Frühere Versionen werden wie Dateien in die aktive Pack-Datei übertragen
+            try (PreparedStatement files = conn.prepareStatement(
+                    "UPDATE files SET pack_id = ?, pack_offset = ? WHERE id = ? AND pack_id = ? AND pack_offset = ?");
+                 PreparedStatement versions = conn.prepareStatement(
+                    "UPDATE file_versions SET pack_id = ?, pack_offset = ? WHERE id = ? AND pack_id = ? AND pack_offset = ?")) {
+                for (int i = 0; i < entries.size(); i++) {
+                    PreparedStatement stmt = entries.get(i).table().equals("files") ? files : versions;
+                    PackLocation location = moved.get(recordIndexes.get(entries.get(i).offset()));
+                    stmt.setInt(1, location.packId());
+                    stmt.setLong(2, location.offset());
+                    stmt.setInt(3, entries.get(i).id());
+                    stmt.setInt(4, packId);
+                    stmt.setLong(5, entries.get(i).offset());
+                    stmt.addBatch();
+                }
+                files.executeBatch();
+                versions.executeBatch();
+            }
+            // Schlägt fehl, solange noch ein Eintrag auf die Pack-Datei verweist
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM packs WHERE id = ?")) {
+                stmt.setInt(1, packId);
+                stmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+
+        // Zwischengespeicherte Dateien tragen noch die alte Lage
+        FileStorage.getInstance().invalidateCache();
+        packPaths.remove(packId);
+        Files.deleteIfExists(path);
+        LoggingUtil.logInfo("PackStore", "Compacted pack " + packId + ", moved " + records.size() + " entries");
+    }
+
+    /**
+     * Gibt die ID der aktiven Pack-Datei zurück und legt bei Bedarf eine neue an.
+     */
+    private int activePack(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM packs WHERE sealed = 0 ORDER BY id DESC LIMIT 1")) {
+            if (rs.next()) {
+                return rs.getInt(1);
+            }
+        }
+        return createPack(conn);
+    }
+
+    /**
+     * Registriert eine neue, leere Pack-Datei.
+     */
+    private int createPack(Connection conn) throws SQLException {
+        String path = PACK_DIRECTORY + "/" + UUID.randomUUID() + ".pack";
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO packs (path) VALUES (?)", Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, path);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("Creating pack failed, no ID obtained.");
+                }
+                int packId = keys.getInt(1);
+                LoggingUtil.logDatabase("Insert", "packs", "Started pack " + packId);
+                return packId;
+            }
+        }
+    }
+
+    /**
+     * Versiegelt eine Pack-Datei, sodass nichts mehr angehängt wird.
+     */
+    private void seal(Connection conn, int packId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE packs SET sealed = 1 WHERE id = ?")) {
+            stmt.setInt(1, packId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Öffnet eine Pack-Datei zum Anhängen und legt sie bei Bedarf an.
+     */
+    private FileChannel openForAppend(Connection conn, int packId) throws IOException, SQLException {
+        Path path = pathOf(conn, packId);
+        Files.createDirectories(path.getParent());
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Bestimmt den absoluten Pfad einer Pack-Datei.
+     */
+    Path pathOf(int packId) throws SQLException {
+        Path cached = packPaths.get(packId);
+        if (cached != null) {
+            return cached;
+        }
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return pathOf(conn, packId);
+        }
+    }
+
+    /**
+     * Bestimmt den absoluten Pfad einer Pack-Datei über eine bestimmte Verbindung, die nicht
+     * geschlossen wird. Der Pfad wird zwischengespeichert, spätere Lesezugriffe brauchen die
+     * Datenbank also nicht mehr.
+     */
+    Path pathOf(Connection conn, int packId) throws SQLException {
+        Path cached = packPaths.get(packId);
+        if (cached != null) {
+            return cached;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT path FROM packs WHERE id = ?")) {
+            stmt.setInt(1, packId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Unknown pack: " + packId);
+                }
+                Path path = Paths.get(BlobStore.resolve(rs.getString(1)));
+                packPaths.put(packId, path);
+                return path;
+            }
+        }
+    }
+
+    /**
+     * Verwirft die zwischengespeicherten Pfade, etwa nach dem Wechsel der Datenbank.
+     */
+    void clearCache() {
+        packPaths.clear();
+    }
+
+    /**
+     * Gibt die Größe zurück, bis zu der Dateien gepackt werden.
+     *
+     * @return Die Größe in Bytes
+     */
+    public long getSmallFileThreshold() {
+        return smallFileThreshold;
+    }
+
+    /**
+     * Setzt die Größe, bis zu der Dateien gepackt werden.
+     *
+     * @param smallFileThreshold Die Größe in Bytes, ein negativer Wert schaltet das Packen ab
+     */
+    public void setSmallFileThreshold(long smallFileThreshold) {
+        this.smallFileThreshold = smallFileThreshold;
+    }
+
+    /**
+     * Setzt die Größe, ab der eine Pack-Datei versiegelt wird.
+     *
+     * @param maxPackBytes Die Größe in Bytes
+     */
+    public void setMaxPackBytes(long maxPackBytes) {
+        this.maxPackBytes = maxPackBytes;
+    }
+
+    /**
+     * Setzt den Anteil toter Bytes, ab dem eine Pack-Datei verdichtet wird.
+     *
+     * @param compactionThreshold Der Anteil zwischen 0 und 1
+     */
+    public void setCompactionThreshold(double compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * Ein belegter Eintrag einer Pack-Datei, aus der Dateitabelle oder der Versionstabelle.
+     */
+    private record Entry(String table, int id, long offset, int length) {
+    }
+}
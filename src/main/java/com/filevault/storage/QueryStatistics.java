@@ -0,0 +1,248 @@
+package com.filevault.storage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Sammelt Laufzeitstatistiken aller SQL-Anweisungen, die über die Verbindungen des
+ * {@link DatabaseManager} ausgeführt werden.
+ * <p>
+ * Anweisungen werden nach ihrer Vorlage gruppiert: bei vorbereiteten Anweisungen ist das der
+ * SQL-Text mit Platzhaltern, bei einfachen Anweisungen der SQL-Text, in dem Zahlen und
+ * Zeichenketten durch {@code ?} ersetzt sind. Ausführungen, die länger als die Schwelle
+ * dauern, werden protokolliert und in einem begrenzten Verlauf gehalten.
+ * <p>
+ * Die Vorlage wird je SQL-Text in einem begrenzten Cache gehalten, damit die Normalisierung
+ * nicht bei jeder Ausführung läuft. Die Zahl der Vorlagen ist begrenzt; weitere Vorlagen,
+ * etwa aus dynamisch zusammengesetzten Anweisungen, werden unter {@value #OVERFLOW_TEMPLATE}
+ * zusammengefasst.
+ */
+public class QueryStatistics {
+
+    /** Die einzige Instanz von QueryStatistics */
+    private static QueryStatistics instance;
+
+    /** Anzahl der im Verlauf gehaltenen langsamen Anweisungen */
+    private static final int SLOW_QUERY_HISTORY = 100;
+
+    /** Höchstzahl der getrennt erfassten Anweisungsvorlagen */
+    static final int MAX_TEMPLATES = 1000;
+
+    /** Vorlage, unter der Anweisungen jenseits von {@link #MAX_TEMPLATES} erfasst werden */
+    static final String OVERFLOW_TEMPLATE = "(other)";
+
+    /** Anzahl der SQL-Texte, deren Vorlage zwischengespeichert wird */
+    private static final int TEMPLATE_CACHE_SIZE = 2048;
+
+    /** Zeichenketten-Literale in SQL */
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    /** Zahlen-Literale in SQL */
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+    /** Folgen von Leerraum */
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /** Statistiken je Anweisungsvorlage */
+    private final Map<String, StatementStats> statistics = new ConcurrentHashMap<>();
+
+    /** Zuletzt gebildete Vorlagen je SQL-Text */
+    private final MetadataCache<String, String> templates = new MetadataCache<>(TEMPLATE_CACHE_SIZE, 0);
+
+    /** Die zuletzt erfassten langsamen Anweisungen, älteste zuerst */
+    private final Deque<SlowQuery> slowQueries = new ArrayDeque<>();
+
+    /** Schwelle in Millisekunden, ab der eine Anweisung als langsam gilt */
+    private volatile long slowQueryThresholdMillis = 200;
+
+    /** Höchstzahl der Wiederholungen einer Anweisung nach SQLITE_BUSY */
+    private volatile int maxBusyRetries = 3;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private QueryStatistics() {
+    }
+
+    /**
+     * Gibt die einzige Instanz von QueryStatistics zurück.
+     *
+     * @return Die Instanz von QueryStatistics
+     */
+    public static synchronized QueryStatistics getInstance() {
+        if (instance == null) {
+            instance = new QueryStatistics();
+        }
+        return instance;
+    }
+
+    /**
+     * Gibt die Statistik einer Anweisungsvorlage zurück und legt sie bei Bedarf an. Ist die
+     * Höchstzahl der Vorlagen erreicht, wird die Statistik von {@value #OVERFLOW_TEMPLATE} geliefert.
+     *
+     * @param template Die Anweisungsvorlage
+     * @return Die Statistik der Vorlage
+     */
+    StatementStats statsFor(String template) {
+        StatementStats stats = statistics.get(template);
+        if (stats != null) {
+            return stats;
+        }
+        if (statistics.size() >= MAX_TEMPLATES) {
+            return statistics.computeIfAbsent(OVERFLOW_TEMPLATE, StatementStats::new);
+        }
+        return statistics.computeIfAbsent(template, StatementStats::new);
+    }
+
+    /**
+     * Gibt die Statistik einer Anweisung zurück und legt sie bei Bedarf an.
+     *
+     * @param sql Die Anweisung
+     * @return Die Statistik ihrer Vorlage
+     */
+    StatementStats statsForSql(String sql) {
+        return statsFor(templateOf(sql));
+    }
+
+    /**
+     * Gibt die Vorlage einer Anweisung zurück und bildet sie nur, wenn sie nicht im Cache liegt.
+     *
+     * @param sql Die Anweisung
+     * @return Die Vorlage
+     */
+    String templateOf(String sql) {
+        String template = templates.get(sql);
+        if (template == null) {
+            template = normalize(sql);
+            templates.put(sql, template);
+        }
+        return template;
+    }
+
+    /**
+     * Erfasst eine Ausführung und protokolliert sie, falls sie die Schwelle überschreitet.
+     *
+     * @param stats Die Statistik der Anweisungsvorlage
+     * @param nanos Die Ausführungszeit in Nanosekunden
+     */
+    void recordExecution(StatementStats stats, long nanos) {
+        stats.recordExecution(nanos);
+        double millis = nanos / 1_000_000.0;
+        if (millis >= slowQueryThresholdMillis) {
+            LoggingUtil.logWarning("QueryStatistics", String.format(Locale.ROOT,
+                    "Slow query (%.1f ms): %s", millis, stats.getTemplate()));
+            synchronized (slowQueries) {
+                if (slowQueries.size() == SLOW_QUERY_HISTORY) {
+                    slowQueries.removeFirst();
+                }
+                slowQueries.addLast(new SlowQuery(stats.getTemplate(), millis, LocalDateTime.now()));
+            }
+        }
+    }
+
+    /**
+     * Gibt die Statistiken aller bisher ausgeführten Anweisungsvorlagen zurück,
+     * absteigend nach Gesamtdauer sortiert.
+     *
+     * @return Die Statistiken
+     */
+    public List<StatementStats> getStatementStats() {
+        List<StatementStats> result = new ArrayList<>(statistics.values());
+        result.sort(Comparator.comparingDouble(StatementStats::getTotalMillis).reversed());
+        return result;
+    }
+
+    /**
+     * Gibt die Statistik einer Anweisungsvorlage zurück.
+     *
+     * @param sql Die Anweisung; sie wird wie bei der Erfassung normalisiert
+     * @return Die Statistik oder null, wenn die Vorlage noch nicht ausgeführt wurde
+     */
+    public StatementStats getStatementStats(String sql) {
+        return statistics.get(templateOf(sql));
+    }
+
+    /**
+     * Gibt die zuletzt erfassten langsamen Anweisungen zurück, neueste zuerst.
+     *
+     * @return Die langsamen Anweisungen
+     */
+    public List<SlowQuery> getSlowQueries() {
+        synchronized (slowQueries) {
+            List<SlowQuery> result = new ArrayList<>(slowQueries);
+            Collections.reverse(result);
+            return result;
+        }
+    }
+
+    /**
+     * Verwirft alle gesammelten Statistiken und langsamen Anweisungen.
+     */
+    public void reset() {
+        statistics.clear();
+        synchronized (slowQueries) {
+            slowQueries.clear();
+        }
+    }
+
+    /**
+     * Gibt die Schwelle für langsame Anweisungen zurück.
+     *
+     * @return Die Schwelle in Millisekunden
+     */
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdMillis;
+    }
+
+    /**
+     * Setzt die Schwelle, ab der eine Anweisung als langsam protokolliert wird.
+     *
+     * @param slowQueryThresholdMillis Die Schwelle in Millisekunden
+     */
+    public void setSlowQueryThresholdMillis(long slowQueryThresholdMillis) {
+        this.slowQueryThresholdMillis = slowQueryThresholdMillis;
+    }
+
+    /**
+     * Gibt die Höchstzahl der Wiederholungen nach SQLITE_BUSY zurück.
+     *
+     * @return Die Anzahl der Wiederholungen
+     */
+    public int getMaxBusyRetries() {
+        return maxBusyRetries;
+    }
+
+    /**
+     * Setzt die Höchstzahl der Wiederholungen einer Anweisung, die außerhalb einer
+     * Transaktion mit SQLITE_BUSY oder SQLITE_LOCKED fehlschlägt.
+     *
+     * @param maxBusyRetries Die Anzahl der Wiederholungen, 0 schaltet sie ab
+     */
+    public void setMaxBusyRetries(int maxBusyRetries) {
+        this.maxBusyRetries = maxBusyRetries;
+    }
+
+    /**
+     * Bildet die Vorlage einer Anweisung, indem Literale durch Platzhalter ersetzt und
+     * Leerraum zusammengefasst wird.
+     *
+     * @param sql Die Anweisung
+     * @return Die Vorlage
+     */
+    static String normalize(String sql) {
+        String template = STRING_LITERAL.matcher(sql).replaceAll("?");
+        template = NUMBER_LITERAL.matcher(template).replaceAll("?");
+        return WHITESPACE.matcher(template).replaceAll(" ").trim();
+    }
+}
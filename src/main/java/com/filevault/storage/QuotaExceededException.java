@@ -0,0 +1,35 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+
+/**
+ * Wird ausgelöst, wenn ein Import oder ein Verschieben das Speicherkontingent eines Ordners überschreiten würde.
+ */
+public class QuotaExceededException extends IOException {
+
+    /** Versionskennung für die Serialisierung */
+    private static final long serialVersionUID = 1L;
+
+    /** ID des Ordners, dessen Kontingent überschritten würde */
+    private final int folderId;
+
+    /**
+     * Erstellt eine neue Ausnahme.
+     *
+     * @param folderId Die ID des Ordners mit dem Kontingent
+     * @param message Die Fehlermeldung
+     */
+    public QuotaExceededException(int folderId, String message) {
+        super(message);
+        this.folderId = folderId;
+    }
+
+    /**
+     * Gibt die ID des Ordners zurück, dessen Kontingent überschritten würde.
+     *
+     * @return Die Ordner-ID
+     */
+    public int getFolderId() {
+        return folderId;
+    }
+}
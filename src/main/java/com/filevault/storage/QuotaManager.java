@@ -0,0 +1,353 @@
+package com.filevault.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.filevault.model.FolderQuota;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Verwaltet Speicherkontingente für Ordner und prüft Importe und Verschiebungen gegen sie.
+ * <p>
+ * Ein Kontingent begrenzt Größe und Anzahl der Dateien direkt in einem Ordner oder in seinem
+ * gesamten Teilbaum. Geprüft wird gegen die inkrementell gepflegten Ordnerstatistiken: Für
+ * einen Zielordner werden nur die Kontingente seiner Vorfahren über die Closure-Tabelle
+ * gelesen, unabhängig von der Anzahl der Dateien. Die Prüfung läuft vor der Verschlüsselung,
+ * sodass abgelehnte Importe keine Arbeit verursachen. Trigger wiederholen dieselbe Prüfung
+ * beim Anlegen und Verschieben von Einträgen, damit gleichzeitige Importe ein Kontingent
+ * nicht gemeinsam überschreiten. Kontingente setzen den SQLite-Metadatenspeicher voraus.
+ */
+public class QuotaManager {
+
+    /** Die einzige Instanz des QuotaManager */
+    private static QuotaManager instance;
+
+    /** Belegte Bytes, die für ein Kontingent q mit den Statistiken s seines Ordners zählen */
+    static final String USED_BYTES = "(CASE WHEN q.recursive = 1 THEN s.total_bytes ELSE s.direct_bytes END)";
+
+    /** Belegte Dateien, die für ein Kontingent q mit den Statistiken s seines Ordners zählen */
+    static final String USED_FILES = "(CASE WHEN q.recursive = 1 THEN s.total_file_count ELSE s.direct_file_count END)";
+
+    /** Meldung der Trigger, wenn ein Kontingent überschritten würde */
+    static final String TRIGGER_MESSAGE = "folder quota exceeded";
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private QuotaManager() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des QuotaManager zurück.
+     *
+     * @return Die Instanz des QuotaManager
+     */
+    public static synchronized QuotaManager getInstance() {
+        if (instance == null) {
+            instance = new QuotaManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Bildet die Abfrage der Kontingente, die für Dateien in einem Ordner gelten: Teilbaum-
+     * Kontingente aller Vorfahren und das direkte Kontingent des Ordners selbst.
+     *
+     * @param folder Ausdruck für die ID des Ordners, etwa ein Parameter oder eine Trigger-Spalte
+     * @return Der FROM- und WHERE-Teil der Abfrage mit den Aliasen q und s
+     */
+    static String applicableQuotas(String folder) {
+        return "FROM folder_closure c " +
+               "JOIN folder_quotas q ON q.folder_id = c.ancestor " +
+               "JOIN folder_stats s ON s.folder_id = c.ancestor " +
+               "WHERE c.descendant = " + folder + " AND (q.recursive = 1 OR c.depth = 0)";
+    }
+
+    /**
+     * Bildet die Bedingung, dass ein Kontingent durch zusätzliche Bytes und Dateien überschritten würde.
+     *
+     * @param bytes Ausdruck für die zusätzlichen Bytes
+     * @param files Ausdruck für die zusätzlichen Dateien
+     * @return Die Bedingung
+     */
+    static String exceeds(String bytes, String files) {
+        return "((q.max_bytes IS NOT NULL AND " + USED_BYTES + " + " + bytes + " > q.max_bytes) " +
+               "OR (q.max_files IS NOT NULL AND " + USED_FILES + " + " + files + " > q.max_files))";
+    }
+
+    /**
+     * Bildet die Bedingung, dass ein Kontingent nicht bereits den Quellordner einer
+     * Verschiebung abdeckt; für solche Teilbaum-Kontingente ändert sich die Belegung nicht.
+     *
+     * @param source Ausdruck für die ID des Quellordners
+     * @return Die Bedingung
+     */
+    static String notCovering(String source) {
+        return "NOT (q.recursive = 1 AND EXISTS (SELECT 1 FROM folder_closure o " +
+               "WHERE o.ancestor = q.folder_id AND o.descendant = " + source + "))";
+    }
+
+    /**
+     * Setzt das Kontingent eines Ordners oder ersetzt ein bestehendes.
+     *
+     * @param folderId Die ID des Ordners
+     * @param maxBytes Höchstgröße in Bytes oder null für unbegrenzt
+     * @param maxFiles Höchstzahl an Dateien oder null für unbegrenzt
+     * @param recursive Ob das Kontingent für den gesamten Teilbaum gilt
+     * @return Das gespeicherte Kontingent
+     * @throws SQLException wenn das Kontingent nicht gespeichert werden kann
+     * @throws IllegalArgumentException wenn der Ordner nicht existiert oder eine Grenze negativ ist
+     */
+    public FolderQuota setQuota(int folderId, Long maxBytes, Long maxFiles, boolean recursive) throws SQLException {
+        if ((maxBytes != null && maxBytes < 0) || (maxFiles != null && maxFiles < 0)) {
+            throw new IllegalArgumentException("Grenzen dürfen nicht negativ sein");
+        }
+        if (DatabaseManager.getMetadataStore().getFolder(folderId) == null) {
+            throw new IllegalArgumentException("Ordner nicht gefunden: " + folderId);
+        }
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT OR REPLACE INTO folder_quotas (folder_id, max_bytes, max_files, recursive) " +
+                     "VALUES (?, ?, ?, ?)")) {
+            stmt.setInt(1, folderId);
+            setLimit(stmt, 2, maxBytes);
+            setLimit(stmt, 3, maxFiles);
+            stmt.setInt(4, recursive ? 1 : 0);
+            stmt.executeUpdate();
+        }
+        LoggingUtil.logInfo("QuotaManager", "Quota set for folder " + folderId + ": maxBytes=" + maxBytes
+                + ", maxFiles=" + maxFiles + ", recursive=" + recursive);
+        return new FolderQuota(folderId, maxBytes, maxFiles, recursive);
+    }
+
+    /**
+     * Entfernt das Kontingent eines Ordners.
+     *
+     * @param folderId Die ID des Ordners
+     * @return true, wenn ein Kontingent entfernt wurde
+     * @throws SQLException wenn das Kontingent nicht entfernt werden kann
+     */
+    public boolean removeQuota(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM folder_quotas WHERE folder_id = ?")) {
+            stmt.setInt(1, folderId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    /**
+     * Gibt das Kontingent eines Ordners zurück.
+     *
+     * @param folderId Die ID des Ordners
+     * @return Das Kontingent oder null, wenn keines gesetzt ist
+     * @throws SQLException wenn das Kontingent nicht gelesen werden kann
+     */
+    public FolderQuota getQuota(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT folder_id, max_bytes, max_files, recursive FROM folder_quotas WHERE folder_id = ?")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapQuota(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Gibt alle gesetzten Kontingente zurück.
+     *
+     * @return Die Kontingente, nach Ordner-ID sortiert
+     * @throws SQLException wenn die Kontingente nicht gelesen werden können
+     */
+    public List<FolderQuota> getQuotas() throws SQLException {
+        List<FolderQuota> quotas = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT folder_id, max_bytes, max_files, recursive FROM folder_quotas ORDER BY folder_id")) {
+            while (rs.next()) {
+                quotas.add(mapQuota(rs));
+            }
+        }
+        return quotas;
+    }
+
+    /**
+     * Prüft, ob neue Dateien in einen Ordner importiert werden dürfen.
+     *
+     * @param folderId Die ID des Zielordners
+     * @param bytes Die Größe der neuen Dateien in Bytes
+     * @param files Die Anzahl der neuen Dateien
+     * @throws QuotaExceededException wenn ein Kontingent überschritten würde
+     * @throws SQLException wenn die Kontingente nicht gelesen werden können
+     */
+    public void checkImport(int folderId, long bytes, int files) throws QuotaExceededException, SQLException {
+        check(null, "SELECT q.folder_id, q.max_bytes, q.max_files, " + USED_BYTES + ", " + USED_FILES + " " +
+              applicableQuotas("?") + " AND " + exceeds("?", "?") + " LIMIT 1",
+              folderId, bytes, files, null);
+    }
+
+    /**
+     * Prüft innerhalb einer laufenden Transaktion, ob neue Inhalte in einen Ordner passen.
+     * Hält die Transaktion bereits die Schreibsperre, kann kein anderer Schreiber das
+     * Ergebnis bis zum Commit verändern.
+     *
+     * @param conn Die Verbindung der Transaktion
+     * @param folderId Die ID des Zielordners
+     * @param bytes Die zusätzlichen Bytes
+     * @param files Die zusätzlichen Dateien
+     * @throws QuotaExceededException wenn ein Kontingent überschritten würde
+     * @throws SQLException wenn die Kontingente nicht gelesen werden können
+     */
+    void checkImport(Connection conn, int folderId, long bytes, int files) throws QuotaExceededException, SQLException {
+        check(conn, "SELECT q.folder_id, q.max_bytes, q.max_files, " + USED_BYTES + ", " + USED_FILES + " " +
+              applicableQuotas("?") + " AND " + exceeds("?", "?") + " LIMIT 1",
+              folderId, bytes, files, null);
+    }
+
+    /**
+     * Prüft, ob neue Dateien in noch anzulegende Unterordner eines Ordners passen. Für sie
+     * gelten nur die Teilbaum-Kontingente des Ordners und seiner Vorfahren.
+     *
+     * @param conn Die zu verwendende Verbindung oder null für die gemeinsame
+     * @param folderId Die ID des Ordners, unter dem die Unterordner entstehen
+     * @param bytes Die zusätzlichen Bytes
+     * @param files Die zusätzlichen Dateien
+     * @throws QuotaExceededException wenn ein Kontingent überschritten würde
+     * @throws SQLException wenn die Kontingente nicht gelesen werden können
+     */
+    void checkSubtreeImport(Connection conn, int folderId, long bytes, int files)
+            throws QuotaExceededException, SQLException {
+        check(conn, "SELECT q.folder_id, q.max_bytes, q.max_files, " + USED_BYTES + ", " + USED_FILES + " " +
+              applicableQuotas("?") + " AND q.recursive = 1 AND " + exceeds("?", "?") + " LIMIT 1",
+              folderId, bytes, files, null);
+    }
+
+    /**
+     * Prüft, ob eine Datei in einen anderen Ordner verschoben werden darf. Teilbaum-Kontingente,
+     * die Quell- und Zielordner gemeinsam abdecken, bleiben unberührt.
+     *
+     * @param sourceFolderId Die ID des bisherigen Ordners
+     * @param targetFolderId Die ID des Zielordners
+     * @param bytes Die Größe der Datei in Bytes
+     * @throws QuotaExceededException wenn ein Kontingent überschritten würde
+     * @throws SQLException wenn die Kontingente nicht gelesen werden können
+     */
+    public void checkMove(int sourceFolderId, int targetFolderId, long bytes) throws QuotaExceededException, SQLException {
+        if (sourceFolderId == targetFolderId) {
+            return;
+        }
+        check(null, "SELECT q.folder_id, q.max_bytes, q.max_files, " + USED_BYTES + ", " + USED_FILES + " " +
+              applicableQuotas("?") + " AND " + exceeds("?", "?") + " AND " + notCovering("?") + " LIMIT 1",
+              targetFolderId, bytes, 1, sourceFolderId);
+    }
+
+    /**
+     * Prüft, ob ein Ordner samt Teilbaum unter einen anderen Elternordner verschoben oder
+     * dorthin wiederhergestellt werden darf. Es zählen nur Teilbaum-Kontingente des neuen
+     * Elternordners und seiner Vorfahren, die den bisherigen Elternordner nicht bereits abdecken.
+     *
+     * @param folderId Die ID des verschobenen Ordners
+     * @param sourceParentId Die ID des bisherigen Elternordners oder null
+     * @param targetParentId Die ID des neuen Elternordners oder null für die oberste Ebene
+     * @throws QuotaExceededException wenn ein Kontingent überschritten würde
+     * @throws SQLException wenn Kontingente oder Ordnerstatistiken nicht gelesen werden können
+     */
+    public void checkFolderMove(int folderId, Integer sourceParentId, Integer targetParentId)
+            throws QuotaExceededException, SQLException {
+        if (targetParentId == null || targetParentId.equals(sourceParentId)
+                || !(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return;
+        }
+        long bytes;
+        long files;
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT total_bytes, total_file_count FROM folder_stats WHERE folder_id = ?")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                bytes = rs.getLong(1);
+                files = rs.getLong(2);
+            }
+        }
+        check(null, "SELECT q.folder_id, q.max_bytes, q.max_files, " + USED_BYTES + ", " + USED_FILES + " " +
+              applicableQuotas("?") + " AND q.recursive = 1 AND " + exceeds("?", "?") +
+              (sourceParentId != null ? " AND " + notCovering("?") : "") + " LIMIT 1",
+              targetParentId, bytes, (int) files, sourceParentId);
+    }
+
+    /**
+     * Führt eine Kontingentprüfung aus und meldet das erste überschrittene Kontingent.
+     * Ohne Verbindung wird die gemeinsame Verbindung verwendet.
+     */
+    private void check(Connection conn, String sql, int folderId, long bytes, int files, Integer sourceFolderId)
+            throws QuotaExceededException, SQLException {
+        if (!(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return;
+        }
+        if (conn == null) {
+            try (Connection shared = DatabaseManager.getConnection()) {
+                check(shared, sql, folderId, bytes, files, sourceFolderId);
+            }
+            return;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, folderId);
+            stmt.setLong(2, bytes);
+            stmt.setInt(3, files);
+            if (sourceFolderId != null) {
+                stmt.setInt(4, sourceFolderId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    int quotaFolderId = rs.getInt(1);
+                    String message = String.format("Speicherkontingent von Ordner %d überschritten: "
+                            + "%d von %s Bytes und %d von %s Dateien belegt, angefragt %d Bytes und %d Dateien",
+                            quotaFolderId, rs.getLong(4), limitText(rs, 2), rs.getLong(5), limitText(rs, 3), bytes, files);
+                    LoggingUtil.logWarning("QuotaManager", message);
+                    throw new QuotaExceededException(quotaFolderId, message);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prüft, ob eine Datenbankausnahme von einem Kontingent-Trigger stammt.
+     *
+     * @param e Die Ausnahme
+     * @return true, wenn ein Kontingent überschritten würde
+     */
+    public static boolean isQuotaViolation(SQLException e) {
+        return e.getMessage() != null && e.getMessage().contains(TRIGGER_MESSAGE);
+    }
+
+    private static String limitText(ResultSet rs, int column) throws SQLException {
+        long limit = rs.getLong(column);
+        return rs.wasNull() ? "unbegrenzt" : Long.toString(limit);
+    }
+
+    private static void setLimit(PreparedStatement stmt, int index, Long limit) throws SQLException {
+        if (limit != null) {
+            stmt.setLong(index, limit);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static FolderQuota mapQuota(ResultSet rs) throws SQLException {
+        long maxBytes = rs.getLong("max_bytes");
+        Long bytes = rs.wasNull() ? null : maxBytes;
+        long maxFiles = rs.getLong("max_files");
+        Long files = rs.wasNull() ? null : maxFiles;
+        return new FolderQuota(rs.getInt("folder_id"), bytes, files, rs.getInt("recursive") != 0);
+    }
+}
@@ -0,0 +1,58 @@
+package com.filevault.storage;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Eine Seite von Ergebnissen einer paginierten Abfrage.
+ * Enthält die Einträge der Seite und einen undurchsichtigen Cursor, mit dem die
+ * nächste Seite abgerufen werden kann.
+ *
+ * @param <T> Der Typ der Einträge
+ */
+public class ResultPage<T> {
+
+    /** Die Einträge dieser Seite */
+    private final List<T> items;
+
+    /** Cursor für die nächste Seite oder null, wenn keine weiteren Einträge existieren */
+    private final String nextCursor;
+
+    /**
+     * Erstellt eine neue Ergebnisseite.
+     *
+     * @param items Die Einträge dieser Seite
+     * @param nextCursor Cursor für die nächste Seite oder null
+     */
+    public ResultPage(List<T> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Gibt die Einträge dieser Seite zurück.
+     *
+     * @return Unveränderliche Liste der Einträge
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * Gibt den Cursor für die nächste Seite zurück.
+     *
+     * @return Der Cursor oder null, wenn dies die letzte Seite ist
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Prüft, ob nach dieser Seite weitere Einträge existieren.
+     *
+     * @return true, wenn eine weitere Seite abgerufen werden kann
+     */
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
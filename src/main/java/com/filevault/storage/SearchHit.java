@@ -0,0 +1,96 @@
+package com.filevault.storage;
+
+/**
+ * Ein Treffer der Volltextsuche über Datei- und Ordner-Metadaten.
+ */
+public class SearchHit {
+
+    /**
+     * Art des gefundenen Eintrags.
+     */
+    public enum Type {
+        /** Eine Datei aus der Tabelle files */
+        FILE,
+        /** Ein Ordner aus der Tabelle folders */
+        FOLDER
+    }
+
+    /** Art des Treffers */
+    private final Type type;
+
+    /** ID der Datei bzw. des Ordners */
+    private final int id;
+
+    /** Name der Datei bzw. des Ordners */
+    private final String name;
+
+    /** MIME-Typ (nur bei Dateien, sonst null) */
+    private final String mimeType;
+
+    /** ID des enthaltenden bzw. übergeordneten Ordners oder null */
+    private final Integer folderId;
+
+    /** BM25-Relevanz; kleinere Werte sind relevanter */
+    private final double score;
+
+    /**
+     * Erstellt einen neuen Suchtreffer.
+     *
+     * @param type Art des Treffers
+     * @param id ID der Datei bzw. des Ordners
+     * @param name Name der Datei bzw. des Ordners
+     * @param mimeType MIME-Typ oder null
+     * @param folderId ID des enthaltenden Ordners oder null
+     * @param score BM25-Relevanz
+     */
+    public SearchHit(Type type, int id, String name, String mimeType, Integer folderId, double score) {
+        this.type = type;
+        this.id = id;
+        this.name = name;
+        this.mimeType = mimeType;
+        this.folderId = folderId;
+        this.score = score;
+    }
+
+    /**
+     * @return Art des Treffers
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return ID der Datei bzw. des Ordners
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * @return Name der Datei bzw. des Ordners
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return MIME-Typ oder null bei Ordnern
+     */
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /**
+     * @return ID des enthaltenden bzw. übergeordneten Ordners oder null
+     */
+    public Integer getFolderId() {
+        return folderId;
+    }
+
+    /**
+     * @return BM25-Relevanz; kleinere Werte sind relevanter
+     */
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,58 @@
+package com.filevault.storage;
+
+import java.time.LocalDateTime;
+
+/**
+ * Eintrag im Protokoll langsamer SQL-Anweisungen.
+ */
+public class SlowQuery {
+
+    /** Die Anweisungsvorlage */
+    private final String template;
+
+    /** Dauer der Ausführung in Millisekunden */
+    private final double durationMillis;
+
+    /** Zeitpunkt der Ausführung */
+    private final LocalDateTime executedAt;
+
+    /**
+     * Erstellt einen neuen Eintrag.
+     *
+     * @param template Die Anweisungsvorlage
+     * @param durationMillis Die Dauer in Millisekunden
+     * @param executedAt Der Zeitpunkt der Ausführung
+     */
+    public SlowQuery(String template, double durationMillis, LocalDateTime executedAt) {
+        this.template = template;
+        this.durationMillis = durationMillis;
+        this.executedAt = executedAt;
+    }
+
+    /**
+     * Gibt die Anweisungsvorlage zurück.
+     *
+     * @return Die Vorlage mit Platzhaltern
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Gibt die Dauer der Ausführung zurück.
+     *
+     * @return Die Dauer in Millisekunden
+     */
+    public double getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * Gibt den Zeitpunkt der Ausführung zurück.
+     *
+     * @return Der Zeitpunkt
+     */
+    public LocalDateTime getExecutedAt() {
+        return executedAt;
+    }
+}
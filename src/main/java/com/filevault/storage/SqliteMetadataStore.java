@@ -0,0 +1,603 @@
+package com.filevault.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Metadatenspeicher auf Basis der SQLite-Datenbank des DatabaseManagers.
+ * Die Ordnerhierarchie wird über die Closure-Tabelle abgefragt.
+ */
+public class SqliteMetadataStore implements MetadataStore {
+
+    @Override
+    public VirtualFolder insertFolder(String name, String description, Integer parentId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return insertFolder(conn, name, description, parentId);
+        }
+    }
+
+    /**
+     * Legt einen Ordner über die angegebene Verbindung an.
+     *
+     * @param conn Die Verbindung, etwa eine eigene Schreibverbindung eines Hintergrund-Threads
+     * @param name Der Name des Ordners
+     * @param description Die Beschreibung oder null
+     * @param parentId Die ID des übergeordneten Ordners oder null
+     * @return Der angelegte Ordner
+     * @throws SQLException wenn der Ordner nicht angelegt werden kann
+     */
+    VirtualFolder insertFolder(Connection conn, String name, String description, Integer parentId) throws SQLException {
+        LocalDateTime createdAt = LocalDateTime.now();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO folders (name, description, parent_id, created_at) VALUES (?, ?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+
+            stmt.setString(1, name);
+            stmt.setString(2, description);
+            stmt.setObject(3, parentId);
+            stmt.setTimestamp(4, Timestamp.valueOf(createdAt));
+
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Creating folder failed, no rows affected.");
+            }
+
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("Creating folder failed, no ID obtained.");
+                }
+                VirtualFolder folder = new VirtualFolder(generatedKeys.getInt(1), name, description, parentId);
+                folder.setCreatedAt(createdAt);
+                return folder;
+            }
+        }
+    }
+
+    @Override
+    public VirtualFolder getFolder(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return getFolder(conn, folderId);
+        }
+    }
+
+    /**
+     * Liest einen Ordner über eine bestimmte Verbindung, die nicht geschlossen wird.
+     */
+    VirtualFolder getFolder(Connection conn, int folderId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM folders WHERE id = ?")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapFolder(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public List<VirtualFolder> getAllFolders() throws SQLException {
+        List<VirtualFolder> folders = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT * FROM folders WHERE " + TrashManager.notTrashed("id") + " ORDER BY name");
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                folders.add(mapFolder(rs));
+            }
+        }
+        return folders;
+    }
+
+    @Override
+    public boolean updateFolder(int folderId, String name, String description) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE folders SET name = ?, description = ? WHERE id = ?")) {
+
+            stmt.setString(1, name);
+            stmt.setString(2, description);
+            stmt.setInt(3, folderId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean moveFolder(int folderId, Integer parentId) throws SQLException {
+        // Die Zyklusprüfung über die Closure-Tabelle ist Teil der Anweisung selbst, damit
+        // sie nicht durch ein gleichzeitiges Verschieben des Zielordners überholt wird
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE folders SET parent_id = ? WHERE id = ? AND NOT EXISTS (" +
+                     "SELECT 1 FROM folder_closure WHERE ancestor = ? AND descendant = ?)")) {
+
+            stmt.setObject(1, parentId);
+            stmt.setInt(2, folderId);
+            stmt.setInt(3, folderId);
+            stmt.setObject(4, parentId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean deleteFolder(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            conn.setAutoCommit(false);
+            List<String> blobs;
+            int deleted;
+            try {
+                blobs = blobsOf(conn, "folder_id = ?", folderId);
+
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM files WHERE folder_id = ?")) {
+                    stmt.setInt(1, folderId);
+                    stmt.executeUpdate();
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM folders WHERE id = ?")) {
+                    stmt.setInt(1, folderId);
+                    deleted = stmt.executeUpdate();
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                rollback(conn);
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            BlobReferences.deleteUnreferenced(conn, blobs, "SqliteMetadataStore");
+            return deleted > 0;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Dies ist auch der letzte Schritt des Aufräumlaufs im Papierkorb. Zeilen werden auf einer
+     * eigenen Schreibverbindung in einer Transaktion gelöscht; danach werden die verschlüsselten
+     * Dateien entfernt, auf die keine Kopie mehr verweist.
+     */
+    @Override
+    public List<Integer> deleteFolderTree(int folderId) throws SQLException {
+        String subtree = "(SELECT descendant FROM folder_closure WHERE ancestor = ?)";
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            conn.setAutoCommit(false);
+            List<Integer> subtreeIds = new ArrayList<>();
+            List<String> blobs;
+            try {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT descendant FROM folder_closure WHERE ancestor = ? ORDER BY depth, descendant")) {
+                    stmt.setInt(1, folderId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            subtreeIds.add(rs.getInt(1));
+                        }
+                    }
+                }
+                blobs = blobsOf(conn, "folder_id IN " + subtree, folderId);
+
+                // Alle Dateien des Teilbaums löschen
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM files WHERE folder_id IN " + subtree)) {
+                    stmt.setInt(1, folderId);
+                    int deletedFiles = stmt.executeUpdate();
+                    LoggingUtil.logDatabase("Delete", "files", "Deleted " + deletedFiles + " files in subtree of folder " + folderId);
+                }
+
+                // Alle Ordner des Teilbaums einschließlich des Ordners selbst löschen
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM folders WHERE id IN " + subtree)) {
+                    stmt.setInt(1, folderId);
+                    int deletedFolders = stmt.executeUpdate();
+                    LoggingUtil.logDatabase("Delete", "folders", "Deleted " + deletedFolders + " folders in subtree of folder " + folderId);
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                rollback(conn);
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+            BlobReferences.deleteUnreferenced(conn, blobs, "SqliteMetadataStore");
+            return subtreeIds;
+        }
+    }
+
+    @Override
+    public List<Integer> getSubtreeFolderIds(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return getSubtreeFolderIds(conn, folderId);
+        }
+    }
+
+    /**
+     * Liest die IDs eines Teilbaums über eine bestimmte Verbindung, die nicht geschlossen wird.
+     */
+    List<Integer> getSubtreeFolderIds(Connection conn, int folderId) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT descendant FROM folder_closure WHERE ancestor = ? ORDER BY depth")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public boolean isAncestor(int ancestorId, int descendantId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT 1 FROM folder_closure WHERE ancestor = ? AND descendant = ?")) {
+
+            stmt.setInt(1, ancestorId);
+            stmt.setInt(2, descendantId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    @Override
+    public int countSubfolders(int folderId) throws SQLException {
+        return count("SELECT COUNT(*) FROM folders WHERE parent_id = ?", folderId);
+    }
+
+    @Override
+    public EncryptedFile insertFile(int folderId, String originalName, String encryptedPath,
+                                    long sizeBytes, String mimeType) throws SQLException {
+        Integer volumeId = VolumeManager.getInstance().volumeIdOf(encryptedPath);
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO files (folder_id, original_name, encrypted_path, size_bytes, mime_type, " +
+                     "volume_id, created_at) VALUES (?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+
+            stmt.setInt(1, folderId);
+            stmt.setString(2, originalName);
+            stmt.setString(3, BlobStore.toStoredPath(encryptedPath));
+            stmt.setLong(4, sizeBytes);
+            stmt.setString(5, mimeType);
+            VolumeManager.setVolumeId(stmt, 6, volumeId);
+
+            if (stmt.executeUpdate() == 0) {
+                throw new SQLException("Creating file record failed, no rows affected.");
+            }
+
+            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                if (!generatedKeys.next()) {
+                    throw new SQLException("Creating file record failed, no ID obtained.");
+                }
+                return new EncryptedFile(generatedKeys.getInt(1), folderId, originalName, encryptedPath,
+                        sizeBytes, mimeType, LocalDateTime.now(), null);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Der Stapel wird auf einer eigenen Schreibverbindung in einer Transaktion geschrieben,
+     * damit andere Threads weder in die Transaktion geraten noch die Verbindung schließen.
+     */
+    @Override
+    public List<EncryptedFile> insertFiles(int folderId, List<EncryptedFile> files) throws SQLException {
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            return insertFiles(conn, folderId, files);
+        }
+    }
+
+    /**
+     * Legt mehrere Dateieinträge über eine eigene Schreibverbindung in einer Transaktion an.
+     * Die IDs werden je Zeile über die erzeugten Schlüssel gelesen.
+     *
+     * @param conn Eine eigene Schreibverbindung, die nicht mit anderen Threads geteilt wird
+     * @param folderId Die ID des Ordners
+     * @param files Die anzulegenden Dateien
+     * @return Die angelegten Dateien mit ihren IDs, in der Reihenfolge der Eingabe
+     * @throws SQLException wenn ein Fehler beim Schreiben auftritt; dann wird keine Datei angelegt
+     */
+    List<EncryptedFile> insertFiles(Connection conn, int folderId, List<EncryptedFile> files) throws SQLException {
+        List<EncryptedFile> inserted = new ArrayList<>(files.size());
+        if (files.isEmpty()) {
+            return inserted;
+        }
+
+        // Volumes vorab bestimmen, da sie über eine eigene Verbindung gelesen werden
+        List<Integer> volumeIds = new ArrayList<>(files.size());
+        for (EncryptedFile file : files) {
+            volumeIds.add(file.isPacked() ? null : VolumeManager.getInstance().volumeIdOf(file.getEncryptedPath()));
+        }
+
+        conn.setAutoCommit(false);
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO files (folder_id, original_name, encrypted_path, size_bytes, mime_type, " +
+                    "pack_id, pack_offset, pack_length, volume_id, created_at) " +
+                    "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                for (int i = 0; i < files.size(); i++) {
+                    EncryptedFile file = files.get(i);
+                    stmt.setInt(1, folderId);
+                    stmt.setString(2, file.getOriginalName());
+                    stmt.setString(3, BlobStore.toStoredPath(file.getEncryptedPath()));
+                    stmt.setLong(4, file.getSizeBytes());
+                    stmt.setString(5, file.getMimeType());
+                    if (file.isPacked()) {
+                        stmt.setInt(6, file.getPackId());
+                        stmt.setLong(7, file.getPackOffset());
+                        stmt.setInt(8, file.getPackLength());
+                    } else {
+                        stmt.setNull(6, Types.INTEGER);
+                        stmt.setNull(7, Types.INTEGER);
+                        stmt.setNull(8, Types.INTEGER);
+                    }
+                    VolumeManager.setVolumeId(stmt, 9, volumeIds.get(i));
+                    stmt.executeUpdate();
+
+                    try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Creating file record failed, no ID obtained.");
+                        }
+                        EncryptedFile insertedFile = new EncryptedFile(generatedKeys.getInt(1), folderId,
+                                file.getOriginalName(), file.getEncryptedPath(), file.getSizeBytes(),
+                                file.getMimeType(), now, null);
+                        insertedFile.setPackLocation(file.getPackId(), file.getPackOffset(), file.getPackLength());
+                        inserted.add(insertedFile);
+                    }
+                }
+            }
+
+            conn.commit();
+            LoggingUtil.logDatabase("Insert", "files", "Inserted " + files.size() + " files into folder " + folderId);
+            return inserted;
+        } catch (SQLException e) {
+            rollback(conn);
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public EncryptedFile getFile(int fileId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return getFile(conn, fileId);
+        }
+    }
+
+    /**
+     * Liest eine Datei über eine bestimmte Verbindung, die nicht geschlossen wird.
+     */
+    EncryptedFile getFile(Connection conn, int fileId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM files WHERE id = ? AND deleted_at IS NULL")) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? FileStorage.mapFile(rs) : null;
+            }
+        }
+    }
+
+    @Override
+    public List<EncryptedFile> getFilesInFolder(int folderId) throws SQLException {
+        List<EncryptedFile> files = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT * FROM files WHERE folder_id = ? ORDER BY original_name")) {
+
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    files.add(FileStorage.mapFile(rs));
+                }
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public List<EncryptedFile> getAllFiles() throws SQLException {
+        List<EncryptedFile> files = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT * FROM files WHERE " + TrashManager.liveFile() + " ORDER BY original_name");
+             ResultSet rs = stmt.executeQuery()) {
+
+            while (rs.next()) {
+                files.add(FileStorage.mapFile(rs));
+            }
+        }
+        return files;
+    }
+
+    @Override
+    public boolean renameFile(int fileId, String newName) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE files SET original_name = ? WHERE id = ?")) {
+
+            stmt.setString(1, newName);
+            stmt.setInt(2, fileId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public boolean moveFile(int fileId, int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE files SET folder_id = ? WHERE id = ?")) {
+
+            stmt.setInt(1, folderId);
+            stmt.setInt(2, fileId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public void touchFile(int fileId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE files SET last_access = CURRENT_TIMESTAMP WHERE id = ?")) {
+
+            stmt.setInt(1, fileId);
+            stmt.executeUpdate();
+        }
+    }
+
+    @Override
+    public boolean deleteFile(int fileId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM files WHERE id = ?")) {
+
+            stmt.setInt(1, fileId);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public int countFilesInFolder(int folderId) throws SQLException {
+        return count("SELECT COUNT(*) FROM files WHERE folder_id = ?", folderId);
+    }
+
+    @Override
+    public int countUsers() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM users");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    @Override
+    public boolean insertUser(String username, String passwordHash) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO users (username, password_hash, created_at) VALUES (?, ?, CURRENT_TIMESTAMP)")) {
+
+            stmt.setString(1, username);
+            stmt.setString(2, passwordHash);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public String getPasswordHash(String username) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT password_hash FROM users WHERE username = ?")) {
+
+            stmt.setString(1, username);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString("password_hash") : null;
+            }
+        }
+    }
+
+    @Override
+    public boolean updatePasswordHash(String username, String passwordHash) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE users SET password_hash = ? WHERE username = ?")) {
+
+            stmt.setString(1, passwordHash);
+            stmt.setString(2, username);
+            return stmt.executeUpdate() > 0;
+        }
+    }
+
+    @Override
+    public int deleteUsers() throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM users")) {
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Erstellt einen Ordner aus der aktuellen Zeile eines ResultSets der Tabelle folders.
+     *
+     * @param rs Das ResultSet, positioniert auf einer Zeile
+     * @return Der Ordner
+     * @throws SQLException wenn eine Spalte nicht gelesen werden kann
+     */
+    private static VirtualFolder mapFolder(ResultSet rs) throws SQLException {
+        Integer parentId = rs.getObject("parent_id") != null ? rs.getInt("parent_id") : null;
+        VirtualFolder folder = new VirtualFolder(rs.getInt("id"), rs.getString("name"),
+                rs.getString("description"), parentId);
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            folder.setCreatedAt(createdAt.toLocalDateTime());
+        }
+        return folder;
+    }
+
+    /**
+     * Führt eine Zählabfrage mit einem ganzzahligen Parameter aus.
+     *
+     * @param sql Die Abfrage
+     * @param param Der Parameter
+     * @return Das Ergebnis der Zählung
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    private static int count(String sql, int param) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, param);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Liest die gespeicherten Pfade der Dateien, die eine Bedingung erfüllen, samt ihrer Versionen.
+     *
+     * @param conn Die zu verwendende Verbindung
+     * @param condition Bedingung über die Dateitabelle mit einem ganzzahligen Parameter
+     * @param param Der Parameter
+     * @return Die gespeicherten Pfade
+     * @throws SQLException wenn ein Fehler beim Lesen auftritt
+     */
+    private static List<String> blobsOf(Connection conn, String condition, int param) throws SQLException {
+        List<String> paths = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT encrypted_path FROM files WHERE " + condition + " AND encrypted_path <> '' " +
+                "UNION SELECT v.encrypted_path FROM file_versions v JOIN files f ON f.id = v.file_id " +
+                "WHERE f." + condition + " AND v.encrypted_path <> ''")) {
+            stmt.setInt(1, param);
+            stmt.setInt(2, param);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    paths.add(rs.getString(1));
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Setzt eine laufende Transaktion zurück und protokolliert Fehler dabei.
+     *
+     * @param conn Die Verbindung der Transaktion
+     */
+    private static void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            LoggingUtil.logError("SqliteMetadataStore", "Error during rollback: " + rollbackEx.getMessage());
+        }
+    }
+}
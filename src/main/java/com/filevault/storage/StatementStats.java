@@ -0,0 +1,224 @@
+package com.filevault.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Laufzeitstatistik für eine SQL-Anweisungsvorlage.
+ * <p>
+ * Erfasst werden Anzahl und Dauer der Ausführungen als Histogramm mit festen, logarithmisch
+ * verteilten Grenzen, die Anzahl gelieferter bzw. geänderter Zeilen sowie Wiederholungen und
+ * Fehler wegen gesperrter Datenbank. Alle Zähler sind ohne Sperren nebenläufig beschreibbar.
+ */
+public class StatementStats {
+
+    /** Obergrenzen der Histogrammfächer in Mikrosekunden; das letzte Fach ist nach oben offen */
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+        100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000, 1_000_000
+    };
+
+    /** Die Anweisungsvorlage mit Platzhaltern statt Literalen */
+    private final String template;
+
+    /** Anzahl der Ausführungen */
+    private final LongAdder count = new LongAdder();
+
+    /** Summe der Ausführungszeiten in Nanosekunden */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /** Längste Ausführungszeit in Nanosekunden */
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /** Gelieferte bzw. geänderte Zeilen */
+    private final LongAdder rows = new LongAdder();
+
+    /** Wiederholungen nach SQLITE_BUSY oder SQLITE_LOCKED */
+    private final LongAdder busyRetries = new LongAdder();
+
+    /** Fehlgeschlagene Ausführungen */
+    private final LongAdder errors = new LongAdder();
+
+    /** Anzahl der Ausführungen je Histogrammfach */
+    private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_MICROS.length + 1];
+
+    /**
+     * Erstellt eine leere Statistik für eine Anweisungsvorlage.
+     *
+     * @param template Die Anweisungsvorlage
+     */
+    StatementStats(String template) {
+        this.template = template;
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Erfasst eine Ausführung.
+     *
+     * @param nanos Die Ausführungszeit in Nanosekunden
+     */
+    void recordExecution(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+        buckets[bucketIndex(nanos / 1_000)].increment();
+    }
+
+    /**
+     * Erfasst gelieferte oder geänderte Zeilen.
+     *
+     * @param n Die Anzahl der Zeilen
+     */
+    void addRows(long n) {
+        rows.add(n);
+    }
+
+    /**
+     * Erfasst eine Wiederholung wegen gesperrter Datenbank.
+     */
+    void recordBusyRetry() {
+        busyRetries.increment();
+    }
+
+    /**
+     * Erfasst eine fehlgeschlagene Ausführung.
+     */
+    void recordError() {
+        errors.increment();
+    }
+
+    /**
+     * Gibt die Anweisungsvorlage zurück.
+     *
+     * @return Die Vorlage mit Platzhaltern
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * Gibt die Anzahl der Ausführungen zurück.
+     *
+     * @return Die Anzahl der Ausführungen
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gibt die Summe der Ausführungszeiten zurück.
+     *
+     * @return Die Gesamtdauer in Millisekunden
+     */
+    public double getTotalMillis() {
+        return totalNanos.sum() / 1_000_000.0;
+    }
+
+    /**
+     * Gibt die mittlere Ausführungszeit zurück.
+     *
+     * @return Die mittlere Dauer in Millisekunden, 0 ohne Ausführungen
+     */
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0 : getTotalMillis() / n;
+    }
+
+    /**
+     * Gibt die längste Ausführungszeit zurück.
+     *
+     * @return Die längste Dauer in Millisekunden
+     */
+    public double getMaxMillis() {
+        return maxNanos.get() / 1_000_000.0;
+    }
+
+    /**
+     * Schätzt ein Perzentil der Ausführungszeit aus dem Histogramm. Geliefert wird die
+     * Obergrenze des Fachs, in das das Perzentil fällt, höchstens aber die längste Dauer.
+     *
+     * @param percentile Das Perzentil zwischen 0 und 100
+     * @return Die geschätzte Dauer in Millisekunden
+     */
+    public double getPercentileMillis(double percentile) {
+        long[] histogram = getHistogram();
+        long total = 0;
+        for (long n : histogram) {
+            total += n;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return Math.min(BUCKET_BOUNDS_MICROS[i] / 1_000.0, getMaxMillis());
+            }
+        }
+        return getMaxMillis();
+    }
+
+    /**
+     * Gibt die gelieferten bzw. geänderten Zeilen zurück.
+     *
+     * @return Die Anzahl der Zeilen
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * Gibt die Anzahl der Wiederholungen wegen gesperrter Datenbank zurück.
+     *
+     * @return Die Anzahl der Wiederholungen
+     */
+    public long getBusyRetries() {
+        return busyRetries.sum();
+    }
+
+    /**
+     * Gibt die Anzahl fehlgeschlagener Ausführungen zurück.
+     *
+     * @return Die Anzahl der Fehler
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Gibt die Anzahl der Ausführungen je Histogrammfach zurück.
+     *
+     * @return Ein Array mit einem Eintrag mehr als {@link #getBucketBoundsMicros()}
+     */
+    public long[] getHistogram() {
+        long[] histogram = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            histogram[i] = buckets[i].sum();
+        }
+        return histogram;
+    }
+
+    /**
+     * Gibt die Obergrenzen der Histogrammfächer zurück.
+     *
+     * @return Die Grenzen in Mikrosekunden
+     */
+    public static long[] getBucketBoundsMicros() {
+        return BUCKET_BOUNDS_MICROS.clone();
+    }
+
+    /**
+     * Ermittelt das Histogrammfach für eine Dauer.
+     */
+    private static int bucketIndex(long micros) {
+        for (int i = 0; i < BUCKET_BOUNDS_MICROS.length; i++) {
+            if (micros <= BUCKET_BOUNDS_MICROS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MICROS.length;
+    }
+}
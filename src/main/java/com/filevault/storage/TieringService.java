@@ -0,0 +1,318 @@
+package com.filevault.storage;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterOutputStream;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.StorageTier;
+import com.filevault.model.UserManager;
+import com.filevault.security.EncryptionService;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Verschiebt lange nicht genutzte verschlüsselte Dateien aus dem schnellen Datenverzeichnis
+ * in ein Verzeichnis für selten genutzte Dateien und holt sie beim nächsten Zugriff zurück.
+ * <p>
+ * Maßgeblich ist der Zeitpunkt des letzten Zugriffs, bei nie gelesenen Dateien der Zeitpunkt
+ * der Erstellung. Im kalten Verzeichnis wird der Klartext auf Wunsch vor der Verschlüsselung
+ * stärker komprimiert; verschlüsselte Daten selbst lassen sich nicht mehr komprimieren.
+ * Dateien im kalten Verzeichnis werden mit ihrem absoluten Pfad gespeichert, sodass
+ * {@link FileStorage#exportFile} sie ohne Umweg findet. Die Speicherstufe steht in der
+ * Dateitabelle. Gepackte Dateien bleiben in ihren Pack-Dateien. Die Verschiebung setzt den
+ * SQLite-Metadatenspeicher voraus.
+ */
+public class TieringService {
+
+    /** Die einzige Instanz des TieringService */
+    private static TieringService instance;
+
+    /**
+     * Zeitpunkt der letzten Nutzung in Millisekunden seit der Epoche: letzter Zugriff oder
+     * Erstellung. Als Text gespeicherte Werte von CURRENT_TIMESTAMP sind UTC. Der Ausdruck
+     * ist zugleich der Schlüssel des Index idx_files_hot_access und muss mit ihm übereinstimmen.
+     */
+    static final String LAST_USED_MILLIS = "CASE WHEN last_access IS NULL THEN "
+            + "(CASE typeof(created_at) WHEN 'integer' THEN created_at "
+            + "ELSE CAST(strftime('%s', created_at) AS INTEGER) * 1000 END) "
+            + "ELSE (CASE typeof(last_access) WHEN 'integer' THEN last_access "
+            + "ELSE CAST(strftime('%s', last_access) AS INTEGER) * 1000 END) END";
+
+    /** Anzahl der Dateien, die pro Abfrage verschoben werden */
+    private static final int BATCH_SIZE = 100;
+
+    /** Verzeichnis für selten genutzte Dateien oder null, wenn die Verschiebung abgeschaltet ist */
+    private volatile Path coldRoot;
+
+    /** Anzahl der Tage ohne Zugriff, nach denen eine Datei verschoben wird */
+    private volatile int coldAfterDays = 30;
+
+    /** Ob der Klartext im kalten Verzeichnis komprimiert wird */
+    private volatile boolean compressColdTier;
+
+    /** Kompressionsstufe für das kalte Verzeichnis */
+    private volatile int compressionLevel = Deflater.BEST_COMPRESSION;
+
+    /** IDs der Dateien, deren Rückholung bereits ansteht */
+    private final Set<Integer> pendingPromotions = ConcurrentHashMap.newKeySet();
+
+    /** Thread für die Rückholung nach einem Zugriff */
+    private final ExecutorService promoter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tier-promoter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private TieringService() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des TieringService zurück.
+     *
+     * @return Die Instanz des TieringService
+     */
+    public static synchronized TieringService getInstance() {
+        if (instance == null) {
+            instance = new TieringService();
+        }
+        return instance;
+    }
+
+    /**
+     * Prüft, ob Dateien verschoben werden können.
+     *
+     * @return true, wenn ein kaltes Verzeichnis gesetzt ist und SQLite verwendet wird
+     */
+    public boolean isEnabled() {
+        return coldRoot != null && DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore;
+    }
+
+    /**
+     * Verschiebt im Wartungsfenster alle Dateien, auf die seit der eingestellten Anzahl an
+     * Tagen nicht zugegriffen wurde.
+     *
+     * @return Die Anzahl der verschobenen Dateien
+     */
+    public int runScheduled() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        try {
+            return demoteIdleFiles(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(coldAfterDays));
+        } catch (SQLException e) {
+            LoggingUtil.logError("TieringService", "Tiering failed: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Verschiebt alle Dateien im schnellen Datenverzeichnis, deren letzter Zugriff vor dem
+     * Stichtag liegt. Fehler bei einzelnen Dateien werden protokolliert und übersprungen.
+     *
+     * @param cutoffMillis Der Stichtag in Millisekunden seit der Epoche
+     * @return Die Anzahl der verschobenen Dateien
+     * @throws SQLException wenn die Kandidaten nicht gelesen werden können
+     */
+    public synchronized int demoteIdleFiles(long cutoffMillis) throws SQLException {
+        if (!isEnabled()) {
+            return 0;
+        }
+        int demoted = 0;
+        int afterId = 0;
+        while (true) {
+            // Die Einträge werden vollständig über die eigene Leseverbindung geladen, damit der
+            // Wartungs-Thread die gemeinsame Verbindung nicht verwendet
+            List<EncryptedFile> candidates = new ArrayList<>();
+            try (Connection conn = DatabaseManager.openReadConnection();
+                 PreparedStatement stmt = conn.prepareStatement(
+                         "SELECT * FROM files WHERE storage_tier = 'HOT' AND pack_id IS NULL AND deleted_at IS NULL " +
+                         "AND (" + LAST_USED_MILLIS + ") < ? AND id > ? ORDER BY id LIMIT ?")) {
+                stmt.setLong(1, cutoffMillis);
+                stmt.setInt(2, afterId);
+                stmt.setInt(3, BATCH_SIZE);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        candidates.add(FileStorage.mapFile(rs));
+                    }
+                }
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+            for (EncryptedFile file : candidates) {
+                try {
+                    if (demote(file)) {
+                        demoted++;
+                    }
+                } catch (Exception e) {
+                    LoggingUtil.logError("TieringService", "Could not move file " + file.getId() + " to cold tier: " + e.getMessage());
+                }
+            }
+            afterId = candidates.get(candidates.size() - 1).getId();
+        }
+        if (demoted > 0) {
+            LoggingUtil.logInfo("TieringService", "Moved " + demoted + " files to cold tier");
+        }
+        return demoted;
+    }
+
+    /**
+     * Verschiebt eine Datei in das kalte Verzeichnis. Ohne Master-Schlüssel wird die
+     * verschlüsselte Datei unkomprimiert kopiert.
+     *
+     * @param file Die Datei
+     * @return true, wenn die Datei verschoben wurde
+     * @throws Exception wenn die Datei nicht kopiert oder umgeschrieben werden kann
+     */
+    public synchronized boolean demote(EncryptedFile file) throws Exception {
+        Path root = coldRoot;
+        if (root == null || file.isPacked() || file.getStorageTier() == StorageTier.COLD) {
+            return false;
+        }
+        Path source = Paths.get(file.getEncryptedPath());
+        Path target = root.toAbsolutePath().normalize().resolve(BlobStore.shardedPath(source.getFileName().toString()));
+        boolean compress = compressColdTier && !file.isCompressed() && UserManager.getInstance().getMasterKey() != null;
+        boolean compressed = file.isCompressed() || compress;
+        BlobRelocator.copy(source, target, compress ? this::compress : InputStream::transferTo);
+        return switchLocation(file, target, StorageTier.COLD, compressed);
+    }
+
+    /**
+     * Holt eine Datei aus dem kalten Verzeichnis zurück in das schnelle Datenverzeichnis.
+     * Komprimierte Inhalte werden dabei entpackt und neu verschlüsselt.
+     *
+     * @param file Die Datei
+     * @return true, wenn die Datei zurückgeholt wurde
+     * @throws Exception wenn die Datei nicht kopiert oder umgeschrieben werden kann
+     */
+    public synchronized boolean promote(EncryptedFile file) throws Exception {
+        if (file.isPacked() || file.getStorageTier() != StorageTier.COLD) {
+            return false;
+        }
+        Path source = Paths.get(file.getEncryptedPath());
+        Path target = BlobStore.newBlobPath();
+        BlobRelocator.copy(source, target, file.isCompressed() ? TieringService::decompress : InputStream::transferTo);
+        return switchLocation(file, target, StorageTier.HOT, false);
+    }
+
+    /**
+     * Holt eine kalte Datei nach einem Zugriff im Hintergrund zurück. Mehrfache Anforderungen
+     * derselben Datei werden zusammengefasst.
+     *
+     * @param file Die gelesene Datei
+     */
+    public void requestPromotion(EncryptedFile file) {
+        if (file.getStorageTier() != StorageTier.COLD || !pendingPromotions.add(file.getId())) {
+            return;
+        }
+        // Der Hintergrund-Thread nutzt nicht die gemeinsame Verbindung; ist die Datei
+        // inzwischen verlegt oder gelöscht, wird der Eintrag nicht umgestellt
+        promoter.execute(() -> {
+            try {
+                promote(file);
+            } catch (Exception e) {
+                LoggingUtil.logError("TieringService", "Could not promote file " + file.getId() + ": " + e.getMessage());
+            } finally {
+                pendingPromotions.remove(file.getId());
+            }
+        });
+    }
+
+    /**
+     * Entschlüsselt eine Datei, komprimiert den Klartext und verschlüsselt ihn neu.
+     */
+    private void compress(InputStream in, OutputStream out) throws Exception {
+        Deflater deflater = new Deflater(compressionLevel);
+        try (OutputStream encrypting = EncryptionService.getInstance().openEncryptingStream(out);
+             OutputStream deflating = new DeflaterOutputStream(encrypting, deflater)) {
+            EncryptionService.getInstance().decrypt(in, deflating);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Entschlüsselt eine Datei, entpackt den Klartext und verschlüsselt ihn neu.
+     */
+    private static void decompress(InputStream in, OutputStream out) throws Exception {
+        try (OutputStream encrypting = EncryptionService.getInstance().openEncryptingStream(out);
+             OutputStream inflating = new InflaterOutputStream(encrypting)) {
+            EncryptionService.getInstance().decrypt(in, inflating);
+        }
+    }
+
+    /**
+     * Stellt den Eintrag auf die neue Kopie um und protokolliert die Verschiebung.
+     */
+    private static boolean switchLocation(EncryptedFile file, Path target, StorageTier tier, boolean compressed)
+            throws Exception {
+        if (!BlobRelocator.switchLocation(file, target, tier, compressed)) {
+            return false;
+        }
+        LoggingUtil.logInfo("TieringService", "Moved file " + file.getId() + " to " + tier + " tier");
+        return true;
+    }
+
+    /**
+     * Gibt das kalte Verzeichnis zurück.
+     *
+     * @return Das Verzeichnis oder null, wenn die Verschiebung abgeschaltet ist
+     */
+    public Path getColdRoot() {
+        return coldRoot;
+    }
+
+    /**
+     * Setzt das Verzeichnis für selten genutzte Dateien.
+     *
+     * @param coldRoot Das Verzeichnis oder null, um die Verschiebung abzuschalten
+     */
+    public void setColdRoot(Path coldRoot) {
+        this.coldRoot = coldRoot != null ? coldRoot.toAbsolutePath().normalize() : null;
+    }
+
+    /**
+     * Setzt die Anzahl der Tage ohne Zugriff, nach denen eine Datei verschoben wird.
+     *
+     * @param coldAfterDays Die Anzahl der Tage
+     */
+    public void setColdAfterDays(int coldAfterDays) {
+        this.coldAfterDays = coldAfterDays;
+    }
+
+    /**
+     * Legt fest, ob der Klartext im kalten Verzeichnis komprimiert wird.
+     *
+     * @param compressColdTier true für Komprimierung
+     */
+    public void setCompressColdTier(boolean compressColdTier) {
+        this.compressColdTier = compressColdTier;
+    }
+
+    /**
+     * Setzt die Kompressionsstufe für das kalte Verzeichnis.
+     *
+     * @param compressionLevel Die Stufe von 1 (schnell) bis 9 (klein)
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+}
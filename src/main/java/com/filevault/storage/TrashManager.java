@@ -0,0 +1,429 @@
+package com.filevault.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.filevault.model.TrashItem;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Verwaltet den Papierkorb.
+ * <p>
+ * Löschen ist eine einzelne Änderung der Metadaten: Eine Datei wird aus ihrem Ordner gelöst,
+ * ein Ordner von seinem Elternordner, jeweils unter Vermerk des ursprünglichen Ordners und des
+ * Löschzeitpunkts. Die Trigger für Closure-Tabelle, Ordnerstatistiken und Suchindex
+ * schreiben Teilbaum, Belegung und Suche dabei fort, ohne dass eine verschlüsselte Datei
+ * angefasst wird. Der Teilbaum eines gelöschten Ordners bleibt unverändert erhalten und kann
+ * als Ganzes wiederhergestellt werden. Erst der Aufräumlauf im Wartungsfenster entfernt
+ * abgelaufene Einträge endgültig, stapelweise erst die Einträge und danach ihre Dateien.
+ * Der Papierkorb setzt den SQLite-Metadatenspeicher voraus.
+ */
+public class TrashManager {
+
+    /** Die einzige Instanz des TrashManager */
+    private static TrashManager instance;
+
+    /** IDs aller Ordner, die selbst oder über einen Vorfahren im Papierkorb liegen */
+    private static final String TRASHED_FOLDER_IDS = "SELECT c.descendant FROM folders t "
+            + "JOIN folder_closure c ON c.ancestor = t.id WHERE t.deleted_at IS NOT NULL";
+
+    /** Meldung, wenn eine Datei in einen Ordner im Papierkorb wiederhergestellt werden soll */
+    private static final String FOLDER_TRASHED_MESSAGE =
+            "Der ursprüngliche Ordner liegt im Papierkorb; bitte zuerst den Ordner wiederherstellen";
+
+    /** Anzahl der Tage, nach denen gelöschte Einträge endgültig entfernt werden */
+    private volatile int retentionDays = 30;
+
+    /** Anzahl der Dateien, die ein Schritt des Aufräumlaufs gemeinsam entfernt */
+    private volatile int purgeBatchSize = 500;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private TrashManager() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des TrashManager zurück.
+     *
+     * @return Die Instanz des TrashManager
+     */
+    public static synchronized TrashManager getInstance() {
+        if (instance == null) {
+            instance = new TrashManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Bedingung für Ordner, die weder selbst noch über einen Vorfahren im Papierkorb liegen.
+     *
+     * @param folderIdExpr SQL-Ausdruck für die Ordner-ID
+     * @return Die Bedingung
+     */
+    public static String notTrashed(String folderIdExpr) {
+        return folderIdExpr + " NOT IN (" + TRASHED_FOLDER_IDS + ")";
+    }
+
+    /**
+     * Bedingung für Dateien der Dateitabelle, die weder selbst noch über ihren Ordner im Papierkorb liegen.
+     *
+     * @return Die Bedingung
+     */
+    public static String liveFile() {
+        return "deleted_at IS NULL AND " + notTrashed("folder_id");
+    }
+
+    /**
+     * Gibt zurück, ob der Papierkorb mit dem aktuellen Metadatenspeicher verfügbar ist.
+     *
+     * @return true bei SQLite-Metadaten
+     */
+    public boolean isAvailable() {
+        return DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore;
+    }
+
+    /**
+     * Verschiebt eine Datei in den Papierkorb.
+     *
+     * @param fileId Die ID der Datei
+     * @return true, wenn die Datei verschoben wurde; false, wenn sie nicht existiert oder bereits gelöscht ist
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    public boolean trashFile(int fileId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE files SET trashed_from = folder_id, folder_id = NULL, deleted_at = CURRENT_TIMESTAMP " +
+                     "WHERE id = ? AND deleted_at IS NULL")) {
+            stmt.setInt(1, fileId);
+            boolean trashed = stmt.executeUpdate() > 0;
+            if (trashed) {
+                LoggingUtil.logDatabase("Update", "files", "Moved file " + fileId + " to trash");
+            }
+            return trashed;
+        }
+    }
+
+    /**
+     * Verschiebt einen Ordner samt Teilbaum in den Papierkorb.
+     *
+     * @param folderId Die ID des Ordners
+     * @return true, wenn der Ordner verschoben wurde; false, wenn er nicht existiert oder bereits gelöscht ist
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    public boolean trashFolder(int folderId) throws SQLException {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE folders SET trashed_parent = parent_id, parent_id = NULL, deleted_at = CURRENT_TIMESTAMP " +
+                     "WHERE id = ? AND deleted_at IS NULL")) {
+            stmt.setInt(1, folderId);
+            boolean trashed = stmt.executeUpdate() > 0;
+            if (trashed) {
+                LoggingUtil.logDatabase("Update", "folders", "Moved folder " + folderId + " to trash");
+            }
+            return trashed;
+        }
+    }
+
+    /**
+     * Gibt zurück, ob ein Ordner selbst oder über einen Vorfahren im Papierkorb liegt.
+     *
+     * @param folderId Die ID des Ordners
+     * @return true, wenn der Ordner im Papierkorb liegt; false auch ohne verfügbaren Papierkorb
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     */
+    public boolean isFolderTrashed(int folderId) throws SQLException {
+        if (!isAvailable()) {
+            return false;
+        }
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT 1 WHERE NOT (" + notTrashed("?") + ")")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * Gibt den Inhalt des Papierkorbs zurück, zuletzt Gelöschtes zuerst.
+     *
+     * @return Die Einträge
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     */
+    public List<TrashItem> getItems() throws SQLException {
+        List<TrashItem> items = new ArrayList<>();
+        if (!isAvailable()) {
+            return items;
+        }
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT 'FILE' AS type, id, original_name AS name, trashed_from AS parent, " +
+                     "COALESCE(size_bytes, 0) AS size, deleted_at FROM files WHERE deleted_at IS NOT NULL " +
+                     "UNION ALL SELECT 'FOLDER', f.id, f.name, f.trashed_parent, COALESCE(s.total_bytes, 0), f.deleted_at " +
+                     "FROM folders f LEFT JOIN folder_stats s ON s.folder_id = f.id WHERE f.deleted_at IS NOT NULL " +
+                     "ORDER BY deleted_at DESC, id DESC");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                int parent = rs.getInt("parent");
+                Integer originalParentId = rs.wasNull() ? null : parent;
+                Timestamp deletedAt = rs.getTimestamp("deleted_at");
+                items.add(new TrashItem(TrashItem.Type.valueOf(rs.getString("type")), rs.getInt("id"),
+                        rs.getString("name"), originalParentId, rs.getLong("size"),
+                        deletedAt != null ? deletedAt.toLocalDateTime() : null));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Stellt eine Datei aus dem Papierkorb in ihrem ursprünglichen Ordner wieder her.
+     *
+     * @param fileId Die ID der Datei
+     * @return true, wenn die Datei wiederhergestellt wurde; false, wenn sie nicht im Papierkorb
+     *         liegt oder ihr Ordner nicht mehr existiert
+     * @throws IllegalStateException wenn der ursprüngliche Ordner selbst oder über einen Vorfahren
+     *         im Papierkorb liegt; er muss zuerst wiederhergestellt werden
+     * @throws QuotaExceededException wenn die Datei das Speicherkontingent des Ordners überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    public boolean restoreFile(int fileId) throws QuotaExceededException, SQLException {
+        int folderId;
+        long size;
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT f.trashed_from, COALESCE(f.size_bytes, 0), " + notTrashed("d.id") + " FROM files f " +
+                     "JOIN folders d ON d.id = f.trashed_from WHERE f.id = ? AND f.deleted_at IS NOT NULL")) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                folderId = rs.getInt(1);
+                size = rs.getLong(2);
+                if (!rs.getBoolean(3)) {
+                    throw new IllegalStateException(FOLDER_TRASHED_MESSAGE);
+                }
+            }
+        }
+        QuotaManager.getInstance().checkImport(folderId, size, 1);
+
+        boolean restored;
+        // Die Bedingung auf den Ordner wird wiederholt, falls er inzwischen gelöscht wurde
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE files SET folder_id = trashed_from, trashed_from = NULL, deleted_at = NULL " +
+                     "WHERE id = ? AND deleted_at IS NOT NULL AND " + notTrashed("trashed_from"))) {
+            stmt.setInt(1, fileId);
+            restored = stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if (QuotaManager.isQuotaViolation(e)) {
+                throw new QuotaExceededException(folderId, "Speicherkontingent überschritten");
+            }
+            throw e;
+        }
+        if (restored) {
+            FileStorage.getInstance().invalidateFolder(folderId);
+            LoggingUtil.logInfo("TrashManager", "Restored file " + fileId + " into folder " + folderId);
+        }
+        return restored;
+    }
+
+    /**
+     * Stellt einen Ordner samt Teilbaum aus dem Papierkorb wieder her. Existiert sein
+     * ursprünglicher Elternordner nicht mehr, wird er auf der obersten Ebene wiederhergestellt.
+     *
+     * @param folderId Die ID des Ordners
+     * @return true, wenn der Ordner wiederhergestellt wurde; false, wenn er nicht im Papierkorb liegt
+     * @throws QuotaExceededException wenn der Teilbaum ein Speicherkontingent des Elternordners überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    public boolean restoreFolder(int folderId) throws QuotaExceededException, SQLException {
+        Integer parentId = null;
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT p.id FROM folders f JOIN folders p ON p.id = f.trashed_parent " +
+                     "WHERE f.id = ? AND f.deleted_at IS NOT NULL")) {
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    parentId = rs.getInt(1);
+                }
+            }
+        }
+        QuotaManager.getInstance().checkFolderMove(folderId, null, parentId);
+
+        boolean restored;
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "UPDATE folders SET parent_id = (SELECT p.id FROM folders p WHERE p.id = folders.trashed_parent), " +
+                     "trashed_parent = NULL, deleted_at = NULL WHERE id = ? AND deleted_at IS NOT NULL")) {
+            stmt.setInt(1, folderId);
+            restored = stmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            if (QuotaManager.isQuotaViolation(e)) {
+                throw new QuotaExceededException(parentId != null ? parentId : folderId, "Speicherkontingent überschritten");
+            }
+            throw e;
+        }
+        if (restored) {
+            FileStorage.getInstance().invalidateCache();
+            LoggingUtil.logInfo("TrashManager", "Restored folder " + folderId + " from trash");
+        }
+        return restored;
+    }
+
+    /**
+     * Entfernt alle Einträge endgültig, die länger als die eingestellte Aufbewahrungszeit im Papierkorb liegen.
+     *
+     * @return Die Anzahl der entfernten Dateien
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     */
+    public int purgeExpired() throws SQLException {
+        return purge("-" + retentionDays + " days");
+    }
+
+    /**
+     * Leert den Papierkorb und entfernt alle Einträge endgültig.
+     *
+     * @return Die Anzahl der entfernten Dateien
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     */
+    public int emptyTrash() throws SQLException {
+        return purge("+0 days");
+    }
+
+    /**
+     * Entfernt alle Einträge, die vor dem angegebenen Zeitpunkt gelöscht wurden. Dateien werden
+     * stapelweise entfernt: erst ihre Einträge samt Versionen in einer Transaktion, danach ihre
+     * verschlüsselten Dateien. Gepackte Inhalte gibt die Verdichtung ihrer Pack-Datei frei.
+     *
+     * @param cutoffModifier SQLite-Zeitmodifikator relativ zu jetzt, etwa "-30 days"
+     * @return Die Anzahl der entfernten Dateien
+     */
+    private synchronized int purge(String cutoffModifier) throws SQLException {
+        if (!isAvailable()) {
+            return 0;
+        }
+        int purged = 0;
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            // 1. Einzeln gelöschte Dateien
+            purged += purgeFiles(conn, "deleted_at IS NOT NULL AND deleted_at <= datetime('now', ?)", cutoffModifier);
+
+            // 2. Gelöschte Ordner mit allen Dateien und Unterordnern ihres Teilbaums
+            List<Integer> folderIds = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT id FROM folders WHERE deleted_at IS NOT NULL AND deleted_at <= datetime('now', ?)")) {
+                stmt.setString(1, cutoffModifier);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        folderIds.add(rs.getInt(1));
+                    }
+                }
+            }
+            for (int folderId : folderIds) {
+                purged += purgeFiles(conn, "folder_id IN (SELECT descendant FROM folder_closure WHERE ancestor = ?)",
+                        folderId);
+                // Der nun dateilose Teilbaum wird über den Metadatenspeicher entfernt
+                DatabaseManager.getMetadataStore().deleteFolderTree(folderId);
+            }
+            if (!folderIds.isEmpty()) {
+                LoggingUtil.logDatabase("Delete", "folders", "Purged " + folderIds.size() + " folders from trash");
+            }
+        }
+        if (purged > 0) {
+            FileStorage.getInstance().invalidateCache();
+            LoggingUtil.logInfo("TrashManager", "Purged " + purged + " files from trash");
+        }
+        return purged;
+    }
+
+    /**
+     * Entfernt alle Dateien, die eine Bedingung erfüllen, samt ihren Versionen stapelweise.
+     * Verschlüsselte Dateien werden nur gelöscht, wenn keine Kopie mehr auf sie verweist.
+     *
+     * @return Die Anzahl der entfernten Dateien
+     */
+    private int purgeFiles(Connection conn, String condition, Object parameter) throws SQLException {
+        int purged = 0;
+        try (PreparedStatement select = conn.prepareStatement(
+                     "SELECT id, encrypted_path FROM files WHERE " + condition + " LIMIT ?");
+             PreparedStatement versions = conn.prepareStatement(
+                     "SELECT encrypted_path FROM file_versions WHERE file_id = ? AND encrypted_path <> ''");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM files WHERE id = ?")) {
+
+            while (true) {
+                List<Integer> ids = new ArrayList<>();
+                List<String> blobs = new ArrayList<>();
+                select.setObject(1, parameter);
+                select.setInt(2, purgeBatchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        String path = rs.getString(2);
+                        if (!path.isEmpty()) {
+                            blobs.add(path);
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+                for (int id : ids) {
+                    versions.setInt(1, id);
+                    try (ResultSet rs = versions.executeQuery()) {
+                        while (rs.next()) {
+                            blobs.add(rs.getString(1));
+                        }
+                    }
+                }
+
+                conn.setAutoCommit(false);
+                try {
+                    for (int id : ids) {
+                        delete.setInt(1, id);
+                        delete.addBatch();
+                    }
+                    delete.executeBatch();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                // Kopien in anderen Ordnern können dieselbe verschlüsselte Datei weiter nutzen
+                BlobReferences.deleteUnreferenced(conn, blobs, "TrashManager");
+                purged += ids.size();
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Setzt die Anzahl der Tage, nach denen gelöschte Einträge endgültig entfernt werden.
+     *
+     * @param retentionDays Die Anzahl der Tage
+     */
+    public void setRetentionDays(int retentionDays) {
+        if (retentionDays < 0) {
+            throw new IllegalArgumentException("Die Aufbewahrungszeit darf nicht negativ sein");
+        }
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Setzt die Anzahl der Dateien, die ein Schritt des Aufräumlaufs gemeinsam entfernt.
+     *
+     * @param purgeBatchSize Die Anzahl der Dateien
+     */
+    public void setPurgeBatchSize(int purgeBatchSize) {
+        this.purgeBatchSize = purgeBatchSize;
+    }
+}
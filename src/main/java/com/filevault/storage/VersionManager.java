@@ -0,0 +1,418 @@
+package com.filevault.storage;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.FileVersion;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Verwaltet frühere Versionen von Dateien.
+ * <p>
+ * Wird eine Datei unter demselben Namen erneut in denselben Ordner importiert, wird der
+ * bestehende Dateieintrag auf den neuen Inhalt umgestellt und sein bisheriger Inhalt als
+ * Version aufbewahrt. Der Dateieintrag bleibt damit stets die aktuelle Version, sodass
+ * Auflistungen unverändert nur die Dateitabelle lesen. Ältere Versionen können
+ * wiederhergestellt werden; der Aufräumlauf im Wartungsfenster entfernt Versionen, die
+ * von keiner Aufbewahrungsregel mehr erfasst werden, und löscht ihre Dateien stapelweise.
+ * Versionen setzen den SQLite-Metadatenspeicher voraus.
+ */
+public class VersionManager {
+
+    /** Die einzige Instanz des VersionManager */
+    private static VersionManager instance;
+
+    /** Spalten, die den Inhalt einer Version beschreiben, in Dateitabelle und Versionstabelle gleich */
+    static final String CONTENT_COLUMNS = "encrypted_path, size_bytes, mime_type, pack_id, pack_offset, "
+            + "pack_length, volume_id, storage_tier, compressed, created_at";
+
+    /** Erstellungszeit einer Version in Millisekunden, auch für ältere, als Zahl gespeicherte Werte */
+    private static final String CREATED_MILLIS = "(CASE typeof(created_at) WHEN 'integer' THEN created_at "
+            + "ELSE CAST(strftime('%s', created_at) AS INTEGER) * 1000 END)";
+
+    /** Ob erneute Importe als neue Version gespeichert werden */
+    private volatile boolean versioningEnabled = true;
+
+    /** Anzahl der früheren Versionen, die je Datei mindestens erhalten bleiben */
+    private volatile int keepLastVersions = 10;
+
+    /** Anzahl der Tage, für die zusätzlich die letzte Version jedes Tages erhalten bleibt */
+    private volatile int keepDailyDays = 0;
+
+    /** Anzahl der Versionen, die ein Schritt des Aufräumlaufs gemeinsam löscht */
+    private volatile int pruneBatchSize = 500;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private VersionManager() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des VersionManager zurück.
+     *
+     * @return Die Instanz des VersionManager
+     */
+    public static synchronized VersionManager getInstance() {
+        if (instance == null) {
+            instance = new VersionManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Sucht die Datei, deren neue Version ein Import in einen Ordner wäre.
+     *
+     * @param folderId Die ID des Ordners
+     * @param name Der Name der Datei
+     * @return Die bestehende Datei oder null, wenn der Import eine neue Datei anlegt
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     */
+    public EncryptedFile findCurrent(int folderId, String name) throws SQLException {
+        if (!versioningEnabled || !(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return null;
+        }
+        try (Connection conn = DatabaseManager.getConnection()) {
+            return findCurrent(conn, folderId, name);
+        }
+    }
+
+    /**
+     * Sucht die aktuelle Datei gleichen Namens über eine bestimmte Verbindung, etwa die eigene
+     * Verbindung eines Imports. Die Verbindung wird nicht geschlossen.
+     *
+     * @param conn Die zu verwendende Verbindung
+     * @param folderId Die ID des Ordners
+     * @param name Der ursprüngliche Dateiname
+     * @return Die bestehende Datei oder null
+     * @throws SQLException wenn die Datei nicht gesucht werden kann
+     */
+    EncryptedFile findCurrent(Connection conn, int folderId, String name) throws SQLException {
+        if (!versioningEnabled || !(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return null;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT * FROM files WHERE folder_id = ? AND original_name = ? ORDER BY id DESC LIMIT 1")) {
+            stmt.setInt(1, folderId);
+            stmt.setString(2, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? FileStorage.mapFile(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Stellt eine Datei auf neuen Inhalt um und bewahrt den bisherigen als Version auf.
+     * Der Zuwachs gegenüber dem bisherigen Inhalt wird innerhalb der Transaktion gegen die
+     * Kontingente des Ordners geprüft.
+     *
+     * @param fileId Die ID der Datei
+     * @param content Der neue Inhalt mit Pfad oder Lage in einer Pack-Datei, Größe und MIME-Typ
+     * @return true, wenn die Datei umgestellt wurde; false, wenn sie nicht mehr existiert
+     * @throws QuotaExceededException wenn der größere Inhalt ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    public boolean addVersion(int fileId, EncryptedFile content) throws QuotaExceededException, SQLException {
+        Integer volumeId = content.isPacked() ? null : VolumeManager.getInstance().volumeIdOf(content.getEncryptedPath());
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                if (archiveCurrent(conn, fileId) == 0) {
+                    conn.rollback();
+                    return false;
+                }
+                checkGrowth(conn, fileId, content.getSizeBytes());
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE files SET encrypted_path = ?, size_bytes = ?, mime_type = ?, pack_id = ?, " +
+                        "pack_offset = ?, pack_length = ?, volume_id = ?, storage_tier = 'HOT', compressed = 0, " +
+                        "created_at = CURRENT_TIMESTAMP, version = version + 1 WHERE id = ?")) {
+                    stmt.setString(1, BlobStore.toStoredPath(content.getEncryptedPath()));
+                    stmt.setLong(2, content.getSizeBytes());
+                    stmt.setString(3, content.getMimeType());
+                    if (content.isPacked()) {
+                        stmt.setInt(4, content.getPackId());
+                        stmt.setLong(5, content.getPackOffset());
+                        stmt.setInt(6, content.getPackLength());
+                    } else {
+                        stmt.setNull(4, Types.INTEGER);
+                        stmt.setNull(5, Types.INTEGER);
+                        stmt.setNull(6, Types.INTEGER);
+                    }
+                    VolumeManager.setVolumeId(stmt, 7, volumeId);
+                    stmt.setInt(8, fileId);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+                LoggingUtil.logDatabase("Update", "files", "Stored new version of file " + fileId);
+                return true;
+            } catch (SQLException | QuotaExceededException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Gibt alle Versionen einer Datei zurück, die aktuelle zuerst.
+     *
+     * @param fileId Die ID der Datei
+     * @return Die Versionen oder eine leere Liste, wenn die Datei nicht existiert
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     */
+    public List<FileVersion> getVersions(int fileId) throws SQLException {
+        List<FileVersion> versions = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT version, size_bytes, created_at, 1 AS current FROM files WHERE id = ? " +
+                     "UNION ALL SELECT version, size_bytes, created_at, 0 FROM file_versions WHERE file_id = ? " +
+                     "ORDER BY version DESC")) {
+            stmt.setInt(1, fileId);
+            stmt.setInt(2, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp createdAt = rs.getTimestamp("created_at");
+                    versions.add(new FileVersion(fileId, rs.getInt("version"), rs.getLong("size_bytes"),
+                            createdAt != null ? createdAt.toLocalDateTime() : null, rs.getInt("current") != 0));
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Stellt eine frühere Version wieder her. Sie wird mit einer neuen Nummer zur aktuellen
+     * Version, die bisherige aktuelle Version wird aufbewahrt.
+     *
+     * @param fileId Die ID der Datei
+     * @param version Die Nummer der wiederherzustellenden Version
+     * @return true, wenn die Version wiederhergestellt wurde; false, wenn sie nicht existiert
+     * @throws QuotaExceededException wenn die größere Version ein Speicherkontingent überschreiten würde
+     * @throws SQLException wenn die Metadaten nicht geschrieben werden können
+     */
+    public boolean restore(int fileId, int version) throws QuotaExceededException, SQLException {
+        try (Connection conn = DatabaseManager.openWriteConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                // Das Archivieren übernimmt die Schreibsperre, danach kann der Aufräumlauf die
+                // Version nicht mehr entfernen
+                archiveCurrent(conn, fileId);
+                int versionId;
+                long sizeBytes;
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "SELECT id, size_bytes FROM file_versions WHERE file_id = ? AND version = ?")) {
+                    stmt.setInt(1, fileId);
+                    stmt.setInt(2, version);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next()) {
+                            conn.rollback();
+                            return false;
+                        }
+                        versionId = rs.getInt(1);
+                        sizeBytes = rs.getLong(2);
+                    }
+                }
+                checkGrowth(conn, fileId, sizeBytes);
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE files SET (" + CONTENT_COLUMNS + ") = (SELECT " + CONTENT_COLUMNS +
+                        " FROM file_versions WHERE id = ?), version = version + 1 WHERE id = ?")) {
+                    stmt.setInt(1, versionId);
+                    stmt.setInt(2, fileId);
+                    stmt.executeUpdate();
+                }
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM file_versions WHERE id = ?")) {
+                    stmt.setInt(1, versionId);
+                    stmt.executeUpdate();
+                }
+                conn.commit();
+            } catch (SQLException | QuotaExceededException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        // Zwischengespeicherte Einträge tragen noch den bisherigen Inhalt
+        FileStorage.getInstance().invalidateCache();
+        LoggingUtil.logInfo("VersionManager", "Restored version " + version + " of file " + fileId);
+        return true;
+    }
+
+    /**
+     * Prüft, ob eine Datei auf einen größeren Inhalt umgestellt werden darf, ohne ein
+     * Kontingent ihres Ordners zu überschreiten. Die Prüfung läuft in der Transaktion der
+     * Umstellung, nachdem diese die Schreibsperre übernommen hat.
+     *
+     * @throws QuotaExceededException wenn der Zuwachs ein Kontingent überschreiten würde
+     */
+    private static void checkGrowth(Connection conn, int fileId, long newSizeBytes)
+            throws QuotaExceededException, SQLException {
+        int folderId;
+        long growth;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT folder_id, ? - COALESCE(size_bytes, 0) FROM files WHERE id = ?")) {
+            stmt.setLong(1, newSizeBytes);
+            stmt.setInt(2, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                folderId = rs.getInt(1);
+                growth = rs.getLong(2);
+            }
+        }
+        if (growth > 0) {
+            QuotaManager.getInstance().checkImport(conn, folderId, growth, 0);
+        }
+    }
+
+    /**
+     * Übernimmt den aktuellen Inhalt einer Datei als aufbewahrte Version.
+     *
+     * @return Die Anzahl der angelegten Versionen, 0 wenn die Datei nicht existiert
+     */
+    private static int archiveCurrent(Connection conn, int fileId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO file_versions (file_id, version, " + CONTENT_COLUMNS + ") " +
+                "SELECT id, version, " + CONTENT_COLUMNS + " FROM files WHERE id = ?")) {
+            stmt.setInt(1, fileId);
+            return stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Gibt die eigenen verschlüsselten Dateien aller früheren Versionen einer Datei zurück,
+     * etwa um sie beim Löschen der Datei zu entfernen. Gepackte Versionen werden bei der
+     * Verdichtung ihrer Pack-Datei entfernt.
+     *
+     * @param fileId Die ID der Datei
+     * @return Die absoluten Pfade
+     * @throws SQLException wenn die Metadaten nicht gelesen werden können
+     */
+    public List<Path> getVersionBlobs(int fileId) throws SQLException {
+        List<Path> blobs = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT encrypted_path FROM file_versions WHERE file_id = ? AND encrypted_path <> ''")) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    blobs.add(Paths.get(BlobStore.resolve(rs.getString(1))));
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Entfernt alle Versionen, die von keiner Aufbewahrungsregel erfasst werden. Erhalten
+     * bleiben je Datei die neuesten früheren Versionen bis zur eingestellten Anzahl und,
+     * falls eingestellt, die letzte Version jedes Tages innerhalb der eingestellten Tage.
+     * Einträge werden stapelweise in einer Transaktion gelöscht, danach ihre Dateien, sofern
+     * keine Kopie mehr auf sie verweist.
+     *
+     * @return Die Anzahl der entfernten Versionen
+     * @throws SQLException wenn die Metadaten nicht gelesen oder geschrieben werden können
+     */
+    public synchronized int prune() throws SQLException {
+        if (!(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return 0;
+        }
+        long dailyCutoff = keepDailyDays > 0
+                ? System.currentTimeMillis() - TimeUnit.DAYS.toMillis(keepDailyDays)
+                : Long.MAX_VALUE;
+        int pruned = 0;
+        try (Connection conn = DatabaseManager.openWriteConnection();
+             PreparedStatement select = conn.prepareStatement(
+                     "SELECT id, encrypted_path FROM (" +
+                     "SELECT id, encrypted_path, created_ms, " +
+                     "ROW_NUMBER() OVER (PARTITION BY file_id ORDER BY version DESC) AS recency, " +
+                     "ROW_NUMBER() OVER (PARTITION BY file_id, created_ms / 86400000 ORDER BY version DESC) AS day_recency " +
+                     "FROM (SELECT id, file_id, version, encrypted_path, " + CREATED_MILLIS + " AS created_ms " +
+                     "FROM file_versions)) " +
+                     "WHERE recency > ? AND NOT (day_recency = 1 AND created_ms >= ?) LIMIT ?");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM file_versions WHERE id = ?")) {
+
+            while (true) {
+                List<Integer> ids = new ArrayList<>();
+                List<String> blobs = new ArrayList<>();
+                select.setInt(1, keepLastVersions);
+                select.setLong(2, dailyCutoff);
+                select.setInt(3, pruneBatchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        String path = rs.getString(2);
+                        if (!path.isEmpty()) {
+                            blobs.add(path);
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    break;
+                }
+
+                conn.setAutoCommit(false);
+                try {
+                    for (int id : ids) {
+                        delete.setInt(1, id);
+                        delete.addBatch();
+                    }
+                    delete.executeBatch();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } finally {
+                    conn.setAutoCommit(true);
+                }
+                // Kopien der Datei können dieselbe verschlüsselte Datei weiter nutzen
+                BlobReferences.deleteUnreferenced(conn, blobs, "VersionManager");
+                pruned += ids.size();
+            }
+        }
+        if (pruned > 0) {
+            LoggingUtil.logInfo("VersionManager", "Pruned " + pruned + " file versions");
+        }
+        return pruned;
+    }
+
+    /**
+     * Legt fest, ob erneute Importe als neue Version gespeichert werden.
+     *
+     * @param versioningEnabled true für Versionen, false für unabhängige Dateien gleichen Namens
+     */
+    public void setVersioningEnabled(boolean versioningEnabled) {
+        this.versioningEnabled = versioningEnabled;
+    }
+
+    /**
+     * Setzt die Aufbewahrungsregeln für frühere Versionen.
+     *
+     * @param keepLastVersions Anzahl der neuesten früheren Versionen, die erhalten bleiben
+     * @param keepDailyDays Anzahl der Tage, für die die letzte Version jedes Tages erhalten bleibt, 0 zum Abschalten
+     */
+    public void setRetention(int keepLastVersions, int keepDailyDays) {
+        if (keepLastVersions < 0 || keepDailyDays < 0) {
+            throw new IllegalArgumentException("Aufbewahrungsregeln dürfen nicht negativ sein");
+        }
+        this.keepLastVersions = keepLastVersions;
+        this.keepDailyDays = keepDailyDays;
+    }
+
+    /**
+     * Setzt die Anzahl der Versionen, die ein Schritt des Aufräumlaufs gemeinsam löscht.
+     *
+     * @param pruneBatchSize Die Anzahl der Versionen
+     */
+    public void setPruneBatchSize(int pruneBatchSize) {
+        this.pruneBatchSize = pruneBatchSize;
+    }
+}
@@ -0,0 +1,14 @@
+package com.filevault.storage;
+
+import java.nio.file.Path;
+
+/**
+ * Ein zusätzliches Datenverzeichnis, etwa auf einer weiteren Festplatte.
+ *
+ * @param id Die ID des Volumes
+ * @param root Das Wurzelverzeichnis
+ * @param capacityBytes Die festgelegte Kapazität in Bytes oder null für die Größe des Dateisystems
+ * @param draining Ob das Volume entfernt wird und keine neuen Dateien mehr erhält
+ */
+public record Volume(int id, Path root, Long capacityBytes, boolean draining) {
+}
@@ -0,0 +1,604 @@
+package com.filevault.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.util.LoggingUtil;
+
+/**
+ * Verteilt neue verschlüsselte Dateien auf mehrere Datenverzeichnisse.
+ * <p>
+ * Neben dem Standard-Datenverzeichnis können weitere Volumes, etwa Verzeichnisse auf
+ * anderen Festplatten, registriert werden. Neue Dateien landen zufällig, gewichtet nach der
+ * Kapazität, auf einem der Verzeichnisse, sodass Importe die Last auf mehrere Festplatten
+ * verteilen. Verzeichnisse mit zu wenig freiem Platz werden übergangen. Die Dateitabelle hält
+ * die ID des Volumes; Dateien im Standard-Datenverzeichnis haben keine. Dateien auf weiteren
+ * Volumes werden wie Dateien außerhalb des Datenverzeichnisses mit absolutem Pfad gespeichert.
+ * Nach dem Hinzufügen oder Entfernen eines Volumes verschiebt die Neuverteilung im
+ * Wartungsfenster Dateien, bis die belegten Bytes der Kapazität entsprechen, und leert
+ * entfernte Volumes. Weitere Volumes setzen den SQLite-Metadatenspeicher voraus.
+ */
+public class VolumeManager {
+
+    /** Die einzige Instanz des VolumeManager */
+    private static VolumeManager instance;
+
+    /** Zulässige Abweichung der belegten Bytes vom Soll als Anteil der Gesamtbelegung */
+    private static final double BALANCE_TOLERANCE = 0.05;
+
+    /** Bedingung für Dateien, die als eigene Datei im schnellen Speicher liegen */
+    private static final String MOVABLE = "pack_id IS NULL AND storage_tier = 'HOT' AND encrypted_path <> ''";
+
+    /** Zwischengespeicherte Volumes oder null, wenn sie neu gelesen werden müssen */
+    private volatile List<Volume> volumes;
+
+    /** Festgelegte Kapazität des Standard-Datenverzeichnisses oder null für die Größe des Dateisystems */
+    private volatile Long primaryCapacityBytes;
+
+    /** Mindestens freier Platz in Bytes, damit ein Verzeichnis neue Dateien erhält */
+    private volatile long minFreeBytes = 64L * 1024 * 1024;
+
+    /** Höchstzahl an Dateien, die ein Lauf der Neuverteilung verschiebt */
+    private volatile int maxMovesPerRun = 1000;
+
+    /** Ob seit der letzten Neuverteilung Volumes hinzugefügt oder entfernt wurden */
+    private volatile boolean rebalanceNeeded;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private VolumeManager() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des VolumeManager zurück.
+     *
+     * @return Die Instanz des VolumeManager
+     */
+    public static synchronized VolumeManager getInstance() {
+        if (instance == null) {
+            instance = new VolumeManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Registriert ein weiteres Datenverzeichnis. Die Neuverteilung verschiebt im nächsten
+     * Wartungsfenster Dateien dorthin.
+     *
+     * @param root Das Wurzelverzeichnis
+     * @param capacityBytes Die Kapazität in Bytes oder null für die Größe des Dateisystems
+     * @return Das neue Volume
+     * @throws IOException wenn das Verzeichnis nicht angelegt werden kann
+     * @throws SQLException wenn das Volume nicht gespeichert werden kann
+     * @throws IllegalArgumentException wenn das Verzeichnis ein anderes Datenverzeichnis enthält oder in ihm liegt
+     */
+    public Volume addVolume(Path root, Long capacityBytes) throws IOException, SQLException {
+        Path normalized = root.toAbsolutePath().normalize();
+        List<Path> existing = new ArrayList<>();
+        existing.add(BlobStore.getRoot());
+        for (Volume volume : getVolumes()) {
+            existing.add(volume.root());
+        }
+        for (Path other : existing) {
+            if (normalized.startsWith(other) || other.startsWith(normalized)) {
+                throw new IllegalArgumentException("Volume überschneidet sich mit " + other);
+            }
+        }
+        Files.createDirectories(normalized);
+
+        try (Connection conn = DatabaseManager.openWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "INSERT INTO volumes (path, capacity_bytes) VALUES (?, ?)",
+                     Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, normalized.toString());
+            if (capacityBytes != null) {
+                stmt.setLong(2, capacityBytes);
+            } else {
+                stmt.setNull(2, Types.INTEGER);
+            }
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                Volume volume = new Volume(keys.getInt(1), normalized, capacityBytes, false);
+                volumes = null;
+                rebalanceNeeded = true;
+                LoggingUtil.logInfo("VolumeManager", "Added volume " + volume.id() + ": " + normalized);
+                return volume;
+            }
+        }
+    }
+
+    /**
+     * Markiert ein Volume zum Entfernen. Es erhält keine neuen Dateien mehr; die
+     * Neuverteilung verschiebt seine Dateien und löscht es anschließend.
+     *
+     * @param volumeId Die ID des Volumes
+     * @return true, wenn das Volume gefunden wurde
+     * @throws SQLException wenn das Volume nicht aktualisiert werden kann
+     */
+    public boolean removeVolume(int volumeId) throws SQLException {
+        try (Connection conn = DatabaseManager.openWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement("UPDATE volumes SET draining = 1 WHERE id = ?")) {
+            stmt.setInt(1, volumeId);
+            boolean found = stmt.executeUpdate() > 0;
+            volumes = null;
+            rebalanceNeeded |= found;
+            return found;
+        }
+    }
+
+    /**
+     * Gibt alle registrierten Volumes zurück, auch solche, die gerade entfernt werden.
+     *
+     * @return Die Volumes
+     * @throws SQLException wenn die Volumes nicht gelesen werden können
+     */
+    public List<Volume> getVolumes() throws SQLException {
+        List<Volume> cached = volumes;
+        if (cached != null) {
+            return cached;
+        }
+        List<Volume> loaded = new ArrayList<>();
+        try (Connection conn = DatabaseManager.openReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, path, capacity_bytes, draining FROM volumes ORDER BY id")) {
+            while (rs.next()) {
+                long capacity = rs.getLong(3);
+                Long capacityBytes = rs.wasNull() ? null : capacity;
+                loaded.add(new Volume(rs.getInt(1), Paths.get(rs.getString(2)), capacityBytes, rs.getInt(4) != 0));
+            }
+        }
+        volumes = List.copyOf(loaded);
+        return volumes;
+    }
+
+    /**
+     * Wählt das Datenverzeichnis für eine neue Datei, zufällig gewichtet nach Kapazität.
+     *
+     * @return Das Wurzelverzeichnis
+     */
+    public Path chooseRoot() {
+        Path primary = BlobStore.getRoot();
+        if (!(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return primary;
+        }
+        List<Path> roots = new ArrayList<>();
+        List<Long> weights = new ArrayList<>();
+        long totalWeight = addCandidate(roots, weights, primary, primaryCapacityBytes);
+        try {
+            for (Volume volume : getVolumes()) {
+                if (!volume.draining()) {
+                    totalWeight += addCandidate(roots, weights, volume.root(), volume.capacityBytes());
+                }
+            }
+        } catch (SQLException e) {
+            LoggingUtil.logWarning("VolumeManager", "Could not read volumes, using data directory: " + e.getMessage());
+            return primary;
+        }
+        if (totalWeight <= 0) {
+            return primary;
+        }
+        long pick = ThreadLocalRandom.current().nextLong(totalWeight);
+        for (int i = 0; i < roots.size(); i++) {
+            pick -= weights.get(i);
+            if (pick < 0) {
+                return roots.get(i);
+            }
+        }
+        return primary;
+    }
+
+    /**
+     * Nimmt ein Verzeichnis mit seiner Kapazität als Gewicht auf, sofern genug Platz frei ist.
+     *
+     * @return Das Gewicht oder 0, wenn das Verzeichnis übergangen wird
+     */
+    private long addCandidate(List<Path> roots, List<Long> weights, Path root, Long capacityBytes) {
+        long weight;
+        try {
+            Files.createDirectories(root);
+            FileStore store = Files.getFileStore(root);
+            if (store.getUsableSpace() < minFreeBytes) {
+                return 0;
+            }
+            weight = capacityBytes != null ? capacityBytes : store.getTotalSpace();
+        } catch (IOException e) {
+            LoggingUtil.logWarning("VolumeManager", "Volume not available: " + root + ": " + e.getMessage());
+            return 0;
+        }
+        if (weight <= 0) {
+            return 0;
+        }
+        roots.add(root);
+        weights.add(weight);
+        return weight;
+    }
+
+    /**
+     * Bestimmt das Volume, auf dem eine Datei liegt.
+     *
+     * @param path Der absolute Pfad der Datei
+     * @return Die ID des Volumes oder null für das Standard-Datenverzeichnis und andere Orte
+     */
+    public Integer volumeIdOf(String path) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        Path normalized = Paths.get(path).toAbsolutePath().normalize();
+        try {
+            for (Volume volume : getVolumes()) {
+                if (normalized.startsWith(volume.root())) {
+                    return volume.id();
+                }
+            }
+        } catch (SQLException e) {
+            LoggingUtil.logWarning("VolumeManager", "Could not read volumes: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Führt die Neuverteilung aus, wenn seit der letzten Volumes hinzugefügt oder entfernt wurden.
+     *
+     * @return Die Anzahl der verschobenen Dateien
+     */
+    public int rebalanceIfNeeded() {
+        if (!rebalanceNeeded) {
+            return 0;
+        }
+        try {
+            return rebalance();
+        } catch (SQLException e) {
+            LoggingUtil.logError("VolumeManager", "Rebalancing failed: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Leert zu entfernende Volumes und verschiebt Dateien, bis die belegten Bytes jedes
+     * Verzeichnisses seiner Kapazität entsprechen. Ein Lauf verschiebt höchstens die
+     * eingestellte Anzahl an Dateien; ist danach noch etwas zu tun, bleibt die
+     * Neuverteilung für das nächste Wartungsfenster vorgemerkt.
+     *
+     * @return Die Anzahl der verschobenen Dateien
+     * @throws SQLException wenn die Belegung nicht gelesen werden kann
+     */
+    public synchronized int rebalance() throws SQLException {
+        if (!(DatabaseManager.getMetadataStore() instanceof SqliteMetadataStore)) {
+            return 0;
+        }
+        volumes = null;
+        int budget = maxMovesPerRun;
+        int moved = 0;
+        boolean complete = true;
+
+        // 1. Zu entfernende Volumes leeren
+        for (Volume volume : getVolumes()) {
+            if (!volume.draining()) {
+                continue;
+            }
+            List<EncryptedFile> files = filesOn(volume.id(), Long.MAX_VALUE, budget - moved);
+            for (EncryptedFile file : files) {
+                if (move(file, chooseRoot())) {
+                    moved++;
+                }
+            }
+            moved += moveVersionsOff(volume.id(), budget - moved);
+            if (countFilesOn(volume.id()) == 0) {
+                deleteVolume(volume.id());
+            } else {
+                complete = false;
+            }
+        }
+        volumes = null;
+
+        // 2. Belegung an die Kapazität angleichen
+        Map<Integer, Long> used = usedBytes();
+        Map<Integer, Long> capacity = new HashMap<>();
+        capacity.put(null, capacityOf(BlobStore.getRoot(), primaryCapacityBytes));
+        for (Volume volume : getVolumes()) {
+            if (!volume.draining()) {
+                capacity.put(volume.id(), capacityOf(volume.root(), volume.capacityBytes()));
+            }
+        }
+        long totalCapacity = capacity.values().stream().mapToLong(Long::longValue).sum();
+        long totalUsed = 0;
+        for (Integer volumeId : capacity.keySet()) {
+            totalUsed += used.getOrDefault(volumeId, 0L);
+        }
+        long tolerance = (long) (totalUsed * BALANCE_TOLERANCE);
+        while (totalCapacity > 0 && moved < budget) {
+            Integer source = null;
+            Integer target = null;
+            long maxExcess = Long.MIN_VALUE;
+            long maxDeficit = Long.MIN_VALUE;
+            for (Map.Entry<Integer, Long> entry : capacity.entrySet()) {
+                long goal = (long) ((double) totalUsed * entry.getValue() / totalCapacity);
+                long excess = used.getOrDefault(entry.getKey(), 0L) - goal;
+                if (excess > maxExcess) {
+                    maxExcess = excess;
+                    source = entry.getKey();
+                }
+                if (-excess > maxDeficit) {
+                    maxDeficit = -excess;
+                    target = entry.getKey();
+                }
+            }
+            if (maxExcess <= tolerance || maxDeficit <= tolerance || source == target) {
+                break;
+            }
+            List<EncryptedFile> candidates = filesOn(source, Math.min(maxExcess, maxDeficit), 1);
+            if (candidates.isEmpty()) {
+                break;
+            }
+            EncryptedFile file = candidates.get(0);
+            if (!move(file, rootOf(target))) {
+                complete = false;
+                break;
+            }
+            used.merge(source, -file.getSizeBytes(), Long::sum);
+            used.merge(target, file.getSizeBytes(), Long::sum);
+            moved++;
+        }
+        if (moved >= budget) {
+            complete = false;
+        }
+        rebalanceNeeded = !complete;
+        if (moved > 0) {
+            LoggingUtil.logInfo("VolumeManager", "Rebalanced " + moved + " files across volumes");
+        }
+        return moved;
+    }
+
+    /**
+     * Verschiebt eine Datei unter gleichem Namen in ein anderes Datenverzeichnis.
+     */
+    private boolean move(EncryptedFile file, Path targetRoot) {
+        if (file.isPacked() || file.getEncryptedPath().isEmpty()) {
+            return false;
+        }
+        Path source = Paths.get(file.getEncryptedPath());
+        Path target = targetRoot.resolve(BlobStore.shardedPath(source.getFileName().toString()));
+        if (target.equals(source)) {
+            return false;
+        }
+        try {
+            BlobRelocator.copy(source, target, InputStream::transferTo);
+            return BlobRelocator.switchLocation(file, target, file.getStorageTier(), file.isCompressed());
+        } catch (Exception e) {
+            LoggingUtil.logError("VolumeManager", "Could not move file " + file.getId() + " to " + targetRoot + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Verschiebt frühere Dateiversionen von einem zu entfernenden Volume in andere Datenverzeichnisse.
+     *
+     * @return Die Anzahl der verschobenen Versionen
+     */
+    private int moveVersionsOff(int volumeId, int limit) throws SQLException {
+        if (limit <= 0) {
+            return 0;
+        }
+        List<String> paths = new ArrayList<>();
+        try (Connection conn = DatabaseManager.openReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT DISTINCT encrypted_path FROM file_versions WHERE volume_id = ? AND encrypted_path <> '' LIMIT ?")) {
+            stmt.setInt(1, volumeId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    paths.add(rs.getString(1));
+                }
+            }
+        }
+
+        int moved = 0;
+        for (String stored : paths) {
+            Path source = Paths.get(BlobStore.resolve(stored));
+            Path target = chooseRoot().resolve(BlobStore.shardedPath(source.getFileName().toString()));
+            try {
+                BlobRelocator.copy(source, target, InputStream::transferTo);
+                int updated = 0;
+                Integer targetVolumeId = volumeIdOf(target.toString());
+                try (Connection conn = DatabaseManager.openWriteConnection()) {
+                    conn.setAutoCommit(false);
+                    try {
+                        // Kopien der Datei können dieselbe verschlüsselte Datei als aktuellen Inhalt nutzen
+                        for (String table : new String[] {"file_versions", "files"}) {
+                            try (PreparedStatement stmt = conn.prepareStatement(
+                                    "UPDATE " + table + " SET encrypted_path = ?, volume_id = ? WHERE encrypted_path = ?")) {
+                                stmt.setString(1, BlobStore.toStoredPath(target.toString()));
+                                setVolumeId(stmt, 2, targetVolumeId);
+                                stmt.setString(3, stored);
+                                updated += stmt.executeUpdate();
+                            }
+                        }
+                        conn.commit();
+                    } catch (SQLException e) {
+                        conn.rollback();
+                        throw e;
+                    }
+                }
+                if (updated == 0) {
+                    // Die Version wurde inzwischen entfernt
+                    Files.deleteIfExists(target);
+                    continue;
+                }
+                Files.deleteIfExists(source);
+                moved++;
+            } catch (Exception e) {
+                LoggingUtil.logError("VolumeManager", "Could not move version blob " + source + ": " + e.getMessage());
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * Sucht verschiebbare Dateien eines Verzeichnisses bis zu einer Größe, größte zuerst.
+     * Die Einträge werden vollständig über die eigene Leseverbindung geladen, damit der
+     * Wartungs-Thread die gemeinsame Verbindung nicht verwendet.
+     */
+    private List<EncryptedFile> filesOn(Integer volumeId, long maxSize, int limit) throws SQLException {
+        List<EncryptedFile> files = new ArrayList<>();
+        if (limit <= 0) {
+            return files;
+        }
+        try (Connection conn = DatabaseManager.openReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT * FROM files WHERE volume_id IS ? AND " + MOVABLE +
+                     " AND size_bytes <= ? ORDER BY size_bytes DESC LIMIT ?")) {
+            setVolumeId(stmt, 1, volumeId);
+            stmt.setLong(2, maxSize);
+            stmt.setInt(3, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    files.add(FileStorage.mapFile(rs));
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Zählt alle Dateien und früheren Versionen, die noch auf ein Volume verweisen.
+     */
+    private int countFilesOn(int volumeId) throws SQLException {
+        try (Connection conn = DatabaseManager.openReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT (SELECT COUNT(*) FROM files WHERE volume_id = ?) " +
+                     "+ (SELECT COUNT(*) FROM file_versions WHERE volume_id = ?)")) {
+            stmt.setInt(1, volumeId);
+            stmt.setInt(2, volumeId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * Löscht ein geleertes Volume.
+     */
+    private void deleteVolume(int volumeId) throws SQLException {
+        try (Connection conn = DatabaseManager.openWriteConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM volumes WHERE id = ?")) {
+            stmt.setInt(1, volumeId);
+            stmt.executeUpdate();
+        }
+        LoggingUtil.logInfo("VolumeManager", "Removed drained volume " + volumeId);
+    }
+
+    /**
+     * Summiert die belegten Bytes je Volume; der Schlüssel null steht für das Standard-Datenverzeichnis.
+     */
+    private Map<Integer, Long> usedBytes() throws SQLException {
+        Map<Integer, Long> used = new HashMap<>();
+        try (Connection conn = DatabaseManager.openReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT volume_id, SUM(size_bytes) FROM (SELECT DISTINCT encrypted_path, volume_id, size_bytes " +
+                     "FROM files WHERE " + MOVABLE + ") GROUP BY volume_id")) {
+            while (rs.next()) {
+                int volumeId = rs.getInt(1);
+                used.put(rs.wasNull() ? null : volumeId, rs.getLong(2));
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Bestimmt die Kapazität eines Verzeichnisses.
+     */
+    private static long capacityOf(Path root, Long capacityBytes) {
+        if (capacityBytes != null) {
+            return capacityBytes;
+        }
+        try {
+            Files.createDirectories(root);
+            return Files.getFileStore(root).getTotalSpace();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Gibt das Wurzelverzeichnis zu einer Volume-ID zurück.
+     */
+    private Path rootOf(Integer volumeId) throws SQLException {
+        if (volumeId != null) {
+            for (Volume volume : getVolumes()) {
+                if (volume.id() == volumeId) {
+                    return volume.root();
+                }
+            }
+        }
+        return BlobStore.getRoot();
+    }
+
+    /**
+     * Setzt die Volume-ID eines Parameters; null steht für das Standard-Datenverzeichnis.
+     *
+     * @param stmt Die Anweisung
+     * @param index Die Position des Parameters
+     * @param volumeId Die ID des Volumes oder null
+     * @throws SQLException wenn der Parameter nicht gesetzt werden kann
+     */
+    static void setVolumeId(PreparedStatement stmt, int index, Integer volumeId) throws SQLException {
+        if (volumeId != null) {
+            stmt.setInt(index, volumeId);
+        } else {
+            stmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    /**
+     * Verwirft die zwischengespeicherten Volumes, etwa nach dem Wechsel der Datenbank.
+     */
+    void clearCache() {
+        volumes = null;
+    }
+
+    /**
+     * Setzt die Kapazität des Standard-Datenverzeichnisses für die Gewichtung.
+     *
+     * @param primaryCapacityBytes Die Kapazität in Bytes oder null für die Größe des Dateisystems
+     */
+    public void setPrimaryCapacityBytes(Long primaryCapacityBytes) {
+        this.primaryCapacityBytes = primaryCapacityBytes;
+    }
+
+    /**
+     * Setzt den mindestens freien Platz, damit ein Verzeichnis neue Dateien erhält.
+     *
+     * @param minFreeBytes Der freie Platz in Bytes
+     */
+    public void setMinFreeBytes(long minFreeBytes) {
+        this.minFreeBytes = minFreeBytes;
+    }
+
+    /**
+     * Setzt die Höchstzahl an Dateien, die ein Lauf der Neuverteilung verschiebt.
+     *
+     * @param maxMovesPerRun Die Anzahl der Dateien
+     */
+    public void setMaxMovesPerRun(int maxMovesPerRun) {
+        this.maxMovesPerRun = maxMovesPerRun;
+    }
+}
@@ -7,14 +7,16 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
-import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.filevault.model.FolderStats;
 import com.filevault.model.VirtualFolder;
 import com.filevault.storage.DatabaseManager;
+import com.filevault.storage.FileStorage;
+import com.filevault.storage.QuotaExceededException;
+import com.filevault.storage.QuotaManager;
+import com.filevault.storage.TrashManager;
 
 /**
  * Verwaltet virtuelle Ordner in der Anwendung.
@@ -106,26 +108,9 @@ public class FolderManager {
      * Stellt die Ordnerliste wieder her.
      */
     private void loadFoldersFromDatabase() {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM folders ORDER BY name");
-             ResultSet rs = stmt.executeQuery()) {
-            
+        try {
             // First, create all folders
-            while (rs.next()) {
-                Integer parentId = null;
-                if (rs.getObject("parent_id") != null) {
-                    parentId = rs.getInt("parent_id");
-                }
-                
-                int id = rs.getInt("id");
-                String name = rs.getString("name");
-                String description = rs.getString("description");
-                LocalDateTime createdAt = rs.getTimestamp("created_at").toLocalDateTime();
-                
-                VirtualFolder folder = new VirtualFolder(id, name, description, parentId);
-                folder.setCreatedAt(createdAt);
-                folders.add(folder);
-            }
+            folders.addAll(DatabaseManager.getMetadataStore().getAllFolders());
             
             // Then, build the parent-child relationships
             for (VirtualFolder folder : folders) {
@@ -191,45 +176,21 @@ public class FolderManager {
             throw new IllegalArgumentException("Ein Ordner mit diesem Namen existiert bereits im gleichen Verzeichnis");
         }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "INSERT INTO folders (name, description, parent_id, created_at) VALUES (?, ?, ?, ?)",
-                     Statement.RETURN_GENERATED_KEYS)) {
-
-            stmt.setString(1, name);
-            stmt.setString(2, description);
-            stmt.setObject(3, parentId);
-            stmt.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
-
-            int affectedRows = stmt.executeUpdate();
-            if (affectedRows == 0) {
-                LoggingUtil.logError("FolderManager", "Folder creation failed: No rows affected.");
-                throw new SQLException("Creating folder failed, no rows affected.");
-            }
-
-            try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    int id = generatedKeys.getInt(1);
-                    VirtualFolder folder = new VirtualFolder(id, name, description, parentId);
-                    folder.setCreatedAt(LocalDateTime.now());
-                    folders.add(folder);
+        try {
+            VirtualFolder folder = DatabaseManager.getMetadataStore().insertFolder(name, description, parentId);
+            folders.add(folder);
 
-                    if (parentId != null) {
-                        for (VirtualFolder parent : folders) {
-                            if (parent.getId() == parentId) {
-                                parent.addChild(folder);
-                                break;
-                            }
-                        }
+            if (parentId != null) {
+                for (VirtualFolder parent : folders) {
+                    if (parent.getId() == parentId) {
+                        parent.addChild(folder);
+                        break;
                     }
-
-                    LoggingUtil.logInfo("FolderManager", "Folder created successfully: " + name);
-                    return folder;
-                } else {
-                    LoggingUtil.logError("FolderManager", "Folder creation failed: No ID obtained.");
-                    throw new SQLException("Creating folder failed, no ID obtained.");
                 }
             }
+
+            LoggingUtil.logInfo("FolderManager", "Folder created successfully: " + name);
+            return folder;
         } catch (SQLException e) {
             LoggingUtil.logError("FolderManager", "Error creating folder: " + e.getMessage());
             throw new RuntimeException("Error creating folder", e);
@@ -243,16 +204,8 @@ public class FolderManager {
      * @return true, wenn die Umbenennung erfolgreich war
      */
     public boolean renameFolder(VirtualFolder folder, String newName) {
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(
-                     "UPDATE folders SET name = ?, description = ? WHERE id = ?")) {
-            
-            stmt.setString(1, newName);
-            stmt.setString(2, folder.getDescription());
-            stmt.setInt(3, folder.getId());
-            int affected = stmt.executeUpdate();
-            
-            if (affected > 0) {
+        try {
+            if (DatabaseManager.getMetadataStore().updateFolder(folder.getId(), newName, folder.getDescription())) {
                 folder.setName(newName);
                 return true;
             }
@@ -263,7 +216,8 @@ public class FolderManager {
     }
     
     /**
-     * Löscht einen Ordner und alle seine Dateien.
+     * Löscht einen Ordner und alle seine Dateien. Mit SQLite-Metadaten wird der Ordner samt
+     * Dateien in einem Schritt in den Papierkorb verschoben.
      * @param folder Der zu löschende Ordner
      * @throws IllegalStateException wenn der Ordner Unterordner enthält
      */
@@ -282,25 +236,13 @@ public class FolderManager {
         }
 
         try {
-            // Disable auto-commit mode
-            DatabaseManager.getConnection().setAutoCommit(false);
-            
-            // Lösche alle Dateien im Ordner
-            String deleteFilesSql = "DELETE FROM files WHERE folder_id = ?";
-            try (PreparedStatement deleteFilesStmt = DatabaseManager.getConnection().prepareStatement(deleteFilesSql)) {
-                deleteFilesStmt.setInt(1, folder.getId());
-                deleteFilesStmt.executeUpdate();
-            }
-
-            // Lösche den Ordner
-            String deleteFolderSql = "DELETE FROM folders WHERE id = ?";
-            try (PreparedStatement deleteFolderStmt = DatabaseManager.getConnection().prepareStatement(deleteFolderSql)) {
-                deleteFolderStmt.setInt(1, folder.getId());
-                deleteFolderStmt.executeUpdate();
+            if (TrashManager.getInstance().isAvailable()) {
+                TrashManager.getInstance().trashFolder(folder.getId());
+            } else {
+                // Löscht die Dateien des Ordners und den Ordner selbst in einer Transaktion
+                DatabaseManager.getMetadataStore().deleteFolder(folder.getId());
             }
-
-            // Commit the transaction
-            DatabaseManager.getConnection().commit();
+            FileStorage.getInstance().invalidateFolder(folder.getId());
             
             // Remove from parent's children list if it has a parent
             if (folder.getParentId() != null) {
@@ -314,18 +256,8 @@ public class FolderManager {
             
             // Remove from local list
             folders.remove(folder);
-            
-            // Reset auto-commit mode
-            DatabaseManager.getConnection().setAutoCommit(true);
             LoggingUtil.logInfo("FolderManager", "Folder deleted successfully: " + folder.getName());
         } catch (SQLException e) {
-            try {
-                // Rollback in case of error
-                DatabaseManager.getConnection().rollback();
-                DatabaseManager.getConnection().setAutoCommit(true);
-            } catch (SQLException rollbackEx) {
-                LoggingUtil.logError("FolderManager", "Error during rollback: " + rollbackEx.getMessage());
-            }
             LoggingUtil.logError("FolderManager", "Error deleting folder: " + e.getMessage());
             throw new RuntimeException("Fehler beim Löschen des Ordners", e);
         }
@@ -333,6 +265,9 @@ public class FolderManager {
     
     /**
      * Löscht einen Ordner und rekursiv alle seine Unterordner und Dateien.
+     * Mit SQLite-Metadaten wird nur der Ordner von seinem Elternordner gelöst und in den
+     * Papierkorb verschoben; sein Teilbaum bleibt bis zum endgültigen Entfernen erhalten.
+     * Andere Metadatenspeicher löschen den gesamten Teilbaum in einem Schritt.
      * @param folder Der zu löschende Ordner
      */
     public void deleteFolderRecursive(VirtualFolder folder) {
@@ -343,14 +278,14 @@ public class FolderManager {
         LoggingUtil.logInfo("FolderManager", "Recursively deleting folder: " + folder.getName());
 
         try {
-            // Disable auto-commit mode
-            DatabaseManager.getConnection().setAutoCommit(false);
-            
-            // Rekursiv alle Unterordner und deren Dateien löschen
-            deleteRecursively(folder);
-            
-            // Commit the transaction
-            DatabaseManager.getConnection().commit();
+            List<Integer> subtreeIds;
+            if (TrashManager.getInstance().isAvailable()) {
+                subtreeIds = DatabaseManager.getMetadataStore().getSubtreeFolderIds(folder.getId());
+                TrashManager.getInstance().trashFolder(folder.getId());
+            } else {
+                // Dateien und Ordner des gesamten Teilbaums in einer Transaktion löschen
+                subtreeIds = DatabaseManager.getMetadataStore().deleteFolderTree(folder.getId());
+            }
             
             // Remove from parent's children list if it has a parent
             if (folder.getParentId() != null) {
@@ -362,59 +297,172 @@ public class FolderManager {
                 }
             }
             
-            // Remove from local list
-            folders.remove(folder);
+            // Zwischengespeicherte Dateien des Teilbaums verwerfen
+            for (int subtreeId : subtreeIds) {
+                FileStorage.getInstance().invalidateFolder(subtreeId);
+            }
             
-            // Reset auto-commit mode
-            DatabaseManager.getConnection().setAutoCommit(true);
+            // Remove the whole subtree from local list
+            folders.removeIf(f -> subtreeIds.contains(f.getId()));
+            folders.remove(folder);
             LoggingUtil.logInfo("FolderManager", "Folder and all its contents deleted successfully: " + folder.getName());
         } catch (SQLException e) {
-            try {
-                // Rollback in case of error
-                DatabaseManager.getConnection().rollback();
-                DatabaseManager.getConnection().setAutoCommit(true);
-            } catch (SQLException rollbackEx) {
-                LoggingUtil.logError("FolderManager", "Error during rollback: " + rollbackEx.getMessage());
-            }
             LoggingUtil.logError("FolderManager", "Error recursively deleting folder: " + e.getMessage());
             throw new RuntimeException("Fehler beim rekursiven Löschen des Ordners", e);
         }
     }
     
     /**
-     * Hilfsmethode für die rekursive Löschung von Ordnern.
-     * Löscht alle Dateien und Unterordner des angegebenen Ordners rekursiv.
-     * 
-     * @param folder Der zu löschende Ordner
-     * @throws SQLException wenn ein Datenbankfehler auftritt
+     * Verschiebt einen Ordner samt Teilbaum unter einen neuen übergeordneten Ordner.
+     * @param folder Der zu verschiebende Ordner
+     * @param newParentId Die ID des neuen übergeordneten Ordners (null für Root-Ebene)
+     * @return true, wenn das Verschieben erfolgreich war; false auch, wenn der Teilbaum ein
+     *         Speicherkontingent des Ziels überschreiten würde
+     * @throws IllegalArgumentException wenn das Ziel im eigenen Teilbaum liegt oder dort bereits ein
+     *         gleichnamiger Ordner existiert
      */
-    private void deleteRecursively(VirtualFolder folder) throws SQLException {
-        LoggingUtil.logInfo("FolderManager", "Processing folder for recursive deletion: " + folder.getName());
+    public boolean moveFolder(VirtualFolder folder, Integer newParentId) {
+        if (folder == null) {
+            throw new IllegalArgumentException("Ordner darf nicht null sein");
+        }
+        LoggingUtil.logInfo("FolderManager", "Moving folder " + folder.getName() + " to parent " + newParentId);
         
-        // Zuerst alle Unterordner rekursiv löschen
-        List<VirtualFolder> subfolders = getSubfolders(folder.getId());
-        for (VirtualFolder subfolder : subfolders) {
-            deleteRecursively(subfolder);
-            
-            // Remove from local list
-            folders.remove(subfolder);
+        if (newParentId != null && isAncestor(folder.getId(), newParentId)) {
+            LoggingUtil.logError("FolderManager", "Folder move failed: Target is inside the folder's own subtree.");
+            throw new IllegalArgumentException("Ein Ordner kann nicht in seinen eigenen Teilbaum verschoben werden");
+        }
+        if (isDuplicateFolderName(folder.getName(), newParentId)) {
+            LoggingUtil.logError("FolderManager", "Folder move failed: Duplicate folder name.");
+            throw new IllegalArgumentException("Ein Ordner mit diesem Namen existiert bereits im gleichen Verzeichnis");
         }
         
-        // Dann alle Dateien im aktuellen Ordner löschen
-        String deleteFilesSql = "DELETE FROM files WHERE folder_id = ?";
-        try (PreparedStatement deleteFilesStmt = DatabaseManager.getConnection().prepareStatement(deleteFilesSql)) {
-            deleteFilesStmt.setInt(1, folder.getId());
-            deleteFilesStmt.executeUpdate();
-            LoggingUtil.logInfo("FolderManager", "Deleted all files in folder: " + folder.getName());
+        try {
+            QuotaManager.getInstance().checkFolderMove(folder.getId(), folder.getParentId(), newParentId);
+            if (!DatabaseManager.getMetadataStore().moveFolder(folder.getId(), newParentId)) {
+                return false;
+            }
+        } catch (QuotaExceededException e) {
+            LoggingUtil.logWarning("FolderManager", "Ordner nicht verschoben: " + e.getMessage());
+            return false;
+        } catch (SQLException e) {
+            if (QuotaManager.isQuotaViolation(e)) {
+                LoggingUtil.logWarning("FolderManager", "Ordner nicht verschoben: Speicherkontingent überschritten");
+            } else {
+                LoggingUtil.logError("FolderManager", "Fehler beim Verschieben des Ordners: " + e.getMessage());
+            }
+            return false;
         }
         
-        // Schließlich den aktuellen Ordner selbst löschen
-        String deleteFolderSql = "DELETE FROM folders WHERE id = ?";
-        try (PreparedStatement deleteFolderStmt = DatabaseManager.getConnection().prepareStatement(deleteFolderSql)) {
-            deleteFolderStmt.setInt(1, folder.getId());
-            deleteFolderStmt.executeUpdate();
-            LoggingUtil.logInfo("FolderManager", "Deleted folder itself: " + folder.getName());
+        for (VirtualFolder candidate : folders) {
+            if (folder.getParentId() != null && candidate.getId() == folder.getParentId()) {
+                candidate.removeChild(folder);
+            }
+            if (newParentId != null && candidate.getId() == newParentId) {
+                candidate.addChild(folder);
+            }
+        }
+        folder.setParentId(newParentId);
+        LoggingUtil.logInfo("FolderManager", "Folder moved successfully: " + folder.getName());
+        return true;
+    }
+    
+    /**
+     * Prüft, ob ein Ordner Vorfahre eines anderen ist.
+     * Jeder Ordner gilt als sein eigener Vorfahre.
+     * @param ancestorId Die ID des möglichen Vorfahren
+     * @param descendantId Die ID des möglichen Nachfahren
+     * @return true, wenn ancestorId auf dem Pfad von descendantId zur Wurzel liegt
+     */
+    public boolean isAncestor(int ancestorId, int descendantId) {
+        try {
+            return DatabaseManager.getMetadataStore().isAncestor(ancestorId, descendantId);
+        } catch (SQLException e) {
+            LoggingUtil.logError("FolderManager", "Fehler bei der Vorfahrenprüfung: " + e.getMessage());
+            throw new RuntimeException("Fehler bei der Vorfahrenprüfung", e);
+        }
+    }
+    
+    /**
+     * Gibt den vollständigen Pfad eines Ordners von der Wurzel aus zurück, z.B. "Tresor/Dokumente".
+     * @param folderId Die ID des Ordners
+     * @return Der Pfad mit "/" als Trennzeichen oder ein leerer String, wenn der Ordner nicht existiert
+     */
+    public String getFolderPath(int folderId) {
+        StringBuilder path = new StringBuilder();
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT f.name FROM folder_closure c JOIN folders f ON f.id = c.ancestor " +
+                     "WHERE c.descendant = ? ORDER BY c.depth DESC")) {
+            
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (path.length() > 0) {
+                        path.append('/');
+                    }
+                    path.append(rs.getString("name"));
+                }
+            }
+        } catch (SQLException e) {
+            LoggingUtil.logError("FolderManager", "Fehler beim Ermitteln des Ordnerpfads: " + e.getMessage());
+        }
+        return path.toString();
+    }
+    
+    /**
+     * Gibt die IDs aller Ordner im Teilbaum eines Ordners zurück, einschließlich des Ordners selbst.
+     * @param folderId Die ID des Wurzelordners des Teilbaums
+     * @return Die IDs, sortiert nach Tiefe
+     */
+    public List<Integer> getSubtreeFolderIds(int folderId) {
+        try {
+            return DatabaseManager.getMetadataStore().getSubtreeFolderIds(folderId);
+        } catch (SQLException e) {
+            LoggingUtil.logError("FolderManager", "Fehler beim Abrufen des Teilbaums: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Gibt die Statistiken eines Ordners zurück, die durch Trigger inkrementell gepflegt werden.
+     * @param folderId Die ID des Ordners
+     * @return Die Statistiken oder leere Statistiken, wenn der Ordner nicht existiert
+     */
+    public FolderStats getFolderStats(int folderId) {
+        try (Connection conn = DatabaseManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT direct_file_count, direct_bytes, total_file_count, total_bytes " +
+                     "FROM folder_stats WHERE folder_id = ?")) {
+            
+            stmt.setInt(1, folderId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return new FolderStats(folderId, rs.getLong("direct_file_count"), rs.getLong("direct_bytes"),
+                            rs.getLong("total_file_count"), rs.getLong("total_bytes"));
+                }
+            }
+        } catch (SQLException e) {
+            LoggingUtil.logError("FolderManager", "Fehler beim Abrufen der Ordnerstatistik: " + e.getMessage());
         }
+        return new FolderStats(folderId, 0, 0, 0, 0);
+    }
+    
+    /**
+     * Gibt die Anzahl der Dateien im gesamten Teilbaum eines Ordners zurück.
+     * @param folderId Die ID des Wurzelordners des Teilbaums
+     * @return Die Anzahl der Dateien
+     */
+    public long getSubtreeFileCount(int folderId) {
+        return getFolderStats(folderId).getTotalFileCount();
+    }
+    
+    /**
+     * Gibt die Gesamtgröße aller Dateien im Teilbaum eines Ordners in Bytes zurück.
+     * @param folderId Die ID des Wurzelordners des Teilbaums
+     * @return Die Gesamtgröße in Bytes
+     */
+    public long getSubtreeSize(int folderId) {
+        return getFolderStats(folderId).getTotalBytes();
     }
     
     /**
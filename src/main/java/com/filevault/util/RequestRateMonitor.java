@@ -0,0 +1,113 @@
+package com.filevault.util;
+
+/**
+ * Zählt eingehende API-Anfragen in einem gleitenden Fenster von einer Minute.
+ * <p>
+ * Die Anfragen werden in sekundengenauen Fächern gezählt; ein Fach wird beim ersten
+ * Zugriff in einer neuen Sekunde zurückgesetzt. Die Rate dient zum Erkennen von
+ * Zeiträumen mit geringer Last, etwa für Wartungsarbeiten an der Datenbank.
+ */
+public class RequestRateMonitor {
+
+    /** Länge des Fensters in Sekunden */
+    private static final int WINDOW_SECONDS = 60;
+
+    /** Die einzige Instanz des RequestRateMonitor */
+    private static RequestRateMonitor instance;
+
+    /** Anzahl der Anfragen je Sekunde im Fenster */
+    private final long[] counts = new long[WINDOW_SECONDS];
+
+    /** Sekunde, zu der das jeweilige Fach gehört */
+    private final long[] seconds = new long[WINDOW_SECONDS];
+
+    /** Gesamtzahl der gezählten Anfragen seit dem Start */
+    private long totalRequests;
+
+    /**
+     * Privater Konstruktor für das Singleton-Muster.
+     */
+    private RequestRateMonitor() {
+    }
+
+    /**
+     * Gibt die einzige Instanz des RequestRateMonitor zurück.
+     *
+     * @return Die Instanz des RequestRateMonitor
+     */
+    public static synchronized RequestRateMonitor getInstance() {
+        if (instance == null) {
+            instance = new RequestRateMonitor();
+        }
+        return instance;
+    }
+
+    /**
+     * Zählt eine Anfrage zum aktuellen Zeitpunkt.
+     */
+    public void recordRequest() {
+        recordRequest(System.currentTimeMillis());
+    }
+
+    /**
+     * Zählt eine Anfrage zum angegebenen Zeitpunkt.
+     *
+     * @param timeMillis Zeitpunkt der Anfrage in Millisekunden seit der Epoche
+     */
+    synchronized void recordRequest(long timeMillis) {
+        long second = timeMillis / 1000;
+        int slot = (int) (second % WINDOW_SECONDS);
+        if (seconds[slot] != second) {
+            seconds[slot] = second;
+            counts[slot] = 0;
+        }
+        counts[slot]++;
+        totalRequests++;
+    }
+
+    /**
+     * Gibt die Anzahl der Anfragen in den letzten 60 Sekunden zurück.
+     *
+     * @return Die Anfragen pro Minute
+     */
+    public long getRequestsPerMinute() {
+        return getRequestsPerMinute(System.currentTimeMillis());
+    }
+
+    /**
+     * Gibt die Anzahl der Anfragen in den 60 Sekunden vor dem angegebenen Zeitpunkt zurück.
+     *
+     * @param timeMillis Bezugszeitpunkt in Millisekunden seit der Epoche
+     * @return Die Anfragen pro Minute
+     */
+    synchronized long getRequestsPerMinute(long timeMillis) {
+        long now = timeMillis / 1000;
+        long sum = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (now - seconds[i] < WINDOW_SECONDS && seconds[i] <= now) {
+                sum += counts[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Gibt die Gesamtzahl der gezählten Anfragen zurück.
+     *
+     * @return Die Gesamtzahl der Anfragen
+     */
+    public synchronized long getTotalRequests() {
+        return totalRequests;
+    }
+
+    /**
+     * Setzt alle Zähler zurück.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            counts[i] = 0;
+            seconds[i] = 0;
+        }
+        totalRequests = 0;
+    }
+}
@@ -227,4 +227,17 @@ class ApiServerTest {
         // We expect a 405 Method Not Allowed response
         assertEquals(405, responseCode, "Response code should be 405 (Method Not Allowed)");
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Testet das Zerlegen von Query-Strings in URL-dekodierte Parameter.
+     */
+    @Test
+    void testParseQueryParameters() {
+        var parameters = ApiServer.parseQueryParameters("q=quarterly%20report&limit=10&cursor=");
+        
+        assertEquals("quarterly report", parameters.get("q"));
+        assertEquals("10", parameters.get("limit"));
+        assertEquals("", parameters.get("cursor"));
+        assertTrue(ApiServer.parseQueryParameters(null).isEmpty());
+    }
+}
@@ -3,6 +3,7 @@ package com.filevault.api;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
@@ -153,6 +154,25 @@ class AuthMiddlewareTest {
         assertEquals(401, responseCode, "Should get 401 Unauthorized with no token");
     }
     
+    /**
+     * Testet den Statistik-Endpunkt mit einem gültigen Token.
+     * Überprüft, ob die Laufzeitstatistiken der SQL-Anweisungen als JSON geliefert werden.
+     */
+    @Test
+    void testQueryStatsEndpointWithValidToken() throws IOException {
+        startServer();
+
+        URL url = new URL("http://localhost:" + TEST_PORT + "/api/stats/queries?limit=5");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Authorization", validToken);
+
+        assertEquals(200, connection.getResponseCode());
+        String body = new String(connection.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertTrue(body.contains("\"statements\":["), body);
+        assertTrue(body.contains("\"slowQueries\":["), body);
+    }
+    
     /**
      * Hilfsmethode zum Starten des Servers und Warten, bis er bereit ist.
      */
@@ -1,19 +1,29 @@
 package com.filevault.api;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipInputStream;
 
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.filevault.model.VirtualFolder;
 import com.filevault.storage.DatabaseManager;
+import com.filevault.storage.TrashManager;
 import com.filevault.util.FolderManager;
 
 /**
@@ -140,6 +150,141 @@ class FoldersHandlerTest {
         assertEquals(401, responseCode, "Should get 401 Unauthorized with no token");
     }
     
+    /**
+     * Testet das Herunterladen eines Ordners als ZIP-Archiv.
+     * Überprüft, ob das Archiv gestreamt und ein unbekannter Ordner abgelehnt wird.
+     */
+    @Test
+    void testFolderArchive() throws Exception {
+        VirtualFolder folder = DatabaseManager.getMetadataStore().insertFolder("Archivtest", null, null);
+        startServer();
+
+        URL url = new URL("http://localhost:" + TEST_PORT + "/api/folders/" + folder.getId() + "/archive");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Authorization", validToken);
+        assertEquals(200, connection.getResponseCode(), "Should get 200 OK for an existing folder");
+        assertEquals("application/zip", connection.getContentType());
+        assertEquals("chunked", connection.getHeaderField("Transfer-Encoding"));
+        try (ZipInputStream zip = new ZipInputStream(connection.getInputStream())) {
+            assertNull(zip.getNextEntry(), "An empty folder should yield an empty archive");
+        }
+
+        URL missing = new URL("http://localhost:" + TEST_PORT + "/api/folders/999999/archive");
+        HttpURLConnection missingConnection = (HttpURLConnection) missing.openConnection();
+        missingConnection.setRequestProperty("Authorization", validToken);
+        assertEquals(404, missingConnection.getResponseCode(), "Should get 404 for an unknown folder");
+    }
+    
+    /**
+     * Testet gleichzeitige Anfragen gegen den laufenden Server. Archive werden parallel zu
+     * Ordnerauflistungen geschrieben und müssen vollständig sein, während alle Auflistungen
+     * erfolgreich beantwortet werden.
+     */
+    @Test
+    void testConcurrentArchivesAndListings() throws Exception {
+        VirtualFolder folder = DatabaseManager.getMetadataStore().insertFolder("Parallel", null, null);
+        for (int i = 0; i < 30; i++) {
+            DatabaseManager.getMetadataStore().insertFolder("Unterordner " + i, null, folder.getId());
+        }
+        startServer();
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> archives = new ArrayList<>();
+            List<Future<Integer>> listings = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                archives.add(clients.submit(() -> countArchiveEntries(folder.getId())));
+            }
+            for (int i = 0; i < 16; i++) {
+                listings.add(clients.submit(() -> {
+                    HttpURLConnection connection = (HttpURLConnection) new URL(
+                            "http://localhost:" + TEST_PORT + "/api/folders").openConnection();
+                    connection.setRequestProperty("Authorization", validToken);
+                    connection.getInputStream().readAllBytes();
+                    return connection.getResponseCode();
+                }));
+            }
+            for (Future<Integer> archive : archives) {
+                assertEquals(30, archive.get(30, TimeUnit.SECONDS), "Every archive should contain all subfolders");
+            }
+            for (Future<Integer> listing : listings) {
+                assertEquals(200, listing.get(30, TimeUnit.SECONDS), "Every listing should succeed");
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Lädt das Archiv eines Ordners herunter und zählt seine Einträge.
+     */
+    private int countArchiveEntries(int folderId) throws IOException {
+        URL url = new URL("http://localhost:" + TEST_PORT + "/api/folders/" + folderId + "/archive");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestProperty("Authorization", validToken);
+        assertEquals(200, connection.getResponseCode());
+        int entries = 0;
+        try (ZipInputStream zip = new ZipInputStream(connection.getInputStream())) {
+            while (zip.getNextEntry() != null) {
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Testet, dass ein über die API gelöschter Ordner wie in der Oberfläche im Papierkorb landet.
+     */
+    @Test
+    void testDeleteFolderMovesItToTrash() throws Exception {
+        VirtualFolder folder = DatabaseManager.getMetadataStore().insertFolder("Loeschtest", null, null);
+        startServer();
+
+        URL url = new URL("http://localhost:" + TEST_PORT + "/api/folders?id=" + folder.getId());
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("DELETE");
+        connection.setRequestProperty("Authorization", validToken);
+        assertEquals(200, connection.getResponseCode(), "Should get 200 OK when deleting an empty folder");
+
+        assertTrue(TrashManager.getInstance().isFolderTrashed(folder.getId()));
+        assertEquals(1, TrashManager.getInstance().getItems().size());
+    }
+
+    /**
+     * Testet das serverseitige Kopieren eines Ordners.
+     * Überprüft, ob die Kopie unter dem Zielordner angelegt und ein Kopieren in den eigenen
+     * Teilbaum abgelehnt wird.
+     */
+    @Test
+    void testFolderCopy() throws Exception {
+        VirtualFolder source = DatabaseManager.getMetadataStore().insertFolder("Kopiertest", null, null);
+        VirtualFolder target = DatabaseManager.getMetadataStore().insertFolder("Ziel", null, null);
+        startServer();
+
+        assertEquals(201, postCopy("{\"type\":\"FOLDER\",\"id\":" + source.getId()
+                + ",\"targetFolderId\":" + target.getId() + "}"), "Should get 201 Created for a folder copy");
+        assertEquals(1, FolderManager.getInstance().getSubfolders(target.getId()).size());
+        assertEquals(400, postCopy("{\"type\":\"FOLDER\",\"id\":" + source.getId()
+                + ",\"targetFolderId\":" + source.getId() + "}"), "Should get 400 for a copy into itself");
+        assertEquals(404, postCopy("{\"type\":\"FILE\",\"id\":999999,\"targetFolderId\":" + target.getId() + "}"),
+                "Should get 404 for an unknown file");
+    }
+
+    /**
+     * Sendet eine Kopieranfrage und gibt den Statuscode zurück.
+     */
+    private int postCopy(String body) throws IOException {
+        URL url = new URL("http://localhost:" + TEST_PORT + "/api/copy");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Authorization", validToken);
+        connection.setDoOutput(true);
+        try (OutputStream os = connection.getOutputStream()) {
+            os.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+
     /**
      * Hilfsmethode zum Starten des Servers und Warten, bis er bereit ist.
      */
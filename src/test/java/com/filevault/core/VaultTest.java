@@ -23,6 +23,7 @@ import com.filevault.model.UserManager;
 import com.filevault.model.VirtualFolder;
 import com.filevault.storage.DatabaseManager;
 import com.filevault.storage.FileStorage;
+import com.filevault.storage.PackStore;
 import com.filevault.util.FolderManager;
 
 /**
@@ -68,6 +69,9 @@ class VaultTest {
         
         // Hole die Vault-Instanz
         vault = Vault.getInstance();
+        
+        // Diese Tests prüfen eigenständige verschlüsselte Dateien
+        PackStore.getInstance().setSmallFileThreshold(-1);
     }
 
     /**
@@ -78,6 +82,7 @@ class VaultTest {
     void tearDown() throws Exception {
         // Benutzer abmelden
         userManager.logout();
+        PackStore.getInstance().setSmallFileThreshold(16 * 1024);
         
         DatabaseManager.closeConnections();
         
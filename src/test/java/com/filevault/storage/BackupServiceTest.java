@@ -0,0 +1,194 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.FolderManager;
+
+/**
+ * Testklasse für den BackupService.
+ * Überprüft vollständige und inkrementelle Sicherungen von Datenbank und verschlüsselten Dateien.
+ */
+class BackupServiceTest {
+
+    /** Temporäres Verzeichnis für die Sicherungen */
+    @TempDir
+    Path tempDir;
+
+    /** Im Datenverzeichnis angelegte Testdateien, die nach dem Test gelöscht werden */
+    private final List<Path> createdBlobs = new ArrayList<>();
+
+    /** Ordner für die Testdateien */
+    private VirtualFolder folder;
+
+    /**
+     * Initialisiert die Testdatenbank und einen Ordner.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager.initDatabase(true);
+        folder = DatabaseManager.getMetadataStore().insertFolder("Backup", null, null);
+        BackupService.getInstance().setMaxBytesPerSecond(0);
+    }
+
+    /**
+     * Löscht die Testdatenbank und die angelegten Testdateien.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Path blob : createdBlobs) {
+            Files.deleteIfExists(blob);
+        }
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass eine zweite Sicherung nur neue Dateien kopiert und die übrigen übernimmt.
+     */
+    @Test
+    void testIncrementalBackupCopiesOnlyNewBlobs() throws Exception {
+        Path first = createBlob("erste", new byte[] {1, 2, 3});
+        Path second = createBlob("zweite", new byte[] {4, 5});
+        Path backupRoot = tempDir.resolve("backups");
+
+        BackupResult full = BackupService.getInstance().createBackup(backupRoot);
+        assertEquals(2, full.getCopiedBlobs());
+        assertEquals(0, full.getReusedBlobs());
+        assertEquals(5, full.getBytesCopied());
+
+        Path third = createBlob("dritte", new byte[] {6, 7, 8, 9});
+        BackupResult incremental = BackupService.getInstance().createBackup(backupRoot);
+        assertEquals(1, incremental.getCopiedBlobs());
+        assertEquals(2, incremental.getReusedBlobs());
+
+        Path data = incremental.getBackupDirectory().resolve(BackupService.DATA_DIRECTORY);
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(data.resolve(first.getFileName())));
+        assertArrayEquals(Files.readAllBytes(second), Files.readAllBytes(data.resolve(second.getFileName())));
+        assertArrayEquals(Files.readAllBytes(third), Files.readAllBytes(data.resolve(third.getFileName())));
+        assertEquals(3, BackupService.readManifest(incremental.getBackupDirectory()).size());
+        assertEquals(incremental.getBackupDirectory(), BackupService.findLatestBackup(backupRoot));
+
+        // Die gesicherte Datenbank enthält den Stand zum Zeitpunkt der Sicherung
+        Path database = incremental.getBackupDirectory().resolve(BackupService.DATABASE_FILE);
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + database);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM files")) {
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Testet, dass Dateien, die nach dem Datenbankstand gelöscht wurden, übersprungen werden.
+     */
+    @Test
+    void testMissingBlobIsSkipped() throws Exception {
+        createBlob("vorhanden", new byte[] {1});
+        Path gone = createBlob("geloescht", new byte[] {2});
+        Files.delete(gone);
+
+        BackupResult result = BackupService.getInstance().createBackup(tempDir.resolve("backups"));
+
+        assertEquals(1, result.getCopiedBlobs());
+        assertEquals(1, result.getMissingBlobs());
+    }
+
+    /**
+     * Testet, dass die Ratenbegrenzung die Kopie verlangsamt.
+     */
+    @Test
+    void testThrottledCopy() throws Exception {
+        createBlob("gross", new byte[200 * 1024]);
+        BackupService.getInstance().setMaxBytesPerSecond(1024 * 1024);
+
+        long start = System.nanoTime();
+        BackupResult result = BackupService.getInstance().createBackup(tempDir.resolve("backups"));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals(200 * 1024, result.getBytesCopied());
+        assertTrue(elapsedMillis >= 150, "Kopie lief zu schnell: " + elapsedMillis + " ms");
+    }
+
+    /**
+     * Testet, dass Dateien auf weiteren Volumes und in der kalten Speicherstufe je Verzeichnis
+     * in einem eigenen Teilbaum gesichert werden und das Manifest die Zuordnung festhält.
+     */
+    @Test
+    void testBackupKeepsVolumesAndColdTierApart() throws Exception {
+        Volume volume = VolumeManager.getInstance().addVolume(tempDir.resolve("volume"), null);
+        Path coldRoot = tempDir.resolve("cold");
+        TieringService.getInstance().setColdRoot(coldRoot);
+        try {
+            String name = UUID.randomUUID().toString();
+            Path primary = createBlob("primaer", Paths.get(FolderManager.getInstance().getDataDirectoryPath()), name, new byte[] {1});
+            Path onVolume = createBlob("volume", volume.root(), name, new byte[] {2, 2});
+            Path cold = createBlob("kalt", coldRoot, name, new byte[] {3, 3, 3});
+
+            BackupResult result = BackupService.getInstance().createBackup(tempDir.resolve("backups"));
+            assertEquals(3, result.getCopiedBlobs());
+
+            Path backup = result.getBackupDirectory();
+            String volumeDir = BackupService.VOLUMES_DIRECTORY + "/" + volume.id();
+            assertArrayEquals(Files.readAllBytes(primary), Files.readAllBytes(backup.resolve(BackupService.DATA_DIRECTORY).resolve(name)));
+            assertArrayEquals(Files.readAllBytes(onVolume), Files.readAllBytes(backup.resolve(volumeDir).resolve(name)));
+            assertArrayEquals(Files.readAllBytes(cold), Files.readAllBytes(backup.resolve(BackupService.COLD_DIRECTORY).resolve(name)));
+
+            Map<String, Long> manifest = BackupService.readManifest(backup);
+            assertEquals(Long.valueOf(2), manifest.get(volumeDir + "/" + name));
+            assertEquals(Long.valueOf(3), manifest.get(BackupService.COLD_DIRECTORY + "/" + name));
+
+            Map<String, Path> roots = BackupService.readRoots(backup);
+            assertEquals(volume.root(), roots.get(volumeDir));
+            assertEquals(coldRoot.toAbsolutePath().normalize(), roots.get(BackupService.COLD_DIRECTORY));
+            assertEquals(BlobStore.getRoot(), roots.get(BackupService.DATA_DIRECTORY));
+
+            // Eine zweite Sicherung übernimmt alle Dateien aus ihren Teilbäumen
+            BackupResult incremental = BackupService.getInstance().createBackup(tempDir.resolve("backups"));
+            assertEquals(0, incremental.getCopiedBlobs());
+            assertEquals(3, incremental.getReusedBlobs());
+        } finally {
+            TieringService.getInstance().setColdRoot(null);
+            VolumeManager.getInstance().clearCache();
+        }
+    }
+
+    /**
+     * Legt eine verschlüsselte Testdatei im Datenverzeichnis und ihren Eintrag in der Datenbank an.
+     */
+    private Path createBlob(String name, byte[] content) throws Exception {
+        return createBlob(name, Paths.get(FolderManager.getInstance().getDataDirectoryPath()),
+                UUID.randomUUID().toString(), content);
+    }
+
+    /**
+     * Legt eine verschlüsselte Testdatei in einem Verzeichnis und ihren Eintrag in der Datenbank an.
+     */
+    private Path createBlob(String name, Path directory, String fileName, byte[] content) throws Exception {
+        Files.createDirectories(directory);
+        Path blob = directory.resolve(fileName);
+        Files.write(blob, content);
+        createdBlobs.add(blob);
+        DatabaseManager.getMetadataStore().insertFile(folder.getId(), name, blob.toString(), content.length, null);
+        return blob;
+    }
+}
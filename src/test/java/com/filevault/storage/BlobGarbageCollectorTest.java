@@ -0,0 +1,143 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Testklasse für den BlobGarbageCollector.
+ * Überprüft das Erkennen verwaister Dateien, die Quarantäne und das Melden fehlender Dateien.
+ */
+class BlobGarbageCollectorTest {
+
+    /** Temporäres Datenverzeichnis */
+    @TempDir
+    Path dataDir;
+
+    /**
+     * Leitet das Datenverzeichnis um und initialisiert die Testdatenbank.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        BlobStore.setRoot(dataDir);
+        DatabaseManager.initDatabase(true);
+        BlobGarbageCollector.getInstance().setMinBlobAgeMillis(TimeUnit.HOURS.toMillis(1));
+    }
+
+    /**
+     * Stellt das Datenverzeichnis und die Standardwerte wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        BlobGarbageCollector.getInstance().setBloomFilterThreshold(1_000_000);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass ein Probelauf verwaiste Dateien meldet, referenzierte Dateien nicht
+     * beachtet und nichts verändert.
+     */
+    @Test
+    void testDryRunReportsOrphanWithoutTouchingIt() throws Exception {
+        Path referenced = blob("aa/bb/referenced", true);
+        insertRow("aa/bb/referenced");
+        Path orphan = blob("cc/dd/orphan", true);
+
+        GcReport report = BlobGarbageCollector.getInstance().collect(BlobGarbageCollector.Mode.DRY_RUN);
+
+        assertEquals(List.of("cc/dd/orphan"), report.getOrphanBlobs());
+        assertEquals(2, report.getScannedBlobs());
+        assertFalse(report.isBloomFilterUsed());
+        assertTrue(Files.exists(orphan));
+        assertTrue(Files.exists(referenced));
+    }
+
+    /**
+     * Testet, dass verwaiste Dateien in die Quarantäne verschoben werden, junge Dateien
+     * ohne Eintrag aber liegen bleiben.
+     */
+    @Test
+    void testQuarantineMovesOnlyOldOrphans() throws Exception {
+        Path orphan = blob("cc/dd/orphan", true);
+        Path young = blob("ee/ff/young", false);
+
+        GcReport report = BlobGarbageCollector.getInstance().collect(BlobGarbageCollector.Mode.QUARANTINE);
+
+        assertEquals(List.of("cc/dd/orphan"), report.getOrphanBlobs());
+        assertFalse(Files.exists(orphan));
+        assertTrue(Files.exists(young));
+        try (Stream<Path> walk = Files.walk(dataDir.resolve(BlobGarbageCollector.QUARANTINE_DIRECTORY))) {
+            assertTrue(walk.anyMatch(p -> p.endsWith(Path.of("cc", "dd", "orphan"))));
+        }
+
+        // Ein zweiter Lauf beachtet die Quarantäne nicht
+        GcReport second = BlobGarbageCollector.getInstance().collect(BlobGarbageCollector.Mode.QUARANTINE);
+        assertTrue(second.getOrphanBlobs().isEmpty());
+        assertEquals(1, second.getScannedBlobs());
+    }
+
+    /**
+     * Testet, dass Einträge ohne Datei gemeldet, aber nicht entfernt werden, und dass
+     * der Bloom-Filter dieselben Ergebnisse liefert.
+     */
+    @Test
+    void testMissingBlobIsReportedWithBloomFilter() throws Exception {
+        BlobGarbageCollector.getInstance().setBloomFilterThreshold(0);
+        blob("aa/bb/referenced", true);
+        insertRow("aa/bb/referenced");
+        int missingId = insertRow("12/34/missing");
+
+        GcReport report = BlobGarbageCollector.getInstance().collect(BlobGarbageCollector.Mode.DELETE);
+
+        assertTrue(report.isBloomFilterUsed());
+        assertTrue(report.getOrphanBlobs().isEmpty());
+        assertEquals(List.of(missingId), report.getMissingBlobFileIds());
+        assertTrue(Files.exists(dataDir.resolve("aa/bb/referenced")));
+    }
+
+    /**
+     * Legt eine Datei im Datenverzeichnis an, auf Wunsch mit einem Änderungsdatum in der Vergangenheit.
+     */
+    private Path blob(String relative, boolean old) throws Exception {
+        Path path = dataDir.resolve(relative);
+        Files.createDirectories(path.getParent());
+        Files.write(path, new byte[] {1, 2, 3});
+        if (old) {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1)));
+        }
+        return path;
+    }
+
+    /**
+     * Legt einen Dateieintrag mit dem angegebenen gespeicherten Pfad an.
+     */
+    private int insertRow(String encryptedPath) throws Exception {
+        try (PreparedStatement stmt = DatabaseManager.getConnection().prepareStatement(
+                "INSERT INTO files (folder_id, original_name, encrypted_path, size_bytes) VALUES (NULL, ?, ?, 3)",
+                PreparedStatement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, encryptedPath);
+            stmt.setString(2, encryptedPath);
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                keys.next();
+                return keys.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den BlobLayoutMigrator.
+ * Überprüft das Verschieben flach abgelegter Dateien in das verteilte Layout.
+ */
+class BlobLayoutMigratorTest {
+
+    /** Im Datenverzeichnis angelegte Testdateien, die nach dem Test gelöscht werden */
+    private final List<Path> createdBlobs = new ArrayList<>();
+
+    /** Ordner für die Testdateien */
+    private VirtualFolder folder;
+
+    /**
+     * Initialisiert die Testdatenbank und einen Ordner.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager.initDatabase(true);
+        folder = DatabaseManager.getMetadataStore().insertFolder("Migration", null, null);
+        FileStorage.getInstance().invalidateCache();
+    }
+
+    /**
+     * Löscht die Testdatenbank und die angelegten Testdateien.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        for (Path blob : createdBlobs) {
+            Files.deleteIfExists(blob);
+            Files.deleteIfExists(BlobStore.getRoot().resolve(BlobStore.shardedPath(blob.getFileName().toString())));
+        }
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass flach abgelegte Dateien mit absolutem oder relativem Pfad verteilt,
+     * relativ gespeichert und unverändert weiter gelesen werden.
+     */
+    @Test
+    void testMigratesFlatBlobsIntoShards() throws Exception {
+        Path absolute = createFlatBlob(new byte[] {1, 2, 3});
+        Path relative = createFlatBlob(new byte[] {4, 5});
+        int absoluteId = insertRaw("absolut", absolute.toString());
+        int relativeId = insertRaw("relativ", relative.getFileName().toString());
+
+        assertEquals(2, BlobLayoutMigrator.getInstance().migrateAll());
+
+        for (int id : new int[] {absoluteId, relativeId}) {
+            String stored = storedPath(id);
+            assertTrue(BlobStore.isSharded(stored), "Pfad nicht verteilt: " + stored);
+            EncryptedFile file = FileStorage.getInstance().getFileById(id);
+            assertEquals(BlobStore.getRoot().resolve(stored).toString(), file.getEncryptedPath());
+            assertTrue(Files.exists(Paths.get(file.getEncryptedPath())));
+        }
+        assertFalse(Files.exists(absolute));
+        assertFalse(Files.exists(relative));
+        assertArrayEquals(new byte[] {1, 2, 3},
+                Files.readAllBytes(Paths.get(FileStorage.getInstance().getFileById(absoluteId).getEncryptedPath())));
+
+        // Ein zweiter Lauf findet nichts mehr
+        assertEquals(0, BlobLayoutMigrator.getInstance().migrateAll());
+    }
+
+    /**
+     * Testet, dass ein Eintrag, dessen Datei bereits von einem abgebrochenen Lauf verschoben
+     * wurde, nur noch umgeschrieben wird, und Dateien außerhalb des Datenverzeichnisses
+     * unverändert bleiben.
+     */
+    @Test
+    void testResumesInterruptedMigrationAndSkipsForeignPaths() throws Exception {
+        Path flat = createFlatBlob(new byte[] {7});
+        Path sharded = BlobStore.getRoot().resolve(BlobStore.shardedPath(flat.getFileName().toString()));
+        Files.createDirectories(sharded.getParent());
+        Files.move(flat, sharded);
+        int movedId = insertRaw("verschoben", flat.toString());
+        int foreignId = insertRaw("fremd", "/nicht/im/tresor/" + UUID.randomUUID());
+
+        assertEquals(1, BlobLayoutMigrator.getInstance().migrateAll());
+
+        assertTrue(BlobStore.isSharded(storedPath(movedId)));
+        assertTrue(Files.exists(sharded));
+        assertTrue(storedPath(foreignId).startsWith("/nicht/im/tresor/"));
+    }
+
+    /**
+     * Legt eine Testdatei direkt im Datenverzeichnis an, wie es das alte Layout getan hat.
+     */
+    private Path createFlatBlob(byte[] content) throws Exception {
+        Path blob = BlobStore.getRoot().resolve(UUID.randomUUID().toString());
+        Files.createDirectories(blob.getParent());
+        Files.write(blob, content);
+        createdBlobs.add(blob);
+        return blob;
+    }
+
+    /**
+     * Legt einen Dateieintrag mit genau dem angegebenen Pfad an.
+     */
+    private int insertRaw(String name, String encryptedPath) throws Exception {
+        Connection conn = DatabaseManager.getConnection();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO files (folder_id, original_name, encrypted_path, size_bytes) VALUES (?, ?, ?, 0)")) {
+            stmt.setInt(1, folder.getId());
+            stmt.setString(2, name);
+            stmt.setString(3, encryptedPath);
+            stmt.executeUpdate();
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT last_insert_rowid()");
+             ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    /**
+     * Liest den gespeicherten Pfad eines Dateieintrags.
+     */
+    private String storedPath(int fileId) throws Exception {
+        try (PreparedStatement stmt = DatabaseManager.getConnection().prepareStatement(
+                "SELECT encrypted_path FROM files WHERE id = ?")) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den DurableBlobWriter und das ImportJournal.
+ * Überprüft das atomare Schreiben, den Abgleich abgebrochener Importe beim Start und
+ * das gemeinsame Schreiben gleichzeitiger Importe.
+ */
+class DurableBlobWriterTest {
+
+    /** Temporäres Datenverzeichnis */
+    @TempDir
+    Path dataDir;
+
+    /**
+     * Leitet das Datenverzeichnis um und initialisiert die Testdatenbank.
+     */
+    @BeforeEach
+    void setUp() {
+        BlobStore.setRoot(dataDir);
+        DatabaseManager.initDatabase(true);
+    }
+
+    /**
+     * Stellt Datenverzeichnis und Standardwerte wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        DurableBlobWriter.getInstance().setDurabilityMode(DurableBlobWriter.DurabilityMode.PER_FILE);
+        DurableBlobWriter.getInstance().setBatchWindowMillis(2);
+        DurableBlobWriter.getInstance().setMaxBatchSize(64);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass eine geschriebene Datei vollständig unter ihrem endgültigen Namen liegt
+     * und keine temporäre Datei zurückbleibt.
+     */
+    @Test
+    void testWritePublishesCompleteBlob() throws Exception {
+        DurableBlobWriter.StagedBlob blob = DurableBlobWriter.getInstance().write(out -> out.write(new byte[] {1, 2, 3}));
+        DurableBlobWriter.getInstance().committed(blob);
+
+        assertTrue(blob.getPath().startsWith(dataDir));
+        assertArrayEquals(new byte[] {1, 2, 3}, Files.readAllBytes(blob.getPath()));
+        assertFalse(Files.exists(DurableBlobWriter.tempPathOf(blob.getPath())));
+    }
+
+    /**
+     * Testet, dass beim Abgleich nach einem Absturz Dateien ohne Eintrag und temporäre Dateien
+     * gelöscht werden, Dateien mit Eintrag aber erhalten bleiben.
+     */
+    @Test
+    void testReplayRemovesBlobsOfInterruptedImports() throws Exception {
+        DurableBlobWriter writer = DurableBlobWriter.getInstance();
+        VirtualFolder folder = DatabaseManager.getMetadataStore().insertFolder("Journal", null, null);
+
+        // Datei geschrieben, Absturz vor dem Anlegen des Eintrags
+        DurableBlobWriter.StagedBlob withoutRow = writer.write(out -> out.write(1));
+        // Eintrag angelegt, Absturz vor dem Abschluss im Journal
+        DurableBlobWriter.StagedBlob withRow = writer.write(out -> out.write(2));
+        DatabaseManager.getMetadataStore().insertFile(folder.getId(), "a.bin", withRow.getPath().toString(), 1, null);
+        // Absturz während des Schreibens
+        DurableBlobWriter.StagedBlob staged = writer.stage(out -> out.write(3));
+        // Vollständig abgeschlossener Import
+        DurableBlobWriter.StagedBlob completed = writer.write(out -> out.write(4));
+        writer.committed(completed);
+
+        assertEquals(1, ImportJournal.getInstance().replay());
+
+        assertFalse(Files.exists(withoutRow.getPath()));
+        assertTrue(Files.exists(withRow.getPath()));
+        assertFalse(Files.exists(DurableBlobWriter.tempPathOf(staged.getPath())));
+        assertTrue(Files.exists(completed.getPath()));
+        assertFalse(Files.exists(ImportJournal.getJournalPath()));
+    }
+
+    /**
+     * Testet, dass gleichzeitige Importe im gebündelten Modus in einer Gruppe geschrieben werden.
+     */
+    @Test
+    void testBatchedModeGroupsConcurrentWrites() throws Exception {
+        DurableBlobWriter writer = DurableBlobWriter.getInstance();
+        writer.setDurabilityMode(DurableBlobWriter.DurabilityMode.BATCHED);
+        writer.setBatchWindowMillis(TimeUnit.SECONDS.toMillis(10));
+        writer.setMaxBatchSize(4);
+        long groupsBefore = writer.getGroupFlushes();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<DurableBlobWriter.StagedBlob>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                byte value = (byte) i;
+                futures.add(executor.submit(() -> writer.write(out -> out.write(value))));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                DurableBlobWriter.StagedBlob blob = futures.get(i).get(30, TimeUnit.SECONDS);
+                writer.committed(blob);
+                assertArrayEquals(new byte[] {(byte) i}, Files.readAllBytes(blob.getPath()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(groupsBefore + 1, writer.getGroupFlushes());
+    }
+}
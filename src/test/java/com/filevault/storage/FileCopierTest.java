@@ -0,0 +1,214 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.StorageTier;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für das Kopieren von Dateien und Ordnern.
+ * Überprüft, dass Kopien ihre verschlüsselten Dateien teilen und diese erst mit dem
+ * letzten Verweis gelöscht, verlegt oder durch neuen Inhalt ersetzt werden.
+ */
+class FileCopierTest {
+
+    /** Temporäres Verzeichnis für Quelldateien, Datenverzeichnis und Exporte */
+    @TempDir
+    Path tempDir;
+
+    /** Ordner mit den Originalen */
+    private VirtualFolder originals;
+
+    /** Ordner für die Kopien */
+    private VirtualFolder copies;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis, zwei Ordner und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        originals = store.insertFolder("Originale", null, null);
+        copies = store.insertFolder("Kopien", null, null);
+    }
+
+    /**
+     * Stellt die Standardwerte wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        VersionManager.getInstance().setRetention(10, 0);
+        TieringService.getInstance().setColdRoot(null);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass eine Kopie dieselbe verschlüsselte Datei nutzt, die erst gelöscht wird,
+     * wenn auch die letzte Kopie endgültig aus dem Papierkorb entfernt ist.
+     */
+    @Test
+    void testCopySharesBlobUntilLastReferenceIsPurged() throws Exception {
+        FileStorage storage = FileStorage.getInstance();
+        EncryptedFile original = storage.importFile(source("bericht.txt", 60_000, 1), originals);
+        Path blob = Paths.get(original.getEncryptedPath());
+
+        EncryptedFile copy = storage.copyFile(original, copies);
+        EncryptedFile second = storage.copyFile(original, originals);
+
+        assertEquals("bericht.txt", copy.getOriginalName());
+        assertEquals("bericht (Kopie).txt", second.getOriginalName());
+        assertEquals(original.getEncryptedPath(), copy.getEncryptedPath());
+        assertEquals(1, countBlobs());
+
+        storage.deleteFile(original);
+        storage.deleteFile(second);
+        TrashManager.getInstance().emptyTrash();
+        assertTrue(Files.exists(blob));
+        assertArrayEquals(content(60_000, 1), export(storage.getFileById(copy.getId())));
+
+        storage.deleteFile(copy);
+        TrashManager.getInstance().emptyTrash();
+        assertFalse(Files.exists(blob));
+    }
+
+    /**
+     * Testet, dass neuer Inhalt für eine Kopie in eine eigene Datei geschrieben wird und das
+     * Entfernen der dabei aufbewahrten Version die weiter genutzte Datei des Originals erhält.
+     */
+    @Test
+    void testNewContentForCopyLeavesOriginalUntouched() throws Exception {
+        FileStorage storage = FileStorage.getInstance();
+        EncryptedFile original = storage.importFile(source("modell.bin", 50_000, 2), originals);
+        EncryptedFile copy = storage.copyFile(original, copies);
+
+        EncryptedFile changed = storage.importFile(source("modell.bin", 40_000, 3), copies);
+        assertEquals(copy.getId(), changed.getId());
+        assertNotEquals(original.getEncryptedPath(), changed.getEncryptedPath());
+
+        VersionManager.getInstance().setRetention(0, 0);
+        assertEquals(1, VersionManager.getInstance().prune());
+        assertTrue(Files.exists(Paths.get(original.getEncryptedPath())));
+        assertArrayEquals(content(50_000, 2), export(storage.getFileById(original.getId())));
+        assertArrayEquals(content(40_000, 3), export(storage.getFileById(copy.getId())));
+    }
+
+    /**
+     * Testet, dass ein Ordner samt Teilbaum nur über seine Metadaten kopiert wird, gepackte
+     * und eigene verschlüsselte Dateien teilt und nicht in sich selbst kopiert werden kann.
+     */
+    @Test
+    void testFolderCopyDuplicatesMetadataOnly() throws Exception {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        FileStorage storage = FileStorage.getInstance();
+        VirtualFolder archive = store.insertFolder("Archiv", null, originals.getId());
+        VirtualFolder old = store.insertFolder("2019", null, archive.getId());
+        storage.importFile(source("notiz.txt", 200, 4), originals);
+        storage.importFile(source("vertrag.pdf", 30_000, 5), archive);
+        storage.importFile(source("alt.txt", 100, 6), old);
+        long blobs = countBlobs();
+
+        VirtualFolder copy = storage.copyFolder(originals, copies);
+        VirtualFolder again = storage.copyFolder(originals, copies);
+
+        assertEquals("Originale", copy.getName());
+        assertEquals("Originale (Kopie)", again.getName());
+        assertEquals(blobs, countBlobs());
+        assertEquals(List.of("notiz.txt"),
+                storage.getFilesInFolder(copy).stream().map(EncryptedFile::getOriginalName).toList());
+        List<VirtualFolder> children = store.getAllFolders().stream()
+                .filter(folder -> Integer.valueOf(copy.getId()).equals(folder.getParentId())).toList();
+        assertEquals(1, children.size());
+        assertEquals("Archiv", children.get(0).getName());
+        EncryptedFile copiedContract = storage.getFilesInFolder(children.get(0)).get(0);
+        assertArrayEquals(content(30_000, 5), export(copiedContract));
+
+        assertThrows(IllegalArgumentException.class, () -> storage.copyFolder(originals, archive));
+    }
+
+    /**
+     * Testet, dass das Verlegen einer geteilten Datei in das kalte Verzeichnis alle Kopien mitnimmt.
+     */
+    @Test
+    void testDemotingSharedBlobMovesAllCopies() throws Exception {
+        TieringService.getInstance().setColdRoot(tempDir.resolve("cold"));
+        FileStorage storage = FileStorage.getInstance();
+        EncryptedFile original = storage.importFile(source("video.bin", 70_000, 7), originals);
+        EncryptedFile copy = storage.copyFile(original, copies);
+
+        assertTrue(TieringService.getInstance().demote(original));
+
+        EncryptedFile movedCopy = storage.getFileById(copy.getId());
+        assertEquals(StorageTier.COLD, movedCopy.getStorageTier());
+        assertEquals(storage.getFileById(original.getId()).getEncryptedPath(), movedCopy.getEncryptedPath());
+        assertFalse(Files.exists(Paths.get(original.getEncryptedPath())));
+        assertArrayEquals(content(70_000, 7), export(movedCopy));
+    }
+
+    /**
+     * Zählt die Dateien im Datenverzeichnis.
+     */
+    private long countBlobs() throws Exception {
+        try (Stream<Path> paths = Files.walk(tempDir.resolve("data"))) {
+            return paths.filter(Files::isRegularFile).count();
+        }
+    }
+
+    /**
+     * Exportiert eine Datei und gibt ihren Inhalt zurück.
+     */
+    private byte[] export(EncryptedFile file) throws Exception {
+        File target = tempDir.resolve("export-" + file.getId()).toFile();
+        assertTrue(FileStorage.getInstance().exportFile(file, target));
+        return Files.readAllBytes(target.toPath());
+    }
+
+    /**
+     * Legt eine Quelldatei mit erkennbarem Inhalt an.
+     */
+    private File source(String name, int size, int seed) throws Exception {
+        Path path = tempDir.resolve("quelle-" + seed).resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content(size, seed));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen Inhalt, der sich je Datei unterscheidet.
+     */
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * seed + seed);
+        }
+        return data;
+    }
+}
@@ -4,21 +4,29 @@ import java.io.File;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
 import com.filevault.model.EncryptedFile;
+import com.filevault.model.FileSummary;
 import com.filevault.model.UserManager;
 import com.filevault.model.VirtualFolder;
+import com.filevault.util.FolderManager;
 
 /**
  * Testklasse für die FileStorage-Klasse.
@@ -74,6 +82,9 @@ class FileStorageTest {
         // Initialisiere FileStorage
         fileStorage = FileStorage.getInstance();
         
+        // Diese Tests prüfen eigenständige verschlüsselte Dateien; Pack-Dateien prüft PackStoreTest
+        PackStore.getInstance().setSmallFileThreshold(-1);
+        
         // Erstelle einen Testordner für die Dateien
         createTestFolder();
     }
@@ -105,6 +116,8 @@ class FileStorageTest {
     @AfterEach
     void tearDown() throws Exception {
         // Bereinige Datenbank und Dateien
+        PackStore.getInstance().setSmallFileThreshold(16 * 1024);
+        FileStorage.getInstance().setScanFetchSize(256);
         DatabaseManager.closeConnections();
         DatabaseManager.deleteTestDatabase();
     }
@@ -207,7 +220,8 @@ class FileStorageTest {
     
     /**
      * Testet das Löschen einer Datei.
-     * Überprüft, ob eine Datei erfolgreich aus der Datenbank und dem Dateisystem gelöscht werden kann.
+     * Überprüft, ob eine Datei erfolgreich aus der Datenbank und dem Dateisystem gelöscht werden kann;
+     * die verschlüsselte Datei bleibt bis zum Leeren des Papierkorbs erhalten.
      */
     @Test
     void testDeleteFile() throws Exception {
@@ -223,8 +237,10 @@ class FileStorageTest {
         List<EncryptedFile> files = fileStorage.getFilesInFolder(testFolder);
         assertTrue(files.isEmpty());
         
-        // Die verschlüsselte Datei sollte ebenfalls gelöscht sein
+        // Die verschlüsselte Datei wird erst mit dem Papierkorb entfernt
         File encryptedFile = new File(importedFile.getEncryptedPath());
+        assertTrue(encryptedFile.exists());
+        assertEquals(1, TrashManager.getInstance().emptyTrash());
         assertFalse(encryptedFile.exists());
     }
     
@@ -278,4 +294,366 @@ class FileStorageTest {
         assertTrue(searchResults.stream().anyMatch(f -> f.getOriginalName().equals("document.txt")));
         assertTrue(searchResults.stream().anyMatch(f -> f.getOriginalName().equals("document_v2.txt")));
     }
+    
+    /**
+     * Testet die Präfixsuche über den FTS5-Index.
+     * Überprüft, ob Dateien und Ordner über Namensanfänge gefunden werden.
+     */
+    @Test
+    void testFullTextSearchByPrefix() throws Exception {
+        File testFile1 = tempDir.resolve("quarterly_report.pdf").toFile();
+        Files.writeString(testFile1.toPath(), "Bericht");
+        File testFile2 = tempDir.resolve("holiday.jpg").toFile();
+        Files.writeString(testFile2.toPath(), "Bild");
+        
+        EncryptedFile report = fileStorage.importFile(testFile1, testFolder);
+        fileStorage.importFile(testFile2, testFolder);
+        
+        ResultPage<SearchHit> page = fileStorage.search("quart", 10, null);
+        assertEquals(1, page.getItems().size());
+        assertEquals(SearchHit.Type.FILE, page.getItems().get(0).getType());
+        assertEquals(report.getId(), page.getItems().get(0).getId());
+        assertFalse(page.hasMore());
+        
+        // Der Testordner selbst ist ebenfalls indiziert
+        ResultPage<SearchHit> folderPage = fileStorage.search("testfold", 10, null);
+        assertEquals(1, folderPage.getItems().size());
+        assertEquals(SearchHit.Type.FOLDER, folderPage.getItems().get(0).getType());
+        assertEquals(testFolder.getId(), folderPage.getItems().get(0).getId());
+    }
+    
+    /**
+     * Testet, dass der Suchindex Umbenennungen und Löschungen folgt.
+     */
+    @Test
+    void testSearchIndexFollowsRenameAndDelete() throws Exception {
+        EncryptedFile importedFile = fileStorage.importFile(testFile, testFolder);
+        
+        fileStorage.renameFile(importedFile, "invoice.txt");
+        assertTrue(fileStorage.search("testfile", 10, null).getItems().isEmpty());
+        assertEquals(1, fileStorage.search("invoice", 10, null).getItems().size());
+        
+        fileStorage.deleteFile(importedFile);
+        assertTrue(fileStorage.search("invoice", 10, null).getItems().isEmpty());
+    }
+    
+    /**
+     * Testet das seitenweise Abrufen von Suchtreffern über den Cursor.
+     */
+    @Test
+    void testSearchPagination() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            File file = tempDir.resolve("photo_" + i + ".png").toFile();
+            Files.writeString(file.toPath(), "Bild " + i);
+            fileStorage.importFile(file, testFolder);
+        }
+        
+        ResultPage<SearchHit> first = fileStorage.search("photo", 2, null);
+        assertEquals(2, first.getItems().size());
+        assertTrue(first.hasMore());
+        
+        ResultPage<SearchHit> second = fileStorage.search("photo", 2, first.getNextCursor());
+        ResultPage<SearchHit> third = fileStorage.search("photo", 2, second.getNextCursor());
+        assertEquals(2, second.getItems().size());
+        assertEquals(1, third.getItems().size());
+        assertFalse(third.hasMore());
+        
+        long distinctIds = java.util.stream.Stream.of(first, second, third)
+            .flatMap(page -> page.getItems().stream())
+            .mapToInt(SearchHit::getId)
+            .distinct()
+            .count();
+        assertEquals(5, distinctIds);
+    }
+    
+    /**
+     * Testet die seitenweise Auflistung eines Ordners nach Namen über (afterName, afterId).
+     */
+    @Test
+    void testKeysetPaginationByName() throws Exception {
+        for (String name : new String[] {"c.txt", "a.txt", "e.txt", "b.txt", "d.txt"}) {
+            fileStorage.createFileRecord(name, testFolder.getId());
+        }
+        
+        ResultPage<EncryptedFile> first = fileStorage.getFilesInFolder(testFolder, null, 0, 2);
+        assertEquals(List.of("a.txt", "b.txt"),
+            first.getItems().stream().map(EncryptedFile::getOriginalName).collect(Collectors.toList()));
+        assertTrue(first.hasMore());
+        
+        EncryptedFile last = first.getItems().get(1);
+        ResultPage<EncryptedFile> second = fileStorage.getFilesInFolder(testFolder, last.getOriginalName(), last.getId(), 2);
+        assertEquals(List.of("c.txt", "d.txt"),
+            second.getItems().stream().map(EncryptedFile::getOriginalName).collect(Collectors.toList()));
+        
+        ResultPage<EncryptedFile> third = fileStorage.getFilesInFolder(testFolder, FileSortKey.NAME, second.getNextCursor(), 2);
+        assertEquals(List.of("e.txt"),
+            third.getItems().stream().map(EncryptedFile::getOriginalName).collect(Collectors.toList()));
+        assertFalse(third.hasMore());
+    }
+    
+    /**
+     * Testet die seitenweise Auflistung nach Größe, auch bei gleichen Sortierwerten.
+     */
+    @Test
+    void testKeysetPaginationBySize() throws Exception {
+        File small = tempDir.resolve("small.txt").toFile();
+        Files.writeString(small.toPath(), "x");
+        File large = tempDir.resolve("large.txt").toFile();
+        Files.writeString(large.toPath(), "x".repeat(100));
+        fileStorage.importFile(large, testFolder);
+        fileStorage.importFile(small, testFolder);
+        fileStorage.createFileRecord("empty1.txt", testFolder.getId());
+        fileStorage.createFileRecord("empty2.txt", testFolder.getId());
+        
+        List<String> names = new java.util.ArrayList<>();
+        String cursor = null;
+        do {
+            ResultPage<EncryptedFile> page = fileStorage.getFilesInFolder(testFolder, FileSortKey.SIZE, cursor, 1);
+            page.getItems().forEach(f -> names.add(f.getOriginalName()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        
+        assertEquals(List.of("empty1.txt", "empty2.txt", "small.txt", "large.txt"), names);
+    }
+    
+    /**
+     * Testet die seitenweise Auflistung über Dateien ohne Größe hinweg und dass Dateien
+     * im Papierkorb nicht aufgelistet werden.
+     */
+    @Test
+    void testKeysetPaginationOverNullSizes() throws Exception {
+        EncryptedFile sized = fileStorage.createFileRecord("sized.txt", testFolder.getId());
+        EncryptedFile unknown1 = fileStorage.createFileRecord("unknown1.txt", testFolder.getId());
+        EncryptedFile unknown2 = fileStorage.createFileRecord("unknown2.txt", testFolder.getId());
+        EncryptedFile trashed = fileStorage.createFileRecord("trashed.txt", testFolder.getId());
+        try (PreparedStatement stmt = DatabaseManager.getConnection().prepareStatement(
+                "UPDATE files SET size_bytes = NULL WHERE id IN (?, ?)")) {
+            stmt.setInt(1, unknown1.getId());
+            stmt.setInt(2, unknown2.getId());
+            stmt.executeUpdate();
+        }
+        assertTrue(fileStorage.deleteFile(trashed));
+        
+        List<String> names = new java.util.ArrayList<>();
+        String cursor = null;
+        do {
+            ResultPage<EncryptedFile> page = fileStorage.getFilesInFolder(testFolder, FileSortKey.SIZE, cursor, 1);
+            page.getItems().forEach(f -> names.add(f.getOriginalName()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        
+        assertEquals(List.of(unknown1.getOriginalName(), unknown2.getOriginalName(), sized.getOriginalName()), names);
+    }
+    
+    /**
+     * Testet, dass ein Cursor einer anderen Sortierung abgelehnt wird.
+     */
+    @Test
+    void testCursorOfOtherSortKeyIsRejected() throws Exception {
+        fileStorage.createFileRecord("a.txt", testFolder.getId());
+        fileStorage.createFileRecord("b.txt", testFolder.getId());
+        
+        String cursor = fileStorage.getFilesInFolder(testFolder, FileSortKey.NAME, null, 1).getNextCursor();
+        
+        assertThrows(IllegalArgumentException.class,
+            () -> fileStorage.getFilesInFolder(testFolder, FileSortKey.SIZE, cursor, 1));
+    }
+    
+    /**
+     * Testet den Scan über alle Dateien mit Filter.
+     * Überprüft, ob nur passende Dateien in ID-Reihenfolge an den Empfänger übergeben werden.
+     */
+    @Test
+    void testForEachFileWithFilter() throws Exception {
+        EncryptedFile first = fileStorage.createFileRecord("scan_a.txt", testFolder.getId());
+        fileStorage.createFileRecord("other.bin", testFolder.getId());
+        EncryptedFile third = fileStorage.createFileRecord("scan_b.txt", testFolder.getId());
+        
+        fileStorage.setScanFetchSize(1);
+        List<Integer> visited = new java.util.ArrayList<>();
+        fileStorage.forEachFile(f -> f.getOriginalName().startsWith("scan_"), f -> visited.add(f.getId()));
+        
+        assertEquals(List.of(first.getId(), third.getId()), visited);
+    }
+    
+    /**
+     * Testet, dass die Leseverbindung eines Streams Schreibzugriffe nicht blockiert.
+     */
+    @Test
+    void testStreamFilesAllowsConcurrentWrites() throws Exception {
+        fileStorage.createFileRecord("one.txt", testFolder.getId());
+        fileStorage.createFileRecord("two.txt", testFolder.getId());
+        
+        try (var files = fileStorage.streamFiles()) {
+            var iterator = files.iterator();
+            assertTrue(iterator.hasNext());
+            iterator.next();
+            // Schreiben über die gemeinsame Verbindung, während der Scan noch offen ist
+            assertNotNull(fileStorage.createFileRecord("three.txt", testFolder.getId()));
+            assertTrue(iterator.hasNext());
+        }
+    }
+    
+    /**
+     * Testet, dass wiederholte Abfragen aus dem Cache bedient werden und Änderungen
+     * über den FileStorage die betroffenen Einträge verwerfen.
+     */
+    @Test
+    void testMetadataCacheIsReadThroughAndInvalidated() throws Exception {
+        VirtualFolder otherFolder = FolderManager.getInstance().createFolder("Cache-Ziel", null);
+        EncryptedFile file = fileStorage.createFileRecord("cached.txt", testFolder.getId());
+        MetadataCache<Integer, EncryptedFile> fileCache = fileStorage.getFileCache();
+        MetadataCache<Integer, List<EncryptedFile>> listingCache = fileStorage.getFolderListingCache();
+        
+        assertEquals("cached.txt", fileStorage.getFileById(file.getId()).getOriginalName());
+        long hitsBefore = fileCache.getHitCount();
+        EncryptedFile cached = fileStorage.getFileById(file.getId());
+        assertEquals(hitsBefore + 1, fileCache.getHitCount());
+        
+        // Veränderungen an gelieferten Objekten dürfen den Cache nicht verfälschen
+        cached.setOriginalName("verändert.txt");
+        assertEquals("cached.txt", fileStorage.getFileById(file.getId()).getOriginalName());
+        
+        assertEquals(1, fileStorage.getFilesByFolderId(testFolder.getId()).size());
+        long listingHits = listingCache.getHitCount();
+        assertEquals(1, fileStorage.getFilesInFolder(testFolder).size());
+        assertEquals(listingHits + 1, listingCache.getHitCount());
+        
+        assertTrue(fileStorage.renameFile(file, "renamed.txt"));
+        assertEquals("renamed.txt", fileStorage.getFileById(file.getId()).getOriginalName());
+        assertEquals("renamed.txt", fileStorage.getFilesByFolderId(testFolder.getId()).get(0).getOriginalName());
+        
+        assertTrue(fileStorage.moveFile(file, otherFolder));
+        assertTrue(fileStorage.getFilesByFolderId(testFolder.getId()).isEmpty());
+        assertEquals(1, fileStorage.getFilesInFolder(otherFolder).size());
+        assertEquals(otherFolder.getId(), fileStorage.getFileById(file.getId()).getFolderId());
+        
+        assertTrue(fileStorage.deleteFile(file));
+        assertNull(fileStorage.getFileById(file.getId()));
+        assertTrue(fileStorage.getFilesInFolder(otherFolder).isEmpty());
+    }
+    
+    /**
+     * Testet den Sammelimport: lesbare Dateien werden angelegt, nicht lesbare einzeln
+     * als fehlgeschlagen gemeldet.
+     */
+    @Test
+    void testImportBatch() throws Exception {
+        File first = tempDir.resolve("batch1.txt").toFile();
+        File second = tempDir.resolve("batch2.txt").toFile();
+        File missing = tempDir.resolve("fehlt.txt").toFile();
+        Files.writeString(first.toPath(), "Eins");
+        Files.writeString(second.toPath(), "Zwei");
+        
+        List<ImportResult> results = fileStorage.importBatch(List.of(first, missing, second), testFolder);
+        
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertNotNull(results.get(1).getError());
+        assertTrue(results.get(2).isSuccess());
+        
+        EncryptedFile stored = fileStorage.getFileById(results.get(2).getImportedFile().getId());
+        assertEquals("batch2.txt", stored.getOriginalName());
+        assertEquals(results.get(2).getImportedFile().getEncryptedPath(), stored.getEncryptedPath());
+        assertEquals(2, fileStorage.getFilesInFolder(testFolder).size());
+        
+        File exported = tempDir.resolve("export1.txt").toFile();
+        assertTrue(fileStorage.exportFile(results.get(0).getImportedFile(), exported));
+        assertEquals("Eins", Files.readString(exported.toPath()));
+    }
+    
+    /**
+     * Testet, dass ein fehlgeschlagenes Anlegen der Metadaten alle Einträge zurückrollt
+     * und die bereits verschlüsselten Dateien entfernt.
+     */
+    @Test
+    void testImportBatchRollsBackAndRemovesBlobs() throws Exception {
+        File first = tempDir.resolve("batch1.txt").toFile();
+        Files.writeString(first.toPath(), "Eins");
+        VirtualFolder missingFolder = new VirtualFolder(99999, "Fehlt", null, null);
+        long filesBefore = fileStorage.getAllFiles().size();
+        Set<Path> blobsBefore = listDataDirectory();
+        
+        List<ImportResult> results = fileStorage.importBatch(List.of(first, testFile), missingFolder);
+        
+        assertEquals(2, results.size());
+        assertFalse(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(filesBefore, fileStorage.getAllFiles().size());
+        assertEquals(blobsBefore, listDataDirectory());
+    }
+    
+    /**
+     * Testet, dass die kompakte Projektion dieselben Dateien und Cursor liefert wie die
+     * vollständige Auflistung.
+     */
+    @Test
+    void testFileSummariesMatchFullListing() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            EncryptedFile file = fileStorage.createFileRecord("summary_" + i + ".txt", testFolder.getId());
+            assertNotNull(file);
+        }
+        long now = System.currentTimeMillis();
+        
+        ResultPage<EncryptedFile> full = fileStorage.getFilesByFolderId(testFolder.getId(), FileSortKey.NAME, null, 3);
+        ResultPage<FileSummary> summaries = fileStorage.getFileSummariesByFolderId(testFolder.getId(), FileSortKey.NAME, null, 3);
+        
+        assertEquals(full.getNextCursor(), summaries.getNextCursor());
+        for (int i = 0; i < full.getItems().size(); i++) {
+            EncryptedFile file = full.getItems().get(i);
+            FileSummary summary = summaries.getItems().get(i);
+            assertEquals(file.getId(), summary.id());
+            assertEquals(file.getOriginalName(), summary.name());
+            assertEquals(file.getFolderId(), summary.folderId());
+            assertEquals(file.getSizeBytes(), summary.sizeBytes());
+            assertTrue(Math.abs(now - summary.createdAtMillis()) < 60_000, "createdAt: " + summary.createdAtMillis());
+        }
+        
+        ResultPage<FileSummary> rest = fileStorage.getFileSummariesByFolderId(
+                testFolder.getId(), FileSortKey.NAME, summaries.getNextCursor(), 3);
+        assertEquals(2, rest.getItems().size());
+        assertNull(rest.getNextCursor());
+        
+        ResultPage<FileSummary> all = fileStorage.getAllFileSummaries(null, 4);
+        assertEquals(4, all.getItems().size());
+        assertEquals(fileStorage.getAllFiles(null, 4).getNextCursor(), all.getNextCursor());
+        assertEquals(1, fileStorage.getAllFileSummaries(all.getNextCursor(), 4).getItems().size());
+    }
+    
+    /**
+     * Testet, dass importierte Dateien verteilt abgelegt und relativ zum Datenverzeichnis
+     * gespeichert werden, während die Dateiobjekte den absoluten Pfad tragen.
+     */
+    @Test
+    void testImportStoresShardedRelativePath() throws Exception {
+        EncryptedFile importedFile = fileStorage.importFile(testFile, testFolder);
+        
+        String storedPath;
+        try (PreparedStatement stmt = DatabaseManager.getConnection().prepareStatement(
+                "SELECT encrypted_path FROM files WHERE id = ?")) {
+            stmt.setInt(1, importedFile.getId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                storedPath = rs.getString(1);
+            }
+        }
+        
+        assertTrue(BlobStore.isSharded(storedPath), "Pfad nicht verteilt: " + storedPath);
+        Path expected = BlobStore.getRoot().resolve(storedPath);
+        assertEquals(expected.toString(), importedFile.getEncryptedPath());
+        assertEquals(expected.toString(), fileStorage.getFileById(importedFile.getId()).getEncryptedPath());
+        assertTrue(Files.exists(expected));
+    }
+    
+    /**
+     * Listet die Dateien im Datenverzeichnis des Tresors einschließlich der Verteilverzeichnisse auf.
+     */
+    private Set<Path> listDataDirectory() throws Exception {
+        Path dataDir = Path.of(FolderManager.getInstance().getDataDirectoryPath());
+        Files.createDirectories(dataDir);
+        try (Stream<Path> blobs = Files.walk(dataDir)) {
+            return blobs.filter(Files::isRegularFile).collect(Collectors.toSet());
+        }
+    }
 }
@@ -0,0 +1,139 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den FolderArchiver.
+ * Überprüft Aufbau und Inhalt des ZIP-Archivs sowie die Wahl der Kompression je MIME-Typ.
+ */
+class FolderArchiverTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und das Datenverzeichnis */
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+    }
+
+    /**
+     * Stellt Einstellungen und Datenverzeichnis wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        FolderArchiver.getInstance().resetStoredMimeTypes();
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass der Teilbaum mit Verzeichnissen und entschlüsselten Inhalten im Archiv
+     * landet, gelöschte Dateien fehlen und bereits komprimierte Formate nicht erneut komprimiert werden.
+     */
+    @Test
+    void testArchiveContainsDecryptedSubtree() throws Exception {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        VirtualFolder projects = store.insertFolder("Projekte", null, null);
+        VirtualFolder archive = store.insertFolder("Archiv", null, projects.getId());
+        store.insertFolder("Leer", null, archive.getId());
+        FileStorage storage = FileStorage.getInstance();
+        storage.importFile(source("liesmich.txt", 200), projects);
+        storage.importFile(source("bericht.txt", 60_000), archive);
+        storage.importFile(source("foto.jpg", 60_000), archive);
+        storage.deleteFile(storage.importFile(source("weg.txt", 100), projects));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(3, FolderArchiver.getInstance().writeArchive(projects, output));
+
+        Map<String, byte[]> contents = new HashMap<>();
+        Map<String, Long> compressedSizes = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                contents.put(entry.getName(), zip.readAllBytes());
+                compressedSizes.put(entry.getName(), entry.getCompressedSize());
+            }
+        }
+
+        assertEquals(List.of("Archiv/", "Archiv/Leer/", "Archiv/bericht.txt", "Archiv/foto.jpg", "liesmich.txt"),
+                contents.keySet().stream().sorted().toList());
+        assertFalse(contents.containsKey("weg.txt"));
+        assertArrayEquals(content(200), contents.get("liesmich.txt"));
+        assertArrayEquals(content(60_000), contents.get("Archiv/bericht.txt"));
+        assertArrayEquals(content(60_000), contents.get("Archiv/foto.jpg"));
+        // Der gleichmäßige Inhalt lässt sich stark komprimieren, das Foto wird unverändert übernommen
+        assertTrue(compressedSizes.get("Archiv/bericht.txt") < 10_000);
+        assertTrue(compressedSizes.get("Archiv/foto.jpg") >= 60_000);
+    }
+
+    /**
+     * Testet die Zuordnung von MIME-Typen einschließlich Platzhaltern für alle Untertypen.
+     */
+    @Test
+    void testStoredMimeTypesSupportWildcards() {
+        FolderArchiver archiver = FolderArchiver.getInstance();
+        assertTrue(archiver.isStored("video/mp4"));
+        assertTrue(archiver.isStored("image/JPEG"));
+        assertFalse(archiver.isStored("text/plain"));
+        assertFalse(archiver.isStored(null));
+
+        archiver.setStoredMimeTypes(List.of("text/*"));
+        assertTrue(archiver.isStored("text/plain"));
+        assertFalse(archiver.isStored("video/mp4"));
+    }
+
+    /**
+     * Legt eine Quelldatei an.
+     */
+    private File source(String name, int size) throws Exception {
+        Path path = tempDir.resolve("quelle").resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content(size));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen gleichmäßigen, gut komprimierbaren Inhalt.
+     */
+    private static byte[] content(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i % 16);
+        }
+        return data;
+    }
+}
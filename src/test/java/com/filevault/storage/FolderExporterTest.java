@@ -0,0 +1,151 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den FolderExporter.
+ * Überprüft den rekursiven Export, die geordnete Fortschrittsmeldung und das Fortsetzen.
+ */
+class FolderExporterTest {
+
+    /** Temporäres Verzeichnis für Quelldateien, Datenverzeichnis und Exportziel */
+    @TempDir
+    Path tempDir;
+
+    /** Oberster exportierter Ordner */
+    private VirtualFolder projects;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis, einen Ordnerbaum mit Dateien und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        projects = store.insertFolder("Projekte", null, null);
+        VirtualFolder archive = store.insertFolder("Archiv", null, projects.getId());
+        VirtualFolder old = store.insertFolder("2019", null, archive.getId());
+
+        FileStorage storage = FileStorage.getInstance();
+        storage.importFile(source("plan.txt", 300, 1), projects);
+        storage.importFile(source("modell.bin", 50_000, 2), projects);
+        storage.importFile(source("vertrag.pdf", 30_000, 3), archive);
+        for (int i = 0; i < 10; i++) {
+            storage.importFile(source("notiz-" + i + ".txt", 100 + i, 10 + i), old);
+        }
+    }
+
+    /**
+     * Stellt das Datenverzeichnis wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass der Teilbaum mit seinen Verzeichnissen exportiert wird und der Fortschritt
+     * trotz paralleler Entschlüsselung in der Reihenfolge der Auflistung ankommt.
+     */
+    @Test
+    void testExportRecreatesStructureInOrder() throws Exception {
+        Path target = tempDir.resolve("export");
+        List<Integer> indexes = new ArrayList<>();
+        FolderExporter.Options options = new FolderExporter.Options();
+        options.setParallelism(4);
+        options.setListener((index, total, file, path, status) -> {
+            assertEquals(13, total);
+            assertEquals(FolderExporter.Status.EXPORTED, status);
+            indexes.add(index);
+        });
+
+        FolderExporter.Summary summary = FolderExporter.getInstance().export(projects, target, options);
+
+        assertEquals(13, summary.exported());
+        assertEquals(0, summary.failed());
+        assertEquals(300 + 50_000 + 30_000 + 10 * 100 + 45, summary.bytesExported());
+        for (int i = 0; i < indexes.size(); i++) {
+            assertEquals(i, indexes.get(i));
+        }
+        assertArrayEquals(content(300, 1), Files.readAllBytes(target.resolve("plan.txt")));
+        assertArrayEquals(content(50_000, 2), Files.readAllBytes(target.resolve("modell.bin")));
+        assertArrayEquals(content(30_000, 3), Files.readAllBytes(target.resolve("Archiv/vertrag.pdf")));
+        assertArrayEquals(content(109, 19), Files.readAllBytes(target.resolve("Archiv/2019/notiz-9.txt")));
+    }
+
+    /**
+     * Testet, dass ein erneuter Export vollständige Dateien überspringt und nur fehlende,
+     * veränderte und unvollständige Dateien neu schreibt.
+     */
+    @Test
+    void testResumeSkipsCompleteAndVerifiedFiles() throws Exception {
+        Path target = tempDir.resolve("export");
+        FolderExporter.getInstance().export(projects, target, new FolderExporter.Options());
+
+        // Eine fehlende, eine gleich große, aber veränderte und eine unvollständige Datei
+        Files.delete(target.resolve("plan.txt"));
+        Files.write(target.resolve("Archiv/vertrag.pdf"), new byte[30_000]);
+        Files.move(target.resolve("modell.bin"), target.resolve("modell.bin" + FolderExporter.PART_SUFFIX));
+
+        FolderExporter.Summary summary = FolderExporter.getInstance().export(projects, target, new FolderExporter.Options());
+
+        assertEquals(3, summary.exported());
+        assertEquals(10, summary.skipped());
+        assertArrayEquals(content(300, 1), Files.readAllBytes(target.resolve("plan.txt")));
+        assertArrayEquals(content(30_000, 3), Files.readAllBytes(target.resolve("Archiv/vertrag.pdf")));
+        assertArrayEquals(content(50_000, 2), Files.readAllBytes(target.resolve("modell.bin")));
+        assertFalse(Files.exists(target.resolve("modell.bin" + FolderExporter.PART_SUFFIX)));
+
+        // Ohne Prüfsummenvergleich genügt die Größe
+        Files.write(target.resolve("Archiv/vertrag.pdf"), new byte[30_000]);
+        FolderExporter.Options sizeOnly = new FolderExporter.Options();
+        sizeOnly.setVerifyExisting(false);
+        assertEquals(13, FolderExporter.getInstance().export(projects, target, sizeOnly).skipped());
+    }
+
+    /**
+     * Legt eine Quelldatei mit erkennbarem Inhalt an.
+     */
+    private File source(String name, int size, int seed) throws Exception {
+        Path path = tempDir.resolve("quelle").resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content(size, seed));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen Inhalt, der sich je Datei unterscheidet.
+     */
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * seed + seed);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,199 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den FolderImporter.
+ * Überprüft den rekursiven Import, die Fortschrittsmeldungen und den Abbruch.
+ */
+class FolderImporterTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und das Datenverzeichnis */
+    @TempDir
+    Path tempDir;
+
+    /** Zielordner des Imports */
+    private VirtualFolder target;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis, Zielordner und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+        target = DatabaseManager.getMetadataStore().insertFolder("Import", null, null);
+    }
+
+    /**
+     * Stellt die Einstellungen und das Datenverzeichnis wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        FolderImporter.getInstance().setWorkerCount(Runtime.getRuntime().availableProcessors());
+        FolderImporter.getInstance().setBatchSize(256);
+        FolderImporter.getInstance().setQueueCapacity(1024);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass ein Verzeichnisbaum mit kleinen und großen Dateien vollständig importiert,
+     * seine Hierarchie samt leerer Verzeichnisse nachgebildet und der Fortschritt gemeldet wird.
+     */
+    @Test
+    void testImportRecreatesHierarchy() throws Exception {
+        Path source = tempDir.resolve("quelle");
+        write(source.resolve("readme.txt"), 100, 1);
+        write(source.resolve("bilder/foto.jpg"), 40_000, 2);
+        for (int i = 0; i < 20; i++) {
+            write(source.resolve("bilder/2024/klein-" + i + ".txt"), 200, i);
+        }
+        Files.createDirectories(source.resolve("leer"));
+
+        FolderImporter.getInstance().setWorkerCount(4);
+        FolderImporter.getInstance().setBatchSize(8);
+        FolderImporter.getInstance().setQueueCapacity(4);
+        List<FolderImporter.Progress> reports = new ArrayList<>();
+        FolderImporter.Progress result = FolderImporter.getInstance()
+                .start(source, target, progress -> {
+                    synchronized (reports) {
+                        reports.add(progress);
+                    }
+                })
+                .await();
+
+        assertEquals(22, result.filesFound());
+        assertEquals(22, result.filesImported());
+        assertEquals(0, result.filesFailed());
+        assertEquals(3, result.foldersCreated());
+        assertEquals(100 + 40_000 + 20 * 200, result.bytesImported());
+        synchronized (reports) {
+            assertTrue(reports.get(reports.size() - 1).finished());
+        }
+
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        Map<String, VirtualFolder> folders = store.getAllFolders().stream()
+                .collect(Collectors.toMap(VirtualFolder::getName, folder -> folder));
+        VirtualFolder bilder = folders.get("bilder");
+        VirtualFolder jahr = folders.get("2024");
+        assertEquals(target.getId(), bilder.getParentId());
+        assertEquals(bilder.getId(), jahr.getParentId());
+        assertEquals(target.getId(), folders.get("leer").getParentId());
+        assertEquals(1, store.countFilesInFolder(target.getId()));
+        assertEquals(1, store.countFilesInFolder(bilder.getId()));
+        assertEquals(20, store.countFilesInFolder(jahr.getId()));
+
+        EncryptedFile foto = FileStorage.getInstance().getFilesByFolderId(bilder.getId()).get(0);
+        File exported = tempDir.resolve("foto-export.jpg").toFile();
+        assertTrue(FileStorage.getInstance().exportFile(foto, exported));
+        assertArrayEquals(content(40_000, 2), Files.readAllBytes(exported.toPath()));
+    }
+
+    /**
+     * Testet, dass nach einem Abbruch genau die gemeldeten Dateien angelegt sind und keine
+     * verschlüsselten Dateien ohne Eintrag zurückbleiben.
+     */
+    @Test
+    void testCancelLeavesNoOrphanedBlobs() throws Exception {
+        Path source = tempDir.resolve("gross");
+        for (int i = 0; i < 40; i++) {
+            write(source.resolve("teil-" + (i % 4) + "/datei-" + i + ".bin"), 20_000, i);
+        }
+
+        FolderImporter.getInstance().setWorkerCount(2);
+        FolderImporter.getInstance().setBatchSize(2);
+        FolderImporter.getInstance().setQueueCapacity(2);
+        FolderImporter.Import run = FolderImporter.getInstance().start(source, target, null);
+        run.cancel();
+        FolderImporter.Progress result = run.await();
+
+        assertTrue(result.cancelled());
+        assertTrue(result.finished());
+        assertEquals(result.filesImported(), DatabaseManager.getMetadataStore().getAllFiles().size());
+        Files.createDirectories(tempDir.resolve("data"));
+        try (Stream<Path> blobs = Files.walk(tempDir.resolve("data"))) {
+            long blobCount = blobs.filter(Files::isRegularFile)
+                    .filter(path -> path.getFileName().toString().matches("[0-9a-f-]{36}"))
+                    .count();
+            assertEquals(result.filesImported(), blobCount);
+        }
+    }
+
+    /**
+     * Testet, dass ein erneuter Import gleichnamige Dateien im Zielordner als neue Version
+     * übernimmt und Kontingente bereits vor dem Schreiben einzelne Dateien ablehnen.
+     */
+    @Test
+    void testReimportAddsVersionsAndRespectsQuotas() throws Exception {
+        Path source = tempDir.resolve("wieder");
+        write(source.resolve("notiz.txt"), 100, 1);
+        FolderImporter.getInstance().start(source, target, null).await();
+        write(source.resolve("notiz.txt"), 300, 2);
+        FolderImporter.Progress again = FolderImporter.getInstance().start(source, target, null).await();
+
+        assertEquals(1, again.filesImported());
+        assertEquals(1, DatabaseManager.getMetadataStore().countFilesInFolder(target.getId()));
+        EncryptedFile notiz = FileStorage.getInstance().getFilesByFolderId(target.getId()).get(0);
+        assertEquals(300, notiz.getSizeBytes());
+        assertEquals(2, VersionManager.getInstance().getVersions(notiz.getId()).size());
+
+        // Das Teilbaum-Kontingent lässt neben der Notiz noch zwei Dateien zu
+        QuotaManager.getInstance().setQuota(target.getId(), null, 3L, true);
+        Path more = tempDir.resolve("mehr");
+        for (int i = 0; i < 5; i++) {
+            write(more.resolve("unter/datei-" + i + ".txt"), 100, i);
+        }
+        FolderImporter.Progress limited = FolderImporter.getInstance().start(more, target, null).await();
+
+        assertEquals(2, limited.filesImported());
+        assertEquals(3, limited.filesFailed());
+        assertEquals(3, DatabaseManager.getMetadataStore().getAllFiles().size());
+    }
+
+    /**
+     * Legt eine Quelldatei mit erkennbarem Inhalt an.
+     */
+    private static void write(Path path, int size, int seed) throws Exception {
+        Files.createDirectories(path.getParent());
+        Files.write(path, content(size, seed));
+    }
+
+    /**
+     * Erzeugt einen Inhalt, der sich je Datei unterscheidet.
+     */
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * (seed + 1));
+        }
+        return data;
+    }
+}
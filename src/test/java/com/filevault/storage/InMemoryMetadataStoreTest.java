@@ -0,0 +1,175 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den InMemoryMetadataStore.
+ * Überprüft Ordner- und Dateioperationen, Snapshots und den Betrieb des FileStorage
+ * ohne SQLite.
+ */
+class InMemoryMetadataStoreTest {
+
+    /** Temporäres Verzeichnis für Snapshots */
+    @TempDir
+    Path tempDir;
+
+    /** Der zu testende Speicher */
+    private InMemoryMetadataStore store;
+
+    /** Der vor dem Test aktive Speicher */
+    private MetadataStore previousStore;
+
+    /**
+     * Erstellt vor jedem Test einen leeren Speicher.
+     */
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryMetadataStore();
+        previousStore = DatabaseManager.getMetadataStore();
+    }
+
+    /**
+     * Stellt nach jedem Test den vorherigen Speicher wieder her.
+     */
+    @AfterEach
+    void tearDown() {
+        DatabaseManager.setMetadataStore(previousStore);
+    }
+
+    /**
+     * Testet das Löschen eines Teilbaums samt seiner Dateien.
+     */
+    @Test
+    void testDeleteFolderTreeRemovesSubtreeAndFiles() throws SQLException {
+        VirtualFolder root = store.insertFolder("Root", null, null);
+        VirtualFolder child = store.insertFolder("Child", null, root.getId());
+        VirtualFolder leaf = store.insertFolder("Leaf", null, child.getId());
+        VirtualFolder other = store.insertFolder("Other", null, null);
+        store.insertFile(leaf.getId(), "a.txt", "/a", 1, "text/plain");
+        EncryptedFile kept = store.insertFile(other.getId(), "b.txt", "/b", 2, "text/plain");
+
+        assertTrue(store.isAncestor(root.getId(), leaf.getId()));
+        assertEquals(List.of(root.getId(), child.getId(), leaf.getId()), store.getSubtreeFolderIds(root.getId()));
+        assertThrows(SQLException.class, () -> store.deleteFolder(root.getId()));
+
+        store.deleteFolderTree(root.getId());
+
+        assertNull(store.getFolder(leaf.getId()));
+        assertEquals(List.of(kept.getId()), store.getAllFiles().stream().map(EncryptedFile::getId).toList());
+    }
+
+    /**
+     * Testet, dass Dateien beim Verschieben und Umbenennen in den richtigen Listen erscheinen.
+     */
+    @Test
+    void testMoveAndRenameFile() throws SQLException {
+        VirtualFolder source = store.insertFolder("Source", null, null);
+        VirtualFolder target = store.insertFolder("Target", null, null);
+        EncryptedFile file = store.insertFile(source.getId(), "a.txt", "/a", 1, "text/plain");
+
+        assertTrue(store.moveFile(file.getId(), target.getId()));
+        assertTrue(store.renameFile(file.getId(), "b.txt"));
+
+        assertTrue(store.getFilesInFolder(source.getId()).isEmpty());
+        assertEquals("b.txt", store.getFilesInFolder(target.getId()).get(0).getOriginalName());
+        assertEquals(1, store.countFilesInFolder(target.getId()));
+    }
+
+    /**
+     * Testet, dass ein Snapshot alle Ordner, Dateien und Benutzer wiederherstellt.
+     */
+    @Test
+    void testSnapshotRoundTrip() throws Exception {
+        VirtualFolder folder = store.insertFolder("Docs", "Beschreibung", null);
+        store.insertFolder("Sub", null, folder.getId());
+        store.insertFile(folder.getId(), "a.txt", "/a", 42, null);
+        store.insertUser("master", "hash");
+
+        Path snapshot = tempDir.resolve("vault.snapshot");
+        store.saveSnapshot(snapshot);
+        InMemoryMetadataStore restored = InMemoryMetadataStore.loadSnapshot(snapshot);
+
+        assertEquals("Beschreibung", restored.getFolder(folder.getId()).getDescription());
+        assertEquals(1, restored.countSubfolders(folder.getId()));
+        EncryptedFile file = restored.getFilesInFolder(folder.getId()).get(0);
+        assertEquals(42, file.getSizeBytes());
+        assertNull(file.getMimeType());
+        assertEquals("hash", restored.getPasswordHash("master"));
+
+        // Neue IDs setzen hinter den wiederhergestellten fort
+        assertTrue(restored.insertFolder("Neu", null, null).getId() > folder.getId());
+    }
+
+    /**
+     * Testet parallele Importe in verschiedene Ordner.
+     */
+    @Test
+    void testConcurrentInserts() throws Exception {
+        List<Integer> folderIds = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            folderIds.add(store.insertFolder("F" + i, null, null).getId());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int folderId : folderIds) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        store.insertFile(folderId, "file" + i, "/p", i, null);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4000, store.getAllFiles().size());
+        for (int folderId : folderIds) {
+            assertEquals(500, store.countFilesInFolder(folderId));
+        }
+    }
+
+    /**
+     * Testet, dass FileStorage und Benutzerverwaltung mit dem Hauptspeicher-Speicher arbeiten.
+     */
+    @Test
+    void testFileStorageUsesConfiguredStore() throws SQLException {
+        DatabaseManager.setMetadataStore(store);
+        VirtualFolder folder = store.insertFolder("Docs", null, null);
+        FileStorage storage = FileStorage.getInstance();
+
+        EncryptedFile file = storage.createFileRecord("memo.txt", folder.getId());
+        assertNotNull(file);
+        assertEquals("memo.txt", storage.getFileById(file.getId()).getOriginalName());
+        assertTrue(storage.renameFile(file, "notiz.txt"));
+        assertEquals("notiz.txt", storage.getFilesByFolderId(folder.getId()).get(0).getOriginalName());
+        assertTrue(storage.deleteFile(file));
+        assertFalse(store.getAllFiles().stream().anyMatch(f -> f.getId() == file.getId()));
+    }
+}
@@ -0,0 +1,136 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.RequestRateMonitor;
+
+/**
+ * Testklasse für den MaintenanceScheduler.
+ * Überprüft die Wartungsschritte und das Aussetzen der Wartung unter Last.
+ */
+class MaintenanceSchedulerTest {
+
+    /** Der zu testende Scheduler */
+    private MaintenanceScheduler scheduler;
+
+    /**
+     * Initialisiert die Testdatenbank und setzt Scheduler und Anfragezähler zurück.
+     */
+    @BeforeEach
+    void setUp() {
+        DatabaseManager.initDatabase(true);
+        scheduler = MaintenanceScheduler.getInstance();
+        scheduler.resetLastRun();
+        scheduler.setLowLoadRequestsPerMinute(5);
+        scheduler.setMinRunIntervalMillis(TimeUnit.HOURS.toMillis(6));
+        RequestRateMonitor.getInstance().reset();
+    }
+
+    /**
+     * Löscht die Testdatenbank und setzt die Zähler zurück.
+     */
+    @AfterEach
+    void tearDown() {
+        scheduler.resetLastRun();
+        RequestRateMonitor.getInstance().reset();
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass ein Wartungslauf nach dem Löschen eines Teilbaums freie Seiten
+     * zurückgibt, die WAL-Datei leert und Planerstatistiken anlegt.
+     */
+    @Test
+    void testMaintenanceReclaimsSpaceAfterDelete() throws Exception {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        VirtualFolder root = store.insertFolder("Churn", null, null);
+        String longName = "x".repeat(500);
+        for (int i = 0; i < 400; i++) {
+            store.insertFile(root.getId(), longName + i, "/blob/" + i, i, null);
+        }
+        store.deleteFolderTree(root.getId());
+
+        MaintenanceReport report = scheduler.runMaintenance();
+
+        assertTrue(report.getFreePagesBefore() > 0);
+        assertEquals(0, report.getFreePagesAfter());
+        assertEquals(0, report.getWalBytesAfter());
+        assertTrue(report.getDatabaseBytesAfter() < report.getDatabaseBytesBefore() + report.getWalBytesBefore());
+        assertFalse(report.isAutoVacuumEnabled());
+        assertEquals(report, scheduler.getLastReport());
+
+        try (Connection conn = DatabaseManager.openReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    /**
+     * Testet, dass das Aufräumen über mehrere Abschnitte hinweg alle freien Seiten bis zur
+     * Obergrenze zurückgibt.
+     */
+    @Test
+    void testIncrementalVacuumRunsInChunksUpToLimit() throws Exception {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        VirtualFolder root = store.insertFolder("Chunks", null, null);
+        String longName = "y".repeat(2000);
+        for (int i = 0; i < 800; i++) {
+            store.insertFile(root.getId(), longName + i, "/blob/" + i, i, null);
+        }
+        store.deleteFolderTree(root.getId());
+
+        // Erster Lauf stellt die Datenbank auf inkrementelles Aufräumen um
+        scheduler.runMaintenance();
+        VirtualFolder again = store.insertFolder("Chunks", null, null);
+        for (int i = 0; i < 800; i++) {
+            store.insertFile(again.getId(), longName + i, "/blob/" + i, i, null);
+        }
+        store.deleteFolderTree(again.getId());
+
+        scheduler.setMaxVacuumPages(600);
+        try {
+            MaintenanceReport limited = scheduler.runMaintenance();
+            assertTrue(limited.getFreePagesBefore() > 600, "Zu wenige freie Seiten: " + limited.getFreePagesBefore());
+            assertEquals(limited.getFreePagesBefore() - 600, limited.getFreePagesAfter());
+
+            scheduler.setMaxVacuumPages(10_000);
+            assertEquals(0, scheduler.runMaintenance().getFreePagesAfter());
+        } finally {
+            scheduler.setMaxVacuumPages(10_000);
+        }
+    }
+
+    /**
+     * Testet, dass bei hoher Anfragerate keine Wartung läuft und nach einem Lauf
+     * der Mindestabstand eingehalten wird.
+     */
+    @Test
+    void testRunIfIdleRespectsLoadAndInterval() {
+        for (int i = 0; i < 10; i++) {
+            RequestRateMonitor.getInstance().recordRequest();
+        }
+        assertFalse(scheduler.runIfIdle());
+
+        RequestRateMonitor.getInstance().reset();
+        assertTrue(scheduler.runIfIdle());
+        assertNotNull(scheduler.getLastReport());
+        assertFalse(scheduler.runIfIdle());
+    }
+}
@@ -0,0 +1,89 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testklasse für den MetadataCache.
+ * Überprüft Verdrängung, Verfall, Invalidierung und die Zähler des Caches.
+ */
+class MetadataCacheTest {
+
+    /**
+     * Testet, dass bei voller Kapazität der am längsten nicht genutzte Eintrag verdrängt wird.
+     */
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        MetadataCache<Integer, String> cache = new MetadataCache<>(2, 0);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        assertEquals("a", cache.get(1));
+        cache.put(3, "c");
+
+        assertNull(cache.get(2));
+        assertEquals("a", cache.get(1));
+        assertEquals("c", cache.get(3));
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    /**
+     * Testet, dass Einträge nach Ablauf ihrer Lebensdauer nicht mehr geliefert werden.
+     */
+    @Test
+    void testEntriesExpireAfterTtl() throws InterruptedException {
+        MetadataCache<Integer, String> cache = new MetadataCache<>(10, 20);
+        cache.put(1, "a");
+        Thread.sleep(40);
+
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    /**
+     * Testet die gezielte Invalidierung über eine Bedingung.
+     */
+    @Test
+    void testInvalidateIf() {
+        MetadataCache<Integer, String> cache = new MetadataCache<>(10, 0);
+        cache.put(1, "keep");
+        cache.put(2, "drop");
+        cache.invalidateIf((key, value) -> value.equals("drop"));
+
+        assertEquals(1, cache.size());
+        assertEquals("keep", cache.get(1));
+    }
+
+    /**
+     * Testet, dass ein nachgeladener Wert verworfen wird, wenn während des Ladens
+     * invalidiert wurde, und sonst abgelegt wird.
+     */
+    @Test
+    void testPutIfUnchangedSkipsValueLoadedBeforeInvalidation() {
+        MetadataCache<Integer, String> cache = new MetadataCache<>(10, 0);
+        long staleGeneration = cache.getGeneration();
+        cache.invalidate(1);
+
+        assertFalse(cache.putIfUnchanged(1, "veraltet", staleGeneration));
+        assertNull(cache.get(1));
+
+        assertTrue(cache.putIfUnchanged(1, "aktuell", cache.getGeneration()));
+        assertEquals("aktuell", cache.get(1));
+    }
+
+    /**
+     * Testet, dass ungültige Konfigurationen abgewiesen werden.
+     */
+    @Test
+    void testInvalidConfigurationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new MetadataCache<Integer, String>(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new MetadataCache<Integer, String>(1, -1));
+    }
+}
@@ -0,0 +1,193 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den PackStore.
+ * Überprüft das Packen kleiner Dateien, den Wechsel auf eine neue Pack-Datei und die Verdichtung.
+ */
+class PackStoreTest {
+
+    /** Temporäres Verzeichnis für die Quelldateien */
+    @TempDir
+    Path tempDir;
+
+    /** Ordner für die Testdateien */
+    private VirtualFolder folder;
+
+    /**
+     * Initialisiert die Testdatenbank, einen Ordner und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        for (int i = 0; i < masterKey.length; i++) {
+            masterKey[i] = (byte) i;
+        }
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        DatabaseManager.initDatabase(true);
+        folder = DatabaseManager.getMetadataStore().insertFolder("Packs", null, null);
+    }
+
+    /**
+     * Löscht die angelegten Pack-Dateien und die Testdatenbank und stellt die Standardwerte wieder her.
+     */
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Statement stmt = DatabaseManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT path FROM packs")) {
+            while (rs.next()) {
+                Files.deleteIfExists(Paths.get(BlobStore.resolve(rs.getString(1))));
+            }
+        }
+        PackStore.getInstance().setSmallFileThreshold(16 * 1024);
+        PackStore.getInstance().setMaxPackBytes(64L * 1024 * 1024);
+        PackStore.getInstance().setCompactionThreshold(0.5);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass kleine Dateien hintereinander in dieselbe Pack-Datei geschrieben und
+     * unverändert exportiert werden, während große Dateien eigene Dateien bleiben.
+     */
+    @Test
+    void testSmallFilesArePackedAndExported() throws Exception {
+        PackStore.getInstance().setSmallFileThreshold(64);
+        EncryptedFile first = FileStorage.getInstance().importFile(source("a.txt", 10), folder);
+        EncryptedFile second = FileStorage.getInstance().importFile(source("b.txt", 20), folder);
+        EncryptedFile large = FileStorage.getInstance().importFile(source("c.bin", 100), folder);
+
+        assertTrue(first.isPacked());
+        assertTrue(second.isPacked());
+        assertEquals(first.getPackId(), second.getPackId());
+        assertEquals(first.getPackOffset() + first.getPackLength(), second.getPackOffset());
+        assertFalse(large.isPacked());
+        assertTrue(new File(large.getEncryptedPath()).exists());
+
+        EncryptedFile reloaded = FileStorage.getInstance().getFileById(second.getId());
+        assertTrue(reloaded.isPacked());
+        assertEquals(second.getPackOffset(), reloaded.getPackOffset());
+        assertArrayEquals(content(20), export(reloaded));
+        assertArrayEquals(content(100), export(large));
+    }
+
+    /**
+     * Testet, dass volle Pack-Dateien versiegelt werden und die Verdichtung die belegten
+     * Einträge einer Pack-Datei mit gelöschten Einträgen überträgt und sie entfernt.
+     */
+    @Test
+    void testCompactionMovesLiveEntriesOutOfSealedPack() throws Exception {
+        PackStore.getInstance().setSmallFileThreshold(1024);
+        // Jeder Eintrag belegt 96 Bytes IV, 100 Bytes Inhalt und 16 Bytes Tag; zwei passen in eine Pack-Datei
+        PackStore.getInstance().setMaxPackBytes(500);
+        List<File> sources = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            sources.add(source("datei" + i + ".bin", 100));
+        }
+        List<EncryptedFile> imported = new ArrayList<>();
+        for (ImportResult result : FileStorage.getInstance().importBatch(sources, folder)) {
+            assertTrue(result.isSuccess());
+            imported.add(result.getImportedFile());
+        }
+
+        int firstPack = imported.get(0).getPackId();
+        assertEquals(firstPack, imported.get(1).getPackId());
+        assertNotEquals(firstPack, imported.get(2).getPackId());
+        assertEquals(3, countRows("SELECT COUNT(*) FROM packs"));
+        Path firstPackPath = packPath(firstPack);
+        assertTrue(Files.exists(firstPackPath));
+
+        assertTrue(FileStorage.getInstance().deleteFile(imported.get(0)));
+        TrashManager.getInstance().emptyTrash();
+        long reclaimed = PackStore.getInstance().compact();
+
+        assertEquals(imported.get(0).getPackLength(), reclaimed);
+        assertFalse(Files.exists(firstPackPath));
+        assertEquals(0, countRows("SELECT COUNT(*) FROM packs WHERE id = " + firstPack));
+        EncryptedFile moved = FileStorage.getInstance().getFileById(imported.get(1).getId());
+        assertEquals(imported.get(4).getPackId(), moved.getPackId());
+        assertArrayEquals(content(100), export(moved));
+        assertEquals(imported.get(2).getPackId(),
+                FileStorage.getInstance().getFileById(imported.get(2).getId()).getPackId());
+    }
+
+    /**
+     * Legt eine Quelldatei mit vorhersagbarem Inhalt an.
+     */
+    private File source(String name, int size) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, content(size));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen Inhalt der angegebenen Größe.
+     */
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        return content;
+    }
+
+    /**
+     * Exportiert eine Datei und liefert ihren Inhalt.
+     */
+    private byte[] export(EncryptedFile file) throws Exception {
+        Path target = Files.createTempFile(tempDir, "export", ".bin");
+        assertTrue(FileStorage.getInstance().exportFile(file, target.toFile()));
+        return Files.readAllBytes(target);
+    }
+
+    /**
+     * Bestimmt den Pfad einer Pack-Datei.
+     */
+    private Path packPath(int packId) throws Exception {
+        try (Statement stmt = DatabaseManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT path FROM packs WHERE id = " + packId)) {
+            assertTrue(rs.next());
+            return Paths.get(BlobStore.resolve(rs.getString(1)));
+        }
+    }
+
+    /**
+     * Führt eine Zählabfrage aus.
+     */
+    private int countRows(String sql) throws Exception {
+        Connection conn = DatabaseManager.getConnection();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Testklasse für die Erfassung der SQL-Anweisungen über die instrumentierten Verbindungen.
+ */
+class QueryStatisticsTest {
+
+    /** Die zu testenden Statistiken */
+    private QueryStatistics statistics;
+
+    /**
+     * Initialisiert die Testdatenbank und verwirft bisherige Statistiken.
+     */
+    @BeforeEach
+    void setUp() {
+        DatabaseManager.initDatabase(true);
+        statistics = QueryStatistics.getInstance();
+        statistics.reset();
+    }
+
+    /**
+     * Löscht die Testdatenbank und stellt die Standardwerte wieder her.
+     */
+    @AfterEach
+    void tearDown() {
+        statistics.setSlowQueryThresholdMillis(200);
+        statistics.setMaxBusyRetries(3);
+        statistics.reset();
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass Ausführungen, gelieferte und geänderte Zeilen je Vorlage gezählt werden.
+     */
+    @Test
+    void testExecutionsAndRowsArePerTemplate() throws Exception {
+        Connection conn = DatabaseManager.getConnection();
+        String insert = "INSERT INTO folders (name, parent_id) VALUES (?, NULL)";
+        for (int i = 0; i < 3; i++) {
+            try (PreparedStatement pstmt = conn.prepareStatement(insert)) {
+                pstmt.setString(1, "Ordner" + i);
+                pstmt.executeUpdate();
+            }
+        }
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id FROM folders WHERE name LIKE 'Ordner%' LIMIT 10")) {
+            while (rs.next()) {
+                // alle Zeilen lesen
+            }
+        }
+
+        StatementStats inserts = statistics.getStatementStats(insert);
+        assertNotNull(inserts);
+        assertEquals(3, inserts.getCount());
+        assertEquals(3, inserts.getRows());
+        assertEquals(3, sum(inserts.getHistogram()));
+
+        StatementStats select = statistics.getStatementStats("SELECT id FROM folders WHERE name LIKE ? LIMIT ?");
+        assertNotNull(select);
+        assertEquals(1, select.getCount());
+        assertEquals(3, select.getRows());
+        assertTrue(select.getPercentileMillis(99) <= select.getMaxMillis());
+    }
+
+    /**
+     * Testet, dass Literale bei der Bildung der Vorlage durch Platzhalter ersetzt werden.
+     */
+    @Test
+    void testNormalizeReplacesLiterals() {
+        assertEquals("SELECT * FROM files WHERE id = ? AND name = ? AND t1.x = ?",
+                QueryStatistics.normalize("SELECT *\n  FROM files WHERE id = 42 AND name = 'it''s' AND t1.x = 1.5"));
+    }
+
+    /**
+     * Testet, dass Vorlagen je SQL-Text zwischengespeichert werden und Vorlagen jenseits der
+     * Höchstzahl in der Sammelvorlage landen.
+     */
+    @Test
+    void testTemplatesAreCachedAndBounded() throws Exception {
+        String sql = "SELECT * FROM files WHERE id = 7";
+        assertSame(statistics.templateOf(sql), statistics.templateOf(sql));
+
+        int extra = 50;
+        try (Statement stmt = DatabaseManager.getConnection().createStatement()) {
+            for (int i = 0; i < QueryStatistics.MAX_TEMPLATES + extra; i++) {
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 AS c" + i)) {
+                    rs.next();
+                }
+            }
+        }
+
+        assertTrue(statistics.getStatementStats().size() <= QueryStatistics.MAX_TEMPLATES + 1);
+        StatementStats overflow = statistics.getStatementStats(QueryStatistics.OVERFLOW_TEMPLATE);
+        assertNotNull(overflow);
+        assertTrue(overflow.getCount() >= extra);
+        assertEquals(1, statistics.getStatementStats("SELECT 1 AS c0").getCount());
+    }
+
+    /**
+     * Testet, dass Anweisungen oberhalb der Schwelle im Verlauf langsamer Anweisungen landen.
+     */
+    @Test
+    void testSlowQueryLog() throws Exception {
+        statistics.setSlowQueryThresholdMillis(0);
+        try (Statement stmt = DatabaseManager.getConnection().createStatement()) {
+            stmt.execute("SELECT COUNT(*) FROM files");
+        }
+
+        assertFalse(statistics.getSlowQueries().isEmpty());
+        assertEquals("SELECT COUNT(*) FROM files", statistics.getSlowQueries().get(0).getTemplate());
+    }
+
+    /**
+     * Testet, dass eine Schreibanweisung bei gesperrter Datenbank wiederholt wird und
+     * nach Freigabe der Sperre gelingt.
+     */
+    @Test
+    void testBusyStatementIsRetried() throws Exception {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(100);
+        String url = "jdbc:sqlite:" + DatabaseManager.getDatabasePath();
+        CountDownLatch locked = new CountDownLatch(1);
+
+        try (Connection blocker = DriverManager.getConnection(url);
+             Connection conn = InstrumentedConnection.wrap(DriverManager.getConnection(url, config.toProperties()))) {
+            Thread holder = new Thread(() -> {
+                try (Statement stmt = blocker.createStatement()) {
+                    stmt.execute("BEGIN EXCLUSIVE");
+                    locked.countDown();
+                    Thread.sleep(200);
+                    stmt.execute("COMMIT");
+                } catch (Exception e) {
+                    locked.countDown();
+                }
+            });
+            holder.start();
+            locked.await();
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO folders (name, parent_id) VALUES ('Gesperrt', NULL)");
+            }
+            holder.join();
+        }
+
+        StatementStats stats = statistics.getStatementStats(
+                "INSERT INTO folders (name, parent_id) VALUES ('x', NULL)");
+        assertNotNull(stats);
+        assertTrue(stats.getBusyRetries() >= 1);
+        assertEquals(1, stats.getCount());
+        assertEquals(0, stats.getErrors());
+    }
+
+    /**
+     * Summiert die Einträge eines Histogramms.
+     */
+    private static long sum(long[] histogram) {
+        long total = 0;
+        for (long n : histogram) {
+            total += n;
+        }
+        return total;
+    }
+}
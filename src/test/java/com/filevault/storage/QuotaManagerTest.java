@@ -0,0 +1,186 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den QuotaManager.
+ * Überprüft Teilbaum- und Ordnerkontingente beim Import, beim Stapelimport, beim Verschieben
+ * und beim Wiederherstellen aus dem Papierkorb.
+ */
+class QuotaManagerTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und das Datenverzeichnis */
+    @TempDir
+    Path tempDir;
+
+    /** Ordner mit dem Teilbaum-Kontingent */
+    private VirtualFolder team;
+
+    /** Unterordner des Teams */
+    private VirtualFolder projects;
+
+    /** Ordner außerhalb des Teams */
+    private VirtualFolder other;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis, Ordner und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        team = store.insertFolder("Team", null, null);
+        projects = store.insertFolder("Projekte", null, team.getId());
+        other = store.insertFolder("Andere", null, null);
+    }
+
+    /**
+     * Stellt das Datenverzeichnis wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass ein Teilbaum-Kontingent Importe in Unterordner begrenzt und abgelehnte
+     * Importe keine verschlüsselte Datei hinterlassen.
+     */
+    @Test
+    void testRecursiveByteQuotaRejectsImportBeforeEncryption() throws Exception {
+        QuotaManager.getInstance().setQuota(team.getId(), 100_000L, null, true);
+
+        assertNotNull(FileStorage.getInstance().importFile(source("a.bin", 60_000), projects));
+        long blobsBefore = countBlobs();
+
+        QuotaExceededException e = assertThrows(QuotaExceededException.class,
+                () -> FileStorage.getInstance().importFile(source("b.bin", 60_000), projects));
+        assertEquals(team.getId(), e.getFolderId());
+        assertEquals(blobsBefore, countBlobs());
+
+        // Ordner außerhalb des Teilbaums sind nicht betroffen
+        assertNotNull(FileStorage.getInstance().importFile(source("c.bin", 60_000), other));
+        assertNotNull(FileStorage.getInstance().importFile(source("d.bin", 40_000), team));
+    }
+
+    /**
+     * Testet, dass ein Stapelimport die bereits angenommenen Dateien mitzählt.
+     */
+    @Test
+    void testBatchImportCountsPendingFiles() throws Exception {
+        QuotaManager.getInstance().setQuota(projects.getId(), null, 2L, false);
+
+        List<ImportResult> results = FileStorage.getInstance().importBatch(
+                List.of(source("1.txt", 10), source("2.txt", 10), source("3.txt", 10)), projects);
+
+        assertTrue(results.get(0).isSuccess());
+        assertTrue(results.get(1).isSuccess());
+        assertFalse(results.get(2).isSuccess());
+        assertEquals(2, DatabaseManager.getMetadataStore().countFilesInFolder(projects.getId()));
+    }
+
+    /**
+     * Testet, dass Verschiebungen in einen vollen Ordner abgelehnt werden, Verschiebungen
+     * innerhalb eines Teilbaum-Kontingents aber erlaubt bleiben, und dass die Trigger auch
+     * direkte Einträge in die Metadaten ablehnen.
+     */
+    @Test
+    void testMovesAndDirectInsertsAreChecked() throws Exception {
+        EncryptedFile inProjects = FileStorage.getInstance().importFile(source("p.bin", 50_000), projects);
+        EncryptedFile outside = FileStorage.getInstance().importFile(source("o.bin", 50_000), other);
+        QuotaManager.getInstance().setQuota(team.getId(), 50_000L, null, true);
+
+        assertFalse(FileStorage.getInstance().moveFile(outside, projects));
+        assertEquals(other.getId(), FileStorage.getInstance().getFileById(outside.getId()).getFolderId());
+        assertTrue(FileStorage.getInstance().moveFile(inProjects, team));
+
+        SQLException e = assertThrows(SQLException.class, () -> DatabaseManager.getMetadataStore()
+                .insertFile(projects.getId(), "x.bin", tempDir.resolve("x").toString(), 1, null));
+        assertTrue(QuotaManager.isQuotaViolation(e));
+
+        assertTrue(QuotaManager.getInstance().removeQuota(team.getId()));
+        assertNull(QuotaManager.getInstance().getQuota(team.getId()));
+        assertTrue(FileStorage.getInstance().moveFile(outside, projects));
+    }
+
+    /**
+     * Testet, dass Teilbäume beim Verschieben und Wiederherstellen aus dem Papierkorb gegen
+     * die Teilbaum-Kontingente des neuen Elternordners geprüft werden, auch direkt in den Metadaten.
+     */
+    @Test
+    void testFolderMovesAndRestoresAreChecked() throws Exception {
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        VirtualFolder archive = store.insertFolder("Archiv", null, other.getId());
+        FileStorage.getInstance().importFile(source("p.bin", 50_000), projects);
+        FileStorage.getInstance().importFile(source("a.bin", 40_000), archive);
+        QuotaManager.getInstance().setQuota(team.getId(), 80_000L, null, true);
+
+        assertThrows(QuotaExceededException.class, () -> QuotaManager.getInstance()
+                .checkFolderMove(archive.getId(), other.getId(), projects.getId()));
+        SQLException e = assertThrows(SQLException.class, () -> store.moveFolder(archive.getId(), projects.getId()));
+        assertTrue(QuotaManager.isQuotaViolation(e));
+        assertEquals(other.getId(), store.getFolder(archive.getId()).getParentId());
+
+        // Passt der Teilbaum genau, wird er nicht doppelt gezählt
+        QuotaManager.getInstance().setQuota(team.getId(), 90_000L, null, true);
+        QuotaManager.getInstance().checkFolderMove(archive.getId(), other.getId(), projects.getId());
+        assertTrue(store.moveFolder(archive.getId(), projects.getId()));
+        assertTrue(store.moveFolder(archive.getId(), team.getId()));
+
+        assertTrue(TrashManager.getInstance().trashFolder(archive.getId()));
+        FileStorage.getInstance().importFile(source("t.bin", 40_000), team);
+        assertThrows(QuotaExceededException.class, () -> TrashManager.getInstance().restoreFolder(archive.getId()));
+        assertTrue(TrashManager.getInstance().isFolderTrashed(archive.getId()));
+
+        assertTrue(QuotaManager.getInstance().removeQuota(team.getId()));
+        assertTrue(TrashManager.getInstance().restoreFolder(archive.getId()));
+    }
+
+    /**
+     * Zählt die verschlüsselten Dateien im Datenverzeichnis.
+     */
+    private long countBlobs() throws Exception {
+        try (Stream<Path> files = Files.walk(tempDir.resolve("data"))) {
+            return files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    /**
+     * Legt eine Quelldatei an.
+     */
+    private File source(String name, int size) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, new byte[size]);
+        return path.toFile();
+    }
+}
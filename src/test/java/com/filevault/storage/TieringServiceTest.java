@@ -0,0 +1,161 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.StorageTier;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den TieringService.
+ * Überprüft das Verschieben in das kalte Verzeichnis, die Komprimierung und das Zurückholen.
+ */
+class TieringServiceTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und beide Speicherstufen */
+    @TempDir
+    Path tempDir;
+
+    /** Ordner für die Testdateien */
+    private VirtualFolder folder;
+
+    /**
+     * Initialisiert Testdatenbank, Verzeichnisse und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        for (int i = 0; i < masterKey.length; i++) {
+            masterKey[i] = (byte) i;
+        }
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("hot"));
+        PackStore.getInstance().setSmallFileThreshold(-1);
+        TieringService.getInstance().setColdRoot(tempDir.resolve("cold"));
+        DatabaseManager.initDatabase(true);
+        folder = DatabaseManager.getMetadataStore().insertFolder("Tiering", null, null);
+    }
+
+    /**
+     * Stellt die Standardwerte wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        TieringService.getInstance().setColdRoot(null);
+        TieringService.getInstance().setCompressColdTier(false);
+        PackStore.getInstance().setSmallFileThreshold(16 * 1024);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass eine ungenutzte Datei komprimiert in das kalte Verzeichnis verschoben,
+     * unverändert exportiert und nach dem Zugriff zurückgeholt wird.
+     */
+    @Test
+    void testIdleFileIsCompressedToColdTierAndPromotedOnAccess() throws Exception {
+        TieringService.getInstance().setCompressColdTier(true);
+        EncryptedFile imported = FileStorage.getInstance().importFile(source("log.txt", 64 * 1024), folder);
+        Path hotBlob = Paths.get(imported.getEncryptedPath());
+
+        assertEquals(1, TieringService.getInstance().demoteIdleFiles(System.currentTimeMillis() + 60_000));
+
+        EncryptedFile cold = FileStorage.getInstance().getFileById(imported.getId());
+        assertEquals(StorageTier.COLD, cold.getStorageTier());
+        assertTrue(cold.isCompressed());
+        assertTrue(Paths.get(cold.getEncryptedPath()).startsWith(tempDir.resolve("cold")));
+        assertFalse(Files.exists(hotBlob));
+        assertTrue(Files.size(Paths.get(cold.getEncryptedPath())) < 64 * 1024 / 4);
+
+        assertArrayEquals(content(64 * 1024), export(cold));
+
+        EncryptedFile promoted = awaitTier(imported.getId(), StorageTier.HOT);
+        assertFalse(promoted.isCompressed());
+        assertTrue(Paths.get(promoted.getEncryptedPath()).startsWith(tempDir.resolve("hot")));
+        assertFalse(Files.exists(Paths.get(cold.getEncryptedPath())));
+        assertArrayEquals(content(64 * 1024), export(promoted));
+    }
+
+    /**
+     * Testet, dass kürzlich genutzte Dateien bleiben und unkomprimiert verschobene Dateien
+     * direkt zurückgeholt werden können.
+     */
+    @Test
+    void testRecentFilesStayHotAndUncompressedFilesArePromoted() throws Exception {
+        EncryptedFile imported = FileStorage.getInstance().importFile(source("bild.bin", 4096), folder);
+
+        assertEquals(0, TieringService.getInstance().demoteIdleFiles(System.currentTimeMillis() - 60_000));
+        assertEquals(1, TieringService.getInstance().demoteIdleFiles(System.currentTimeMillis() + 60_000));
+
+        EncryptedFile cold = FileStorage.getInstance().getFileById(imported.getId());
+        assertEquals(StorageTier.COLD, cold.getStorageTier());
+        assertFalse(cold.isCompressed());
+        assertTrue(TieringService.getInstance().promote(cold));
+
+        EncryptedFile hot = FileStorage.getInstance().getFileById(imported.getId());
+        assertEquals(StorageTier.HOT, hot.getStorageTier());
+        assertArrayEquals(content(4096), export(hot));
+    }
+
+    /**
+     * Wartet, bis eine Datei die erwartete Speicherstufe erreicht.
+     */
+    private EncryptedFile awaitTier(int fileId, StorageTier tier) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        EncryptedFile file = FileStorage.getInstance().getFileById(fileId);
+        while (file.getStorageTier() != tier && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            file = FileStorage.getInstance().getFileById(fileId);
+        }
+        assertEquals(tier, file.getStorageTier());
+        return file;
+    }
+
+    /**
+     * Legt eine Quelldatei mit gut komprimierbarem Inhalt an.
+     */
+    private File source(String name, int size) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, content(size));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen sich wiederholenden Inhalt der angegebenen Größe.
+     */
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) ('a' + i % 16);
+        }
+        return content;
+    }
+
+    /**
+     * Exportiert eine Datei und liefert ihren Inhalt.
+     */
+    private byte[] export(EncryptedFile file) throws Exception {
+        Path target = Files.createTempFile(tempDir, "export", ".bin");
+        assertTrue(FileStorage.getInstance().exportFile(file, target.toFile()));
+        return Files.readAllBytes(target);
+    }
+}
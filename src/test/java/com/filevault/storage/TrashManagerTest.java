@@ -0,0 +1,178 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.TrashItem;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+import com.filevault.util.FolderManager;
+
+/**
+ * Testklasse für den TrashManager.
+ * Überprüft das Verschieben in den Papierkorb, das Wiederherstellen und das endgültige Entfernen.
+ */
+class TrashManagerTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und das Datenverzeichnis */
+    @TempDir
+    Path tempDir;
+
+    /** Oberster Ordner der Testdaten */
+    private VirtualFolder projects;
+
+    /** Unterordner der Projekte */
+    private VirtualFolder archive;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis, Ordner und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+        MetadataStore store = DatabaseManager.getMetadataStore();
+        projects = store.insertFolder("Projekte", null, null);
+        archive = store.insertFolder("Archiv", null, projects.getId());
+        FolderManager.getInstance().reloadFromDatabase();
+    }
+
+    /**
+     * Stellt Einstellungen und Datenverzeichnis wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        TrashManager.getInstance().setRetentionDays(30);
+        TrashManager.getInstance().setPurgeBatchSize(500);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass eine gelöschte Datei aus Auflistung, Suche und Statistik verschwindet,
+     * ihre verschlüsselte Datei aber bis zur Wiederherstellung erhalten bleibt.
+     */
+    @Test
+    void testDeletedFileCanBeRestored() throws Exception {
+        EncryptedFile file = FileStorage.getInstance().importFile(source("angebot.pdf", 30_000), archive);
+
+        assertTrue(FileStorage.getInstance().deleteFile(file));
+        assertTrue(FileStorage.getInstance().getFilesByFolderId(archive.getId()).isEmpty());
+        assertNull(FileStorage.getInstance().getFileById(file.getId()));
+        assertTrue(FileStorage.getInstance().search("angebot", 10, null).getItems().isEmpty());
+        assertEquals(0, FolderManager.getInstance().getSubtreeSize(projects.getId()));
+        assertTrue(Files.exists(Path.of(file.getEncryptedPath())));
+
+        List<TrashItem> items = TrashManager.getInstance().getItems();
+        assertEquals(1, items.size());
+        assertEquals(TrashItem.Type.FILE, items.get(0).getType());
+        assertEquals(archive.getId(), items.get(0).getOriginalParentId());
+
+        assertTrue(TrashManager.getInstance().restoreFile(file.getId()));
+        assertFalse(TrashManager.getInstance().restoreFile(file.getId()));
+        assertEquals(1, FileStorage.getInstance().getFilesByFolderId(archive.getId()).size());
+        assertEquals(1, FileStorage.getInstance().search("angebot", 10, null).getItems().size());
+        assertEquals(30_000, FolderManager.getInstance().getSubtreeSize(projects.getId()));
+        assertTrue(TrashManager.getInstance().getItems().isEmpty());
+    }
+
+    /**
+     * Testet, dass eine Datei nicht in einen Ordner wiederhergestellt wird, der über einen
+     * Vorfahren im Papierkorb liegt, sondern erst nach dessen Wiederherstellung.
+     */
+    @Test
+    void testFileRestoreRequiresLiveFolder() throws Exception {
+        EncryptedFile file = FileStorage.getInstance().importFile(source("angebot.pdf", 30_000), archive);
+        assertTrue(FileStorage.getInstance().deleteFile(file));
+        assertTrue(TrashManager.getInstance().trashFolder(projects.getId()));
+
+        assertThrows(IllegalStateException.class, () -> TrashManager.getInstance().restoreFile(file.getId()));
+        assertEquals(2, TrashManager.getInstance().getItems().size());
+
+        assertTrue(TrashManager.getInstance().restoreFolder(projects.getId()));
+        assertTrue(TrashManager.getInstance().restoreFile(file.getId()));
+        assertEquals(1, FileStorage.getInstance().getFilesByFolderId(archive.getId()).size());
+    }
+
+    /**
+     * Testet, dass ein gelöschter Ordner mit seinem Teilbaum verborgen wird und als Ganzes
+     * an seinen ursprünglichen Platz zurückkehrt.
+     */
+    @Test
+    void testDeletedFolderHidesSubtreeUntilRestored() throws Exception {
+        FileStorage.getInstance().importFile(source("plan.txt", 100), archive);
+        MetadataStore store = DatabaseManager.getMetadataStore();
+
+        FolderManager.getInstance().deleteFolderRecursive(archive);
+        assertEquals(List.of(projects.getId()), store.getAllFolders().stream().map(VirtualFolder::getId).toList());
+        assertTrue(store.getAllFiles().isEmpty());
+        assertEquals(0, FolderManager.getInstance().getSubtreeFileCount(projects.getId()));
+
+        assertTrue(TrashManager.getInstance().restoreFolder(archive.getId()));
+        assertEquals(projects.getId(), store.getFolder(archive.getId()).getParentId());
+        assertEquals(1, store.getAllFiles().size());
+        assertEquals(1, FolderManager.getInstance().getSubtreeFileCount(projects.getId()));
+    }
+
+    /**
+     * Testet, dass der Aufräumlauf nur abgelaufene Einträge stapelweise entfernt und dabei
+     * Dateien, Teilbäume und verschlüsselte Dateien löscht.
+     */
+    @Test
+    void testPurgeRemovesOnlyExpiredEntries() throws Exception {
+        EncryptedFile recent = FileStorage.getInstance().importFile(source("neu.bin", 30_000), projects);
+        EncryptedFile old = FileStorage.getInstance().importFile(source("alt.bin", 30_000), projects);
+        EncryptedFile nested = FileStorage.getInstance().importFile(source("tief.bin", 30_000), archive);
+        FileStorage.getInstance().deleteFile(recent);
+        FileStorage.getInstance().deleteFile(old);
+        FolderManager.getInstance().deleteFolderRecursive(archive);
+        try (Connection conn = DatabaseManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE files SET deleted_at = datetime('now', '-40 days') WHERE id = " + old.getId());
+            stmt.executeUpdate("UPDATE folders SET deleted_at = datetime('now', '-40 days') WHERE id = " + archive.getId());
+        }
+
+        TrashManager.getInstance().setPurgeBatchSize(1);
+        assertEquals(2, TrashManager.getInstance().purgeExpired());
+
+        assertFalse(Files.exists(Path.of(old.getEncryptedPath())));
+        assertFalse(Files.exists(Path.of(nested.getEncryptedPath())));
+        assertTrue(Files.exists(Path.of(recent.getEncryptedPath())));
+        assertNull(DatabaseManager.getMetadataStore().getFolder(archive.getId()));
+        List<TrashItem> items = TrashManager.getInstance().getItems();
+        assertEquals(1, items.size());
+        assertEquals(recent.getId(), items.get(0).getId());
+    }
+
+    /**
+     * Legt eine Quelldatei an.
+     */
+    private File source(String name, int size) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, new byte[size]);
+        return path.toFile();
+    }
+}
@@ -0,0 +1,192 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.FileVersion;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den VersionManager.
+ * Überprüft erneute Importe als Versionen, das Wiederherstellen und die Aufbewahrungsregeln.
+ */
+class VersionManagerTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und das Datenverzeichnis */
+    @TempDir
+    Path tempDir;
+
+    /** Ordner für die Testdateien */
+    private VirtualFolder folder;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis, einen Ordner und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("data"));
+        DatabaseManager.initDatabase(true);
+        folder = DatabaseManager.getMetadataStore().insertFolder("Dokumente", null, null);
+    }
+
+    /**
+     * Stellt Aufbewahrungsregeln und Datenverzeichnis wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        VersionManager.getInstance().setRetention(10, 0);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+    }
+
+    /**
+     * Testet, dass ein erneuter Import dieselbe Datei fortschreibt, die Auflistung nur die
+     * aktuelle Version zeigt und eine frühere Version wiederhergestellt werden kann.
+     */
+    @Test
+    void testReimportCreatesVersionAndRestoreBringsItBack() throws Exception {
+        EncryptedFile first = FileStorage.getInstance().importFile(source("bericht.txt", 40_000, 1), folder);
+        EncryptedFile second = FileStorage.getInstance().importFile(source("bericht.txt", 50_000, 2), folder);
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(50_000, second.getSizeBytes());
+        assertEquals(1, DatabaseManager.getMetadataStore().countFilesInFolder(folder.getId()));
+
+        List<FileVersion> versions = VersionManager.getInstance().getVersions(first.getId());
+        assertEquals(2, versions.size());
+        assertEquals(2, versions.get(0).getVersion());
+        assertTrue(versions.get(0).isCurrent());
+        assertFalse(versions.get(1).isCurrent());
+
+        assertTrue(VersionManager.getInstance().restore(first.getId(), 1));
+        assertFalse(VersionManager.getInstance().restore(first.getId(), 1));
+        EncryptedFile restored = FileStorage.getInstance().getFileById(first.getId());
+        assertEquals(40_000, restored.getSizeBytes());
+        File exported = tempDir.resolve("export.txt").toFile();
+        assertTrue(FileStorage.getInstance().exportFile(restored, exported));
+        assertArrayEquals(content(40_000, 1), Files.readAllBytes(exported.toPath()));
+
+        List<Integer> numbers = VersionManager.getInstance().getVersions(first.getId())
+                .stream().map(FileVersion::getVersion).toList();
+        assertEquals(List.of(3, 2), numbers);
+    }
+
+    /**
+     * Testet, dass der Aufräumlauf nur die neuesten früheren Versionen behält, die Dateien
+     * entfernter Versionen löscht und Versionen beim endgültigen Löschen der Datei mit entfernt werden.
+     */
+    @Test
+    void testPruneKeepsLatestVersionsAndDeletesBlobs() throws Exception {
+        EncryptedFile file = null;
+        for (int i = 1; i <= 5; i++) {
+            file = FileStorage.getInstance().importFile(source("daten.bin", 30_000, i), folder);
+        }
+        List<Path> blobsBefore = VersionManager.getInstance().getVersionBlobs(file.getId());
+        assertEquals(4, blobsBefore.size());
+
+        VersionManager.getInstance().setRetention(2, 0);
+        VersionManager.getInstance().setPruneBatchSize(1);
+        try {
+            assertEquals(2, VersionManager.getInstance().prune());
+        } finally {
+            VersionManager.getInstance().setPruneBatchSize(500);
+        }
+
+        List<Integer> numbers = VersionManager.getInstance().getVersions(file.getId())
+                .stream().map(FileVersion::getVersion).toList();
+        assertEquals(List.of(5, 4, 3), numbers);
+        assertEquals(2, blobsBefore.stream().filter(Files::exists).count());
+
+        assertTrue(FileStorage.getInstance().deleteFile(file));
+        assertEquals(1, TrashManager.getInstance().emptyTrash());
+        assertEquals(0, blobsBefore.stream().filter(Files::exists).count());
+    }
+
+    /**
+     * Testet, dass eine größere neue Version gegen das Kontingent des Ordners geprüft wird und
+     * die Datei bei einer Überschreitung unverändert bleibt.
+     */
+    @Test
+    void testAddVersionRespectsQuota() throws Exception {
+        EncryptedFile file = FileStorage.getInstance().importFile(source("bericht.txt", 40_000, 1), folder);
+        QuotaManager.getInstance().setQuota(folder.getId(), 45_000L, null, false);
+
+        EncryptedFile larger = new EncryptedFile(0, folder.getId(), "bericht.txt", file.getEncryptedPath(),
+                50_000, file.getMimeType(), null, null);
+        assertThrows(QuotaExceededException.class, () -> VersionManager.getInstance().addVersion(file.getId(), larger));
+        assertEquals(1, VersionManager.getInstance().getVersions(file.getId()).size());
+        assertEquals(40_000, FileStorage.getInstance().getFileById(file.getId()).getSizeBytes());
+
+        EncryptedFile smaller = new EncryptedFile(0, folder.getId(), "bericht.txt", file.getEncryptedPath(),
+                45_000, file.getMimeType(), null, null);
+        assertTrue(VersionManager.getInstance().addVersion(file.getId(), smaller));
+        assertEquals(2, VersionManager.getInstance().getVersions(file.getId()).size());
+    }
+
+    /**
+     * Testet, dass frühere Versionen kleiner Dateien die Verdichtung ihrer Pack-Datei überstehen.
+     */
+    @Test
+    void testPackedVersionsSurviveCompaction() throws Exception {
+        // Jede Version landet in einer eigenen Pack-Datei, die erste wird versiegelt
+        PackStore.getInstance().setMaxPackBytes(150);
+        PackStore.getInstance().setCompactionThreshold(0);
+        try {
+            EncryptedFile file = FileStorage.getInstance().importFile(source("notiz.txt", 100, 1), folder);
+            FileStorage.getInstance().importFile(source("notiz.txt", 100, 2), folder);
+            assertTrue(file.isPacked());
+            PackStore.getInstance().compact();
+
+            assertTrue(VersionManager.getInstance().restore(file.getId(), 1));
+            File exported = tempDir.resolve("notiz-export.txt").toFile();
+            assertTrue(FileStorage.getInstance().exportFile(FileStorage.getInstance().getFileById(file.getId()), exported));
+            assertArrayEquals(content(100, 1), Files.readAllBytes(exported.toPath()));
+        } finally {
+            PackStore.getInstance().setMaxPackBytes(64L * 1024 * 1024);
+            PackStore.getInstance().setCompactionThreshold(0.5);
+        }
+    }
+
+    /**
+     * Legt eine Quelldatei mit erkennbarem Inhalt an.
+     */
+    private File source(String name, int size, int seed) throws Exception {
+        Path path = tempDir.resolve("quelle-" + seed).resolve(name);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content(size, seed));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen Inhalt, der sich je Version unterscheidet.
+     */
+    private static byte[] content(int size, int seed) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) (i * seed);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,176 @@
+package com.filevault.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.UserManager;
+import com.filevault.model.VirtualFolder;
+
+/**
+ * Testklasse für den VolumeManager.
+ * Überprüft die Verteilung neuer Dateien, das Leeren entfernter Volumes und die Neuverteilung.
+ */
+class VolumeManagerTest {
+
+    /** Temporäres Verzeichnis für Quelldateien und alle Datenverzeichnisse */
+    @TempDir
+    Path tempDir;
+
+    /** Ordner für die Testdateien */
+    private VirtualFolder folder;
+
+    /**
+     * Initialisiert Testdatenbank, Datenverzeichnis und einen Test-Masterschlüssel.
+     */
+    @BeforeEach
+    void setUp() throws Exception {
+        byte[] masterKey = new byte[32];
+        for (int i = 0; i < masterKey.length; i++) {
+            masterKey[i] = (byte) i;
+        }
+        Field masterKeyField = UserManager.class.getDeclaredField("masterKey");
+        masterKeyField.setAccessible(true);
+        masterKeyField.set(UserManager.getInstance(), masterKey);
+
+        BlobStore.setRoot(tempDir.resolve("primary"));
+        PackStore.getInstance().setSmallFileThreshold(-1);
+        DatabaseManager.initDatabase(true);
+        folder = DatabaseManager.getMetadataStore().insertFolder("Volumes", null, null);
+    }
+
+    /**
+     * Stellt die Standardwerte wieder her und löscht die Testdatenbank.
+     */
+    @AfterEach
+    void tearDown() {
+        VolumeManager.getInstance().setPrimaryCapacityBytes(null);
+        PackStore.getInstance().setSmallFileThreshold(16 * 1024);
+        BlobStore.setRoot(null);
+        DatabaseManager.closeConnections();
+        DatabaseManager.deleteTestDatabase();
+        VolumeManager.getInstance().clearCache();
+    }
+
+    /**
+     * Testet, dass neue Dateien auf dem Volume mit Kapazität landen und beim Entfernen des
+     * Volumes zurück in das Standard-Datenverzeichnis verschoben werden.
+     */
+    @Test
+    void testFilesArePlacedOnVolumeAndDrainedOnRemoval() throws Exception {
+        VolumeManager volumes = VolumeManager.getInstance();
+        volumes.setPrimaryCapacityBytes(0L);
+        Volume volume = volumes.addVolume(tempDir.resolve("disk2"), 1L);
+
+        EncryptedFile imported = FileStorage.getInstance().importFile(source("a.bin", 4096), folder);
+        Path onVolume = Paths.get(imported.getEncryptedPath());
+        assertTrue(onVolume.startsWith(volume.root()));
+        assertEquals(volume.id(), volumeIdOf(imported.getId()));
+        assertArrayEquals(content(4096), export(imported));
+
+        volumes.setPrimaryCapacityBytes(null);
+        assertTrue(volumes.removeVolume(volume.id()));
+        assertEquals(1, volumes.rebalance());
+
+        EncryptedFile moved = FileStorage.getInstance().getFileById(imported.getId());
+        assertTrue(Paths.get(moved.getEncryptedPath()).startsWith(tempDir.resolve("primary")));
+        assertFalse(Files.exists(onVolume));
+        assertNull(volumeIdOf(imported.getId()));
+        assertTrue(volumes.getVolumes().isEmpty());
+        assertArrayEquals(content(4096), export(moved));
+    }
+
+    /**
+     * Testet, dass nach dem Hinzufügen eines gleich großen Volumes die Hälfte der Daten dorthin
+     * verschoben wird und sich überschneidende Verzeichnisse abgelehnt werden.
+     */
+    @Test
+    void testRebalanceMovesDataToNewVolumeByCapacity() throws Exception {
+        VolumeManager volumes = VolumeManager.getInstance();
+        volumes.setPrimaryCapacityBytes(1000L);
+        List<EncryptedFile> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            files.add(FileStorage.getInstance().importFile(source("f" + i + ".bin", 2048), folder));
+        }
+
+        assertThrows(IllegalArgumentException.class,
+                () -> volumes.addVolume(tempDir.resolve("primary").resolve("nested"), 1000L));
+        Volume volume = volumes.addVolume(tempDir.resolve("disk2"), 1000L);
+        assertEquals(2, volumes.rebalance());
+        assertEquals(0, volumes.rebalanceIfNeeded());
+
+        int onVolume = 0;
+        for (EncryptedFile file : files) {
+            EncryptedFile current = FileStorage.getInstance().getFileById(file.getId());
+            if (Paths.get(current.getEncryptedPath()).startsWith(volume.root())) {
+                onVolume++;
+            }
+            assertArrayEquals(content(2048), export(current));
+        }
+        assertEquals(2, onVolume);
+    }
+
+    /**
+     * Liest die gespeicherte Volume-ID einer Datei.
+     */
+    private static Integer volumeIdOf(int fileId) throws Exception {
+        try (Connection conn = DatabaseManager.openReadConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT volume_id FROM files WHERE id = ?")) {
+            stmt.setInt(1, fileId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                int volumeId = rs.getInt(1);
+                return rs.wasNull() ? null : volumeId;
+            }
+        }
+    }
+
+    /**
+     * Legt eine Quelldatei an.
+     */
+    private File source(String name, int size) throws Exception {
+        Path path = tempDir.resolve(name);
+        Files.write(path, content(size));
+        return path.toFile();
+    }
+
+    /**
+     * Erzeugt einen Inhalt der angegebenen Größe.
+     */
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        return content;
+    }
+
+    /**
+     * Exportiert eine Datei und liefert ihren Inhalt.
+     */
+    private byte[] export(EncryptedFile file) throws Exception {
+        Path target = Files.createTempFile(tempDir, "export", ".bin");
+        assertTrue(FileStorage.getInstance().exportFile(file, target.toFile()));
+        return Files.readAllBytes(target);
+    }
+}
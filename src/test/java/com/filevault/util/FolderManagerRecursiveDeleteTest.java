@@ -5,14 +5,20 @@ import java.util.List;
 
 import org.junit.jupiter.api.AfterEach;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.filevault.model.EncryptedFile;
+import com.filevault.model.FolderStats;
 import com.filevault.model.VirtualFolder;
 import com.filevault.storage.DatabaseManager;
+import com.filevault.storage.FileStorage;
+import com.filevault.storage.TrashManager;
 
 /**
  * Tests für die rekursive Löschfunktion des FolderManagers.
@@ -137,4 +143,124 @@ public class FolderManagerRecursiveDeleteTest {
         
         LoggingUtil.log("Regular delete fail test completed successfully");
     }
-} 
\ No newline at end of file
+    
+    /**
+     * Testet, dass beim rekursiven Löschen auch die Dateien des Teilbaums entfernt werden,
+     * sobald der Papierkorb geleert wird.
+     */
+    @Test
+    public void testRecursiveDeletionRemovesFilesInSubtree() throws SQLException {
+        String testPrefix = "TEST_" + System.currentTimeMillis() + "_";
+        VirtualFolder root = folderManager.createFolder(testPrefix + "TestRoot", null);
+        VirtualFolder child = folderManager.createFolder(testPrefix + "Child", root.getId());
+        FileStorage.getInstance().createFileRecord("a.txt", root.getId());
+        FileStorage.getInstance().createFileRecord("b.txt", child.getId());
+        
+        assertEquals(2, folderManager.getSubtreeFileCount(root.getId()));
+        
+        folderManager.deleteFolderRecursive(root);
+        assertNull(folderManager.getFolderByName(testPrefix + "Child"));
+        
+        TrashManager.getInstance().emptyTrash();
+        assertTrue(folderManager.getSubtreeFolderIds(root.getId()).isEmpty());
+        assertEquals(0, FileStorage.getInstance().getFilesByFolderId(child.getId()).size());
+        assertNull(folderManager.getFolderByName(testPrefix + "Child"));
+    }
+    
+    /**
+     * Testet das Verschieben eines Teilbaums und die Pfadberechnung über die Closure-Tabelle.
+     */
+    @Test
+    public void testMoveFolderUpdatesHierarchy() {
+        String testPrefix = "TEST_" + System.currentTimeMillis() + "_";
+        VirtualFolder root = folderManager.createFolder(testPrefix + "TestRoot", null);
+        VirtualFolder source = folderManager.createFolder(testPrefix + "Source", root.getId());
+        VirtualFolder leaf = folderManager.createFolder(testPrefix + "Leaf", source.getId());
+        VirtualFolder target = folderManager.createFolder(testPrefix + "Target", root.getId());
+        
+        assertTrue(folderManager.moveFolder(source, target.getId()));
+        
+        assertEquals(testPrefix + "TestRoot/" + testPrefix + "Target/" + testPrefix + "Source/" + testPrefix + "Leaf",
+                folderManager.getFolderPath(leaf.getId()));
+        assertTrue(folderManager.isAncestor(target.getId(), leaf.getId()));
+        assertEquals(List.of(target.getId(), source.getId(), leaf.getId()),
+                folderManager.getSubtreeFolderIds(target.getId()));
+        assertEquals(target.getId(), source.getParentId());
+        
+        folderManager.deleteFolderRecursive(root);
+    }
+    
+    /**
+     * Testet, dass ein Ordner nicht in seinen eigenen Teilbaum verschoben werden kann.
+     */
+    @Test
+    public void testMoveFolderIntoOwnSubtreeFails() throws SQLException {
+        String testPrefix = "TEST_" + System.currentTimeMillis() + "_";
+        VirtualFolder root = folderManager.createFolder(testPrefix + "TestRoot", null);
+        VirtualFolder child = folderManager.createFolder(testPrefix + "Child", root.getId());
+        
+        assertThrows(IllegalArgumentException.class, () -> folderManager.moveFolder(root, child.getId()));
+        assertThrows(IllegalArgumentException.class, () -> folderManager.moveFolder(root, root.getId()));
+        // Auch ohne die Vorabprüfung lehnt der Speicher einen Zyklus ab
+        assertFalse(DatabaseManager.getMetadataStore().moveFolder(root.getId(), child.getId()));
+        assertEquals(root.getId(), child.getParentId());
+        
+        folderManager.deleteFolderRecursive(root);
+    }
+    
+    /**
+     * Testet, dass die Ordnerstatistiken beim Anlegen, Verschieben und Löschen von
+     * Dateien und Ordnern fortgeschrieben werden.
+     */
+    @Test
+    public void testFolderStatsFollowChanges() throws SQLException {
+        String testPrefix = "TEST_" + System.currentTimeMillis() + "_";
+        VirtualFolder root = folderManager.createFolder(testPrefix + "TestRoot", null);
+        VirtualFolder source = folderManager.createFolder(testPrefix + "Source", root.getId());
+        VirtualFolder target = folderManager.createFolder(testPrefix + "Target", root.getId());
+        FileStorage storage = FileStorage.getInstance();
+        EncryptedFile small = storage.createFileRecord("small.txt", source.getId());
+        EncryptedFile large = storage.createFileRecord("large.txt", source.getId());
+        setFileSize(small.getId(), 10);
+        setFileSize(large.getId(), 1000);
+        
+        FolderStats rootStats = folderManager.getFolderStats(root.getId());
+        assertEquals(0, rootStats.getDirectFileCount());
+        assertEquals(2, rootStats.getTotalFileCount());
+        assertEquals(1010, rootStats.getTotalBytes());
+        assertEquals(1010, folderManager.getFolderStats(source.getId()).getDirectBytes());
+        
+        assertTrue(storage.moveFile(large, target));
+        assertEquals(10, folderManager.getFolderStats(source.getId()).getTotalBytes());
+        assertEquals(1000, folderManager.getFolderStats(target.getId()).getTotalBytes());
+        assertEquals(1010, folderManager.getSubtreeSize(root.getId()));
+        
+        // Ordner mitsamt Dateien unter einen anderen Ordner hängen
+        assertTrue(folderManager.moveFolder(source, target.getId()));
+        FolderStats targetStats = folderManager.getFolderStats(target.getId());
+        assertEquals(1, targetStats.getDirectFileCount());
+        assertEquals(2, targetStats.getTotalFileCount());
+        assertEquals(1010, targetStats.getTotalBytes());
+        assertEquals(1010, folderManager.getSubtreeSize(root.getId()));
+        
+        assertTrue(storage.deleteFile(small));
+        assertEquals(1, folderManager.getSubtreeFileCount(root.getId()));
+        assertEquals(1000, folderManager.getSubtreeSize(root.getId()));
+        
+        folderManager.deleteFolderRecursive(root);
+        TrashManager.getInstance().emptyTrash();
+        assertEquals(0, folderManager.getFolderStats(root.getId()).getTotalFileCount());
+    }
+    
+    /**
+     * Setzt die Größe eines Dateieintrags direkt in der Datenbank.
+     */
+    private void setFileSize(int fileId, long size) throws SQLException {
+        try (var conn = DatabaseManager.getConnection();
+             var stmt = conn.prepareStatement("UPDATE files SET size_bytes = ? WHERE id = ?")) {
+            stmt.setLong(1, size);
+            stmt.setInt(2, fileId);
+            stmt.executeUpdate();
+        }
+    }
+}
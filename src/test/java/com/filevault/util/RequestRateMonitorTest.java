@@ -0,0 +1,38 @@
+package com.filevault.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testklasse für den RequestRateMonitor.
+ */
+class RequestRateMonitorTest {
+
+    /**
+     * Setzt die Zähler nach jedem Test zurück.
+     */
+    @AfterEach
+    void tearDown() {
+        RequestRateMonitor.getInstance().reset();
+    }
+
+    /**
+     * Testet, dass das gleitende Fenster nur Anfragen der letzten Minute zählt.
+     */
+    @Test
+    void testRequestRateWindow() {
+        RequestRateMonitor monitor = RequestRateMonitor.getInstance();
+        monitor.reset();
+        long base = 1_000_000_000L;
+        monitor.recordRequest(base);
+        monitor.recordRequest(base + 10_000);
+        monitor.recordRequest(base + 30_000);
+
+        assertEquals(3, monitor.getRequestsPerMinute(base + 30_000));
+        assertEquals(2, monitor.getRequestsPerMinute(base + 65_000));
+        assertEquals(0, monitor.getRequestsPerMinute(base + 120_000));
+        assertEquals(3, monitor.getTotalRequests());
+    }
+}